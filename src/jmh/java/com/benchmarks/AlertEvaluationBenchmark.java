@@ -0,0 +1,54 @@
+package com.benchmarks;
+
+import com.alerts.Alert;
+import com.alerts.AlertEvaluationScheduler;
+import com.cardio_generator.LoadGenerator;
+import com.cardio_generator.outputs.StorageOutputStrategy;
+import com.data_management.DataStorage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Milliseconds {@link AlertEvaluationScheduler#evaluateAll()} takes to check
+ * every strategy for every patient, with a minute of simulated readings per
+ * patient. The goal is evaluating 10,000 patients well within a second.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AlertEvaluationBenchmark {
+
+    @Param({"10000"})
+    public int patients;
+
+    private AlertEvaluationScheduler scheduler;
+
+    @Setup(Level.Trial)
+    public void generateData() {
+        DataStorage storage = new DataStorage();
+        new LoadGenerator(patients, BenchmarkData.SEED).run(60, 0, new StorageOutputStrategy(storage));
+        scheduler = new AlertEvaluationScheduler(storage);
+    }
+
+    @Benchmark
+    public List<Alert> evaluateAll() {
+        return scheduler.evaluateAll();
+    }
+}
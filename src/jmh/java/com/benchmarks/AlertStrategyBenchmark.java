@@ -0,0 +1,79 @@
+package com.benchmarks;
+
+import com.alerts.Alert;
+import com.alerts.AlertStrategy;
+import com.alerts.BloodOxygenAlertStrategy;
+import com.alerts.BloodPressureAlertStrategy;
+import com.alerts.ECGAlertStrategy;
+import com.alerts.HypotensiveHypoxemiaAlertStrategy;
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link AlertStrategy#checkAlert} on the full history of one patient, for
+ * every strategy and a few history lengths.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AlertStrategyBenchmark {
+    @Param({"ECG", "BloodPressure", "BloodOxygen", "HypotensiveHypoxemia"})
+    public String strategy;
+
+    /** Simulated minutes of history */
+    @Param({"10", "60"})
+    public int minutes;
+
+    private AlertStrategy alertStrategy;
+    private List<PatientRecord> records;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (strategy) {
+            case "ECG":
+                alertStrategy = new ECGAlertStrategy();
+                break;
+            case "BloodPressure":
+                alertStrategy = new BloodPressureAlertStrategy();
+                break;
+            case "BloodOxygen":
+                alertStrategy = new BloodOxygenAlertStrategy();
+                break;
+            case "HypotensiveHypoxemia":
+                alertStrategy = new HypotensiveHypoxemiaAlertStrategy();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown strategy: " + strategy);
+        }
+
+        BenchmarkData data = BenchmarkData.generate(1, minutes * 60);
+        DataStorage storage = new DataStorage();
+        for (int i = 0; i < data.size(); i++)
+            storage.addPatientData(data.patientId(i), data.value(i), data.label(i), data.timestamp(i));
+        records = storage.getRecords(1, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public Alert checkAlert() {
+        return alertStrategy.checkAlert(records);
+    }
+}
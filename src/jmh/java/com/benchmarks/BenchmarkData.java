@@ -0,0 +1,124 @@
+package com.benchmarks;
+
+import com.cardio_generator.LoadGenerator;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.RecordParser;
+import com.data_management.RecordTypes;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A dataset of readings produced by the simulator's generators, held
+ * column-wise so benchmarks can replay it without allocating.
+ * <p>
+ * The readings come from a {@link LoadGenerator} with a fixed seed, so they
+ * are identical on every run: ECG and saturation every simulated second,
+ * blood pressure every minute and blood levels every two minutes. Alerts are
+ * left out, as they have no numeric value.
+ */
+public final class BenchmarkData {
+    public static final long START_TIME = LoadGenerator.START_TIME;
+    public static final long SEED = 42;
+
+    private int size;
+    private int[] patientIds = new int[1024];
+    private long[] timestamps = new long[1024];
+    private String[] labels = new String[1024];
+    private double[] values = new double[1024];
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Generates readings for the given number of patients and simulated
+     * seconds.
+     *
+     * @param patientCount the number of patients, numbered from 1
+     * @param seconds      the number of simulated seconds
+     * @return the readings, in the order they were generated
+     */
+    public static BenchmarkData generate(int patientCount, int seconds) {
+        BenchmarkData data = new BenchmarkData();
+        new LoadGenerator(patientCount, SEED).run(seconds, 0, new OutputStrategy() {
+            @Override
+            public void output(int patientId, long timestamp, int labelCode, double value) {
+                if (labelCode != RecordTypes.ALERT)
+                    data.add(patientId, timestamp, RecordTypes.nameOf(labelCode), value);
+            }
+
+            @Override
+            public void output(int patientId, long timestamp, String label, String value) {
+                int labelCode = RecordTypes.codeOf(label);
+                if (labelCode != RecordTypes.ALERT)
+                    output(patientId, timestamp, labelCode, RecordParser.parseValue(value));
+            }
+        });
+        return data;
+    }
+
+    private void add(int patientId, long timestamp, String label, double value) {
+        if (size == timestamps.length) {
+            patientIds = Arrays.copyOf(patientIds, size << 1);
+            timestamps = Arrays.copyOf(timestamps, size << 1);
+            labels = Arrays.copyOf(labels, size << 1);
+            values = Arrays.copyOf(values, size << 1);
+        }
+        patientIds[size] = patientId;
+        timestamps[size] = timestamp;
+        labels[size] = label;
+        values[size] = value;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int patientId(int index) {
+        return patientIds[index];
+    }
+
+    public long timestamp(int index) {
+        return timestamps[index];
+    }
+
+    public String label(int index) {
+        return labels[index];
+    }
+
+    public double value(int index) {
+        return values[index];
+    }
+
+    /**
+     * Formats a reading the way {@code FileDataReader} and
+     * {@code WebSocketClientImpl} expect it:
+     * {@code patientId,measurementValue,recordType,timestamp}.
+     *
+     * @param index the position of the reading
+     * @return the reading as one line of text, without a line separator
+     */
+    public String line(int index) {
+        return patientIds[index] + "," + values[index] + "," + labels[index] + "," + timestamps[index];
+    }
+
+    /**
+     * Writes every reading to a file, one line each.
+     *
+     * @param file the file to create or replace
+     * @throws IOException if the file cannot be written
+     */
+    public void writeTo(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < size; i++) {
+                writer.write(line(i));
+                writer.newLine();
+            }
+        }
+    }
+}
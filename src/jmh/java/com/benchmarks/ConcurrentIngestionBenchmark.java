@@ -0,0 +1,72 @@
+package com.benchmarks;
+
+import com.data_management.DataStorage;
+import com.data_management.RetentionPolicy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Readings per second added to one {@link DataStorage} by eight threads at
+ * once, each owning a stripe of patients like partitioned socket threads, as
+ * {@code DataStorageConcurrencyTest} checks for lost readings. The goal is at
+ * least 100,000 readings per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(ConcurrentIngestionBenchmark.WRITERS)
+@State(Scope.Benchmark)
+public class ConcurrentIngestionBenchmark {
+    static final int WRITERS = 8;
+    private static final int PATIENTS_PER_WRITER = 7;
+    private static final String[] TYPES = {"ECG", "Saturation", "SystolicPressure", "DiastolicPressure"};
+
+    private DataStorage storage;
+    private final AtomicInteger writers = new AtomicInteger();
+
+    @Setup(Level.Iteration)
+    public void createStorage() {
+        // Retention keeps memory flat however many readings an iteration adds
+        RetentionPolicy retentionPolicy = new RetentionPolicy();
+        for (String type : TYPES)
+            retentionPolicy.retain(type, 15 * 60_000L);
+        storage = new DataStorage(retentionPolicy);
+    }
+
+    /**
+     * The stripe of patients a thread writes and its clock.
+     */
+    @State(Scope.Thread)
+    public static class Writer {
+        int writer;
+        long i;
+
+        @Setup(Level.Trial)
+        public void claimStripe(ConcurrentIngestionBenchmark benchmark) {
+            writer = benchmark.writers.getAndIncrement();
+        }
+    }
+
+    @Benchmark
+    public void addPatientData(Writer writer) {
+        long i = writer.i++;
+        int patientId = 1 + writer.writer + WRITERS * (int) (i % PATIENTS_PER_WRITER);
+        storage.addPatientData(patientId, i, TYPES[(int) (i & 3)], i);
+    }
+}
@@ -0,0 +1,112 @@
+package com.benchmarks;
+
+import com.cardio_generator.outputs.FileOutputStrategy;
+import com.cardio_generator.outputs.OutputStrategy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Readings per second written by {@link FileOutputStrategy}, against the
+ * previous implementation that opened and closed the label file for every
+ * reading. Four threads output at once, as the simulator's scheduler does.
+ * {@code typed} outputs the same readings as the generators do, with a
+ * record type code and a double; the GC profiler shows what is allocated per
+ * reading, counting the writer thread.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class FileOutputBenchmark {
+    private static final String[] LABELS = {"ECG", "Saturation", "SystolicPressure", "DiastolicPressure"};
+
+    private Path directory;
+    private FileOutputStrategy batched;
+    private OutputStrategy openPerReading;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup(Level.Iteration)
+    public void createOutputs() throws IOException {
+        directory = Files.createTempDirectory("file-output-benchmark");
+        batched = new FileOutputStrategy(directory.resolve("batched").toString());
+        openPerReading = new OpenPerReadingOutputStrategy(directory.resolve("open-per-reading").toString());
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteOutputs() throws IOException {
+        batched.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void batched() {
+        int i = next.getAndIncrement();
+        batched.output(i & 1023, i, LABELS[i & 3], "0.4321");
+    }
+
+    @Benchmark
+    public void typed() {
+        int i = next.getAndIncrement();
+        batched.output(i & 1023, i, i & 3, 0.4321); // ECG, Saturation, SystolicPressure, DiastolicPressure
+    }
+
+    @Benchmark
+    public void openPerReading() {
+        int i = next.getAndIncrement();
+        openPerReading.output(i & 1023, i, LABELS[i & 3], "0.4321");
+    }
+
+    /**
+     * The file output as it was before batching.
+     */
+    private static final class OpenPerReadingOutputStrategy implements OutputStrategy {
+        private final String baseDirectory;
+
+        OpenPerReadingOutputStrategy(String baseDirectory) {
+            this.baseDirectory = baseDirectory;
+        }
+
+        @Override
+        public void output(int patientId, long timestamp, String label, String data) {
+            try {
+                Files.createDirectories(Paths.get(baseDirectory));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(baseDirectory, label + ".txt"),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+                out.printf("Patient ID: %d, Timestamp: %d, Label: %s, Data: %s%n", patientId, timestamp, label, data);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
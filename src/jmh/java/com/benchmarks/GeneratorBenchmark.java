@@ -0,0 +1,80 @@
+package com.benchmarks;
+
+import com.cardio_generator.LoadGenerator;
+import com.cardio_generator.outputs.OutputStrategy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One simulated second of every generator for 1000 patients, about 2000
+ * readings, into an output that takes the typed readings and into one that
+ * only implements the text method, as outputs did before. The GC profiler
+ * shows the allocations per second simulated of each.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class GeneratorBenchmark {
+
+    @Param({"1000"})
+    public int patients;
+
+    private LoadGenerator generator;
+    private OutputStrategy typed;
+    private OutputStrategy text;
+
+    @Setup(Level.Trial)
+    public void createGenerator(Blackhole blackhole) {
+        generator = new LoadGenerator(patients, BenchmarkData.SEED);
+        typed = new OutputStrategy() {
+            @Override
+            public void output(int patientId, long timestamp, int labelCode, double value) {
+                blackhole.consume(patientId);
+                blackhole.consume(timestamp);
+                blackhole.consume(labelCode);
+                blackhole.consume(value);
+            }
+
+            @Override
+            public void output(int patientId, long timestamp, String label, String data) {
+                blackhole.consume(patientId);
+                blackhole.consume(timestamp);
+                blackhole.consume(label);
+                blackhole.consume(data);
+            }
+        };
+        text = (patientId, timestamp, label, data) -> {
+            blackhole.consume(patientId);
+            blackhole.consume(timestamp);
+            blackhole.consume(label);
+            blackhole.consume(data);
+        };
+    }
+
+    @Benchmark
+    public long typed() {
+        return generator.run(1, 0, typed);
+    }
+
+    @Benchmark
+    public long text() {
+        return generator.run(1, 0, text);
+    }
+}
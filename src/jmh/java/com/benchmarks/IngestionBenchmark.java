@@ -0,0 +1,145 @@
+package com.benchmarks;
+
+import com.data_management.DataStorage;
+import com.data_management.FileDataReader;
+import com.data_management.MappedFileDataReader;
+import com.data_management.RetentionPolicy;
+import com.data_management.SegmentDataReader;
+import com.data_management.SegmentWriter;
+import com.data_management.WebSocketClientImpl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of getting readings into {@link DataStorage}: parsing a data
+ * file line by line or memory-mapped, decoding a segment file, parsing
+ * WebSocket messages, and adding already parsed readings.
+ * The parsers replay the whole dataset into an empty storage per invocation.
+ * Every score is in readings per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class IngestionBenchmark {
+    /** 100 patients for 10 simulated minutes */
+    private static final int READINGS = 123_500;
+
+    private BenchmarkData data;
+    private String[] messages;
+    private Path file;
+    private Path segmentFile;
+    private DataStorage storage;
+    private URI serverUri;
+    private int next;
+    private long timeOffset;
+
+    @Setup(Level.Trial)
+    public void generateData() throws Exception {
+        data = BenchmarkData.generate(100, 600);
+        if (data.size() != READINGS)
+            throw new IllegalStateException("Expected " + READINGS + " readings but generated " + data.size());
+
+        messages = new String[data.size()];
+        for (int i = 0; i < messages.length; i++)
+            messages[i] = data.line(i);
+        file = Files.createTempFile("benchmark", ".txt");
+        data.writeTo(file);
+        segmentFile = Files.createTempFile("benchmark", ".seg");
+        try (SegmentWriter writer = new SegmentWriter(segmentFile)) {
+            for (int i = 0; i < data.size(); i++)
+                writer.add(data.patientId(i), data.value(i), data.label(i), data.timestamp(i));
+        }
+        System.out.printf("%nText file: %d bytes, segment file: %d bytes%n", Files.size(file), Files.size(segmentFile));
+        serverUri = new URI("ws://localhost:1"); // Never connected
+    }
+
+    @Setup(Level.Iteration)
+    public void createStorage() {
+        // Retention keeps memory flat however many readings an iteration adds
+        RetentionPolicy retentionPolicy = new RetentionPolicy();
+        for (String type : new String[] {"ECG", "Saturation", "SystolicPressure", "DiastolicPressure",
+                "Cholesterol", "WhiteBloodCells", "RedBloodCells"})
+            retentionPolicy.retain(type, 15 * 60_000L);
+        storage = new DataStorage(retentionPolicy);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(segmentFile);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(READINGS)
+    public DataStorage fileDataReader() throws IOException {
+        DataStorage fileStorage = new DataStorage();
+        new FileDataReader(file.toString()).readData(fileStorage);
+        return fileStorage;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(READINGS)
+    public DataStorage mappedFileDataReader() throws IOException {
+        DataStorage fileStorage = new DataStorage();
+        new MappedFileDataReader(file.toString()).readData(fileStorage);
+        return fileStorage;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(READINGS)
+    public DataStorage segmentDataReader() throws IOException {
+        DataStorage fileStorage = new DataStorage();
+        new SegmentDataReader(segmentFile.toString()).readData(fileStorage);
+        return fileStorage;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(READINGS)
+    public DataStorage webSocketOnMessage() throws Exception {
+        DataStorage clientStorage = new DataStorage();
+        WebSocketClientImpl client = new WebSocketClientImpl(serverUri, clientStorage);
+        for (String message : messages)
+            client.onMessage(message);
+        return clientStorage;
+    }
+
+    @Benchmark
+    public void addPatientData() {
+        int i = nextIndex();
+        storage.addPatientData(data.patientId(i), data.value(i), data.label(i), data.timestamp(i) + timeOffset);
+    }
+
+    /**
+     * Cycles through the dataset; every pass is shifted forward in time so
+     * readings keep arriving in order.
+     */
+    private int nextIndex() {
+        int i = next;
+        if (++next == data.size()) {
+            next = 0;
+            timeOffset += 600_000L;
+        }
+        return i;
+    }
+}
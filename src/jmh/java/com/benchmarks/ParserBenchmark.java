@@ -0,0 +1,72 @@
+package com.benchmarks;
+
+import com.data_management.RecordParser;
+import com.data_management.RecordTypes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing one {@code patientId,measurementValue,recordType,timestamp} message,
+ * with {@link RecordParser} and with the {@code String.split} approach it
+ * replaced. The GC profiler shows the allocations per message of each.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ParserBenchmark {
+    private final RecordParser parser = new RecordParser();
+    private String[] messages;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void generateMessages() {
+        BenchmarkData data = BenchmarkData.generate(100, 60);
+        messages = new String[data.size()];
+        for (int i = 0; i < messages.length; i++)
+            messages[i] = data.line(i);
+    }
+
+    @Benchmark
+    public void recordParser(Blackhole blackhole) {
+        if (parser.parse(nextMessage())) {
+            blackhole.consume(parser.getPatientId());
+            blackhole.consume(parser.getMeasurementValue());
+            blackhole.consume(parser.getRecordType());
+            blackhole.consume(parser.getTimestamp());
+        }
+    }
+
+    @Benchmark
+    public void stringSplit(Blackhole blackhole) {
+        String[] fields = nextMessage().split(",");
+        if (fields.length == 4) {
+            blackhole.consume(Integer.parseInt(fields[0]));
+            blackhole.consume(Double.parseDouble(fields[1]));
+            blackhole.consume(RecordTypes.codeOf(fields[2]));
+            blackhole.consume(Long.parseLong(fields[3]));
+        }
+    }
+
+    private String nextMessage() {
+        String message = messages[next];
+        if (++next == messages.length)
+            next = 0;
+        return message;
+    }
+}
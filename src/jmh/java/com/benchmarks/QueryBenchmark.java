@@ -0,0 +1,77 @@
+package com.benchmarks;
+
+import com.data_management.Patient;
+import com.data_management.PatientRecord;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time-range queries on the history of one patient, at increasing history
+ * sizes. Each query covers a window at a random position in the history.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class QueryBenchmark {
+    private static final int QUERY_STARTS = 1024;
+
+    @Param({"1000", "100000", "10000000"})
+    public int records;
+
+    private Patient patient;
+    private long firstTimestamp;
+    private long lastTimestamp;
+    private final long[] queryStarts = new long[QUERY_STARTS];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void fillPatient() {
+        // The simulator produces a little over two readings per patient and second
+        BenchmarkData data = BenchmarkData.generate(1, records / 2 + 1);
+        patient = new Patient(1);
+        for (int i = 0; i < records; i++)
+            patient.addRecord(data.value(i), data.label(i), data.timestamp(i));
+        firstTimestamp = data.timestamp(0);
+        lastTimestamp = data.timestamp(records - 1);
+
+        Random random = new Random(42);
+        for (int i = 0; i < QUERY_STARTS; i++)
+            queryStarts[i] = firstTimestamp + (long) (random.nextDouble() * (lastTimestamp - firstTimestamp));
+    }
+
+    @Benchmark
+    public List<PatientRecord> minuteWindow() {
+        long start = nextStart();
+        return patient.getRecords(start, start + 60_000L);
+    }
+
+    @Benchmark
+    public List<PatientRecord> hourWindow() {
+        long start = nextStart();
+        return patient.getRecords(start, start + 3_600_000L);
+    }
+
+    private long nextStart() {
+        long start = queryStarts[next];
+        next = (next + 1) & (QUERY_STARTS - 1);
+        return start;
+    }
+}
@@ -0,0 +1,75 @@
+package com.benchmarks;
+
+import com.data_management.DurableDataStorage;
+import com.data_management.RetentionPolicy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Time for {@link DurableDataStorage} to recover 100 patients' history on
+ * startup, from the write-ahead log alone or from a snapshot.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class RecoveryBenchmark {
+
+    /** Simulated minutes of history */
+    @Param({"10", "60"})
+    public int minutes;
+
+    @Param({"log", "snapshot"})
+    public String from;
+
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void writeHistory() throws IOException {
+        BenchmarkData data = BenchmarkData.generate(100, minutes * 60);
+        directory = Files.createTempDirectory("recovery-benchmark");
+        DurableDataStorage storage = new DurableDataStorage(directory.toString(), new RetentionPolicy(),
+                DurableDataStorage.DEFAULT_COMMIT_INTERVAL_MILLIS, 0);
+        for (int i = 0; i < data.size(); i++)
+            storage.addPatientData(data.patientId(i), data.value(i), data.label(i), data.timestamp(i));
+        if (from.equals("snapshot"))
+            storage.snapshot();
+        storage.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteHistory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public DurableDataStorage recover() throws IOException {
+        DurableDataStorage storage = new DurableDataStorage(directory.toString(), new RetentionPolicy(),
+                DurableDataStorage.DEFAULT_COMMIT_INTERVAL_MILLIS, 0);
+        storage.close();
+        return storage;
+    }
+}
@@ -0,0 +1,146 @@
+package com.benchmarks;
+
+import com.data_management.BinaryBatch;
+import com.data_management.RecordListener;
+import com.data_management.RecordParser;
+import com.data_management.RecordTypes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CPU cost of getting readings from the simulator to the client over
+ * WebSocket, without the network: what {@code WebSocketOutputStrategy} does to
+ * encode a reading and what {@code WebSocketClientImpl} does to decode it.
+ * Compared are one text message per reading, text lines batched into one
+ * message, and the binary protocol of {@link BinaryBatch}. Each invocation
+ * sends {@value #BATCH} readings, as one message when batched. Every score
+ * is in readings per second on one thread, so its inverse is the CPU time per
+ * reading; the setup prints the bytes per reading of each protocol.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class WireProtocolBenchmark {
+    private static final int BATCH = 1000;
+
+    private final RecordParser parser = new RecordParser();
+    private final StringBuilder textBatch = new StringBuilder();
+    private final BinaryBatch binaryBatch = new BinaryBatch();
+    private BenchmarkData data;
+    private String[] values; // As the generators output them
+    private int next;
+
+    @Setup(Level.Trial)
+    public void generateData() {
+        data = BenchmarkData.generate(100, 60);
+        values = new String[data.size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = Double.toString(data.value(i));
+
+        long textBytes = 0;
+        long binaryBytes = 0;
+        for (int start = 0; start + BATCH <= data.size(); start += BATCH) {
+            for (int i = start; i < start + BATCH; i++) {
+                textBytes += line(i).length() + 1;
+                binaryBatch.add(data.patientId(i), RecordTypes.codeOf(data.label(i)), data.timestamp(i),
+                        RecordParser.parseValue(values[i]));
+            }
+            binaryBytes += binaryBatch.encode().length;
+            binaryBatch.clear();
+        }
+        int readings = data.size() / BATCH * BATCH;
+        System.out.printf("%nBytes per reading: text %.1f, binary %.1f%n",
+                (double) textBytes / readings, (double) binaryBytes / readings);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void textPerReading(Blackhole blackhole) {
+        for (int n = 0; n < BATCH; n++) {
+            int i = nextIndex();
+            String message = line(i);
+            if (parser.parse(message))
+                consume(blackhole);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void textBatched(Blackhole blackhole) {
+        textBatch.setLength(0);
+        for (int n = 0; n < BATCH; n++) {
+            int i = nextIndex();
+            if (n > 0)
+                textBatch.append('\n');
+            textBatch.append(data.patientId(i)).append(',').append(values[i]).append(',')
+                    .append(data.label(i)).append(',').append(data.timestamp(i));
+        }
+        String message = textBatch.toString();
+
+        int from = 0;
+        while (from < message.length()) {
+            int to = message.indexOf('\n', from);
+            if (to < 0)
+                to = message.length();
+            if (parser.parse(message, from, to))
+                consume(blackhole);
+            from = to + 1;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void binaryBatched(Blackhole blackhole) {
+        binaryBatch.clear();
+        for (int n = 0; n < BATCH; n++) {
+            int i = nextIndex();
+            binaryBatch.add(data.patientId(i), RecordTypes.codeOf(data.label(i)), data.timestamp(i),
+                    RecordParser.parseValue(values[i]));
+        }
+        byte[] frame = binaryBatch.encode();
+
+        RecordListener listener = (patientId, value, recordType, timestamp) -> {
+            blackhole.consume(patientId);
+            blackhole.consume(value);
+            blackhole.consume(recordType);
+            blackhole.consume(timestamp);
+        };
+        BinaryBatch.decode(ByteBuffer.wrap(frame), listener);
+    }
+
+    private String line(int i) {
+        return data.patientId(i) + "," + values[i] + "," + data.label(i) + "," + data.timestamp(i);
+    }
+
+    private void consume(Blackhole blackhole) {
+        blackhole.consume(parser.getPatientId());
+        blackhole.consume(parser.getMeasurementValue());
+        blackhole.consume(parser.getRecordType());
+        blackhole.consume(parser.getTimestamp());
+    }
+
+    private int nextIndex() {
+        int index = next;
+        if (++next == data.size())
+            next = 0;
+        return index;
+    }
+}
@@ -10,7 +10,7 @@ public class Main {
         if (args.length > 0 && args[0].equals("DataStorage")) {
             DataStorage.getInstance().main(new String[]{});
         } else {
-            HealthDataSimulator.getInstance().main(new String[]{});
+            HealthDataSimulator.getInstance().main(args);
         }
     }
 }
\ No newline at end of file
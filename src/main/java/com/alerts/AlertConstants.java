@@ -9,5 +9,6 @@ public class AlertConstants {
     public static final int BLOOD_PRESSURE_DIFFERENCE = 10;
     public static final int OXYGEN_SATURATION = 92;
     public static final int OXYGEN_DROP = 5;
+    public static final long OXYGEN_DROP_WINDOW = 600000; // 10 minutes, in milliseconds
     
 }
@@ -0,0 +1,186 @@
+package com.alerts;
+
+import com.data_management.DataStorage;
+import com.data_management.Patient;
+import com.data_management.PatientRecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates {@link AlertStrategy} checks for many patients in parallel.
+ * Every patient is a separate task on a {@link ForkJoinPool}; its records are
+ * retrieved once and its strategies are split into at most
+ * {@code maxConcurrencyPerPatient} slices that run concurrently, so one patient
+ * with a long history cannot occupy every worker.
+ * <p>
+ * The returned alerts are in a deterministic order: by patient ID, then by the
+ * position of the strategy that raised them, regardless of which thread
+ * finished first. The strategies are shared by all tasks, so their
+ * {@link AlertStrategy#checkAlert} must not depend on per-instance state.
+ */
+public class AlertEvaluationScheduler {
+    private final DataStorage dataStorage;
+    private final AlertStrategy[] strategies;
+    private final ForkJoinPool pool;
+    private final int maxConcurrencyPerPatient;
+
+    /**
+     * Constructs a scheduler that checks the ECG, blood pressure, blood oxygen
+     * and hypotensive hypoxemia conditions on the common pool.
+     *
+     * @param dataStorage the storage holding the patients to evaluate
+     */
+    public AlertEvaluationScheduler(DataStorage dataStorage) {
+        this(dataStorage, defaultStrategies(), ForkJoinPool.commonPool(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a scheduler with a custom set of strategies and pool.
+     *
+     * @param dataStorage              the storage holding the patients to evaluate
+     * @param strategies               the checks to run for every patient, in
+     *                                 the order their alerts are reported
+     * @param pool                     the pool the checks run on
+     * @param maxConcurrencyPerPatient how many checks of the same patient may
+     *                                 run at the same time, at least 1
+     */
+    public AlertEvaluationScheduler(DataStorage dataStorage, List<? extends AlertStrategy> strategies,
+                                    ForkJoinPool pool, int maxConcurrencyPerPatient) {
+        if (maxConcurrencyPerPatient < 1)
+            throw new IllegalArgumentException("maxConcurrencyPerPatient must be at least 1: " + maxConcurrencyPerPatient);
+
+        this.dataStorage = dataStorage;
+        this.strategies = strategies.toArray(new AlertStrategy[0]);
+        this.pool = pool;
+        this.maxConcurrencyPerPatient = maxConcurrencyPerPatient;
+    }
+
+    private static List<AlertStrategy> defaultStrategies() {
+        return Arrays.asList(
+                new ECGAlertStrategy(),
+                new BloodPressureAlertStrategy(),
+                new BloodOxygenAlertStrategy(),
+                new HypotensiveHypoxemiaAlertStrategy());
+    }
+
+    /**
+     * Evaluates the full history of every patient in the data storage.
+     *
+     * @return the triggered alerts, ordered by patient ID and strategy
+     */
+    public List<Alert> evaluateAll() {
+        return evaluate(dataStorage.getAllPatients(), Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Evaluates the records of the given patients within a time range.
+     *
+     * @param patients  the patients to evaluate
+     * @param startTime the start of the time range, inclusive
+     * @param endTime   the end of the time range, inclusive
+     * @return the triggered alerts, ordered by patient ID and strategy
+     */
+    public List<Alert> evaluate(Collection<Patient> patients, long startTime, long endTime) {
+        Patient[] ordered = patients.toArray(new Patient[0]);
+        Arrays.sort(ordered, Comparator.comparingInt(Patient::getPatientId));
+
+        // Every patient and strategy pair owns one slot, so tasks never share a write
+        Alert[] results = new Alert[ordered.length * strategies.length];
+        pool.invoke(new PatientTask(ordered, 0, ordered.length, results, startTime, endTime));
+
+        List<Alert> alerts = new ArrayList<>();
+        for (Alert alert : results)
+            if (alert != null)
+                alerts.add(alert);
+        return alerts;
+    }
+
+    /**
+     * Splits a range of patients in halves until each task holds one patient.
+     */
+    private class PatientTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Patient[] patients;
+        private final int from;
+        private final int to;
+        private final Alert[] results;
+        private final long startTime;
+        private final long endTime;
+
+        PatientTask(Patient[] patients, int from, int to, Alert[] results, long startTime, long endTime) {
+            this.patients = patients;
+            this.from = from;
+            this.to = to;
+            this.results = results;
+            this.startTime = startTime;
+            this.endTime = endTime;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PatientTask(patients, from, middle, results, startTime, endTime),
+                        new PatientTask(patients, middle, to, results, startTime, endTime));
+            } else if (to > from) {
+                evaluatePatient(from);
+            }
+        }
+
+        private void evaluatePatient(int index) {
+            List<PatientRecord> records = patients[index].getRecords(startTime, endTime);
+            if (records.isEmpty())
+                return;
+
+            int offset = index * strategies.length;
+            int slices = Math.min(maxConcurrencyPerPatient, strategies.length);
+            if (slices <= 1) {
+                new StrategySlice(records, 0, strategies.length, results, offset).compute();
+                return;
+            }
+
+            StrategySlice[] tasks = new StrategySlice[slices];
+            for (int i = 0; i < slices; i++) {
+                int sliceFrom = (int) ((long) strategies.length * i / slices);
+                int sliceTo = (int) ((long) strategies.length * (i + 1) / slices);
+                tasks[i] = new StrategySlice(records, sliceFrom, sliceTo, results, offset);
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    /**
+     * Runs a contiguous range of strategies, one after another, on the records
+     * of one patient.
+     */
+    private class StrategySlice extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<PatientRecord> records;
+        private final int from;
+        private final int to;
+        private final Alert[] results;
+        private final int offset;
+
+        StrategySlice(List<PatientRecord> records, int from, int to, Alert[] results, int offset) {
+            this.records = records;
+            this.from = from;
+            this.to = to;
+            this.results = results;
+            this.offset = offset;
+        }
+
+        @Override
+        protected void compute() {
+            for (int i = from; i < to; i++)
+                results[offset + i] = strategies[i].checkAlert(records);
+        }
+    }
+}
@@ -4,8 +4,6 @@ import com.data_management.DataStorage;
 import com.data_management.Patient;
 import com.data_management.PatientRecord;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -16,6 +14,7 @@ import java.util.List;
  */
 public class AlertGenerator {
     private DataStorage dataStorage;
+    private final StreamingAlertEvaluator streamingEvaluator = new StreamingAlertEvaluator(this::triggerAlert);
 
     /**
      * Constructs an {@code AlertGenerator} with a specified {@code DataStorage}.
@@ -41,30 +40,12 @@ public class AlertGenerator {
      */
     public void evaluateData(Patient patient) throws Exception {
         int patientId = patient.getPatientId();
-        List<PatientRecord> patientRecords = dataStorage.getRecords(patientId, 0, Long.MAX_VALUE);
-        List<PatientRecord> systolicPressures = new ArrayList<>();
-        List<PatientRecord> diastolicPressures = new ArrayList<>();
-        List<PatientRecord> saturations = new ArrayList<>();
-        List<PatientRecord> ecgs = new ArrayList<>();
-
-        for (PatientRecord patientRecord : patientRecords) {
-            switch (patientRecord.getRecordType()) {
-                case "SystolicPressure":
-                    systolicPressures.add(patientRecord);
-                    break;
-                case "DiastolicPressure":
-                    diastolicPressures.add(patientRecord);
-                    break;
-                case "Saturation":
-                    saturations.add(patientRecord);
-                    break;
-                case "ECG":
-                    ecgs.add(patientRecord);
-                    break;
-                default:
-                    break;
-            }
-        }
+        // Each type is a binary-searched view over the stored columns, not a filtered copy
+        List<PatientRecord> systolicPressures = dataStorage.getRecords(patientId, "SystolicPressure", 0, Long.MAX_VALUE);
+        List<PatientRecord> diastolicPressures = dataStorage.getRecords(patientId, "DiastolicPressure", 0, Long.MAX_VALUE);
+        List<PatientRecord> saturations = dataStorage.getRecords(patientId, "Saturation", 0, Long.MAX_VALUE);
+        List<PatientRecord> ecgs = dataStorage.getRecords(patientId, "ECG", 0, Long.MAX_VALUE);
+
 /*        if (isBloodPressureCritical(systolicPressures, diastolicPressures))
             triggerAlert(new Alert(patientId, "BloodPressure", System.currentTimeMillis()));
         if (isBloodSaturationCritical(saturations))
@@ -76,6 +57,33 @@ public class AlertGenerator {
 
     }
 
+    /**
+     * Starts evaluating every reading added to the data storage as it arrives.
+     * Each reading updates a small per-patient state and triggers alerts in
+     * constant time, instead of rescanning the patient's history.
+     */
+    public void startMonitoring() {
+        dataStorage.addRecordListener(streamingEvaluator);
+    }
+
+    /**
+     * Returns the evaluator {@link #startMonitoring()} registers, to run it
+     * elsewhere instead, e.g. as the downstream stage of an
+     * {@code IngestionPipeline}.
+     *
+     * @return the streaming evaluator of this generator
+     */
+    public StreamingAlertEvaluator getStreamingEvaluator() {
+        return streamingEvaluator;
+    }
+
+    /**
+     * Stops the evaluation started by {@link #startMonitoring()}.
+     */
+    public void stopMonitoring() {
+        dataStorage.removeRecordListener(streamingEvaluator);
+    }
+
     /**
      * Checks if the patient's blood pressure is in a critical state.
      *
@@ -140,18 +148,7 @@ public class AlertGenerator {
         }
 
         // Check for a significant drop in oxygen saturation within 10 minutes
-        for (int i = 0; i < saturation.size() - 1; i++) {
-            for (int j = i + 1; j < saturation.size(); j++) {
-                long timeDifference = saturation.get(j).getTimestamp() - saturation.get(i).getTimestamp();
-                double valueDifference = saturation.get(i).getMeasurementValue() - saturation.get(j).getMeasurementValue();
-
-                if (timeDifference < 600000 && valueDifference >= AlertConstants.OXYGEN_DROP) {
-                    return true;
-                }
-            }
-        }
-
-        return false;
+        return BloodOxygenAlertStrategy.hasSignificantDrop(saturation);
     }
 
     /**
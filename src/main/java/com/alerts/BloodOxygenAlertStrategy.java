@@ -2,9 +2,20 @@ package com.alerts;
 
 import java.util.List;
 import com.data_management.PatientRecord;
+import com.data_management.RecordTypes;
 import java.util.ArrayList;
 
-public class BloodOxygenAlertStrategy implements AlertStrategy {
+/**
+ * Alerts when blood oxygen saturation is below the critical threshold or has
+ * dropped sharply within ten minutes.
+ * When used as a {@link StreamingAlertStrategy}, an instance keeps the
+ * maximum saturation of one patient over the last ten minutes. A reading
+ * older than the latest one, such as a replayed reading, is still checked
+ * against the critical threshold but kept out of that window.
+ */
+public class BloodOxygenAlertStrategy implements AlertStrategy, StreamingAlertStrategy {
+    private final SlidingWindowMax recentSaturation = new SlidingWindowMax(AlertConstants.OXYGEN_DROP_WINDOW);
+    private long latestTimestamp = Long.MIN_VALUE;
 
     public BloodOxygenAlertStrategy() {
     }
@@ -19,6 +30,22 @@ public class BloodOxygenAlertStrategy implements AlertStrategy {
         return null;
     }
 
+    @Override
+    public Alert onReading(int patientId, int recordType, double value, long timestamp) {
+        if (recordType != RecordTypes.SATURATION)
+            return null;
+
+        boolean critical = value < AlertConstants.OXYGEN_SATURATION;
+        if (timestamp >= latestTimestamp) { // The window only takes readings in time order
+            latestTimestamp = timestamp;
+            recentSaturation.advance(timestamp);
+            critical |= !recentSaturation.isEmpty() && recentSaturation.max() - value >= AlertConstants.OXYGEN_DROP;
+            recentSaturation.add(timestamp, value);
+        }
+
+        return critical ? new BloodOxygenAlertFactory().createAlert(patientId, null, timestamp) : null;
+    }
+
     public List<PatientRecord> getPatientSaturation(List<PatientRecord> patientRecords) {
         List<PatientRecord> saturation = new ArrayList<>();
 
@@ -44,12 +71,45 @@ public class BloodOxygenAlertStrategy implements AlertStrategy {
             return true;
 
         // Check for a significant drop in oxygen saturation within 10 minutes
+        return hasSignificantDrop(saturation);
+    }
+
+    /**
+     * Checks whether any reading is at least {@link AlertConstants#OXYGEN_DROP}
+     * below an earlier reading taken less than
+     * {@link AlertConstants#OXYGEN_DROP_WINDOW} before it.
+     * Readings in timestamp order, as returned by the data storage, are checked
+     * in linear time by comparing each reading with the maximum of the window
+     * before it; other lists fall back to comparing every pair.
+     *
+     * @param saturation A list of PatientRecord objects representing blood oxygen saturation readings.
+     * @return true if there is a significant drop; false otherwise.
+     */
+    public static boolean hasSignificantDrop(List<PatientRecord> saturation) {
+        SlidingWindowMax window = new SlidingWindowMax(AlertConstants.OXYGEN_DROP_WINDOW);
+        long previousTimestamp = Long.MIN_VALUE;
+
+        for (PatientRecord record : saturation) {
+            long timestamp = record.getTimestamp();
+            if (timestamp < previousTimestamp)
+                return hasSignificantDropPairwise(saturation);
+            previousTimestamp = timestamp;
+
+            window.advance(timestamp);
+            if (!window.isEmpty() && window.max() - record.getMeasurementValue() >= AlertConstants.OXYGEN_DROP)
+                return true;
+            window.add(timestamp, record.getMeasurementValue());
+        }
+        return false;
+    }
+
+    private static boolean hasSignificantDropPairwise(List<PatientRecord> saturation) {
         for (int i = 0; i < saturation.size() - 1; i++) {
             for (int j = i + 1; j < saturation.size(); j++) {
                 long timeDifference = saturation.get(j).getTimestamp() - saturation.get(i).getTimestamp();
                 double valueDifference = saturation.get(i).getMeasurementValue() - saturation.get(j).getMeasurementValue();
 
-                if (timeDifference < 600000 && valueDifference >= AlertConstants.OXYGEN_DROP)
+                if (timeDifference < AlertConstants.OXYGEN_DROP_WINDOW && valueDifference >= AlertConstants.OXYGEN_DROP)
                     return true;
 
             }
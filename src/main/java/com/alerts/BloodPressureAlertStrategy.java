@@ -3,8 +3,17 @@ package com.alerts;
 import java.util.List;
 import java.util.ArrayList;
 import com.data_management.PatientRecord;
+import com.data_management.RecordTypes;
 
-public class BloodPressureAlertStrategy implements AlertStrategy{
+/**
+ * Alerts on blood pressure readings outside the normal range and on sharp
+ * changes across three consecutive readings.
+ * When used as a {@link StreamingAlertStrategy}, an instance keeps the last
+ * three systolic and diastolic readings of one patient.
+ */
+public class BloodPressureAlertStrategy implements AlertStrategy, StreamingAlertStrategy {
+    private final PressureTrend systolicTrend = new PressureTrend();
+    private final PressureTrend diastolicTrend = new PressureTrend();
 
     public BloodPressureAlertStrategy() {
     }
@@ -17,6 +26,53 @@ public class BloodPressureAlertStrategy implements AlertStrategy{
         return null;
     }
 
+    @Override
+    public Alert onReading(int patientId, int recordType, double value, long timestamp) {
+        boolean trendCritical;
+        if (recordType == RecordTypes.SYSTOLIC_PRESSURE)
+            trendCritical = systolicTrend.add(value);
+        else if (recordType == RecordTypes.DIASTOLIC_PRESSURE)
+            trendCritical = diastolicTrend.add(value);
+        else
+            return null;
+
+        if (trendCritical || isOutsideRange(systolicTrend, AlertConstants.SYSTOLIC_MIN, AlertConstants.SYSTOLIC_MAX)
+                || isOutsideRange(diastolicTrend, AlertConstants.DIASTOLIC_MIN, AlertConstants.DIASTOLIC_MAX))
+            return new BloodPressureAlertFactory().createAlert(patientId, null, timestamp);
+
+        return null;
+    }
+
+    private static boolean isOutsideRange(PressureTrend trend, int min, int max) {
+        return trend.count > 0 && (trend.latest > max || trend.latest < min);
+    }
+
+    /**
+     * The last three readings of one kind of blood pressure.
+     */
+    private static class PressureTrend {
+        private double oldest;
+        private double previous;
+        private double latest;
+        private int count;
+
+        /**
+         * Adds a reading and checks it against the two readings before it, as
+         * checkBloodPressureDifference does for every window of three.
+         */
+        boolean add(double value) {
+            oldest = previous;
+            previous = latest;
+            latest = value;
+            if (count < 3)
+                count++;
+
+            return count == 3
+                    && Math.abs(oldest - previous) > AlertConstants.BLOOD_PRESSURE_DIFFERENCE
+                    && Math.abs(oldest - latest) > AlertConstants.BLOOD_PRESSURE_DIFFERENCE;
+        }
+    }
+
     private List<List<PatientRecord>> getPatientData(List<PatientRecord> patientRecords) {
         List<PatientRecord> systolicPressure = new ArrayList<>();
         List<PatientRecord> diastolicPressure = new ArrayList<>();
@@ -2,9 +2,19 @@ package com.alerts;
 
 import java.util.List;
 import com.data_management.PatientRecord;
+import com.data_management.RecordTypes;
 import java.util.ArrayList;
 
-public class ECGAlertStrategy implements AlertStrategy {
+/**
+ * Alerts when an ECG reading is more than two standard deviations above the
+ * mean of the readings before it.
+ * When used as a {@link StreamingAlertStrategy}, an instance keeps the running
+ * mean and variance of one patient using Welford's algorithm.
+ */
+public class ECGAlertStrategy implements AlertStrategy, StreamingAlertStrategy {
+    private long count;
+    private double mean;
+    private double squaredDistances; // Sum of squared distances from the mean
 
     public ECGAlertStrategy() {
     }
@@ -17,6 +27,23 @@ public class ECGAlertStrategy implements AlertStrategy {
         return null;
     }
 
+    @Override
+    public Alert onReading(int patientId, int recordType, double value, long timestamp) {
+        if (recordType != RecordTypes.ECG)
+            return null;
+
+        // Compare against the readings before this one, as isECGDataCritical does
+        double standardDeviation = count == 0 ? 0 : Math.sqrt(squaredDistances / count);
+        boolean critical = value > mean + 2 * standardDeviation;
+
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        squaredDistances += delta * (value - mean);
+
+        return critical ? new ECGAlertFactory().createAlert(patientId, null, timestamp) : null;
+    }
+
     private List<PatientRecord> getECGData(List<PatientRecord> patientRecords) {
         List<PatientRecord> ecgData = new ArrayList<>();
 
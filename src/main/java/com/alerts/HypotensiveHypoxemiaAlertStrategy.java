@@ -3,8 +3,17 @@ package com.alerts;
 import java.util.ArrayList;
 import java.util.List;
 import com.data_management.PatientRecord;
+import com.data_management.RecordTypes;
 
-public class HypotensiveHypoxemiaAlertStrategy implements AlertStrategy {
+/**
+ * Alerts when the latest systolic pressure and the latest oxygen saturation
+ * are both below their critical thresholds.
+ * When used as a {@link StreamingAlertStrategy}, an instance keeps the latest
+ * systolic and saturation readings of one patient.
+ */
+public class HypotensiveHypoxemiaAlertStrategy implements AlertStrategy, StreamingAlertStrategy {
+    private double latestSystolic = Double.NaN;
+    private double latestSaturation = Double.NaN;
 
     public HypotensiveHypoxemiaAlertStrategy() {
     }
@@ -19,6 +28,22 @@ public class HypotensiveHypoxemiaAlertStrategy implements AlertStrategy {
         return null;
     }
 
+    @Override
+    public Alert onReading(int patientId, int recordType, double value, long timestamp) {
+        if (recordType == RecordTypes.SYSTOLIC_PRESSURE)
+            latestSystolic = value;
+        else if (recordType == RecordTypes.SATURATION)
+            latestSaturation = value;
+        else
+            return null;
+
+        // Comparisons with NaN are false until both kinds of reading have arrived
+        if (latestSystolic < AlertConstants.SYSTOLIC_MIN && latestSaturation < AlertConstants.OXYGEN_SATURATION)
+            return new HypotensiveHypoxemiaAlertFactory().createAlert(patientId, null, timestamp);
+
+        return null;
+    }
+
     private List<List<PatientRecord>> filterPatientData(List<PatientRecord> patientRecords) {
         List<PatientRecord> saturation = new ArrayList<>();
         List<PatientRecord> diastolicPressure = new ArrayList<>();
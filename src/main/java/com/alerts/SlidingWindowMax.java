@@ -0,0 +1,100 @@
+package com.alerts;
+
+/**
+ * Maximum of the values seen within a trailing time window, maintained as a
+ * monotonic deque: values that can never be the maximum again, because a newer
+ * value is at least as large, are dropped as soon as they are superseded.
+ * Each value is pushed and removed at most once, so updates take amortized
+ * constant time. Timestamps must be added in non-decreasing order.
+ */
+public class SlidingWindowMax {
+    private final long window;
+    private long[] timestamps = new long[16];
+    private double[] values = new double[16];
+    private int first; // Slot of the front of the deque
+    private int size;
+
+    /**
+     * Constructs an empty window.
+     *
+     * @param window the length of the window, in milliseconds; a value taken at
+     *               time t stays in the window while the current time is less
+     *               than t + window
+     */
+    public SlidingWindowMax(long window) {
+        this.window = window;
+    }
+
+    /**
+     * Drops the values that are outside the window at the given time.
+     *
+     * @param timestamp the current time
+     */
+    public void advance(long timestamp) {
+        while (size > 0 && timestamp - timestamps[first] >= window) {
+            first = (first + 1) & (timestamps.length - 1);
+            size--;
+        }
+    }
+
+    /**
+     * Returns whether the window holds no values.
+     *
+     * @return true if there is no value in the window
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the largest value in the window.
+     *
+     * @return the largest value in the window
+     * @throws IllegalStateException if the window is empty
+     */
+    public double max() {
+        if (size == 0)
+            throw new IllegalStateException("Window is empty");
+
+        return values[first];
+    }
+
+    /**
+     * Adds a value to the window.
+     *
+     * @param timestamp the time of the value, not before any earlier value
+     * @param value     the value
+     */
+    public void add(long timestamp, double value) {
+        int mask = timestamps.length - 1;
+        while (size > 0 && values[(first + size - 1) & mask] <= value)
+            size--;
+
+        if (size == timestamps.length)
+            grow();
+        int slot = (first + size) & (timestamps.length - 1);
+        timestamps[slot] = timestamp;
+        values[slot] = value;
+        size++;
+    }
+
+    /**
+     * Removes all values.
+     */
+    public void clear() {
+        first = 0;
+        size = 0;
+    }
+
+    private void grow() {
+        long[] newTimestamps = new long[timestamps.length << 1];
+        double[] newValues = new double[values.length << 1];
+        for (int i = 0; i < size; i++) {
+            newTimestamps[i] = timestamps[(first + i) & (timestamps.length - 1)];
+            newValues[i] = values[(first + i) & (values.length - 1)];
+        }
+        timestamps = newTimestamps;
+        values = newValues;
+        first = 0;
+    }
+}
@@ -0,0 +1,74 @@
+package com.alerts;
+
+import com.data_management.RecordListener;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Evaluates alert conditions reading by reading. Every patient gets its own
+ * set of {@link StreamingAlertStrategy} instances holding the rolling state, so
+ * the cost of a reading does not depend on how much history the patient has.
+ * Readings of the same patient are evaluated one at a time, in the order they
+ * are passed in; different patients can be evaluated concurrently.
+ */
+public class StreamingAlertEvaluator implements RecordListener {
+    private final Supplier<StreamingAlertStrategy[]> strategyFactory;
+    private final Consumer<Alert> alertConsumer;
+    private final ConcurrentHashMap<Integer, StreamingAlertStrategy[]> patientStrategies = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an evaluator that checks the ECG, blood pressure, blood oxygen
+     * and hypotensive hypoxemia conditions.
+     *
+     * @param alertConsumer receives every triggered alert
+     */
+    public StreamingAlertEvaluator(Consumer<Alert> alertConsumer) {
+        this(StreamingAlertEvaluator::defaultStrategies, alertConsumer);
+    }
+
+    /**
+     * Constructs an evaluator with a custom set of strategies.
+     *
+     * @param strategyFactory creates a fresh set of strategies for each patient
+     * @param alertConsumer   receives every triggered alert
+     */
+    public StreamingAlertEvaluator(Supplier<StreamingAlertStrategy[]> strategyFactory, Consumer<Alert> alertConsumer) {
+        this.strategyFactory = strategyFactory;
+        this.alertConsumer = alertConsumer;
+    }
+
+    private static StreamingAlertStrategy[] defaultStrategies() {
+        return new StreamingAlertStrategy[] {
+                new ECGAlertStrategy(),
+                new BloodPressureAlertStrategy(),
+                new BloodOxygenAlertStrategy(),
+                new HypotensiveHypoxemiaAlertStrategy()
+        };
+    }
+
+    @Override
+    public void onRecord(int patientId, double measurementValue, int recordType, long timestamp) {
+        StreamingAlertStrategy[] strategies = patientStrategies.get(patientId);
+        if (strategies == null)
+            strategies = patientStrategies.computeIfAbsent(patientId, id -> strategyFactory.get());
+
+        synchronized (strategies) {
+            for (StreamingAlertStrategy strategy : strategies) {
+                Alert alert = strategy.onReading(patientId, recordType, measurementValue, timestamp);
+                if (alert != null)
+                    alertConsumer.accept(alert);
+            }
+        }
+    }
+
+    /**
+     * Drops the rolling state of a patient, e.g. after discharge.
+     *
+     * @param patientId the unique identifier of the patient
+     */
+    public void reset(int patientId) {
+        patientStrategies.remove(patientId);
+    }
+}
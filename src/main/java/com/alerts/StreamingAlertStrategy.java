@@ -0,0 +1,25 @@
+package com.alerts;
+
+import com.data_management.RecordTypes;
+
+/**
+ * An alert check that is fed one reading at a time instead of a patient's full
+ * history. Implementations keep a small rolling state for one patient, so each
+ * reading is handled in constant time no matter how long the patient has been
+ * monitored.
+ */
+public interface StreamingAlertStrategy {
+    /**
+     * Updates the rolling state with a new reading and checks whether it
+     * triggers an alert. Readings of types the strategy does not use are
+     * ignored.
+     *
+     * @param patientId  the patient the reading belongs to
+     * @param recordType the record type code, see {@link RecordTypes}
+     * @param value      the measurement value
+     * @param timestamp  the time of the measurement, in milliseconds since UNIX
+     *                   epoch
+     * @return the triggered alert, or null if the reading does not trigger one
+     */
+    Alert onReading(int patientId, int recordType, double value, long timestamp);
+}
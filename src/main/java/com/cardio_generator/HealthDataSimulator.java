@@ -1,7 +1,5 @@
 package com.cardio_generator;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import com.cardio_generator.generators.AlertGenerator;
@@ -10,27 +8,41 @@ import com.cardio_generator.generators.BloodPressureDataGenerator;
 import com.cardio_generator.generators.BloodSaturationDataGenerator;
 import com.cardio_generator.generators.BloodLevelsDataGenerator;
 import com.cardio_generator.generators.ECGDataGenerator;
+import com.cardio_generator.generators.PatientDataGenerator;
 import com.cardio_generator.outputs.ConsoleOutputStrategy;
+import com.cardio_generator.outputs.FanOutOutputStrategy;
+import com.cardio_generator.outputs.FanOutOutputStrategy.OverflowPolicy;
 import com.cardio_generator.outputs.FileOutputStrategy;
 import com.cardio_generator.outputs.OutputStrategy;
+import com.cardio_generator.outputs.SegmentOutputStrategy;
 import com.cardio_generator.outputs.TcpOutputStrategy;
 import com.cardio_generator.outputs.WebSocketOutputStrategy;
 
-import java.util.Collections;
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Random;
+import java.util.SplittableRandom;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 
 public class HealthDataSimulator {
 
+    private static final int PATIENTS_PER_TASK = 1000; // Patients a task generates data for on each run
+
     private static int patientCount = 50; // Default number of patients
-    private static ScheduledExecutorService scheduler;
+    private static TimingWheel scheduler;
     private static OutputStrategy outputStrategy = new ConsoleOutputStrategy(); // Default output strategy
+    private static final Map<String, OutputStrategy> outputs = new LinkedHashMap<>(); // By --output argument
+    private static OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST; // With more than one output
     private static final Random random = new Random();
+    private static long seed = random.nextLong(); // Seed of the generators' random streams
+    private static long rate = -1; // Readings per second of a load test, 0 for unpaced, -1 for no load test
+    private static long duration = Long.MAX_VALUE; // Simulated seconds of a load test
+    private static long backfillHours; // Hours of history generated before simulating in real time
+    private static LoadGenerator history; // Generated the backfill, or null
+    private static long clockOffsetMillis; // Added to the current time to timestamp live readings
     private static HealthDataSimulator instance;
 
     private HealthDataSimulator() {
@@ -45,13 +57,26 @@ public class HealthDataSimulator {
     public void main(String[] args) throws IOException {
 
         parseArguments(args);
+        if (outputs.size() == 1) {
+            outputStrategy = outputs.values().iterator().next();
+        } else if (outputs.size() > 1) {
+            FanOutOutputStrategy fanOut = new FanOutOutputStrategy();
+            for (Map.Entry<String, OutputStrategy> output : outputs.entrySet())
+                fanOut.addOutput(output.getKey(), output.getValue(), overflowPolicy);
+            outputStrategy = fanOut;
+        }
+
+        if (rate >= 0) {
+            runLoadTest();
+            return;
+        }
 
-        scheduler = Executors.newScheduledThreadPool(patientCount * 4);
+        if (backfillHours > 0)
+            backfill();
 
-        List<Integer> patientIds = initializePatientIds(patientCount);
-        Collections.shuffle(patientIds); // Randomize the order of patient IDs
+        scheduler = new TimingWheel();
 
-        scheduleTasksForPatients(patientIds);
+        scheduleTasksForPatients();
     }
 
     private static void parseArguments(String[] args) throws IOException {
@@ -71,23 +96,78 @@ public class HealthDataSimulator {
                         }
                     }
                     break;
+                case "--seed":
+                    if (i + 1 < args.length) {
+                        try {
+                            seed = Long.parseLong(args[++i]);
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid seed. Using a random seed.");
+                        }
+                    }
+                    break;
+                case "--rate":
+                    if (i + 1 < args.length) {
+                        try {
+                            rate = Long.parseLong(args[++i]);
+                            if (rate < 0)
+                                throw new NumberFormatException();
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid rate. Generating as fast as possible.");
+                            rate = 0;
+                        }
+                    }
+                    break;
+                case "--duration":
+                    if (i + 1 < args.length) {
+                        try {
+                            duration = Long.parseLong(args[++i]);
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid duration. Running until stopped.");
+                        }
+                    }
+                    break;
+                case "--backfill":
+                    if (i + 1 < args.length) {
+                        try {
+                            backfillHours = Long.parseLong(args[++i]);
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid number of hours. Not backfilling.");
+                        }
+                    }
+                    break;
+                case "--overflow":
+                    if (i + 1 < args.length) {
+                        String policy = args[++i];
+                        if (policy.equals("drop"))
+                            overflowPolicy = OverflowPolicy.DROP_OLDEST;
+                        else if (policy.equals("block"))
+                            overflowPolicy = OverflowPolicy.BLOCK;
+                        else
+                            System.err.println("Error: Unknown overflow policy. Dropping the oldest readings.");
+                    }
+                    break;
                 case "--output":
                     if (i + 1 < args.length) {
                         String outputArg = args[++i];
-                        if (outputArg.equals("console")) {
-                            outputStrategy = new ConsoleOutputStrategy();
+                        if (outputs.containsKey(outputArg)) {
+                            // Skipped before constructing, so a second server does not hold the port
+                            System.err.println("Output '" + outputArg + "' is given more than once. Using it once.");
+                        } else if (outputArg.equals("console")) {
+                            outputs.put(outputArg, new ConsoleOutputStrategy());
                         } else if (outputArg.startsWith("file:")) {
                             String baseDirectory = outputArg.substring(5);
                             Path outputPath = Paths.get(baseDirectory);
                             if (!Files.exists(outputPath)) {
                                 Files.createDirectories(outputPath);
                             }
-                            outputStrategy = new FileOutputStrategy(baseDirectory);
+                            outputs.put(outputArg, new FileOutputStrategy(baseDirectory));
+                        } else if (outputArg.startsWith("segments:")) {
+                            outputs.put(outputArg, new SegmentOutputStrategy(outputArg.substring(9)));
                         } else if (outputArg.startsWith("websocket:")) {
                             try {
                                 int port = Integer.parseInt(outputArg.substring(10));
                                 // Initialize your WebSocket output strategy here
-                                outputStrategy = new WebSocketOutputStrategy(port);
+                                outputs.put(outputArg, new WebSocketOutputStrategy(port));
                                 System.out.println("WebSocket output will be on port: " + port);
                             } catch (NumberFormatException e) {
                                 System.err.println(
@@ -97,7 +177,7 @@ public class HealthDataSimulator {
                             try {
                                 int port = Integer.parseInt(outputArg.substring(4));
                                 // Initialize your TCP socket output strategy here
-                                outputStrategy = new TcpOutputStrategy(port);
+                                outputs.put(outputArg, new TcpOutputStrategy(port));
                                 System.out.println("TCP socket output will be on port: " + port);
                             } catch (NumberFormatException e) {
                                 System.err.println("Invalid port for TCP output. Please specify a valid port number.");
@@ -121,42 +201,133 @@ public class HealthDataSimulator {
         System.out.println("  -h                       Show help and exit.");
         System.out.println(
                 "  --patient-count <count>  Specify the number of patients to simulate data for (default: 50).");
-        System.out.println("  --output <type>          Define the output method. Options are:");
+        System.out.println(
+                "  --output <type>          Define the output method; repeat it to output to several at once. Options are:");
         System.out.println("                             'console' for console output,");
         System.out.println("                             'file:<directory>' for file output,");
+        System.out.println("                             'segments:<directory>' for compressed binary file output,");
         System.out.println("                             'websocket:<port>' for WebSocket output,");
         System.out.println("                             'tcp:<port>' for TCP socket output.");
+        System.out.println(
+                "  --overflow <drop|block>  With several outputs, whether an output that falls behind drops its oldest");
+        System.out.println("                           readings (default) or slows the simulator down.");
+        System.out.println("  --seed <seed>            Seed the generators, so that a load test is reproducible.");
+        System.out.println(
+                "  --rate <readings/s>      Run a load test: generate readings on a simulated clock at this rate,");
+        System.out.println("                           or as fast as possible for 0, instead of in real time.");
+        System.out.println("  --duration <seconds>     Stop a load test after this many simulated seconds.");
+        System.out.println(
+                "  --backfill <hours>       Generate this many hours of history as fast as possible before simulating");
+        System.out.println("                           in real time.");
         System.out.println("Example:");
         System.out.println("  java HealthDataSimulator --patient-count 100 --output websocket:8080");
         System.out.println(
                 "  This command simulates data for 100 patients and sends the output to WebSocket clients connected to port 8080.");
+        System.out.println("  java HealthDataSimulator --patient-count 10000 --seed 42 --rate 0 --duration 60 --output tcp:8080");
+        System.out.println(
+                "  This command generates a minute of readings for 10000 patients as fast as possible, the same on every run.");
     }
 
-    private static List<Integer> initializePatientIds(int patientCount) {
-        List<Integer> patientIds = new ArrayList<>();
-        for (int i = 1; i <= patientCount; i++) {
-            patientIds.add(i);
+    /**
+     * Generates readings on a simulated clock at the requested rate, reports
+     * the throughput reached, and closes the output.
+     */
+    private static void runLoadTest() {
+        System.err.println("Load test of " + patientCount + " patients with seed " + seed + ", rate "
+                + (rate == 0 ? "unpaced" : rate + " readings/s"));
+        LoadGenerator generator = new LoadGenerator(patientCount, seed);
+        long start = System.nanoTime();
+        long readings = generator.run(duration, rate, outputStrategy);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("Generated %d readings in %.1f s: %.0f readings/s%n", readings, seconds, readings / seconds);
+        if (outputStrategy instanceof FanOutOutputStrategy) {
+            try {
+                ((FanOutOutputStrategy) outputStrategy).flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (FanOutOutputStrategy.SinkStats stats : ((FanOutOutputStrategy) outputStrategy).getStats())
+                System.err.println("  " + stats);
         }
-        return patientIds;
+
+        if (outputStrategy instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) outputStrategy).close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Generates the history of the last hours on a simulated clock, with the
+     * generators' periods kept in simulated time, up to the current second.
+     * The live schedule then continues with the same generators from where the
+     * history ended.
+     */
+    private static void backfill() {
+        long now = System.currentTimeMillis();
+        long startTime = now - now % 1000 - TimeUnit.HOURS.toMillis(backfillHours);
+        System.err.println("Backfilling " + backfillHours + " hours of " + patientCount + " patients");
+        long start = System.nanoTime();
+        history = new LoadGenerator(patientCount, seed, startTime);
+        long readings = history.run(TimeUnit.HOURS.toSeconds(backfillHours), 0, outputStrategy);
+        System.err.printf("Backfilled %d readings in %.1f s%n", readings, (System.nanoTime() - start) / 1e9);
     }
 
-    private static void scheduleTasksForPatients(List<Integer> patientIds) {
-        ECGDataGenerator ecgDataGenerator = new ECGDataGenerator(patientCount);
-        BloodSaturationDataGenerator bloodSaturationDataGenerator = new BloodSaturationDataGenerator(patientCount);
-        BloodPressureDataGenerator bloodPressureDataGenerator = new BloodPressureDataGenerator(patientCount);
-        BloodLevelsDataGenerator bloodLevelsDataGenerator = new BloodLevelsDataGenerator(patientCount);
-        AlertGenerator alertGenerator = new AlertGenerator(patientCount);
-
-        for (int patientId : patientIds) {
-            scheduleTask(() -> ecgDataGenerator.generate(patientId, outputStrategy), 1, TimeUnit.SECONDS);
-            scheduleTask(() -> bloodSaturationDataGenerator.generate(patientId, outputStrategy), 1, TimeUnit.SECONDS);
-            scheduleTask(() -> bloodPressureDataGenerator.generate(patientId, outputStrategy), 1, TimeUnit.MINUTES);
-            scheduleTask(() -> bloodLevelsDataGenerator.generate(patientId, outputStrategy), 2, TimeUnit.MINUTES);
-            scheduleTask(() -> alertGenerator.generate(patientId, outputStrategy), 20, TimeUnit.SECONDS);
+    /**
+     * Schedules each generator over ranges of consecutive patients rather than
+     * per patient, so the number of tasks and threads stays small however many
+     * patients there are. Each range starts at its own random point of the
+     * period, so the ranges do not all run in the same tick.
+     * <p>
+     * After a backfill the tasks run the generators that produced it, so every
+     * patient continues from its last historical state, and live readings are
+     * timestamped from where the history ended rather than from the current
+     * time, which has moved on by as long as the backfill took.
+     */
+    private static void scheduleTasksForPatients() {
+        PatientDataGenerator ecgDataGenerator;
+        PatientDataGenerator bloodSaturationDataGenerator;
+        PatientDataGenerator bloodPressureDataGenerator;
+        PatientDataGenerator bloodLevelsDataGenerator;
+        PatientDataGenerator alertGenerator;
+        if (history != null) {
+            ecgDataGenerator = history.getEcgGenerator();
+            bloodSaturationDataGenerator = history.getSaturationGenerator();
+            bloodPressureDataGenerator = history.getBloodPressureGenerator();
+            bloodLevelsDataGenerator = history.getBloodLevelsGenerator();
+            alertGenerator = history.getAlertGenerator();
+            clockOffsetMillis = history.getTime() - System.currentTimeMillis();
+        } else {
+            SplittableRandom generatorRandom = new SplittableRandom(seed);
+            ecgDataGenerator = new ECGDataGenerator(patientCount, generatorRandom);
+            bloodSaturationDataGenerator = new BloodSaturationDataGenerator(patientCount, generatorRandom);
+            bloodPressureDataGenerator = new BloodPressureDataGenerator(patientCount, generatorRandom);
+            bloodLevelsDataGenerator = new BloodLevelsDataGenerator(patientCount, generatorRandom);
+            alertGenerator = new AlertGenerator(patientCount, generatorRandom);
+        }
+
+        for (int first = 1; first <= patientCount; first += PATIENTS_PER_TASK) {
+            int from = first;
+            int to = Math.min(first + PATIENTS_PER_TASK - 1, patientCount);
+            scheduleTask(from, to, ecgDataGenerator, 1, TimeUnit.SECONDS);
+            scheduleTask(from, to, bloodSaturationDataGenerator, 1, TimeUnit.SECONDS);
+            scheduleTask(from, to, bloodPressureDataGenerator, 1, TimeUnit.MINUTES);
+            scheduleTask(from, to, bloodLevelsDataGenerator, 2, TimeUnit.MINUTES);
+            scheduleTask(from, to, alertGenerator, 20, TimeUnit.SECONDS);
         }
     }
 
-    private static void scheduleTask(Runnable task, long period, TimeUnit timeUnit) {
-        scheduler.scheduleAtFixedRate(task, random.nextInt(5), period, timeUnit);
+    private static void scheduleTask(int from, int to, PatientDataGenerator generator, long period, TimeUnit timeUnit) {
+        Runnable task = () -> {
+            for (int patientId = from; patientId <= to; patientId++)
+                generator.generate(patientId, System.currentTimeMillis() + clockOffsetMillis, outputStrategy);
+        };
+        long periodMillis = timeUnit.toMillis(period);
+        // After a backfill each range starts within one period, so it continues the history without a gap
+        long delayMillis = (history != null ? 0 : timeUnit.toMillis(random.nextInt(5)))
+                + (long) (random.nextDouble() * periodMillis);
+        scheduler.scheduleAtFixedRate(task, delayMillis, periodMillis);
     }
 }
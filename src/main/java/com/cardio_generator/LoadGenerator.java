@@ -0,0 +1,174 @@
+package com.cardio_generator;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.cardio_generator.generators.AlertGenerator;
+import com.cardio_generator.generators.BloodLevelsDataGenerator;
+import com.cardio_generator.generators.BloodPressureDataGenerator;
+import com.cardio_generator.generators.BloodSaturationDataGenerator;
+import com.cardio_generator.generators.ECGDataGenerator;
+import com.cardio_generator.generators.PatientDataGenerator;
+import com.cardio_generator.outputs.OutputStrategy;
+
+/**
+ * Generates the simulator's readings on a virtual clock instead of on
+ * wall-clock periods, for load tests and for backfilling history. The clock
+ * starts at {@link #START_TIME}, or any given time, and advances one second
+ * per round, with the simulator's schedule: ECG and saturation every second,
+ * alerts every 20 seconds, blood pressure every minute and blood levels every
+ * two minutes. A day of history is 86,400 rounds, however long they take.
+ * <p>
+ * Rounds run on the calling thread, patient by patient, either as fast as
+ * possible or paced to a number of readings per second. Every patient has its
+ * own random streams split off the seed, so the same seed and patient count
+ * give the same readings in the same order at any rate.
+ */
+public class LoadGenerator {
+
+    public static final long START_TIME = 1_700_000_000_000L;
+
+    private final int patientCount;
+    private final long startTime;
+    private final PatientDataGenerator ecg;
+    private final PatientDataGenerator saturation;
+    private final PatientDataGenerator bloodPressure;
+    private final PatientDataGenerator bloodLevels;
+    private final PatientDataGenerator alerts;
+    private long second; // The next round
+    private long readings;
+
+    /**
+     * Creates a generator whose clock starts at {@link #START_TIME}.
+     *
+     * @param patientCount the number of patients, numbered from 1
+     * @param seed         the seed of every random stream
+     */
+    public LoadGenerator(int patientCount, long seed) {
+        this(patientCount, seed, START_TIME);
+    }
+
+    /**
+     * @param patientCount the number of patients, numbered from 1
+     * @param seed         the seed of every random stream
+     * @param startTime    the time of the first round in milliseconds, e.g.
+     *                     a day before now to backfill a day of history
+     */
+    public LoadGenerator(int patientCount, long seed, long startTime) {
+        if (patientCount <= 0)
+            throw new IllegalArgumentException("patientCount must be positive: " + patientCount);
+
+        this.patientCount = patientCount;
+        this.startTime = startTime;
+        SplittableRandom random = new SplittableRandom(seed);
+        this.ecg = new ECGDataGenerator(patientCount, random);
+        this.saturation = new BloodSaturationDataGenerator(patientCount, random);
+        this.bloodPressure = new BloodPressureDataGenerator(patientCount, random);
+        this.bloodLevels = new BloodLevelsDataGenerator(patientCount, random);
+        this.alerts = new AlertGenerator(patientCount, random);
+    }
+
+    /**
+     * Generates the next rounds. Calling it again continues where it stopped.
+     *
+     * @param seconds           the number of rounds, or simulated seconds
+     * @param readingsPerSecond the rate to pace the readings to, or 0 for as
+     *                          fast as possible
+     * @param outputStrategy    receives the readings
+     * @return the number of readings generated
+     */
+    public long run(long seconds, long readingsPerSecond, OutputStrategy outputStrategy) {
+        if (seconds < 0 || readingsPerSecond < 0)
+            throw new IllegalArgumentException("Negative duration or rate");
+
+        long first = readings;
+        OutputStrategy counting = new OutputStrategy() {
+            @Override
+            public void output(int patientId, long timestamp, int labelCode, double value) {
+                readings++;
+                outputStrategy.output(patientId, timestamp, labelCode, value);
+            }
+
+            @Override
+            public void output(int patientId, long timestamp, String label, String data) {
+                readings++;
+                outputStrategy.output(patientId, timestamp, label, data);
+            }
+        };
+        long start = System.nanoTime();
+        long end = seconds > Long.MAX_VALUE - second ? Long.MAX_VALUE : second + seconds;
+        for (; second < end; second++) {
+            long now = startTime + TimeUnit.SECONDS.toMillis(second);
+            for (int patientId = 1; patientId <= patientCount; patientId++) {
+                ecg.generate(patientId, now, counting);
+                saturation.generate(patientId, now, counting);
+                if (second % 20 == 0)
+                    alerts.generate(patientId, now, counting);
+                if (second % 60 == 0)
+                    bloodPressure.generate(patientId, now, counting);
+                if (second % 120 == 0)
+                    bloodLevels.generate(patientId, now, counting);
+
+                if (readingsPerSecond > 0) {
+                    long due = start + (long) ((readings - first) * 1e9 / readingsPerSecond);
+                    long wait = due - System.nanoTime();
+                    if (wait > 0)
+                        LockSupport.parkNanos(wait);
+                }
+            }
+        }
+        return readings - first;
+    }
+
+    /**
+     * Returns the number of readings generated so far.
+     */
+    public long getReadings() {
+        return readings;
+    }
+
+    /**
+     * Returns the virtual time of the next round.
+     */
+    public long getTime() {
+        return startTime + TimeUnit.SECONDS.toMillis(second);
+    }
+
+    /**
+     * Returns the ECG generator, with every patient's state as the last round
+     * left it, so generating can continue elsewhere, e.g. live after a
+     * backfill, without starting the patients over.
+     */
+    public PatientDataGenerator getEcgGenerator() {
+        return ecg;
+    }
+
+    /**
+     * Returns the blood saturation generator, see {@link #getEcgGenerator()}.
+     */
+    public PatientDataGenerator getSaturationGenerator() {
+        return saturation;
+    }
+
+    /**
+     * Returns the blood pressure generator, see {@link #getEcgGenerator()}.
+     */
+    public PatientDataGenerator getBloodPressureGenerator() {
+        return bloodPressure;
+    }
+
+    /**
+     * Returns the blood levels generator, see {@link #getEcgGenerator()}.
+     */
+    public PatientDataGenerator getBloodLevelsGenerator() {
+        return bloodLevels;
+    }
+
+    /**
+     * Returns the alert generator, see {@link #getEcgGenerator()}.
+     */
+    public PatientDataGenerator getAlertGenerator() {
+        return alerts;
+    }
+}
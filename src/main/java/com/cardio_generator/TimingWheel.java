@@ -0,0 +1,268 @@
+package com.cardio_generator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs tasks at fixed rates from a hashed timing wheel: one ticker thread
+ * advances a ring of buckets every tick, and hands the tasks due in that tick
+ * to a fixed pool of workers. Scheduling and firing a task take constant
+ * time, however many tasks there are, and the number of threads does not
+ * grow with them.
+ * <p>
+ * Periods and delays are rounded to whole ticks. A task never runs on two
+ * workers at once: if it is still running when it is due again, it runs once
+ * more as soon as it finishes, and the missed run is counted as an overrun.
+ * How late each run starts after it was due is measured, see
+ * {@link #getStats()}.
+ */
+public class TimingWheel implements AutoCloseable {
+
+    public static final long DEFAULT_TICK_MILLIS = 10;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static final int IDLE = 0;
+    private static final int RUNNING = 1;
+    private static final int RUNNING_AND_DUE = 2;
+
+    private final long tickNanos;
+    private final List<List<Timer>> buckets = new ArrayList<>(); // Only used by the ticker
+    private final int mask;
+    private final Queue<Timer> added = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger taskCount = new AtomicInteger();
+    private final ExecutorService workers;
+    private final Thread ticker;
+    private final long startNanos;
+    private volatile long tick; // The next tick to process
+    private volatile boolean closed;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong overruns = new AtomicLong();
+    private final AtomicLong totalLatenessNanos = new AtomicLong();
+    private final AtomicLong maxLatenessNanos = new AtomicLong();
+
+    /**
+     * Creates a wheel with {@value #DEFAULT_TICK_MILLIS} ms ticks and a worker
+     * for every processor.
+     */
+    public TimingWheel() {
+        this(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a wheel and starts its ticker thread. The ticker is not a
+     * daemon, so the JVM runs until the wheel is closed.
+     *
+     * @param tickMillis the resolution of the wheel
+     * @param wheelSize  the number of buckets, a power of two; periods up to
+     *                   this many ticks are found without skipping buckets
+     * @param workers    the number of threads running the tasks
+     */
+    public TimingWheel(long tickMillis, int wheelSize, int workers) {
+        if (tickMillis <= 0 || wheelSize <= 0 || Integer.bitCount(wheelSize) != 1 || workers <= 0)
+            throw new IllegalArgumentException("Invalid tick, wheel size or number of workers");
+
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.mask = wheelSize - 1;
+        for (int i = 0; i < wheelSize; i++)
+            buckets.add(new ArrayList<>());
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workers, task -> {
+            Thread thread = new Thread(task, "simulator-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.startNanos = System.nanoTime();
+        this.ticker = new Thread(this::tickLoop, "simulator-ticker");
+        this.ticker.start();
+    }
+
+    /**
+     * Runs a task every period, first after the initial delay.
+     *
+     * @param task               the task; exceptions it throws are printed
+     * @param initialDelayMillis the time before the first run
+     * @param periodMillis       the time between the starts of two runs
+     */
+    public void scheduleAtFixedRate(Runnable task, long initialDelayMillis, long periodMillis) {
+        if (initialDelayMillis < 0 || periodMillis <= 0)
+            throw new IllegalArgumentException("Invalid delay or period");
+
+        long periodTicks = Math.max(1, Math.round((double) TimeUnit.MILLISECONDS.toNanos(periodMillis) / tickNanos));
+        long now = (System.nanoTime() - startNanos) / tickNanos;
+        long delayTicks = (TimeUnit.MILLISECONDS.toNanos(initialDelayMillis) + tickNanos - 1) / tickNanos;
+        added.add(new Timer(task, periodTicks, Math.max(tick, now + delayTicks)));
+        taskCount.incrementAndGet();
+    }
+
+    private void tickLoop() {
+        List<Timer> rescheduled = new ArrayList<>();
+        while (!closed) {
+            long current = tick;
+            long due = startNanos + current * tickNanos;
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0 && !closed)
+                LockSupport.parkNanos(this, wait);
+            if (closed)
+                break;
+
+            for (Timer timer; (timer = added.poll()) != null; )
+                buckets.get((int) (Math.max(timer.deadline, current) & mask)).add(timer);
+
+            // Fire the due timers and move them to the bucket of their next deadline
+            List<Timer> bucket = buckets.get((int) (current & mask));
+            int kept = 0;
+            int size = bucket.size();
+            for (int i = 0; i < size; i++) {
+                Timer timer = bucket.get(i);
+                if (timer.deadline > current) {
+                    bucket.set(kept++, timer);
+                    continue;
+                }
+                timer.fire(startNanos + timer.deadline * tickNanos);
+                timer.deadline += timer.periodTicks;
+                rescheduled.add(timer);
+            }
+            bucket.subList(kept, size).clear();
+            for (Timer timer : rescheduled)
+                buckets.get((int) (timer.deadline & mask)).add(timer);
+            rescheduled.clear();
+            tick = current + 1;
+        }
+    }
+
+    public int getTaskCount() {
+        return taskCount.get();
+    }
+
+    /**
+     * Returns counters of the runs so far.
+     *
+     * @return a snapshot of the statistics
+     */
+    public Stats getStats() {
+        long count = runs.get();
+        return new Stats(count, overruns.get(), count == 0 ? 0 : totalLatenessNanos.get() / count,
+                maxLatenessNanos.get());
+    }
+
+    /**
+     * Stops the ticker and the workers, letting running tasks finish.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(ticker);
+        try {
+            ticker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+    }
+
+    /**
+     * A task and its place on the wheel.
+     */
+    private final class Timer implements Runnable {
+        final Runnable task;
+        final long periodTicks;
+        long deadline; // The tick of the next run, only used by the ticker
+        volatile long dueNanos;
+        final AtomicInteger state = new AtomicInteger(IDLE);
+
+        Timer(Runnable task, long periodTicks, long deadline) {
+            this.task = task;
+            this.periodTicks = periodTicks;
+            this.deadline = deadline;
+        }
+
+        void fire(long dueNanos) {
+            this.dueNanos = dueNanos;
+            while (true) {
+                int current = state.get();
+                if (current == IDLE) {
+                    if (state.compareAndSet(IDLE, RUNNING)) {
+                        try {
+                            workers.execute(this);
+                        } catch (RejectedExecutionException e) {
+                            state.set(IDLE); // Closed
+                        }
+                        return;
+                    }
+                } else {
+                    overruns.incrementAndGet();
+                    if (current == RUNNING_AND_DUE || state.compareAndSet(RUNNING, RUNNING_AND_DUE))
+                        return;
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            do {
+                long lateness = Math.max(0, System.nanoTime() - dueNanos);
+                totalLatenessNanos.addAndGet(lateness);
+                maxLatenessNanos.accumulateAndGet(lateness, Math::max);
+                runs.incrementAndGet();
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            } while (!state.compareAndSet(RUNNING, IDLE) && state.compareAndSet(RUNNING_AND_DUE, RUNNING));
+        }
+    }
+
+    /**
+     * Counters of a {@link TimingWheel}.
+     */
+    public static final class Stats {
+        private final long runs;
+        private final long overruns;
+        private final long meanLatenessNanos;
+        private final long maxLatenessNanos;
+
+        Stats(long runs, long overruns, long meanLatenessNanos, long maxLatenessNanos) {
+            this.runs = runs;
+            this.overruns = overruns;
+            this.meanLatenessNanos = meanLatenessNanos;
+            this.maxLatenessNanos = maxLatenessNanos;
+        }
+
+        /** Task runs started since the wheel was created */
+        public long getRuns() {
+            return runs;
+        }
+
+        /** Times a task was due while its previous run had not finished */
+        public long getOverruns() {
+            return overruns;
+        }
+
+        /** Mean time from a run being due to it starting */
+        public long getMeanLatenessMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(meanLatenessNanos);
+        }
+
+        /** Longest time from a run being due to it starting */
+        public long getMaxLatenessMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(maxLatenessNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d runs, %d overruns, lateness %d us mean, %d us max", runs, overruns,
+                    getMeanLatenessMicros(), getMaxLatenessMicros());
+        }
+    }
+}
@@ -1,26 +1,37 @@
 package com.cardio_generator.generators;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.RecordTypes;
 
 public class AlertGenerator implements PatientDataGenerator {
 
-    public static final Random randomGenerator = new Random();
     private boolean[] AlertStates; // false = resolved, true = pressed
+    private final SplittableRandom[] randoms;
 
     public AlertGenerator(int patientCount) {
+        this(patientCount, new SplittableRandom());
+    }
+
+    /**
+     * Creates a generator whose patients' random streams are split off the
+     * given random, so a seeded random makes the readings reproducible.
+     */
+    public AlertGenerator(int patientCount, SplittableRandom random) {
         AlertStates = new boolean[patientCount + 1];
+        randoms = PatientRandoms.split(random, patientCount);
     }
 
     @Override
-    public void generate(int patientId, OutputStrategy outputStrategy) {
+    public void generate(int patientId, long timestamp, OutputStrategy outputStrategy) {
         try {
+            SplittableRandom randomGenerator = randoms[patientId];
             if (AlertStates[patientId]) {
                 if (randomGenerator.nextDouble() < 0.9) { // 90% chance to resolve
                     AlertStates[patientId] = false;
                     // Output the alert
-                    outputStrategy.output(patientId, System.currentTimeMillis(), "Alert", "resolved");
+                    outputStrategy.output(patientId, timestamp, RecordTypes.ALERT, 0);
                 }
             } else {
                 double Lambda = 0.1; // Average rate (alerts per period), adjust based on desired frequency
@@ -30,7 +41,7 @@ public class AlertGenerator implements PatientDataGenerator {
                 if (alertTriggered) {
                     AlertStates[patientId] = true;
                     // Output the alert
-                    outputStrategy.output(patientId, System.currentTimeMillis(), "Alert", "triggered");
+                    outputStrategy.output(patientId, timestamp, RecordTypes.ALERT, 1);
                 }
             }
         } catch (Exception e) {
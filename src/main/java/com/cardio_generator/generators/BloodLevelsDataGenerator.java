@@ -1,16 +1,26 @@
 package com.cardio_generator.generators;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.RecordTypes;
 
 public class BloodLevelsDataGenerator implements PatientDataGenerator {
-    private static final Random random = new Random();
+    private final SplittableRandom[] randoms;
     private final double[] baselineCholesterol;
     private final double[] baselineWhiteCells;
     private final double[] baselineRedCells;
 
     public BloodLevelsDataGenerator(int patientCount) {
+        this(patientCount, new SplittableRandom());
+    }
+
+    /**
+     * Creates a generator whose patients' random streams are split off the
+     * given random, so a seeded random makes the readings reproducible.
+     */
+    public BloodLevelsDataGenerator(int patientCount, SplittableRandom random) {
+        randoms = PatientRandoms.split(random, patientCount);
         // Initialize arrays to store baseline values for each patient
         baselineCholesterol = new double[patientCount + 1];
         baselineWhiteCells = new double[patientCount + 1];
@@ -18,25 +28,25 @@ public class BloodLevelsDataGenerator implements PatientDataGenerator {
 
         // Generate baseline values for each patient
         for (int i = 1; i <= patientCount; i++) {
-            baselineCholesterol[i] = 150 + random.nextDouble() * 50; // Initial random baseline
-            baselineWhiteCells[i] = 4 + random.nextDouble() * 6; // Initial random baseline
-            baselineRedCells[i] = 4.5 + random.nextDouble() * 1.5; // Initial random baseline
+            baselineCholesterol[i] = 150 + randoms[i].nextDouble() * 50; // Initial random baseline
+            baselineWhiteCells[i] = 4 + randoms[i].nextDouble() * 6; // Initial random baseline
+            baselineRedCells[i] = 4.5 + randoms[i].nextDouble() * 1.5; // Initial random baseline
         }
     }
 
     @Override
-    public void generate(int patientId, OutputStrategy outputStrategy) {
+    public void generate(int patientId, long timestamp, OutputStrategy outputStrategy) {
         try {
+            SplittableRandom random = randoms[patientId];
             // Generate values around the baseline for realism
             double cholesterol = baselineCholesterol[patientId] + (random.nextDouble() - 0.5) * 10; // Small variation
             double whiteCells = baselineWhiteCells[patientId] + (random.nextDouble() - 0.5) * 1; // Small variation
             double redCells = baselineRedCells[patientId] + (random.nextDouble() - 0.5) * 0.2; // Small variation
 
             // Output the generated values
-            outputStrategy.output(patientId, System.currentTimeMillis(), "Cholesterol", Double.toString(cholesterol));
-            outputStrategy.output(patientId, System.currentTimeMillis(), "WhiteBloodCells",
-                    Double.toString(whiteCells));
-            outputStrategy.output(patientId, System.currentTimeMillis(), "RedBloodCells", Double.toString(redCells));
+            outputStrategy.output(patientId, timestamp, RecordTypes.CHOLESTEROL, cholesterol);
+            outputStrategy.output(patientId, timestamp, RecordTypes.WHITE_BLOOD_CELLS, whiteCells);
+            outputStrategy.output(patientId, timestamp, RecordTypes.RED_BLOOD_CELLS, redCells);
         } catch (Exception e) {
             System.err.println("An error occurred while generating blood levels data for patient " + patientId);
             e.printStackTrace(); // This will print the stack trace to help identify where the error occurred.
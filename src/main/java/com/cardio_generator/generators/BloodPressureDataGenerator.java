@@ -1,29 +1,39 @@
 package com.cardio_generator.generators;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.RecordTypes;
 
 public class BloodPressureDataGenerator implements PatientDataGenerator {
-    private static final Random random = new Random();
-
     private int[] lastSystolicValues;
     private int[] lastDiastolicValues;
+    private final SplittableRandom[] randoms;
 
     public BloodPressureDataGenerator(int patientCount) {
+        this(patientCount, new SplittableRandom());
+    }
+
+    /**
+     * Creates a generator whose patients' random streams are split off the
+     * given random, so a seeded random makes the readings reproducible.
+     */
+    public BloodPressureDataGenerator(int patientCount, SplittableRandom random) {
+        randoms = PatientRandoms.split(random, patientCount);
         lastSystolicValues = new int[patientCount + 1];
         lastDiastolicValues = new int[patientCount + 1];
 
         // Initialize with baseline values for each patient
         for (int i = 1; i <= patientCount; i++) {
-            lastSystolicValues[i] = 110 + random.nextInt(20); // Random baseline between 110 and 130
-            lastDiastolicValues[i] = 70 + random.nextInt(15); // Random baseline between 70 and 85
+            lastSystolicValues[i] = 110 + randoms[i].nextInt(20); // Random baseline between 110 and 130
+            lastDiastolicValues[i] = 70 + randoms[i].nextInt(15); // Random baseline between 70 and 85
         }
     }
 
     @Override
-    public void generate(int patientId, OutputStrategy outputStrategy) {
+    public void generate(int patientId, long timestamp, OutputStrategy outputStrategy) {
         try {
+            SplittableRandom random = randoms[patientId];
             int systolicVariation = random.nextInt(5) - 2; // -2, -1, 0, 1, or 2
             int diastolicVariation = random.nextInt(5) - 2;
             int newSystolicValue = lastSystolicValues[patientId] + systolicVariation;
@@ -34,10 +44,8 @@ public class BloodPressureDataGenerator implements PatientDataGenerator {
             lastSystolicValues[patientId] = newSystolicValue;
             lastDiastolicValues[patientId] = newDiastolicValue;
 
-            outputStrategy.output(patientId, System.currentTimeMillis(), "SystolicPressure",
-                    Double.toString(newSystolicValue));
-            outputStrategy.output(patientId, System.currentTimeMillis(), "DiastolicPressure",
-                    Double.toString(newDiastolicValue));
+            outputStrategy.output(patientId, timestamp, RecordTypes.SYSTOLIC_PRESSURE, newSystolicValue);
+            outputStrategy.output(patientId, timestamp, RecordTypes.DIASTOLIC_PRESSURE, newDiastolicValue);
         } catch (Exception e) {
             System.err.println("An error occurred while generating blood pressure data for patient " + patientId);
             e.printStackTrace(); // This will print the stack trace to help identify where the error occurred.
@@ -1,34 +1,43 @@
 package com.cardio_generator.generators;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.RecordTypes;
 
 public class BloodSaturationDataGenerator implements PatientDataGenerator {
-    private static final Random random = new Random();
     private int[] lastSaturationValues;
+    private final SplittableRandom[] randoms;
 
     public BloodSaturationDataGenerator(int patientCount) {
+        this(patientCount, new SplittableRandom());
+    }
+
+    /**
+     * Creates a generator whose patients' random streams are split off the
+     * given random, so a seeded random makes the readings reproducible.
+     */
+    public BloodSaturationDataGenerator(int patientCount, SplittableRandom random) {
+        randoms = PatientRandoms.split(random, patientCount);
         lastSaturationValues = new int[patientCount + 1];
 
         // Initialize with baseline saturation values for each patient
         for (int i = 1; i <= patientCount; i++) {
-            lastSaturationValues[i] = 95 + random.nextInt(6); // Initializes with a value between 95 and 100
+            lastSaturationValues[i] = 95 + randoms[i].nextInt(6); // Initializes with a value between 95 and 100
         }
     }
 
     @Override
-    public void generate(int patientId, OutputStrategy outputStrategy) {
+    public void generate(int patientId, long timestamp, OutputStrategy outputStrategy) {
         try {
             // Simulate blood saturation values
-            int variation = random.nextInt(3) - 1; // -1, 0, or 1 to simulate small fluctuations
+            int variation = randoms[patientId].nextInt(3) - 1; // -1, 0, or 1 to simulate small fluctuations
             int newSaturationValue = lastSaturationValues[patientId] + variation;
 
             // Ensure the saturation stays within a realistic and healthy range
             newSaturationValue = Math.min(Math.max(newSaturationValue, 90), 100);
             lastSaturationValues[patientId] = newSaturationValue;
-            outputStrategy.output(patientId, System.currentTimeMillis(), "Saturation",
-                    Double.toString(newSaturationValue) + "%");
+            outputStrategy.output(patientId, timestamp, RecordTypes.SATURATION, newSaturationValue);
         } catch (Exception e) {
             System.err.println("An error occurred while generating blood saturation data for patient " + patientId);
             e.printStackTrace(); // This will print the stack trace to help identify where the error occurred.
@@ -1,15 +1,25 @@
 package com.cardio_generator.generators;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.RecordTypes;
 
 public class ECGDataGenerator implements PatientDataGenerator {
-    private static final Random random = new Random();
     private double[] lastEcgValues;
+    private final SplittableRandom[] randoms;
     private static final double PI = Math.PI;
 
     public ECGDataGenerator(int patientCount) {
+        this(patientCount, new SplittableRandom());
+    }
+
+    /**
+     * Creates a generator whose patients' random streams are split off the
+     * given random, so a seeded random makes the readings reproducible.
+     */
+    public ECGDataGenerator(int patientCount, SplittableRandom random) {
+        randoms = PatientRandoms.split(random, patientCount);
         lastEcgValues = new double[patientCount + 1];
         // Initialize the last ECG value for each patient
         for (int i = 1; i <= patientCount; i++) {
@@ -18,11 +28,11 @@ public class ECGDataGenerator implements PatientDataGenerator {
     }
 
     @Override
-    public void generate(int patientId, OutputStrategy outputStrategy) {
+    public void generate(int patientId, long timestamp, OutputStrategy outputStrategy) {
         // TODO Check how realistic this data is and make it more realistic if necessary
         try {
-            double ecgValue = simulateEcgWaveform(patientId, lastEcgValues[patientId]);
-            outputStrategy.output(patientId, System.currentTimeMillis(), "ECG", Double.toString(ecgValue));
+            double ecgValue = simulateEcgWaveform(randoms[patientId], timestamp, lastEcgValues[patientId]);
+            outputStrategy.output(patientId, timestamp, RecordTypes.ECG, ecgValue);
             lastEcgValues[patientId] = ecgValue;
         } catch (Exception e) {
             System.err.println("An error occurred while generating ECG data for patient " + patientId);
@@ -30,10 +40,10 @@ public class ECGDataGenerator implements PatientDataGenerator {
         }
     }
 
-    private double simulateEcgWaveform(int patientId, double lastEcgValue) {
+    private double simulateEcgWaveform(SplittableRandom random, long timestamp, double lastEcgValue) {
         // Simplified ECG waveform generation based on sinusoids
         double hr = 60.0 + random.nextDouble() * 20.0; // Simulate heart rate variability between 60 and 80 bpm
-        double t = System.currentTimeMillis() / 1000.0; // Use system time to simulate continuous time
+        double t = timestamp / 1000.0; // Use the reading time to simulate continuous time
         double ecgFrequency = hr / 60.0; // Convert heart rate to Hz
 
         // Simulate different components of the ECG signal
@@ -2,6 +2,26 @@ package com.cardio_generator.generators;
 
 import com.cardio_generator.outputs.OutputStrategy;
 
+/**
+ * Generates readings of one kind for a patient. Each generator keeps every
+ * patient's state, including its own random stream, apart, so different
+ * patients may be generated from different threads; one patient must not.
+ */
 public interface PatientDataGenerator {
-    void generate(int patientId, OutputStrategy outputStrategy);
+
+    /**
+     * Generates readings timestamped with the current time.
+     */
+    default void generate(int patientId, OutputStrategy outputStrategy) {
+        generate(patientId, System.currentTimeMillis(), outputStrategy);
+    }
+
+    /**
+     * Generates readings at the given time, which need not be the current one.
+     *
+     * @param patientId      the patient, numbered from 1
+     * @param timestamp      the time of the readings in milliseconds
+     * @param outputStrategy receives the readings
+     */
+    void generate(int patientId, long timestamp, OutputStrategy outputStrategy);
 }
@@ -0,0 +1,25 @@
+package com.cardio_generator.generators;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random streams for the patients of a generator.
+ */
+final class PatientRandoms {
+
+    private PatientRandoms() {
+    }
+
+    /**
+     * Splits one independent stream per patient off a random, in patient order,
+     * so the same seed gives every patient the same stream.
+     *
+     * @return the streams, indexed by patient ID from 0 to patientCount
+     */
+    static SplittableRandom[] split(SplittableRandom random, int patientCount) {
+        SplittableRandom[] randoms = new SplittableRandom[patientCount + 1];
+        for (int i = 0; i <= patientCount; i++)
+            randoms[i] = random.split();
+        return randoms;
+    }
+}
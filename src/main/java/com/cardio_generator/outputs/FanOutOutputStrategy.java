@@ -0,0 +1,333 @@
+package com.cardio_generator.outputs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passes every reading on to several outputs, each through its own bounded
+ * queue and thread, so an output that falls behind, such as a file on a slow
+ * disk, does not hold up the others or the generators.
+ * <p>
+ * {@link #output} copies the reading into each output's queue, typed readings
+ * without making any text, and returns. Each output's drainer thread takes the
+ * queued readings in batches and passes them on in the order they were
+ * queued. When a queue is full, the output's {@link OverflowPolicy} decides
+ * whether its oldest readings are dropped or the generators wait.
+ * <p>
+ * {@link #getStats()} reports, per output, how many readings were passed on
+ * and dropped. {@link #close()} passes on what is still queued, then closes
+ * the outputs that can be closed.
+ */
+public class FanOutOutputStrategy implements OutputStrategy, AutoCloseable {
+
+    /**
+     * What {@link #output} does when an output's queue is full.
+     */
+    public enum OverflowPolicy {
+        /** Drop the output's oldest queued reading to make room; the output sees a gap */
+        DROP_OLDEST,
+        /** Wait until the output has caught up; a slow output slows every generator */
+        BLOCK
+    }
+
+    public static final int DEFAULT_CAPACITY = 65536;
+    private static final int DRAIN_BATCH = 256;
+
+    private volatile Sink[] sinks = new Sink[0];
+    private volatile boolean closed;
+
+    /**
+     * Adds an output with a queue of {@value #DEFAULT_CAPACITY} readings.
+     *
+     * @param name           the name the output is reported by
+     * @param output         the output
+     * @param overflowPolicy what happens when its queue is full
+     */
+    public void addOutput(String name, OutputStrategy output, OverflowPolicy overflowPolicy) {
+        addOutput(name, output, overflowPolicy, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Adds an output and starts its drainer thread. Readings output before
+     * are not passed on to it.
+     *
+     * @param name           the name the output is reported by
+     * @param output         the output
+     * @param overflowPolicy what happens when its queue is full
+     * @param capacity       how many readings may be queued for it
+     */
+    public synchronized void addOutput(String name, OutputStrategy output, OverflowPolicy overflowPolicy,
+            int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        if (closed)
+            throw new IllegalStateException("Output is closed");
+
+        Sink sink = new Sink(name, output, overflowPolicy, capacity);
+        Sink[] current = sinks;
+        Sink[] added = Arrays.copyOf(current, current.length + 1);
+        added[current.length] = sink;
+        sinks = added;
+        sink.drainer.start();
+    }
+
+    @Override
+    public void output(int patientId, long timestamp, String label, String data) {
+        for (Sink sink : sinks)
+            sink.offer(patientId, timestamp, label, data, -1, 0);
+    }
+
+    @Override
+    public void output(int patientId, long timestamp, int labelCode, double value) {
+        for (Sink sink : sinks)
+            sink.offer(patientId, timestamp, null, null, labelCode, value);
+    }
+
+    /**
+     * Waits until every reading output so far has been passed on, or dropped.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        for (Sink sink : sinks)
+            sink.awaitDrained();
+    }
+
+    /**
+     * Returns the counters of every output, in the order they were added.
+     */
+    public List<SinkStats> getStats() {
+        List<SinkStats> stats = new ArrayList<>();
+        for (Sink sink : sinks)
+            stats.add(sink.stats());
+        return stats;
+    }
+
+    /**
+     * Passes on every queued reading, stops the drainer threads and closes the
+     * outputs that are {@link AutoCloseable}. Readings output afterwards are
+     * dropped.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+        }
+        for (Sink sink : sinks)
+            sink.close();
+        for (Sink sink : sinks) {
+            try {
+                sink.drainer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (sink.output instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) sink.output).close();
+                } catch (Exception e) {
+                    System.err.println("Error closing output " + sink.name + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * An output with its queue, a ring of parallel arrays so queuing a typed
+     * reading allocates nothing.
+     */
+    private static final class Sink {
+        final String name;
+        final OutputStrategy output;
+        final OverflowPolicy overflowPolicy;
+        final Thread drainer;
+        private final long startNanos = System.nanoTime();
+
+        // Guarded by this
+        private final int[] patientIds;
+        private final long[] timestamps;
+        private final String[] labels; // Null for a typed reading
+        private final String[] data;
+        private final int[] labelCodes;
+        private final double[] values;
+        private long head; // The sequence of the oldest queued reading
+        private long tail; // The sequence of the next queued reading
+        private long passedOn;
+        private long dropped;
+        private boolean closed;
+
+        Sink(String name, OutputStrategy output, OverflowPolicy overflowPolicy, int capacity) {
+            this.name = name;
+            this.output = output;
+            this.overflowPolicy = overflowPolicy;
+            this.patientIds = new int[capacity];
+            this.timestamps = new long[capacity];
+            this.labels = new String[capacity];
+            this.data = new String[capacity];
+            this.labelCodes = new int[capacity];
+            this.values = new double[capacity];
+            this.drainer = new Thread(this::drainLoop, "fan-out-" + name);
+            this.drainer.setDaemon(true);
+        }
+
+        synchronized void offer(int patientId, long timestamp, String label, String text, int labelCode,
+                double value) {
+            if (closed) {
+                dropped++;
+                return;
+            }
+            if (tail - head == patientIds.length) {
+                if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                    head++;
+                    dropped++;
+                } else {
+                    while (tail - head == patientIds.length && !closed) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            dropped++;
+                            return;
+                        }
+                    }
+                    if (closed) {
+                        dropped++;
+                        return;
+                    }
+                }
+            }
+            int slot = (int) (tail % patientIds.length);
+            patientIds[slot] = patientId;
+            timestamps[slot] = timestamp;
+            labels[slot] = label;
+            data[slot] = text;
+            labelCodes[slot] = labelCode;
+            values[slot] = value;
+            if (tail++ == head)
+                notifyAll(); // The drainer waits for the queue to fill
+        }
+
+        private void drainLoop() {
+            int[] batchPatientIds = new int[DRAIN_BATCH];
+            long[] batchTimestamps = new long[DRAIN_BATCH];
+            String[] batchLabels = new String[DRAIN_BATCH];
+            String[] batchData = new String[DRAIN_BATCH];
+            int[] batchLabelCodes = new int[DRAIN_BATCH];
+            double[] batchValues = new double[DRAIN_BATCH];
+            while (true) {
+                int count;
+                synchronized (this) {
+                    while (head == tail && !closed) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (head == tail)
+                        return; // Closed and drained
+
+                    count = (int) Math.min(DRAIN_BATCH, tail - head);
+                    for (int i = 0; i < count; i++) {
+                        int slot = (int) ((head + i) % patientIds.length);
+                        batchPatientIds[i] = patientIds[slot];
+                        batchTimestamps[i] = timestamps[slot];
+                        batchLabels[i] = labels[slot];
+                        batchData[i] = data[slot];
+                        batchLabelCodes[i] = labelCodes[slot];
+                        batchValues[i] = values[slot];
+                        labels[slot] = null;
+                        data[slot] = null;
+                    }
+                    head += count;
+                    notifyAll(); // Producers waiting for room
+                }
+
+                for (int i = 0; i < count; i++) {
+                    try {
+                        if (batchLabels[i] == null)
+                            output.output(batchPatientIds[i], batchTimestamps[i], batchLabelCodes[i], batchValues[i]);
+                        else
+                            output.output(batchPatientIds[i], batchTimestamps[i], batchLabels[i], batchData[i]);
+                    } catch (RuntimeException e) {
+                        System.err.println("Error in output " + name + ": " + e.getMessage());
+                    }
+                }
+                synchronized (this) {
+                    passedOn += count;
+                    notifyAll(); // Flushing threads
+                }
+            }
+        }
+
+        synchronized void awaitDrained() throws InterruptedException {
+            long target = tail;
+            while (passedOn + dropped < target && drainer.isAlive())
+                wait(100);
+        }
+
+        synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+
+        synchronized SinkStats stats() {
+            long elapsedNanos = Math.max(1, System.nanoTime() - startNanos);
+            return new SinkStats(name, (int) (tail - head), passedOn, dropped,
+                    passedOn * TimeUnit.SECONDS.toNanos(1) / elapsedNanos);
+        }
+    }
+
+    /**
+     * Counters of one output, at the time {@link #getStats()} was called.
+     */
+    public static final class SinkStats {
+        private final String name;
+        private final int queued;
+        private final long passedOn;
+        private final long dropped;
+        private final long passedOnPerSecond;
+
+        SinkStats(String name, int queued, long passedOn, long dropped, long passedOnPerSecond) {
+            this.name = name;
+            this.queued = queued;
+            this.passedOn = passedOn;
+            this.dropped = dropped;
+            this.passedOnPerSecond = passedOnPerSecond;
+        }
+
+        /** The name the output was added with */
+        public String getName() {
+            return name;
+        }
+
+        /** Readings queued and not yet passed on */
+        public int getQueued() {
+            return queued;
+        }
+
+        /** Readings passed on since the output was added */
+        public long getPassedOn() {
+            return passedOn;
+        }
+
+        /** Readings dropped because the queue was full or the output closed */
+        public long getDropped() {
+            return dropped;
+        }
+
+        /** Mean readings passed on per second since the output was added */
+        public long getPassedOnPerSecond() {
+            return passedOnPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + passedOn + " passed on (" + passedOnPerSecond + "/s), " + dropped + " dropped, "
+                    + queued + " queued";
+        }
+    }
+}
@@ -1,41 +1,312 @@
 package com.cardio_generator.outputs;
 
+import com.data_management.RecordTypes;
+
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes every reading to {@code <label>.txt} in a base directory, one line
+ * each, formatted as {@code Patient ID: %d, Timestamp: %d, Label: %s, Data: %s}.
+ * <p>
+ * {@link #output} only copies the reading into a preallocated ring, so
+ * generator threads neither wait for the disk nor format text, and a typed
+ * reading allocates nothing. Producers claim a slot with a compare-and-set
+ * and publish it with its sequence, without a lock, as in the
+ * {@code IngestionPipeline}. A background writer drains the ring in batches,
+ * once {@code batchSize} lines are waiting or {@code flushIntervalMillis} has
+ * passed, formats them, and writes each label's lines with as few calls as
+ * possible to a channel that stays open. Lines of a label are written in the
+ * order they were queued. If the ring fills up, producers help write, which
+ * throttles them instead of letting the queue grow without bound.
+ * <p>
+ * {@link #close()} writes everything still queued and closes the files; it is
+ * also run on JVM shutdown. How often data is forced to the disk is set by the
+ * {@link SyncPolicy}.
+ */
+public class FileOutputStrategy implements OutputStrategy, AutoCloseable {
+
+    /**
+     * When written lines are forced to the storage device with
+     * {@link FileChannel#force}.
+     */
+    public enum SyncPolicy {
+        /** Leave it to the operating system; fastest, may lose the last seconds on power loss */
+        NEVER,
+        /** After every batch; a batch is durable once written */
+        EVERY_BATCH,
+        /** Once, when the strategy is closed */
+        ON_CLOSE
+    }
 
-public class FileOutputStrategy implements OutputStrategy {
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 200;
+    private static final int BACKLOG_BATCHES = 16;
+    private static final long CLOSED = Long.MIN_VALUE; // Set in tail once closed
 
     private String BaseDirectory;
 
     public final ConcurrentHashMap<String, String> file_map = new ConcurrentHashMap<>();
 
-    public FileOutputStrategy(String baseDirectory) {
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final SyncPolicy syncPolicy;
+    private final Object writeLock = new Object();
 
-        this.BaseDirectory = baseDirectory;
+    // The ring of queued readings. A producer claims a sequence by moving tail
+    // on while the ring has room, fills its slot, and then publishes the
+    // sequence in published. The writer, holding writeLock, reads the
+    // published slots from head on and only then moves head past them.
+    private final int[] patientIds;
+    private final long[] timestamps;
+    private final String[] labels; // Null for a typed reading
+    private final String[] data;
+    private final int[] labelCodes;
+    private final double[] values;
+    private final AtomicLongArray published; // The sequence each slot holds, -1 before its first
+    private final AtomicLong tail = new AtomicLong(); // The next sequence to claim, with CLOSED once closed
+    private volatile long head; // Written only by the writer
+
+    private final Map<String, FileChannel> channels = new HashMap<>(); // Guarded by writeLock
+    private final Map<String, StringBuilder> pending = new HashMap<>(); // Guarded by writeLock
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder() // Guarded by writeLock
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(64 * 1024); // Guarded by writeLock
+    private final Thread writer;
+    private final Thread shutdownHook;
+    private boolean filesClosed; // Guarded by writeLock
+
+    public FileOutputStrategy(String baseDirectory) {
+        this(baseDirectory, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS, SyncPolicy.NEVER);
     }
 
-    @Override
-    public void output(int patientId, long timestamp, String label, String data) {
+    /**
+     * Constructs a file output with custom batching and durability.
+     *
+     * @param baseDirectory       the directory the label files are written to
+     * @param batchSize           how many queued lines wake the writer early
+     * @param flushIntervalMillis the longest a line waits before it is written
+     * @param syncPolicy          when written lines are forced to the disk
+     */
+    public FileOutputStrategy(String baseDirectory, int batchSize, long flushIntervalMillis, SyncPolicy syncPolicy) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("batchSize must be at least 1: " + batchSize);
+
+        this.BaseDirectory = baseDirectory;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.syncPolicy = syncPolicy;
+        int capacity = (int) Math.min((long) batchSize * BACKLOG_BATCHES, Integer.MAX_VALUE - 8);
+        this.patientIds = new int[capacity];
+        this.timestamps = new long[capacity];
+        this.labels = new String[capacity];
+        this.data = new String[capacity];
+        this.labelCodes = new int[capacity];
+        this.values = new double[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++)
+            published.set(i, -1);
         try {
             // Create the directory
             Files.createDirectories(Paths.get(BaseDirectory));
         } catch (IOException e) {
             System.err.println("Error creating base directory: " + e.getMessage());
+        }
+
+        writer = new Thread(this::writeLoop, "file-output-writer");
+        writer.setDaemon(true);
+        writer.start();
+        shutdownHook = new Thread(this::close, "file-output-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    @Override
+    public void output(int patientId, long timestamp, String label, String data) {
+        queue(patientId, timestamp, label, data, -1, 0);
+    }
+
+    @Override
+    public void output(int patientId, long timestamp, int labelCode, double value) {
+        queue(patientId, timestamp, null, null, labelCode, value);
+    }
+
+    private void queue(int patientId, long timestamp, String label, String text, int labelCode, double value) {
+        long sequence;
+        while (true) {
+            sequence = tail.get();
+            if (sequence < 0) { // Closing sets CLOSED with a compare-and-set too, so no claim can follow it
+                System.err.println("Error writing to file for label "
+                        + (label != null ? label : RecordTypes.nameOf(labelCode)) + ": output is closed");
+                return;
+            }
+            if (sequence - head >= patientIds.length)
+                flush(); // The writer is behind; write on this thread rather than queue more
+            else if (tail.compareAndSet(sequence, sequence + 1))
+                break;
+        }
+        int slot = (int) (sequence % patientIds.length);
+        patientIds[slot] = patientId;
+        timestamps[slot] = timestamp;
+        labels[slot] = label;
+        data[slot] = text;
+        labelCodes[slot] = labelCode;
+        values[slot] = value;
+        published.lazySet(slot, sequence);
+        if (sequence + 1 - head == batchSize)
+            LockSupport.unpark(writer);
+    }
+
+    /**
+     * Writes every line queued so far, on the calling thread, and forces it to
+     * the disk if the sync policy is {@link SyncPolicy#EVERY_BATCH}.
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            writeQueued();
+        }
+    }
+
+    /**
+     * Writes every queued line, forces the files to the disk unless the sync
+     * policy is {@link SyncPolicy#NEVER}, and closes them. Readings output
+     * afterwards are dropped.
+     */
+    @Override
+    public void close() {
+        long claimed;
+        do {
+            claimed = tail.get();
+            if (claimed < 0)
+                return;
+        } while (!tail.compareAndSet(claimed, claimed | CLOSED));
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (writeLock) {
+            writeQueued();
+            while (head < claimed) { // Claimed before closing, but not yet published
+                Thread.yield();
+                writeQueued();
+            }
+            for (Map.Entry<String, FileChannel> entry : channels.entrySet()) {
+                try {
+                    if (syncPolicy != SyncPolicy.NEVER)
+                        entry.getValue().force(false);
+                    entry.getValue().close();
+                } catch (IOException e) {
+                    System.err.println("Error closing file " + file_map.get(entry.getKey()) + ": " + e.getMessage());
+                }
+            }
+            channels.clear();
+            filesClosed = true;
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down; this may be the hook itself
+        }
+    }
+
+    private void writeLoop() {
+        while (tail.get() >= 0) {
+            if (queued() < batchSize)
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            flush();
+        }
+    }
+
+    /**
+     * Groups the published lines by label and writes each label's lines,
+     * encoded into a reused buffer, with one write per 64 KB. Stops at the
+     * first slot claimed but not yet published, so lines are written in the
+     * order they were claimed. Must hold {@link #writeLock}.
+     */
+    private void writeQueued() {
+        long from = head;
+        long to = from;
+        long claimed = tail.get() & ~CLOSED;
+        while (to < claimed && published.get((int) (to % patientIds.length)) == to)
+            to++;
+        if (from == to)
             return;
+
+        for (long sequence = from; sequence < to; sequence++) {
+            int slot = (int) (sequence % patientIds.length);
+            String label = labels[slot] != null ? labels[slot] : RecordTypes.nameOf(labelCodes[slot]);
+            StringBuilder lines = pending.computeIfAbsent(label, k -> new StringBuilder());
+            lines.append("Patient ID: ").append(patientIds[slot]).append(", Timestamp: ").append(timestamps[slot])
+                    .append(", Label: ").append(label).append(", Data: ");
+            if (labels[slot] != null)
+                lines.append(data[slot]);
+            else
+                OutputStrategy.appendValue(lines, labelCodes[slot], values[slot]);
+            lines.append(System.lineSeparator());
+            labels[slot] = null;
+            data[slot] = null;
+        }
+        head = to; // Frees the slots for producers
+
+        for (Map.Entry<String, StringBuilder> entry : pending.entrySet()) {
+            StringBuilder lines = entry.getValue();
+            if (lines.length() == 0)
+                continue;
+            String label = entry.getKey();
+            try {
+                FileChannel channel = channel(label);
+                CharBuffer chars = CharBuffer.wrap(lines);
+                encoder.reset();
+                CoderResult result;
+                do {
+                    bytes.clear();
+                    result = encoder.encode(chars, bytes, true);
+                    bytes.flip();
+                    while (bytes.hasRemaining())
+                        channel.write(bytes);
+                } while (result.isOverflow());
+                if (syncPolicy == SyncPolicy.EVERY_BATCH)
+                    channel.force(false);
+            } catch (IOException e) {
+                System.err.println("Error writing to file " + file_map.get(label) + ": " + e.getMessage());
+            }
+            lines.setLength(0);
         }
-        // Set the FilePath variable
-        String FilePath = file_map.computeIfAbsent(label, k -> Paths.get(BaseDirectory, label + ".txt").toString());
+    }
+
+    private long queued() {
+        return (tail.get() & ~CLOSED) - head;
+    }
 
-        // Write the data to the file
-        try (PrintWriter out = new PrintWriter(
-                Files.newBufferedWriter(Paths.get(FilePath), StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
-            out.printf("Patient ID: %d, Timestamp: %d, Label: %s, Data: %s%n", patientId, timestamp, label, data);
-        } catch (Exception e) {
-            System.err.println("Error writing to file " + FilePath + ": " + e.getMessage());
+    private FileChannel channel(String label) throws IOException {
+        FileChannel channel = channels.get(label);
+        if (channel == null) {
+            if (filesClosed)
+                throw new IOException("output is closed");
+            // Set the FilePath variable
+            String FilePath = file_map.computeIfAbsent(label, k -> Paths.get(BaseDirectory, label + ".txt").toString());
+            channel = FileChannel.open(Paths.get(FilePath),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            channels.put(label, channel);
         }
+        return channel;
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,76 @@
 package com.cardio_generator.outputs;
 
+import com.data_management.RecordTypes;
+
+/**
+ * Receives the simulator's readings.
+ * <p>
+ * Generators call the typed {@link #output(int, long, int, double)}, with the
+ * label as a {@link RecordTypes} code and the value as a number, so no text is
+ * made for a reading unless the output writes text. Outputs that only
+ * implement the text {@link #output(int, long, String, String)} still receive
+ * every reading: the typed method formats it the way the generators used to,
+ * see {@link #formatValue}.
+ */
 public interface OutputStrategy {
+
+    /**
+     * Outputs a reading given as text.
+     *
+     * @param patientId the patient's ID
+     * @param timestamp the time of the reading in milliseconds
+     * @param label     the record type, e.g. {@code ECG}
+     * @param data      the value, e.g. {@code 0.53}, {@code 97.0%} or
+     *                  {@code triggered}
+     */
     void output(int patientId, long timestamp, String label, String data);
+
+    /**
+     * Outputs a reading given as a number. By default it is passed on as text
+     * to {@link #output(int, long, String, String)}; outputs that can use the
+     * number directly override this.
+     *
+     * @param patientId the patient's ID
+     * @param timestamp the time of the reading in milliseconds
+     * @param labelCode the record type, see {@link RecordTypes}
+     * @param value     the value; for alerts, 1 when triggered and 0 when
+     *                  resolved
+     */
+    default void output(int patientId, long timestamp, int labelCode, double value) {
+        output(patientId, timestamp, RecordTypes.nameOf(labelCode), formatValue(labelCode, value));
+    }
+
+    /**
+     * Formats a value as text outputs write it: saturation as a percentage,
+     * alerts as {@code triggered} or {@code resolved}, and anything else with
+     * {@link Double#toString(double)}. {@code RecordParser} reads each of these
+     * back to the same number.
+     */
+    static String formatValue(int labelCode, double value) {
+        switch (labelCode) {
+            case RecordTypes.SATURATION:
+                return value + "%";
+            case RecordTypes.ALERT:
+                return value != 0 ? "triggered" : "resolved";
+            default:
+                return Double.toString(value);
+        }
+    }
+
+    /**
+     * Appends a value the way {@link #formatValue} formats it, without
+     * creating a String.
+     *
+     * @return the builder
+     */
+    static StringBuilder appendValue(StringBuilder builder, int labelCode, double value) {
+        switch (labelCode) {
+            case RecordTypes.SATURATION:
+                return builder.append(value).append('%');
+            case RecordTypes.ALERT:
+                return builder.append(value != 0 ? "triggered" : "resolved");
+            default:
+                return builder.append(value);
+        }
+    }
 }
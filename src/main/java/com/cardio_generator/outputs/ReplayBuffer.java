@@ -0,0 +1,139 @@
+package com.cardio_generator.outputs;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The most recent readings output by {@link WebSocketOutputStrategy}, so a
+ * client that reconnects can ask for the ones it missed. Every reading gets
+ * the next sequence number; once the buffer is full, the oldest readings are
+ * overwritten. Not thread-safe.
+ */
+final class ReplayBuffer {
+
+    /**
+     * Receives buffered readings.
+     */
+    interface Visitor {
+        void visit(int patientId, long timestamp, String label, String data);
+    }
+
+    private final int[] patientIds;
+    private final long[] timestamps;
+    private final String[] labels;
+    private final String[] data;
+    private long next; // The sequence of the next reading
+
+    /**
+     * @param capacity how many readings are kept, or 0 to keep none
+     */
+    ReplayBuffer(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+
+        this.patientIds = new int[capacity];
+        this.timestamps = new long[capacity];
+        this.labels = new String[capacity];
+        this.data = new String[capacity];
+    }
+
+    /**
+     * Adds a reading, overwriting the oldest one if the buffer is full.
+     *
+     * @return the sequence number of the reading
+     */
+    long add(int patientId, long timestamp, String label, String data) {
+        long sequence = next++;
+        if (patientIds.length > 0) {
+            int slot = (int) (sequence % patientIds.length);
+            this.patientIds[slot] = patientId;
+            this.timestamps[slot] = timestamp;
+            this.labels[slot] = label;
+            this.data[slot] = data;
+        }
+        return sequence;
+    }
+
+    /**
+     * Returns the sequence number the next reading will get.
+     */
+    long nextSequence() {
+        return next;
+    }
+
+    /**
+     * Passes on the buffered readings, oldest first, in a range of sequence
+     * numbers that are newer than what the client has of the patient.
+     *
+     * @param from    the first sequence number to pass on
+     * @param before  the first sequence number not to pass on
+     * @param resume  the client's latest timestamps
+     * @param visitor receives the readings
+     * @return the number of readings passed on
+     */
+    int replay(long from, long before, Resume resume, Visitor visitor) {
+        int count = 0;
+        for (long sequence = Math.max(from, next - patientIds.length); sequence < Math.min(before, next); sequence++) {
+            int slot = (int) (sequence % patientIds.length);
+            if (timestamps[slot] > resume.after(patientIds[slot])) {
+                visitor.visit(patientIds[slot], timestamps[slot], labels[slot], data[slot]);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * What a reconnected client already has, as sent in a resume message:
+     * <pre>
+     * resume default=1700000005000 1=1700000004000 2=1700000005000
+     * </pre>
+     * For each listed patient, the timestamp of the latest reading the client
+     * has; for every other patient, the {@code default} timestamp.
+     */
+    static final class Resume {
+        /** For a client that has none of the readings */
+        static final Resume EVERYTHING = new Resume(Long.MIN_VALUE, Collections.emptyMap());
+
+        private final long defaultTimestamp;
+        private final Map<Integer, Long> timestamps;
+
+        private Resume(long defaultTimestamp, Map<Integer, Long> timestamps) {
+            this.defaultTimestamp = defaultTimestamp;
+            this.timestamps = timestamps;
+        }
+
+        /**
+         * Parses a resume message.
+         *
+         * @throws IllegalArgumentException if the message is not a valid resume
+         *                                  message
+         */
+        static Resume parse(String message) {
+            String[] parts = message.trim().split("\\s+");
+            if (!parts[0].equals("resume"))
+                throw new IllegalArgumentException("Not a resume message: " + message);
+
+            long defaultTimestamp = Long.MIN_VALUE;
+            Map<Integer, Long> timestamps = new HashMap<>();
+            for (int i = 1; i < parts.length; i++) {
+                int equals = parts[i].indexOf('=');
+                if (equals < 0)
+                    throw new IllegalArgumentException("Missing timestamp for " + parts[i] + ": " + message);
+                String key = parts[i].substring(0, equals);
+                long timestamp = Long.parseLong(parts[i].substring(equals + 1));
+                if (key.equals("default"))
+                    defaultTimestamp = timestamp;
+                else
+                    timestamps.put(Integer.parseInt(key), timestamp);
+            }
+            return new Resume(defaultTimestamp, timestamps);
+        }
+
+        long after(int patientId) {
+            Long timestamp = timestamps.get(patientId);
+            return timestamp != null ? timestamp : defaultTimestamp;
+        }
+    }
+}
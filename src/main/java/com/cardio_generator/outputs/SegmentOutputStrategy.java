@@ -0,0 +1,147 @@
+package com.cardio_generator.outputs;
+
+import com.data_management.RecordParser;
+import com.data_management.RecordTypes;
+import com.data_management.SegmentWriter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes every reading to {@code readings.seg} in a base directory, in the
+ * compressed segment format of {@link SegmentWriter}. The file can be loaded
+ * back with {@code FileDataReader} or, to load only some patients or a time
+ * range, {@code SegmentDataReader}.
+ * <p>
+ * Readings are buffered in memory and written as a segment once
+ * {@code segmentSize} readings are buffered or {@code sealIntervalMillis} has
+ * passed, whichever comes first. Larger segments compress better; the
+ * interval bounds how much is lost if the process dies. Values must be
+ * numeric, as with {@code FileDataReader}: a trailing {@code %} and the alert
+ * states {@code triggered} and {@code resolved} are accepted.
+ * <p>
+ * {@link #close()} writes the last segment and closes the file; it is also run
+ * on JVM shutdown.
+ */
+public class SegmentOutputStrategy implements OutputStrategy, AutoCloseable {
+
+    public static final String FILE_NAME = "readings.seg";
+    public static final int DEFAULT_SEGMENT_SIZE = 65536;
+    public static final long DEFAULT_SEAL_INTERVAL_MILLIS = 10_000;
+
+    private final Path file;
+    private final int segmentSize;
+    private final long sealIntervalNanos;
+    private final SegmentWriter writer; // Guarded by itself
+    private final Thread sealer;
+    private final Thread shutdownHook;
+    private volatile boolean closed;
+
+    public SegmentOutputStrategy(String baseDirectory) throws IOException {
+        this(baseDirectory, DEFAULT_SEGMENT_SIZE, DEFAULT_SEAL_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Constructs a segment output with a custom segment size.
+     *
+     * @param baseDirectory      the directory the segment file is written to
+     * @param segmentSize        how many readings fill a segment
+     * @param sealIntervalMillis the longest a reading stays buffered
+     * @throws IOException if the segment file cannot be opened
+     */
+    public SegmentOutputStrategy(String baseDirectory, int segmentSize, long sealIntervalMillis) throws IOException {
+        if (segmentSize < 1)
+            throw new IllegalArgumentException("segmentSize must be at least 1: " + segmentSize);
+
+        this.file = Paths.get(baseDirectory, FILE_NAME);
+        this.segmentSize = segmentSize;
+        this.sealIntervalNanos = TimeUnit.MILLISECONDS.toNanos(sealIntervalMillis);
+        this.writer = new SegmentWriter(file);
+
+        sealer = new Thread(this::sealLoop, "segment-output-sealer");
+        sealer.setDaemon(true);
+        sealer.start();
+        shutdownHook = new Thread(this::close, "segment-output-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    @Override
+    public void output(int patientId, long timestamp, String label, String data) {
+        double value;
+        try {
+            value = RecordParser.parseValue(data);
+        } catch (NumberFormatException e) {
+            System.err.println("Error writing to file " + file + ": not a numeric value for label " + label
+                    + ": " + data);
+            return;
+        }
+        output(patientId, timestamp, RecordTypes.codeOf(label), value);
+    }
+
+    @Override
+    public void output(int patientId, long timestamp, int labelCode, double value) {
+        synchronized (writer) {
+            if (closed) {
+                System.err.println("Error writing to file " + file + ": output is closed");
+                return;
+            }
+            writer.add(patientId, value, labelCode, timestamp);
+            if (writer.size() >= segmentSize)
+                writeSegment();
+        }
+    }
+
+    /**
+     * Writes the buffered readings as a segment, on the calling thread.
+     */
+    public void flush() {
+        synchronized (writer) {
+            if (!closed)
+                writeSegment();
+        }
+    }
+
+    /**
+     * Writes the buffered readings, forces the file to the disk and closes it.
+     * Readings output afterwards are dropped.
+     */
+    @Override
+    public void close() {
+        synchronized (writer) {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                writer.writeSegment();
+                writer.sync();
+                writer.close();
+            } catch (IOException e) {
+                System.err.println("Error closing file " + file + ": " + e.getMessage());
+            }
+        }
+        LockSupport.unpark(sealer);
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down; this may be the hook itself
+        }
+    }
+
+    private void sealLoop() {
+        while (!closed) {
+            LockSupport.parkNanos(this, sealIntervalNanos);
+            flush();
+        }
+    }
+
+    private void writeSegment() {
+        try {
+            writer.writeSegment();
+        } catch (IOException e) {
+            System.err.println("Error writing to file " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.cardio_generator.outputs;
+
+import com.data_management.DataStorage;
+import com.data_management.RecordParser;
+import com.data_management.RecordTypes;
+
+/**
+ * Adds every reading straight to a {@link DataStorage} in the same process,
+ * without formatting or sending it anywhere. Meant for filling storage with
+ * simulated history, e.g. from a {@code LoadGenerator}, to test alerts over
+ * long windows. Values must be numeric, as with {@code FileDataReader}: a
+ * trailing {@code %} and the alert states {@code triggered} and
+ * {@code resolved} are accepted.
+ */
+public class StorageOutputStrategy implements OutputStrategy {
+
+    private final DataStorage dataStorage;
+
+    public StorageOutputStrategy(DataStorage dataStorage) {
+        this.dataStorage = dataStorage;
+    }
+
+    @Override
+    public void output(int patientId, long timestamp, String label, String data) {
+        double value;
+        try {
+            value = RecordParser.parseValue(data);
+        } catch (NumberFormatException e) {
+            System.err.println("Error storing reading: not a numeric value for label " + label + ": " + data);
+            return;
+        }
+        dataStorage.addPatientData(patientId, value, RecordTypes.codeOf(label), timestamp);
+    }
+
+    @Override
+    public void output(int patientId, long timestamp, int labelCode, double value) {
+        dataStorage.addPatientData(patientId, value, labelCode, timestamp);
+    }
+}
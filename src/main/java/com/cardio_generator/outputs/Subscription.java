@@ -0,0 +1,93 @@
+package com.cardio_generator.outputs;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Which readings a WebSocket client wants, as sent in a subscription message:
+ * <pre>
+ * subscribe patients=1,2,3 labels=ECG,Saturation interval=1000
+ * </pre>
+ * Every part is optional: without {@code patients} the client gets every
+ * patient, without {@code labels} every label, and without {@code interval}
+ * every reading. With an interval, a patient's readings of one label are
+ * forwarded at most once per that many milliseconds of reading time.
+ */
+final class Subscription {
+
+    private final Set<Integer> patientIds; // Null for every patient
+    private final Set<String> labels; // Null for every label
+    private final long intervalMillis;
+
+    private Subscription(Set<Integer> patientIds, Set<String> labels, long intervalMillis) {
+        this.patientIds = patientIds;
+        this.labels = labels;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Parses a subscription message.
+     *
+     * @param message the message, starting with {@code subscribe}
+     * @return the subscription
+     * @throws IllegalArgumentException if the message is not a valid subscription
+     */
+    static Subscription parse(String message) {
+        String[] parts = message.trim().split("\\s+");
+        if (!parts[0].equals("subscribe"))
+            throw new IllegalArgumentException("Not a subscription: " + message);
+
+        Set<Integer> patientIds = null;
+        Set<String> labels = null;
+        long intervalMillis = 0;
+        for (int i = 1; i < parts.length; i++) {
+            int equals = parts[i].indexOf('=');
+            String key = equals < 0 ? parts[i] : parts[i].substring(0, equals);
+            String value = parts[i].substring(equals + 1);
+            if (equals < 0 || value.isEmpty())
+                throw new IllegalArgumentException("Missing value for " + key + ": " + message);
+
+            switch (key) {
+                case "patients":
+                    patientIds = new HashSet<>();
+                    for (String id : value.split(","))
+                        patientIds.add(Integer.parseInt(id));
+                    break;
+                case "labels":
+                    labels = new HashSet<>();
+                    Collections.addAll(labels, value.split(","));
+                    break;
+                case "interval":
+                    intervalMillis = Long.parseLong(value);
+                    if (intervalMillis < 0)
+                        throw new IllegalArgumentException("Negative interval: " + message);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown key " + key + ": " + message);
+            }
+        }
+        return new Subscription(patientIds, labels, intervalMillis);
+    }
+
+    /**
+     * Returns the patients subscribed to.
+     *
+     * @return the patient IDs, or null for every patient
+     */
+    Set<Integer> getPatientIds() {
+        return patientIds;
+    }
+
+    boolean acceptsPatient(int patientId) {
+        return patientIds == null || patientIds.contains(patientId);
+    }
+
+    boolean acceptsLabel(String label) {
+        return labels == null || labels.contains(label);
+    }
+
+    long getIntervalMillis() {
+        return intervalMillis;
+    }
+}
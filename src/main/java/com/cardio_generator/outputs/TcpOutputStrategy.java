@@ -1,32 +1,94 @@
 package com.cardio_generator.outputs;
 
+import com.data_management.RecordTypes;
+
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.concurrent.Executors;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams every reading to any number of TCP clients as a line,
+ * {@code patientId,timestamp,label,data}.
+ * <p>
+ * One selector thread accepts clients and writes to them; {@link #output}
+ * never touches a socket. A reading is encoded once and the same bytes are
+ * queued for every client, each in its own bounded buffer, and a client's
+ * queued lines are sent with gathering writes as its socket accepts them. A
+ * client that reads too slowly fills its buffer, and the {@link OverflowPolicy}
+ * decides what happens then; other clients are not affected unless the policy
+ * is {@link OverflowPolicy#BLOCK}.
+ * <p>
+ * How far each client is behind is available from {@link #getClientStats()}.
+ */
+public class TcpOutputStrategy implements OutputStrategy, AutoCloseable {
+
+    /**
+     * What {@link #output} does when a client's buffer is full.
+     */
+    public enum OverflowPolicy {
+        /** Drop the client's oldest unsent lines to make room; the client sees a gap */
+        DROP_OLDEST,
+        /** Disconnect the client; it may reconnect and start over */
+        DISCONNECT,
+        /** Wait until the client has read enough; one slow client slows every generator */
+        BLOCK
+    }
 
-public class TcpOutputStrategy implements OutputStrategy {
+    public static final int DEFAULT_CLIENT_BUFFER_BYTES = 1 << 20;
+    private static final int MAX_GATHERED_LINES = 64;
+    private static final ThreadLocal<StringBuilder> LINE = ThreadLocal.withInitial(StringBuilder::new);
 
-    private ServerSocket serverSocket;
-    private Socket clientSocket;
-    private PrintWriter out;
+    private final int clientBufferBytes;
+    private final OverflowPolicy overflowPolicy;
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+    private final ConcurrentLinkedQueue<Client> pendingWrites = new ConcurrentLinkedQueue<>();
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private volatile boolean closed;
 
     public TcpOutputStrategy(int port) {
+        this(port, DEFAULT_CLIENT_BUFFER_BYTES, OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Starts a TCP server with a custom buffer size and overflow policy.
+     *
+     * @param port              the port to listen on, or 0 for any free port
+     * @param clientBufferBytes how many bytes may be queued for each client
+     * @param overflowPolicy    what happens when a client's buffer is full
+     */
+    public TcpOutputStrategy(int port, int clientBufferBytes, OverflowPolicy overflowPolicy) {
+        if (clientBufferBytes < 1)
+            throw new IllegalArgumentException("clientBufferBytes must be at least 1: " + clientBufferBytes);
+
+        this.clientBufferBytes = clientBufferBytes;
+        this.overflowPolicy = overflowPolicy;
         try {
-            serverSocket = new ServerSocket(port);
-            System.out.println("TCP Server started on port " + port);
-
-            // Accept clients in a new thread to not block the main thread
-            Executors.newSingleThreadExecutor().submit(() -> {
-                try {
-                    clientSocket = serverSocket.accept();
-                    out = new PrintWriter(clientSocket.getOutputStream(), true);
-                    System.out.println("Client connected: " + clientSocket.getInetAddress());
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            });
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            System.out.println("TCP Server started on port " + getPort());
+
+            selectorThread = new Thread(this::selectLoop, "tcp-output-selector");
+            selectorThread.setDaemon(true);
+            selectorThread.start();
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -34,9 +96,339 @@ public class TcpOutputStrategy implements OutputStrategy {
 
     @Override
     public void output(int patientId, long timestamp, String label, String data) {
-        if (out != null) {
-            String message = String.format("%d,%d,%s,%s", patientId, timestamp, label, data);
-            out.println(message);
+        if (clients.isEmpty())
+            return;
+
+        offer((patientId + "," + timestamp + "," + label + "," + data + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Outputs a reading, formatted straight into the bytes that are queued.
+     */
+    @Override
+    public void output(int patientId, long timestamp, int labelCode, double value) {
+        if (clients.isEmpty())
+            return;
+
+        StringBuilder text = LINE.get();
+        text.setLength(0);
+        text.append(patientId).append(',').append(timestamp).append(',').append(RecordTypes.nameOf(labelCode))
+                .append(',');
+        OutputStrategy.appendValue(text, labelCode, value).append('\n');
+        byte[] bytes = new byte[text.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) { // Only a label can be outside ASCII
+                bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+                break;
+            }
+            bytes[i] = (byte) c;
+        }
+        offer(bytes);
+    }
+
+    private void offer(byte[] bytes) {
+        Line line = new Line(bytes, System.nanoTime());
+        for (Client client : clients)
+            client.offer(line);
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return the local port, or -1 if the server could not be started
+     */
+    public int getPort() {
+        return serverChannel != null && serverChannel.socket().isBound() ? serverChannel.socket().getLocalPort() : -1;
+    }
+
+    /**
+     * Returns how far behind each connected client is.
+     *
+     * @return one entry per connected client
+     */
+    public List<ClientStats> getClientStats() {
+        List<ClientStats> stats = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Client client : clients)
+            stats.add(client.stats(now));
+        return stats;
+    }
+
+    /**
+     * Disconnects every client and stops the server. Lines still queued are
+     * not sent.
+     */
+    @Override
+    public void close() {
+        if (closed || selector == null)
+            return;
+        closed = true;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Client client : clients)
+            client.disconnect(null);
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void selectLoop() {
+        ByteBuffer discard = ByteBuffer.allocate(4096);
+        while (!closed) {
+            try {
+                selector.select();
+                Client client;
+                while ((client = pendingWrites.poll()) != null)
+                    client.enableWrites();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    client = (Client) key.attachment();
+                    if (key.isReadable())
+                        client.read(discard);
+                    if (key.isValid() && key.isWritable())
+                        client.write();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Client client = new Client(channel);
+            client.key = channel.register(selector, SelectionKey.OP_READ, client);
+            clients.add(client);
+            System.out.println("Client connected: " + client.address);
+        }
+    }
+
+    /**
+     * An encoded line, shared by every client it is queued for.
+     */
+    private static final class Line {
+        final byte[] bytes;
+        final long createdNanos;
+
+        Line(byte[] bytes, long createdNanos) {
+            this.bytes = bytes;
+            this.createdNanos = createdNanos;
+        }
+    }
+
+    private final class Client {
+        final SocketChannel channel;
+        final String address;
+        SelectionKey key; // Only used by the selector thread
+        private final ArrayDeque<Line> queue = new ArrayDeque<>(); // Guarded by this
+        private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHERED_LINES]; // Only used by the selector thread
+        private int headOffset; // Bytes of the first queued line already sent
+        private int queuedBytes;
+        private long linesSent;
+        private long linesDropped;
+        private boolean disconnected;
+
+        Client(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.address = String.valueOf(channel.getRemoteAddress());
+        }
+
+        synchronized void offer(Line line) {
+            int length = line.bytes.length;
+            while (!disconnected && queuedBytes + length > clientBufferBytes && !queue.isEmpty()) {
+                if (overflowPolicy == OverflowPolicy.DISCONNECT) {
+                    linesDropped++; // The line that did not fit
+                    disconnect("its buffer is full");
+                } else if (overflowPolicy == OverflowPolicy.BLOCK) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        linesDropped++;
+                        return;
+                    }
+                } else if (!dropOldest()) {
+                    linesDropped++; // Only a partly sent line is left; drop the new one
+                    return;
+                }
+            }
+            if (disconnected)
+                return;
+
+            boolean wasEmpty = queue.isEmpty();
+            queue.add(line);
+            queuedBytes += length;
+            if (wasEmpty) {
+                pendingWrites.add(this);
+                selector.wakeup();
+            }
+        }
+
+        /**
+         * Drops the oldest line that has not started being sent.
+         *
+         * @return false if there is no such line
+         */
+        private boolean dropOldest() {
+            Line partlySent = headOffset > 0 ? queue.poll() : null;
+            Line oldest = queue.poll();
+            if (partlySent != null)
+                queue.addFirst(partlySent);
+            if (oldest == null)
+                return false;
+            queuedBytes -= oldest.bytes.length;
+            linesDropped++;
+            return true;
+        }
+
+        synchronized void enableWrites() {
+            if (!disconnected && key.isValid() && !queue.isEmpty())
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+
+        void read(ByteBuffer discard) {
+            try {
+                discard.clear();
+                if (channel.read(discard) < 0)
+                    disconnect(null);
+            } catch (IOException e) {
+                disconnect(null);
+            }
+        }
+
+        synchronized void write() {
+            int count = 0;
+            int offset = headOffset;
+            for (Line line : queue) {
+                gather[count++] = ByteBuffer.wrap(line.bytes, offset, line.bytes.length - offset);
+                offset = 0;
+                if (count == gather.length)
+                    break;
+            }
+            try {
+                long written = channel.write(gather, 0, count);
+                queuedBytes -= (int) written;
+            } catch (IOException e) {
+                disconnect(null);
+                return;
+            }
+
+            for (int i = 0; i < count; i++) {
+                if (gather[i].hasRemaining()) {
+                    headOffset = gather[i].position();
+                    break;
+                }
+                queue.poll();
+                headOffset = 0;
+                linesSent++;
+            }
+            Arrays.fill(gather, 0, count, null);
+            if (queue.isEmpty())
+                key.interestOps(SelectionKey.OP_READ);
+            notifyAll(); // Producers blocked on a full buffer
+        }
+
+        synchronized void disconnect(String reason) {
+            if (disconnected)
+                return;
+            disconnected = true;
+            clients.remove(this);
+            linesDropped += queue.size();
+            queue.clear();
+            queuedBytes = 0;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+            System.out.println("Client disconnected: " + address + (reason != null ? " (" + reason + ")" : ""));
+            notifyAll();
+        }
+
+        synchronized ClientStats stats(long now) {
+            Line oldest = queue.peek();
+            long lagNanos = oldest != null ? now - oldest.createdNanos : 0;
+            return new ClientStats(address, queue.size(), queuedBytes, linesSent, linesDropped,
+                    TimeUnit.NANOSECONDS.toMillis(lagNanos));
+        }
+    }
+
+    /**
+     * How far behind a client is, at the time {@link #getClientStats()} was
+     * called.
+     */
+    public static final class ClientStats {
+        private final String address;
+        private final int queuedLines;
+        private final int queuedBytes;
+        private final long linesSent;
+        private final long linesDropped;
+        private final long lagMillis;
+
+        ClientStats(String address, int queuedLines, int queuedBytes, long linesSent, long linesDropped,
+                long lagMillis) {
+            this.address = address;
+            this.queuedLines = queuedLines;
+            this.queuedBytes = queuedBytes;
+            this.linesSent = linesSent;
+            this.linesDropped = linesDropped;
+            this.lagMillis = lagMillis;
+        }
+
+        /** The client's remote address */
+        public String getAddress() {
+            return address;
+        }
+
+        /** Lines queued and not fully sent */
+        public int getQueuedLines() {
+            return queuedLines;
+        }
+
+        /** Bytes queued and not yet sent */
+        public int getQueuedBytes() {
+            return queuedBytes;
+        }
+
+        /** Lines sent since the client connected */
+        public long getLinesSent() {
+            return linesSent;
+        }
+
+        /** Lines dropped because the client's buffer was full, or still queued when it was disconnected */
+        public long getLinesDropped() {
+            return linesDropped;
+        }
+
+        /** How long the oldest queued line has been waiting, in milliseconds */
+        public long getLagMillis() {
+            return lagMillis;
+        }
+
+        @Override
+        public String toString() {
+            return address + ": " + queuedLines + " lines (" + queuedBytes + " bytes) queued, lag " + lagMillis
+                    + " ms, " + linesSent + " sent, " + linesDropped + " dropped";
         }
     }
 }
@@ -1,58 +1,726 @@
 package com.cardio_generator.outputs;
 
+import com.data_management.BinaryBatch;
+import com.data_management.RecordParser;
+import com.data_management.RecordTypes;
+
 import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.ServerHandshakeBuilder;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
 import org.java_websocket.server.WebSocketServer;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Streams every reading to all connected WebSocket clients as a line,
+ * {@code patientId,measurementValue,label,timestamp}, the format
+ * {@code WebSocketClientImpl} reads.
+ * <p>
+ * Readings are not sent one message each. They are collected for
+ * {@code batchIntervalMillis} and sent as one text message of
+ * newline-separated lines, which is encoded into a frame once and written to
+ * every connection with {@link WebSocketServer#broadcast(String, java.util.Collection)}.
+ * A batch that grows past {@link #MAX_BATCH_CHARS} is sent early. With a batch
+ * interval of 0, every reading is broadcast as soon as it is output.
+ * <p>
+ * With compression enabled, clients may negotiate permessage-deflate. Batches
+ * of readings compress well, but the extension compresses each connection's
+ * frames separately, so those connections cost one compression each; clients
+ * that do not negotiate it still share the encoded frame.
+ * <p>
+ * A client that only wants some readings sends a subscription message (see
+ * {@link Subscription}), for example
+ * {@code subscribe patients=1,2 labels=ECG,Saturation interval=1000}, and
+ * {@code unsubscribe} to get every reading again. Subscribed clients are kept
+ * in an index by patient, rebuilt whenever a subscription changes, so routing
+ * a reading only costs as much as the clients subscribed to its patient.
+ * Each of them gets its own batches.
+ * <p>
+ * A client that asks for the {@value BinaryBatch#PROTOCOL} subprotocol when
+ * it connects gets binary messages instead, each a {@link BinaryBatch} of the
+ * same readings, encoded once per batch like the text. Readings whose value
+ * is not a number are only sent as text.
+ * <p>
+ * The latest readings are kept in a {@link ReplayBuffer}. A new client gets
+ * every reading output after it sent its handshake, including those output
+ * before the server opened the connection on its side. A client that
+ * reconnects sends a resume message with the latest timestamp it has of each
+ * patient, e.g. {@code resume default=1700000005000 1=1700000004000}, and is
+ * sent the buffered readings it missed: those newer than its timestamps that
+ * were output before it started receiving live readings again, so none
+ * arrives twice. They arrive after the live readings sent in the meantime. A
+ * subscribed client gets only the ones it subscribed to.
+ */
+public class WebSocketOutputStrategy implements OutputStrategy, AutoCloseable {
 
-public class WebSocketOutputStrategy implements OutputStrategy {
+    public static final long DEFAULT_BATCH_INTERVAL_MILLIS = 20;
+    /** The size at which a batch is sent early, in characters or, for binary batches, bytes */
+    public static final int MAX_BATCH_CHARS = 64 * 1024;
+    public static final int DEFAULT_REPLAY_READINGS = 100_000;
+    private static final long START_TIMEOUT_SECONDS = 5;
 
     private WebSocketServer server;
+    private final long batchIntervalNanos;
+    private final Object batchLock = new Object();
+    private final Object sendLock = new Object();
+    private StringBuilder batch = new StringBuilder(); // Guarded by batchLock
+    private StringBuilder spare = new StringBuilder(); // Guarded by batchLock
+    private final BinaryBatch binaryBatch = new BinaryBatch(); // Guarded by batchLock
+    private final ReplayBuffer replay; // Guarded by batchLock
+    private long batchStart; // Sequence of the first reading of the pending batch, guarded by batchLock
+    private final AtomicLong replayed = new AtomicLong();
+    private final Thread batcher;
+    private final List<Subscriber> subscribers = new ArrayList<>(); // Guarded by itself
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger binaryConnections = new AtomicInteger();
+    private volatile Routes routes = new Routes(Collections.emptyList());
+    private volatile boolean closed;
 
     public WebSocketOutputStrategy(int port) {
-        server = new SimpleWebSocketServer(new InetSocketAddress(port));
+        this(port, DEFAULT_BATCH_INTERVAL_MILLIS, false);
+    }
+
+    /**
+     * Starts a WebSocket server with custom batching and compression, and
+     * waits until it listens or fails to start.
+     *
+     * @param port                the port to listen on
+     * @param batchIntervalMillis how long readings are collected into one
+     *                            message; 0 to send every reading at once
+     * @param compression         whether clients may negotiate permessage-deflate
+     */
+    public WebSocketOutputStrategy(int port, long batchIntervalMillis, boolean compression) {
+        this(port, batchIntervalMillis, compression, DEFAULT_REPLAY_READINGS);
+    }
+
+    /**
+     * Starts a WebSocket server with custom batching, compression and replay
+     * buffer, and waits until it listens or fails to start.
+     *
+     * @param port                the port to listen on
+     * @param batchIntervalMillis how long readings are collected into one
+     *                            message; 0 to send every reading at once
+     * @param compression         whether clients may negotiate permessage-deflate
+     * @param replayReadings      how many of the latest readings are kept for
+     *                            clients that reconnect
+     */
+    public WebSocketOutputStrategy(int port, long batchIntervalMillis, boolean compression, int replayReadings) {
+        this.replay = new ReplayBuffer(replayReadings);
+        this.batchIntervalNanos = TimeUnit.MILLISECONDS.toNanos(batchIntervalMillis);
+        List<IExtension> extensions = compression
+                ? Collections.singletonList(new PerMessageDeflateExtension())
+                : Collections.emptyList();
+        List<IProtocol> protocols = List.of(new Protocol(BinaryBatch.PROTOCOL), new Protocol(""));
+        List<Draft> drafts = Collections.singletonList(new Draft_6455(extensions, protocols));
+        SimpleWebSocketServer simpleServer = new SimpleWebSocketServer(new InetSocketAddress(port), drafts);
+        server = simpleServer;
+        server.setReuseAddr(true); // Closed connections linger in TIME_WAIT on the server's port
         System.out.println("WebSocket server created on port: " + port + ", listening for connections...");
         server.start();
+        simpleServer.awaitStart();
+
+        if (batchIntervalNanos > 0) {
+            batcher = new Thread(this::batchLoop, "websocket-output-batcher");
+            batcher.setDaemon(true);
+            batcher.start();
+        } else {
+            batcher = null;
+        }
     }
 
     @Override
     public void output(int patientId, long timestamp, String label, String data) {
-        String message = String.format("%d,%d,%s,%s", patientId, timestamp, label, data);
-        // Broadcast the message to all connected clients
+        if (closed)
+            return;
+        // Parsed outside the lock unless a binary client joins meanwhile
+        boolean parsed = binaryConnections.get() > 0;
+        output(patientId, timestamp, label, data, parsed, parsed ? parseValue(data) : Double.NaN);
+    }
+
+    /**
+     * Outputs a reading without parsing its value. The text is still made once,
+     * for the replay buffer and text clients.
+     */
+    @Override
+    public void output(int patientId, long timestamp, int labelCode, double value) {
+        if (closed)
+            return;
+        output(patientId, timestamp, RecordTypes.nameOf(labelCode), OutputStrategy.formatValue(labelCode, value), true,
+                value);
+    }
+
+    private void output(int patientId, long timestamp, String label, String data, boolean parsed, double value) {
+        if (batcher == null) {
+            synchronized (sendLock) { // Every reading reaches the clients in sequence order
+                long sequence;
+                Routes current;
+                byte[] frame = null;
+                boolean text;
+                int recordType;
+                synchronized (batchLock) {
+                    int binaryClients = binaryConnections.get();
+                    if (!parsed && binaryClients > 0)
+                        value = parseValue(data);
+                    recordType = Double.isNaN(value) ? -1 : RecordTypes.codeOf(label);
+                    sequence = replay.add(patientId, timestamp, label, data);
+                    batchStart = sequence + 1;
+                    current = routes;
+                    text = connections.get() - binaryClients > current.size - current.binarySize;
+                    if (recordType >= 0 && binaryClients > current.binarySize) {
+                        binaryBatch.add(patientId, recordType, timestamp, value);
+                        frame = binaryBatch.encode();
+                        binaryBatch.clear();
+                    }
+                }
+                offer(current, sequence, patientId, timestamp, label, data, recordType, value);
+                if (text || frame != null)
+                    broadcast(text ? patientId + "," + data + "," + label + "," + timestamp : null, frame, sequence);
+            }
+            return;
+        }
+
+        long sequence;
+        Routes current;
+        boolean full;
+        int recordType;
+        synchronized (batchLock) {
+            int binaryClients = binaryConnections.get();
+            if (!parsed && binaryClients > 0)
+                value = parseValue(data);
+            recordType = Double.isNaN(value) ? -1 : RecordTypes.codeOf(label);
+            sequence = replay.add(patientId, timestamp, label, data);
+            current = routes;
+            // Clients that have not subscribed get everything
+            if (connections.get() - binaryClients > current.size - current.binarySize) {
+                if (batch.length() > 0)
+                    batch.append('\n');
+                batch.append(patientId).append(',').append(data).append(',').append(label).append(',').append(timestamp);
+            }
+            if (recordType >= 0 && binaryClients > current.binarySize)
+                binaryBatch.add(patientId, recordType, timestamp, value);
+            full = batch.length() >= MAX_BATCH_CHARS || binaryBatch.byteSize() >= MAX_BATCH_CHARS;
+        }
+        offer(current, sequence, patientId, timestamp, label, data, recordType, value);
+        if (full)
+            flush();
+    }
+
+    /**
+     * Returns the value of a reading, or NaN if it is not a number and only
+     * text clients can receive it.
+     */
+    private static double parseValue(String data) {
+        try {
+            return RecordParser.parseValue(data);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static void offer(Routes current, long sequence, int patientId, long timestamp, String label, String data,
+            int recordType, double value) {
+        Subscriber[] forPatient = current.byPatient.get(patientId);
+        if (forPatient != null)
+            for (Subscriber subscriber : forPatient)
+                subscriber.offer(sequence, patientId, timestamp, label, data, recordType, value);
+        for (Subscriber subscriber : current.anyPatient)
+            subscriber.offer(sequence, patientId, timestamp, label, data, recordType, value);
+    }
+
+    /**
+     * Sends the readings collected so far, on the calling thread.
+     */
+    public void flush() {
+        for (Subscriber subscriber : routes.all)
+            subscriber.flush();
+        flushShared(null);
+    }
+
+    /**
+     * Sends the pending shared batch. A switchover, if given, runs under
+     * batchLock once the batch is taken, so a client can start or stop
+     * receiving readings exactly at the next batch.
+     */
+    private void flushShared(Runnable switchover) {
+        synchronized (sendLock) { // Batches are sent in the order they were collected
+            String message = null;
+            byte[] frame = null;
+            long start;
+            synchronized (batchLock) {
+                start = batchStart;
+                batchStart = replay.nextSequence();
+                if (batch.length() > 0) {
+                    message = batch.toString();
+                    StringBuilder sent = batch;
+                    batch = spare;
+                    spare = sent;
+                    spare.setLength(0);
+                }
+                if (!binaryBatch.isEmpty()) {
+                    frame = binaryBatch.encode();
+                    binaryBatch.clear();
+                }
+                if (switchover != null)
+                    switchover.run();
+            }
+            if (message != null || frame != null)
+                broadcast(message, frame, start);
+        }
+    }
+
+    /**
+     * Returns how many readings have been resent to clients that reconnected.
+     *
+     * @return the number of replayed readings
+     */
+    public long getReplayedReadings() {
+        return replayed.get();
+    }
+
+    /**
+     * Returns how many clients are connected.
+     *
+     * @return the number of open connections
+     */
+    public int getConnectionCount() {
+        return connections.get();
+    }
+
+    /**
+     * Returns how many clients have subscribed to some readings only.
+     *
+     * @return the number of subscribed clients
+     */
+    public int getSubscriberCount() {
+        return routes.size;
+    }
+
+    /**
+     * Sends the readings collected so far and stops the server.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        if (batcher != null) {
+            LockSupport.unpark(batcher);
+            try {
+                batcher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+        try {
+            server.stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void batchLoop() {
+        while (!closed) {
+            LockSupport.parkNanos(this, batchIntervalNanos);
+            flush();
+        }
+    }
+
+    /**
+     * Replaces a client's subscription, or removes it if the subscription is
+     * null, and rebuilds the routing index.
+     */
+    private void subscribe(WebSocket conn, Subscription subscription) {
+        Client client = conn.getAttachment();
+        synchronized (subscribers) {
+            Subscriber previous = client.subscriber;
+            boolean subscribing = subscription != null && conn.isOpen();
+            synchronized (sendLock) { // The connection is switched before any later batch is sent
+                flushShared(() -> {
+                    if (previous != null)
+                        subscribers.remove(previous);
+                    if (subscribing) {
+                        client.subscriber = new Subscriber(conn, subscription, replay.nextSequence());
+                        subscribers.add(client.subscriber);
+                    } else {
+                        client.subscriber = null;
+                        if (previous != null && conn.isOpen())
+                            client.liveFrom = batchStart; // Back to every reading
+                    }
+                    routes = new Routes(subscribers);
+                });
+                if (subscribing)
+                    client.liveFrom = -1;
+            }
+            if (previous != null)
+                previous.flush();
+        }
+    }
+
+    /**
+     * Starts sending live readings to a client that has just connected, and
+     * sends it the readings output since it sent its handshake.
+     */
+    private void join(WebSocket conn) {
+        Client client = conn.getAttachment();
+        boolean binary = isBinary(conn);
+        synchronized (sendLock) { // Before any later batch
+            flushShared(() -> {
+                connections.incrementAndGet();
+                if (binary)
+                    binaryConnections.incrementAndGet();
+                client.liveFrom = batchStart;
+            });
+            // The client may have seen the handshake complete, and expect them
+            sendReplay(conn, client.handshakeAt, client.liveFrom, ReplayBuffer.Resume.EVERYTHING);
+        }
+    }
+
+    /**
+     * Sends a reconnected client the buffered readings it missed.
+     */
+    private void resume(WebSocket conn, ReplayBuffer.Resume resume) {
+        Client client = conn.getAttachment();
+        Subscriber subscriber = client.subscriber;
+        if (subscriber != null) {
+            int count;
+            synchronized (batchLock) {
+                count = replay.replay(0, client.handshakeAt, resume, (patientId, timestamp, label, data) -> {
+                    if (!subscriber.subscription.acceptsPatient(patientId))
+                        return;
+                    double value = subscriber.binary ? parseValue(data) : Double.NaN;
+                    int recordType = Double.isNaN(value) ? -1 : RecordTypes.codeOf(label);
+                    subscriber.offer(-1, patientId, timestamp, label, data, recordType, value);
+                });
+            }
+            subscriber.flush();
+            replayed.addAndGet(count);
+            return;
+        }
+
+        synchronized (sendLock) { // Before any later batch
+            replayed.addAndGet(sendReplay(conn, 0, client.handshakeAt, resume));
+        }
+    }
+
+    /**
+     * Sends buffered readings to one client that gets every reading, in
+     * messages of up to {@link #MAX_BATCH_CHARS}, or one per reading when not
+     * batching. Called with sendLock held.
+     *
+     * @return the number of readings sent
+     */
+    private int sendReplay(WebSocket conn, long from, long before, ReplayBuffer.Resume resume) {
+        boolean binary = isBinary(conn);
+        int maxSize = batcher == null ? 0 : MAX_BATCH_CHARS;
+        List<Object> messages = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        BinaryBatch frames = new BinaryBatch();
+        int count;
+        synchronized (batchLock) {
+            count = replay.replay(from, before, resume, (patientId, timestamp, label, data) -> {
+                if (binary) {
+                    double value = parseValue(data);
+                    if (Double.isNaN(value))
+                        return;
+                    frames.add(patientId, RecordTypes.codeOf(label), timestamp, value);
+                    if (frames.byteSize() >= maxSize) {
+                        messages.add(frames.encode());
+                        frames.clear();
+                    }
+                } else {
+                    if (text.length() > 0)
+                        text.append('\n');
+                    text.append(patientId).append(',').append(data).append(',').append(label).append(',').append(timestamp);
+                    if (text.length() >= maxSize) {
+                        messages.add(text.toString());
+                        text.setLength(0);
+                    }
+                }
+            });
+        }
+        if (text.length() > 0)
+            messages.add(text.toString());
+        if (!frames.isEmpty())
+            messages.add(frames.encode());
+        for (Object message : messages) {
+            if (message instanceof String)
+                send(conn, (String) message);
+            else
+                send(conn, (byte[]) message);
+        }
+        return count;
+    }
+
+    /**
+     * Sends the text message to the text clients and the binary frame to the
+     * binary clients, either of which may be null. Each is encoded into a
+     * WebSocket frame once for every connection that shares it; only
+     * connections that compress get their own. Subscribed connections are
+     * skipped, and so are connections that started receiving live readings
+     * after the first one of the batch.
+     */
+    private void broadcast(String message, byte[] frame, long start) {
+        List<WebSocket> sharedText = new ArrayList<>();
+        List<WebSocket> sharedBinary = new ArrayList<>();
         for (WebSocket conn : server.getConnections()) {
+            Client client = conn.getAttachment();
+            if (client == null || client.liveFrom < 0 || client.liveFrom > start)
+                continue;
+            boolean binary = isBinary(conn);
+            if (binary ? frame == null : message == null)
+                continue;
+            if (isCompressed(conn)) {
+                if (binary)
+                    send(conn, frame);
+                else
+                    send(conn, message);
+            } else {
+                (binary ? sharedBinary : sharedText).add(conn);
+            }
+        }
+        if (!sharedText.isEmpty())
+            server.broadcast(message, sharedText);
+        if (!sharedBinary.isEmpty())
+            server.broadcast(frame, sharedBinary);
+    }
+
+    private static void send(WebSocket conn, String message) {
+        try {
             conn.send(message);
+        } catch (WebsocketNotConnectedException e) {
+            // Closed meanwhile
+        }
+    }
+
+    private static void send(WebSocket conn, byte[] frame) {
+        try {
+            conn.send(frame);
+        } catch (WebsocketNotConnectedException e) {
+            // Closed meanwhile
+        }
+    }
+
+    private static boolean isBinary(WebSocket conn) {
+        IProtocol protocol = conn.getProtocol();
+        return protocol != null && BinaryBatch.PROTOCOL.equals(protocol.getProvidedProtocol());
+    }
+
+    private static boolean isCompressed(WebSocket conn) {
+        Draft draft = conn.getDraft();
+        return draft instanceof Draft_6455 && ((Draft_6455) draft).getExtension() instanceof PerMessageDeflateExtension;
+    }
+
+    /**
+     * The subscribed clients, indexed by the patients they subscribed to.
+     * Never modified; a new one replaces it when a subscription changes.
+     */
+    private static final class Routes {
+        final Subscriber[] all;
+        final Map<Integer, Subscriber[]> byPatient = new HashMap<>();
+        final Subscriber[] anyPatient;
+        final int size;
+        final int binarySize;
+
+        Routes(List<Subscriber> subscribers) {
+            all = subscribers.toArray(new Subscriber[0]);
+            size = all.length;
+            Map<Integer, List<Subscriber>> lists = new HashMap<>();
+            List<Subscriber> any = new ArrayList<>();
+            int binary = 0;
+            for (Subscriber subscriber : all) {
+                if (subscriber.binary)
+                    binary++;
+                if (subscriber.subscription.getPatientIds() == null) {
+                    any.add(subscriber);
+                    continue;
+                }
+                for (Integer patientId : subscriber.subscription.getPatientIds())
+                    lists.computeIfAbsent(patientId, id -> new ArrayList<>()).add(subscriber);
+            }
+            lists.forEach((patientId, list) -> byPatient.put(patientId, list.toArray(new Subscriber[0])));
+            anyPatient = any.toArray(new Subscriber[0]);
+            binarySize = binary;
+        }
+    }
+
+    /**
+     * What the server knows of one connection, attached to it.
+     */
+    private static final class Client {
+        final long handshakeAt; // Earlier readings are only sent when it resumes
+        volatile long liveFrom = -1; // From which shared batch it gets every reading, or -1
+        volatile Subscriber subscriber; // Changed while holding subscribers and batchLock
+
+        Client(long handshakeAt) {
+            this.handshakeAt = handshakeAt;
+        }
+    }
+
+    /**
+     * A subscribed client with its own batch.
+     */
+    private final class Subscriber {
+        final WebSocket conn;
+        final Subscription subscription;
+        final boolean binary;
+        final long liveFrom; // Earlier readings can only be replayed
+        private final StringBuilder batch = new StringBuilder(); // Guarded by this
+        private final BinaryBatch binaryBatch = new BinaryBatch(); // Guarded by this
+        private final Map<Integer, Map<String, long[]>> lastSent = new HashMap<>(); // Guarded by this
+
+        Subscriber(WebSocket conn, Subscription subscription, long liveFrom) {
+            this.conn = conn;
+            this.subscription = subscription;
+            this.binary = isBinary(conn);
+            this.liveFrom = liveFrom;
+        }
+
+        /**
+         * Adds a reading to the batch if the subscription wants it.
+         *
+         * @param sequence the reading's sequence number, or -1 if it is replayed
+         */
+        void offer(long sequence, int patientId, long timestamp, String label, String data, int recordType,
+                double value) {
+            if ((sequence >= 0 && sequence < liveFrom) || !subscription.acceptsLabel(label)
+                    || (binary && recordType < 0))
+                return;
+            synchronized (this) {
+                long interval = subscription.getIntervalMillis();
+                if (interval > 0) {
+                    long[] last = lastSent.computeIfAbsent(patientId, id -> new HashMap<>())
+                            .computeIfAbsent(label, l -> new long[] {Long.MIN_VALUE});
+                    if (last[0] != Long.MIN_VALUE && timestamp - last[0] < interval)
+                        return;
+                    last[0] = timestamp;
+                }
+                int size;
+                if (binary) {
+                    binaryBatch.add(patientId, recordType, timestamp, value);
+                    size = binaryBatch.byteSize();
+                } else {
+                    if (batch.length() > 0)
+                        batch.append('\n');
+                    batch.append(patientId).append(',').append(data).append(',').append(label).append(',').append(timestamp);
+                    size = batch.length();
+                }
+                if (batchIntervalNanos == 0 || size >= MAX_BATCH_CHARS)
+                    flush();
+            }
+        }
+
+        synchronized void flush() {
+            if (binary && !binaryBatch.isEmpty()) {
+                send(conn, binaryBatch.encode());
+                binaryBatch.clear();
+            } else if (batch.length() > 0) {
+                send(conn, batch.toString());
+                batch.setLength(0);
+            }
         }
     }
 
-    private static class SimpleWebSocketServer extends WebSocketServer {
+    private class SimpleWebSocketServer extends WebSocketServer {
+        private final CountDownLatch started = new CountDownLatch(1);
 
-        public SimpleWebSocketServer(InetSocketAddress address) {
-            super(address);
+        public SimpleWebSocketServer(InetSocketAddress address, List<Draft> drafts) {
+            super(address, drafts);
+        }
+
+        /**
+         * Waits until the server listens or has failed to start, so clients
+         * may connect as soon as the strategy has been constructed.
+         */
+        void awaitStart() {
+            try {
+                if (!started.await(START_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                    System.err.println("WebSocket server did not start within " + START_TIMEOUT_SECONDS + " seconds");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Notes which readings were output before the client could know it is
+         * connected, as the response is sent before {@link #onOpen} is called.
+         */
+        @Override
+        public ServerHandshakeBuilder onWebsocketHandshakeReceivedAsServer(WebSocket conn, Draft draft,
+                ClientHandshake request) throws InvalidDataException {
+            ServerHandshakeBuilder response = super.onWebsocketHandshakeReceivedAsServer(conn, draft, request);
+            synchronized (batchLock) {
+                conn.setAttachment(new Client(replay.nextSequence()));
+            }
+            return response;
         }
 
         @Override
-        public void onOpen(WebSocket conn, org.java_websocket.handshake.ClientHandshake handshake) {
+        public void onOpen(WebSocket conn, ClientHandshake handshake) {
             System.out.println("New connection: " + conn.getRemoteSocketAddress());
+            join(conn);
         }
 
         @Override
         public void onClose(WebSocket conn, int code, String reason, boolean remote) {
             System.out.println("Closed connection: " + conn.getRemoteSocketAddress());
+            connections.decrementAndGet();
+            if (isBinary(conn))
+                binaryConnections.decrementAndGet();
+            Client client = conn.getAttachment();
+            client.liveFrom = -1;
+            if (client.subscriber != null)
+                subscribe(conn, null);
         }
 
+        /**
+         * Handles {@code subscribe ...}, {@code unsubscribe} and
+         * {@code resume ...} messages.
+         */
         @Override
         public void onMessage(WebSocket conn, String message) {
-            // Not used in this context
+            String trimmed = message.trim();
+            try {
+                if (trimmed.equals("unsubscribe"))
+                    subscribe(conn, null);
+                else if (trimmed.startsWith("resume"))
+                    resume(conn, ReplayBuffer.Resume.parse(trimmed));
+                else
+                    subscribe(conn, Subscription.parse(trimmed));
+            } catch (IllegalArgumentException e) { // Includes NumberFormatException
+                System.err.println("Invalid message from " + conn.getRemoteSocketAddress() + ": " + e.getMessage());
+            }
         }
 
         @Override
         public void onError(WebSocket conn, Exception ex) {
             ex.printStackTrace();
+            if (conn == null)
+                started.countDown(); // The server itself failed, e.g. the port is taken
         }
 
         @Override
         public void onStart() {
             System.out.println("Server started successfully");
+            started.countDown();
         }
     }
 }
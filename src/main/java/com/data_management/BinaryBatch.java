@@ -0,0 +1,216 @@
+package com.data_management;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A batch of readings in the binary WebSocket protocol, {@value #PROTOCOL},
+ * which a client asks for when it connects and the server uses instead of
+ * text lines. Readings are sent as they are stored, so the values are never
+ * formatted as decimals and parsed again.
+ * <p>
+ * A frame is a version byte, the labels used in the frame (a varint count,
+ * then each as a varint length and UTF-8 bytes), a varint reading count and
+ * the timestamp of the first reading as a long, followed by the readings:
+ * varint patient ID, varint index into the frame's labels, zigzag varint
+ * difference to the previous reading's timestamp, and the value as a double.
+ * Every frame stands alone, so one encoded frame can be sent to every binary
+ * client.
+ * <p>
+ * A batch is filled with {@link #add} and turned into a frame with
+ * {@link #encode()}; frames are read back with {@link #decode}. A batch is not
+ * thread-safe.
+ */
+public final class BinaryBatch {
+
+    /** The WebSocket subprotocol name of the binary protocol */
+    public static final String PROTOCOL = "cardio-binary-v1";
+
+    private static final byte VERSION = 1;
+
+    private byte[] readings = new byte[4096];
+    private int position;
+    private int count;
+    private long firstTimestamp;
+    private long lastTimestamp;
+    private int[] labelIndexes = new int[0]; // By record type code, index + 1 in this batch
+    private int[] labels = new int[8]; // Record type codes by index in this batch
+    private int labelCount;
+
+    /**
+     * Adds a reading to the batch.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param recordType       the record type code, see {@link RecordTypes}
+     * @param timestamp        the time of the reading, in milliseconds since
+     *                         the Unix epoch
+     * @param measurementValue the value of the reading
+     */
+    public void add(int patientId, int recordType, long timestamp, double measurementValue) {
+        if (recordType >= labelIndexes.length)
+            labelIndexes = Arrays.copyOf(labelIndexes, Math.max(recordType + 1, RecordTypes.count()));
+        int index = labelIndexes[recordType] - 1;
+        if (index < 0) {
+            if (labelCount == labels.length)
+                labels = Arrays.copyOf(labels, labelCount * 2);
+            index = labelCount++;
+            labels[index] = recordType;
+            labelIndexes[recordType] = index + 1;
+        }
+        if (count == 0) {
+            firstTimestamp = timestamp;
+            lastTimestamp = timestamp;
+        }
+
+        ensureCapacity(5 + 5 + 10 + 8);
+        writeVarint(patientId & 0xFFFFFFFFL);
+        writeVarint(index);
+        long delta = timestamp - lastTimestamp;
+        writeVarint((delta << 1) ^ (delta >> 63));
+        long bits = Double.doubleToRawLongBits(measurementValue);
+        for (int shift = 56; shift >= 0; shift -= 8)
+            readings[position++] = (byte) (bits >>> shift);
+        lastTimestamp = timestamp;
+        count++;
+    }
+
+    /**
+     * Returns the number of readings in the batch.
+     *
+     * @return the number of readings
+     */
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Returns roughly how many bytes the encoded frame will take.
+     *
+     * @return the encoded size of the readings, without the labels
+     */
+    public int byteSize() {
+        return position;
+    }
+
+    /**
+     * Encodes the readings added since the batch was last cleared.
+     *
+     * @return the frame
+     */
+    public byte[] encode() {
+        byte[][] names = new byte[labelCount][];
+        int size = 1 + 5 + 5 + 8 + position;
+        for (int i = 0; i < labelCount; i++) {
+            names[i] = RecordTypes.nameOf(labels[i]).getBytes(StandardCharsets.UTF_8);
+            size += 5 + names[i].length;
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(size);
+        frame.put(VERSION);
+        putVarint(frame, labelCount);
+        for (byte[] name : names) {
+            putVarint(frame, name.length);
+            frame.put(name);
+        }
+        putVarint(frame, count);
+        frame.putLong(firstTimestamp);
+        frame.put(readings, 0, position);
+        return Arrays.copyOf(frame.array(), frame.position());
+    }
+
+    /**
+     * Empties the batch so it can be filled again.
+     */
+    public void clear() {
+        for (int i = 0; i < labelCount; i++)
+            labelIndexes[labels[i]] = 0;
+        labelCount = 0;
+        position = 0;
+        count = 0;
+    }
+
+    /**
+     * Reads the readings of a frame.
+     *
+     * @param frame    the frame, from its position to its limit
+     * @param listener receives every reading, with the record type codes of
+     *                 this process
+     * @return the number of readings read
+     * @throws IllegalArgumentException if the frame is malformed or of an
+     *                                  unknown version
+     */
+    public static int decode(ByteBuffer frame, RecordListener listener) {
+        try {
+            byte version = frame.get();
+            if (version != VERSION)
+                throw new IllegalArgumentException("Unknown binary protocol version: " + version);
+
+            int[] codes = new int[getLength(frame)];
+            for (int i = 0; i < codes.length; i++) {
+                byte[] name = new byte[getLength(frame)];
+                frame.get(name);
+                codes[i] = RecordTypes.codeOf(new String(name, StandardCharsets.UTF_8));
+            }
+            int count = getLength(frame);
+            long timestamp = frame.getLong();
+            for (int i = 0; i < count; i++) {
+                int patientId = (int) getVarint(frame);
+                int recordType = codes[(int) getVarint(frame)];
+                long zigzag = getVarint(frame);
+                timestamp += (zigzag >>> 1) ^ -(zigzag & 1);
+                listener.onRecord(patientId, frame.getDouble(), recordType, timestamp);
+            }
+            return count;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed binary frame", e);
+        }
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (position + bytes > readings.length)
+            readings = Arrays.copyOf(readings, Math.max(readings.length * 2, position + bytes));
+    }
+
+    private void writeVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            readings[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        readings[position++] = (byte) value;
+    }
+
+    private static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads a count or length, which cannot be more than the bytes left.
+     */
+    private static int getLength(ByteBuffer buffer) {
+        long length = getVarint(buffer);
+        if (length > buffer.remaining())
+            throw new IllegalArgumentException("Malformed binary frame: length " + length);
+        return (int) length;
+    }
+
+    private static long getVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
@@ -0,0 +1,105 @@
+package com.data_management;
+
+/**
+ * Reads the bit fields written by {@link BitWriter} from a byte array.
+ * Reading past the end throws an {@link IllegalStateException}, as it means
+ * the data is corrupt.
+ */
+final class BitReader {
+    private final byte[] bytes;
+    private final int limit;
+    private int position;
+    private long buffer; // Bits read from the array but not yet consumed, right-aligned
+    private int bufferBits;
+
+    BitReader(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * Reads {@code count} bits as the lowest bits of the result.
+     *
+     * @param count the number of bits, from 0 to 64
+     * @return the bits read
+     */
+    long readBits(int count) {
+        if (count > 32) {
+            long high = readBits(count - 32);
+            return (high << 32) | readBits(32);
+        }
+        while (bufferBits < count) {
+            buffer = (buffer << 8) | (nextByte() & 0xFF);
+            bufferBits += 8;
+        }
+        bufferBits -= count;
+        long value = (buffer >>> bufferBits) & BitWriter.mask(count);
+        buffer &= BitWriter.mask(bufferBits);
+        return value;
+    }
+
+    boolean readBit() {
+        return readBits(1) != 0;
+    }
+
+    /**
+     * Skips the unread bits of the current byte.
+     */
+    void align() {
+        buffer = 0;
+        bufferBits = 0;
+    }
+
+    int readByte() {
+        align();
+        return nextByte();
+    }
+
+    int readInt() {
+        align();
+        return (int) readBits(32);
+    }
+
+    long readLong() {
+        align();
+        return readBits(64);
+    }
+
+    long readVarint() {
+        align();
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = nextByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new IllegalStateException("Malformed variable-length integer");
+    }
+
+    byte[] readBytes(int length) {
+        align();
+        if (length < 0 || length > limit - position)
+            throw new IllegalStateException("Unexpected end of data");
+        byte[] result = new byte[length];
+        System.arraycopy(bytes, position, result, 0, length);
+        position += length;
+        return result;
+    }
+
+    /**
+     * Returns the index of the next unread byte, after skipping the unread
+     * bits of the current byte.
+     */
+    int position() {
+        align();
+        return position;
+    }
+
+    private byte nextByte() {
+        if (position >= limit)
+            throw new IllegalStateException("Unexpected end of data");
+        return bytes[position++];
+    }
+}
@@ -0,0 +1,124 @@
+package com.data_management;
+
+import java.util.Arrays;
+
+/**
+ * Appends bit fields, most significant bit first, to a growable byte array.
+ * Byte-oriented writes first pad the current byte with zero bits.
+ */
+final class BitWriter {
+    private byte[] bytes = new byte[1024];
+    private int size;
+    private long pending; // Bits not yet written out, right-aligned
+    private int pendingBits;
+
+    /**
+     * Writes the lowest {@code count} bits of a value.
+     *
+     * @param value the bits to write
+     * @param count the number of bits, from 0 to 64
+     */
+    void writeBits(long value, int count) {
+        if (count > 32) {
+            writeBits(value >>> 32, count - 32);
+            value &= 0xFFFF_FFFFL;
+            count = 32;
+        }
+        pending = (pending << count) | (value & mask(count));
+        pendingBits += count;
+        while (pendingBits >= 8) {
+            pendingBits -= 8;
+            put((byte) (pending >>> pendingBits));
+        }
+        pending &= mask(pendingBits);
+    }
+
+    void writeBit(boolean bit) {
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * Pads the current byte with zero bits.
+     */
+    void align() {
+        if (pendingBits > 0)
+            writeBits(0, 8 - pendingBits);
+    }
+
+    void writeByte(int value) {
+        align();
+        put((byte) value);
+    }
+
+    void writeInt(int value) {
+        align();
+        writeBits(value, 32);
+    }
+
+    void writeLong(long value) {
+        align();
+        writeBits(value, 64);
+    }
+
+    /**
+     * Writes a non-negative value in 7-bit groups, low group first.
+     */
+    void writeVarint(long value) {
+        align();
+        while ((value & ~0x7FL) != 0) {
+            put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        put((byte) value);
+    }
+
+    void writeBytes(byte[] values) {
+        align();
+        ensureCapacity(values.length);
+        System.arraycopy(values, 0, bytes, size, values.length);
+        size += values.length;
+    }
+
+    /**
+     * Appends everything written to another writer, padded to whole bytes.
+     */
+    void writeTo(BitWriter other) {
+        align();
+        other.align();
+        other.ensureCapacity(size);
+        System.arraycopy(bytes, 0, other.bytes, other.size, size);
+        other.size += size;
+    }
+
+    /**
+     * Returns the number of whole bytes written; bits of an unfinished byte
+     * are not counted until {@link #align()}.
+     */
+    int size() {
+        return size;
+    }
+
+    byte[] array() {
+        return bytes;
+    }
+
+    void clear() {
+        size = 0;
+        pending = 0;
+        pendingBits = 0;
+    }
+
+    private void put(byte value) {
+        ensureCapacity(1);
+        bytes[size++] = value;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length << 1, size + extra));
+    }
+
+    static long mask(int count) {
+        return count == 64 ? -1L : (1L << count) - 1;
+    }
+}
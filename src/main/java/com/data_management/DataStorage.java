@@ -1,32 +1,56 @@
 package com.data_management;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import com.alerts.AlertGenerator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import com.alerts.Alert;
+import com.alerts.AlertEvaluationScheduler;
 
 /**
  * Manages storage and retrieval of patient data within a healthcare monitoring
  * system.
  * This class serves as a repository for all patient records, organized by
  * patient IDs.
+ * It is safe for concurrent use: readings can be ingested from socket threads
+ * while other threads retrieve records and evaluate alerts.
  */
 public class DataStorage {
-    private Map<Integer, Patient> patientMap; // Stores patient objects indexed by their unique patient ID.
-    private static DataStorage instance;
+    private final ConcurrentHashMap<Integer, Patient> patientMap; // Stores patient objects indexed by their unique patient ID.
+    private final RetentionPolicy retentionPolicy;
+    private final List<RecordListener> listeners = new CopyOnWriteArrayList<>();
+
     /**
      * Constructs a new instance of DataStorage, initializing the underlying storage
-     * structure.
+     * structure. Every reading is kept.
      */
     public DataStorage() {
-        this.patientMap = new HashMap<>();
+        this(new RetentionPolicy());
     }
-    public static DataStorage getInstance() {
-        if (instance == null)
-            instance = new DataStorage();
 
-        return instance;
+    /**
+     * Constructs a new instance of DataStorage whose patient histories are
+     * limited by a retention policy, so memory stays flat under steady load.
+     *
+     * @param retentionPolicy decides how long readings of each type are kept
+     */
+    public DataStorage(RetentionPolicy retentionPolicy) {
+        this.patientMap = new ConcurrentHashMap<>();
+        this.retentionPolicy = retentionPolicy;
+    }
+
+    private static class InstanceHolder {
+        private static final DataStorage INSTANCE = new DataStorage();
+    }
+
+    /**
+     * Returns the shared storage instance. The holder class is initialized on
+     * first use, which the JVM guarantees to happen exactly once.
+     *
+     * @return the shared storage instance
+     */
+    public static DataStorage getInstance() {
+        return InstanceHolder.INSTANCE;
     }
     /**
      * Adds or updates patient data in the storage.
@@ -42,12 +66,45 @@ public class DataStorage {
      *                         milliseconds since the Unix epoch
      */
     public void addPatientData(int patientId, double measurementValue, String recordType, long timestamp) {
+        addPatientData(patientId, measurementValue, RecordTypes.codeOf(recordType), timestamp);
+    }
+
+    /**
+     * Adds patient data using an already interned record type code, avoiding the
+     * label lookup on the ingestion path.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param measurementValue the value of the health metric being recorded
+     * @param recordType       the record type code, see {@link RecordTypes}
+     * @param timestamp        the time at which the measurement was taken, in
+     *                         milliseconds since the Unix epoch
+     */
+    public void addPatientData(int patientId, double measurementValue, int recordType, long timestamp) {
         Patient patient = patientMap.get(patientId);
-        if (patient == null) {
-            patient = new Patient(patientId);
-            patientMap.put(patientId, patient);
-        }
+        if (patient == null)
+            patient = patientMap.computeIfAbsent(patientId, id -> new Patient(id, retentionPolicy));
+
         patient.addRecord(measurementValue, recordType, timestamp);
+        for (RecordListener listener : listeners)
+            listener.onRecord(patientId, measurementValue, recordType, timestamp);
+    }
+
+    /**
+     * Registers a listener that is called for every reading added from now on.
+     *
+     * @param listener the listener to register
+     */
+    public void addRecordListener(RecordListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener added with {@link #addRecordListener}.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeRecordListener(RecordListener listener) {
+        listeners.remove(listener);
     }
 
     /**
@@ -71,6 +128,26 @@ public class DataStorage {
         return new ArrayList<>(); // return an empty list if no patient is found
     }
 
+    /**
+     * Retrieves the records of a single type for a specific patient, filtered by
+     * a time range.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the type of record, e.g., "ECG"
+     * @param startTime  the start of the time range, in milliseconds since the Unix
+     *                   epoch
+     * @param endTime    the end of the time range, in milliseconds since the Unix
+     *                   epoch
+     * @return a list of PatientRecord objects of that type within the time range
+     */
+    public List<PatientRecord> getRecords(int patientId, String recordType, long startTime, long endTime) {
+        Patient patient = patientMap.get(patientId);
+        if (patient != null) {
+            return patient.getRecords(recordType, startTime, endTime);
+        }
+        return new ArrayList<>();
+    }
+
     /**
      * Retrieves a collection of all patients stored in the data storage.
      *
@@ -105,16 +182,10 @@ public class DataStorage {
                     ", Timestamp: " + record.getTimestamp());
         }
 
-        // Initialize the AlertGenerator with the storage
-        AlertGenerator alertGenerator = new AlertGenerator(storage);
-
-        // Evaluate all patients' data to check for conditions that may trigger alerts
-        try {
-            for (Patient patient : storage.getAllPatients()) {
-                alertGenerator.evaluateData(patient);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+        // Evaluate all patients' data in parallel to check for conditions that may trigger alerts
+        for (Alert alert : new AlertEvaluationScheduler(storage).evaluateAll()) {
+            System.out.println("Triggered alert for patient with ID: " + alert.getPatientId() +
+                    "\nCondition: " + alert.getCondition());
         }
     }
 }
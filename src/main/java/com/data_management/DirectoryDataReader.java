@@ -0,0 +1,297 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads the output directory of {@code FileOutputStrategy}, which holds one
+ * {@code <label>.txt} file per record type. Lines may be in the strategy's
+ * {@code Patient ID: ..., Timestamp: ..., Label: ..., Data: ...} format or in
+ * the plain format of {@link FileDataReader}; see {@link RecordParser}.
+ * <p>
+ * Every file is read and parsed on its own thread into blocks of readings,
+ * which are handed over through a small bounded queue, so memory does not
+ * grow with the size of the files. The calling thread merges the blocks of
+ * all files by timestamp into the storage. Each file is usually in timestamp
+ * order already, so the storage receives readings in order.
+ * <p>
+ * The reader remembers how far it has read each file. A later call to
+ * {@link #readData(DataStorage)} only reads what has been appended since, like
+ * {@code tail -f}. A line that is still being written, without its line
+ * separator, is left for the next call. If a call fails, the offsets still
+ * advance past every reading that reached the storage, so the next call does
+ * not add them again.
+ */
+public class DirectoryDataReader implements DataReader {
+    private static final String COMMAND = "--output file:";
+    private static final String EXTENSION = ".txt";
+    private static final int BLOCK_SIZE = 4096;
+    private static final int QUEUED_BLOCKS = 4;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path directory;
+    private final Map<Path, Long> offsets = new HashMap<>();
+
+    /**
+     * Constructs a reader for the given output directory.
+     *
+     * @param directory the directory passed to {@code FileOutputStrategy}; a
+     *                  leading {@code --output file:} is ignored
+     */
+    public DirectoryDataReader(String directory) {
+        if (directory.startsWith(COMMAND))
+            directory = directory.substring(COMMAND.length());
+        this.directory = Paths.get(directory);
+    }
+
+    /**
+     * Returns how many bytes of a file have been read so far.
+     *
+     * @param fileName the name of a file in the directory, e.g. {@code ECG.txt}
+     * @return the offset of the first unread byte
+     */
+    public synchronized long getOffset(String fileName) {
+        return offsets.getOrDefault(directory.resolve(fileName), 0L);
+    }
+
+    @Override
+    public synchronized void readData(DataStorage dataStorage) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : stream)
+                if (Files.isRegularFile(file))
+                    files.add(file);
+        }
+        if (files.isEmpty())
+            return;
+        files.sort(null); // Ties in the merge are broken by file order
+
+        List<FileStream> streams = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++)
+            streams.add(new FileStream(files.get(i), i, offsets.getOrDefault(files.get(i), 0L)));
+
+        ExecutorService executor = Executors.newFixedThreadPool(streams.size());
+        try {
+            for (FileStream stream : streams)
+                executor.execute(stream);
+            merge(streams, dataStorage);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + directory, e);
+        } finally {
+            executor.shutdownNow();
+            for (FileStream stream : streams)
+                offsets.put(stream.file, stream.stored);
+        }
+    }
+
+    @Override
+    public void readData(DataStorage dataStorage, String websocketUrl) {
+
+    }
+
+    /**
+     * Repeatedly takes the reading with the smallest timestamp among the
+     * current blocks of all files. The files are kept in a binary heap
+     * ordered by the timestamp of their next reading.
+     */
+    private static void merge(List<FileStream> streams, DataStorage dataStorage) throws IOException, InterruptedException {
+        FileStream[] heap = new FileStream[streams.size()];
+        int size = 0;
+        for (FileStream stream : streams)
+            if (stream.advance())
+                heap[size++] = stream;
+        for (int i = size / 2 - 1; i >= 0; i--)
+            siftDown(heap, i, size);
+
+        while (size > 0) {
+            FileStream first = heap[0];
+            Block block = first.current;
+            int i = first.index;
+            dataStorage.addPatientData(block.patientIds[i], block.values[i], block.recordTypes[i], block.timestamps[i]);
+            first.stored = block.ends[i];
+
+            if (!first.advance())
+                heap[0] = heap[--size];
+            siftDown(heap, 0, size);
+        }
+    }
+
+    private static void siftDown(FileStream[] heap, int index, int size) {
+        FileStream stream = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && heap[child + 1].before(heap[child]))
+                child++;
+            if (!heap[child].before(stream))
+                break;
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = stream;
+    }
+
+    /**
+     * A batch of parsed readings, in columns, with the file offset just after
+     * the line of each.
+     */
+    private static final class Block {
+        static final Block END = new Block(0);
+
+        final int[] patientIds;
+        final long[] timestamps;
+        final double[] values;
+        final int[] recordTypes;
+        final long[] ends;
+        int size;
+        long end; // Offset just after the last line the block covers, parsed or not
+        IOException error;
+
+        Block(int capacity) {
+            patientIds = new int[capacity];
+            timestamps = new long[capacity];
+            values = new double[capacity];
+            recordTypes = new int[capacity];
+            ends = new long[capacity];
+        }
+    }
+
+    /**
+     * Reads one file from an offset up to the end of its last complete line,
+     * producing blocks for the merge. The merge side walks the blocks with
+     * {@link #advance()}.
+     */
+    private static final class FileStream implements Runnable {
+        final Path file;
+        final int order;
+        final BlockingQueue<Block> blocks = new ArrayBlockingQueue<>(QUEUED_BLOCKS);
+        final long offset;
+
+        Block current;
+        int index = -1;
+        long stored; // Offset just after the last line whose reading is in storage
+
+        FileStream(Path file, int order, long offset) {
+            this.file = file;
+            this.order = order;
+            this.offset = offset;
+            this.stored = offset;
+        }
+
+        /**
+         * Moves to the next reading, waiting for the reading thread if needed.
+         *
+         * @return false once every reading of the file has been consumed
+         */
+        boolean advance() throws IOException, InterruptedException {
+            if (current != null && ++index < current.size)
+                return true;
+            while (true) {
+                if (current != null)
+                    stored = current.end; // Including unparsed lines after its last reading
+                current = blocks.take();
+                if (current.error != null)
+                    throw current.error;
+                if (current == Block.END)
+                    return false;
+                if (current.size > 0) {
+                    index = 0;
+                    return true;
+                }
+            }
+        }
+
+        boolean before(FileStream other) {
+            long timestamp = current.timestamps[index];
+            long otherTimestamp = other.current.timestamps[other.index];
+            return timestamp < otherTimestamp || (timestamp == otherTimestamp && order < other.order);
+        }
+
+        @Override
+        public void run() {
+            try {
+                read();
+                blocks.put(Block.END);
+            } catch (IOException | NumberFormatException e) {
+                Block failed = new Block(0);
+                failed.error = e instanceof IOException ? (IOException) e
+                        : new IOException("An error occurred in readData(DataStorage) while reading from file "
+                                + file + ": " + e.getMessage());
+                // Only this thread adds blocks, so once cleared the queue has room
+                blocks.clear();
+                blocks.offer(failed);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void read() throws IOException, InterruptedException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long end = channel.size();
+                long position = offset;
+                if (position > end)
+                    position = 0; // The file was truncated or replaced; read it again
+                channel.position(position);
+
+                RecordParser parser = new RecordParser();
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                Block block = new Block(BLOCK_SIZE);
+                long consumed = position; // Offset just after the last complete line
+
+                while (position < end) {
+                    int read = channel.read(buffer);
+                    if (read < 0)
+                        break;
+                    position += read;
+                    buffer.flip();
+
+                    int lineStart = 0;
+                    for (int i = 0; i < buffer.limit(); i++) {
+                        if (buffer.get(i) != '\n')
+                            continue;
+                        int lineEnd = i > lineStart && buffer.get(i - 1) == '\r' ? i - 1 : i;
+                        if (parser.parse(buffer, lineStart, lineEnd)) {
+                            int n = block.size++;
+                            block.patientIds[n] = parser.getPatientId();
+                            block.timestamps[n] = parser.getTimestamp();
+                            block.values[n] = parser.getMeasurementValue();
+                            block.recordTypes[n] = parser.getRecordType();
+                            block.ends[n] = consumed + i + 1;
+                            if (block.size == BLOCK_SIZE) {
+                                block.end = consumed + i + 1;
+                                blocks.put(block);
+                                block = new Block(BLOCK_SIZE);
+                            }
+                        }
+                        lineStart = i + 1;
+                    }
+
+                    consumed += lineStart;
+                    buffer.position(lineStart);
+                    buffer.compact();
+                    if (!buffer.hasRemaining()) // A single line fills the buffer
+                        buffer = ByteBuffer.wrap(Arrays.copyOf(buffer.array(), buffer.capacity() << 1), buffer.capacity(), buffer.capacity());
+                }
+                block.end = consumed;
+                blocks.put(block);
+            }
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package com.data_management;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A {@link DataStorage} that survives restarts. Every reading added is
+ * appended to a write-ahead log in a directory, and a compact snapshot of all
+ * retained readings is written periodically, so the history the alert
+ * strategies look back on is back as soon as the storage is reopened.
+ * <p>
+ * The log is group-committed: readings are buffered and a background thread
+ * writes and forces everything that arrived every {@code commitIntervalMillis},
+ * with one write and one sync however many readings that is. Adding a reading
+ * therefore never waits for the disk, and at most the last commit interval is
+ * lost if the machine fails. {@link #commit()} makes everything added so far
+ * durable on the calling thread.
+ * <p>
+ * A snapshot is a file in the segment format of {@link SegmentWriter} that
+ * replaces all log files before it, which are then deleted. Taking one pauses
+ * ingestion only for as long as it takes to copy the retained readings in
+ * memory; they are compressed and written afterwards.
+ * <p>
+ * On construction, the storage recovers by loading the latest snapshot and
+ * replaying the log files written after it. A commit cut short by a crash
+ * is detected by its checksum and ignored.
+ */
+public class DurableDataStorage extends DataStorage implements Closeable {
+    public static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 10;
+    public static final long DEFAULT_SNAPSHOT_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final int MAX_PENDING_BYTES = 1 << 20;
+    private static final int SNAPSHOT_SEGMENT_READINGS = 1 << 20;
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".seg";
+    private static final String LOG_PREFIX = "wal-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final Path directory;
+    // Readers add readings and log them; the writer cuts the log for a snapshot
+    private final ReentrantReadWriteLock cut = new ReentrantReadWriteLock();
+    private final Object snapshotLock = new Object();
+    private final long commitIntervalNanos;
+    private final WriteAheadLog log;
+    private final Thread committer;
+    private final ScheduledExecutorService snapshotter;
+    private final Thread shutdownHook;
+    private volatile boolean closed;
+    private long recoveredReadings;
+
+    /**
+     * Opens a durable storage that keeps every reading, recovering the
+     * readings stored in the directory before.
+     *
+     * @param directory the directory holding the log and snapshots
+     * @throws IOException if the directory cannot be created or recovered
+     */
+    public DurableDataStorage(String directory) throws IOException {
+        this(directory, new RetentionPolicy());
+    }
+
+    /**
+     * Opens a durable storage whose histories are limited by a retention
+     * policy, recovering the readings stored in the directory before.
+     *
+     * @param directory       the directory holding the log and snapshots
+     * @param retentionPolicy decides how long readings of each type are kept
+     * @throws IOException if the directory cannot be created or recovered
+     */
+    public DurableDataStorage(String directory, RetentionPolicy retentionPolicy) throws IOException {
+        this(directory, retentionPolicy, DEFAULT_COMMIT_INTERVAL_MILLIS, DEFAULT_SNAPSHOT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Opens a durable storage with custom commit and snapshot intervals.
+     *
+     * @param directory              the directory holding the log and snapshots
+     * @param retentionPolicy        decides how long readings of each type are kept
+     * @param commitIntervalMillis   the longest a reading waits to be committed
+     * @param snapshotIntervalMillis how often a snapshot is taken; 0 or less to
+     *                               only take them with {@link #snapshot()}
+     * @throws IOException if the directory cannot be created or recovered
+     */
+    public DurableDataStorage(String directory, RetentionPolicy retentionPolicy, long commitIntervalMillis,
+            long snapshotIntervalMillis) throws IOException {
+        super(retentionPolicy);
+        if (commitIntervalMillis < 1)
+            throw new IllegalArgumentException("commitIntervalMillis must be at least 1: " + commitIntervalMillis);
+
+        this.directory = Paths.get(directory);
+        this.commitIntervalNanos = TimeUnit.MILLISECONDS.toNanos(commitIntervalMillis);
+        Files.createDirectories(this.directory);
+        long next = recover();
+        this.log = new WriteAheadLog(this.directory, next);
+
+        committer = new Thread(this::commitLoop, "wal-committer");
+        committer.setDaemon(true);
+        committer.start();
+        if (snapshotIntervalMillis > 0) {
+            snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "storage-snapshotter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshotter.scheduleWithFixedDelay(this::snapshotQuietly, snapshotIntervalMillis, snapshotIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            snapshotter = null;
+        }
+        shutdownHook = new Thread(this::closeQuietly, "durable-storage-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Adds a reading to memory and to the log.
+     *
+     * @throws IllegalStateException if the storage has been closed
+     */
+    @Override
+    public void addPatientData(int patientId, double measurementValue, int recordType, long timestamp) {
+        if (log == null) {
+            // Recovering; the reading is already durable
+            super.addPatientData(patientId, measurementValue, recordType, timestamp);
+            return;
+        }
+        int pending;
+        cut.readLock().lock();
+        try {
+            if (closed)
+                throw new IllegalStateException("Storage is closed");
+            super.addPatientData(patientId, measurementValue, recordType, timestamp);
+            pending = log.append(patientId, measurementValue, recordType, timestamp);
+        } finally {
+            cut.readLock().unlock();
+        }
+        if (pending >= MAX_PENDING_BYTES)
+            commitQuietly(); // The committer is behind; commit on this thread rather than buffer more
+    }
+
+    /**
+     * Writes and forces every reading added so far to the log.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    public void commit() throws IOException {
+        log.commit();
+    }
+
+    /**
+     * Writes a snapshot of all retained readings and deletes the log files and
+     * snapshots it replaces.
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void snapshot() throws IOException {
+        synchronized (snapshotLock) {
+            long sequence;
+            List<Integer> patientIds = new ArrayList<>();
+            List<Integer> recordTypes = new ArrayList<>();
+            List<SegmentWriter.Series> copies = new ArrayList<>();
+            cut.writeLock().lock();
+            try {
+                if (closed)
+                    throw new IllegalStateException("Storage is closed");
+                // Everything stored so far is in the log files before the new one, and in the copies
+                sequence = log.sequence() + 1;
+                log.rotate(sequence);
+                for (Patient patient : getAllPatients()) {
+                    RecordSeries[] series = patient.getAllSeries();
+                    for (int recordType = 0; recordType < series.length; recordType++) {
+                        SegmentWriter.Series copy = series[recordType] != null ? series[recordType].copy() : null;
+                        if (copy != null) {
+                            patientIds.add(patient.getPatientId());
+                            recordTypes.add(recordType);
+                            copies.add(copy);
+                        }
+                    }
+                }
+            } finally {
+                cut.writeLock().unlock();
+            }
+
+            Path snapshot = snapshotFile(sequence);
+            Path temporary = snapshot.resolveSibling(snapshot.getFileName() + TEMPORARY_SUFFIX);
+            Files.deleteIfExists(temporary);
+            try (SegmentWriter writer = new SegmentWriter(temporary)) {
+                for (int i = 0; i < copies.size(); i++) {
+                    writer.add(patientIds.get(i), recordTypes.get(i), copies.get(i));
+                    copies.set(i, null);
+                    if (writer.size() >= SNAPSHOT_SEGMENT_READINGS)
+                        writer.writeSegment();
+                }
+                writer.writeSegment();
+                writer.sync();
+            }
+            Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+
+            for (long older : sequences(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX))
+                if (older < sequence)
+                    Files.deleteIfExists(snapshotFile(older));
+            for (long older : sequences(LOG_PREFIX, LOG_SUFFIX))
+                if (older < sequence)
+                    Files.deleteIfExists(WriteAheadLog.file(directory, older));
+        }
+    }
+
+    /**
+     * Returns the number of readings loaded from the snapshot and log when the
+     * storage was opened.
+     *
+     * @return the number of recovered readings
+     */
+    public long getRecoveredReadings() {
+        return recoveredReadings;
+    }
+
+    /**
+     * Commits the readings added so far and closes the log. Adding readings
+     * afterwards throws an {@link IllegalStateException}; stored readings can
+     * still be retrieved.
+     *
+     * @throws IOException if the log cannot be committed or closed
+     */
+    @Override
+    public void close() throws IOException {
+        cut.writeLock().lock();
+        try {
+            if (closed)
+                return;
+            closed = true;
+        } finally {
+            cut.writeLock().unlock();
+        }
+        if (snapshotter != null)
+            snapshotter.shutdown();
+        LockSupport.unpark(committer);
+        try {
+            committer.join();
+            if (snapshotter != null)
+                snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (snapshotLock) {
+            log.close();
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down; this may be the hook itself
+        }
+    }
+
+    /**
+     * Loads the latest snapshot and replays the log files written since, then
+     * removes files a crash left behind and empty log files.
+     *
+     * @return the sequence number for the next log file
+     */
+    private long recover() throws IOException {
+        List<Long> snapshots = sequences(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        List<Long> logs = sequences(LOG_PREFIX, LOG_SUFFIX);
+        long latest = snapshots.isEmpty() ? 0 : snapshots.get(snapshots.size() - 1);
+        long[] count = new long[1];
+        RecordListener counter = (patientId, value, recordType, timestamp) -> count[0]++;
+        addRecordListener(counter);
+        try {
+            if (latest > 0)
+                new SegmentDataReader(snapshotFile(latest).toString()).readData(this);
+            for (long sequence : logs)
+                if (sequence >= latest)
+                    WriteAheadLog.replay(WriteAheadLog.file(directory, sequence), super::addPatientData);
+        } finally {
+            removeRecordListener(counter);
+        }
+        recoveredReadings = count[0];
+
+        try (DirectoryStream<Path> temporary = Files.newDirectoryStream(directory, "*" + TEMPORARY_SUFFIX)) {
+            for (Path file : temporary)
+                Files.deleteIfExists(file);
+        }
+        long next = latest + 1;
+        for (long sequence : snapshots)
+            if (sequence < latest)
+                Files.deleteIfExists(snapshotFile(sequence));
+        for (long sequence : logs) {
+            Path file = WriteAheadLog.file(directory, sequence);
+            if (sequence < latest || Files.size(file) == 0)
+                Files.deleteIfExists(file);
+            next = Math.max(next, sequence + 1);
+        }
+        return next;
+    }
+
+    private List<Long> sequences(String prefix, String suffix) throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    sequences.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        Collections.sort(sequences);
+        return sequences;
+    }
+
+    private Path snapshotFile(long sequence) {
+        return directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, sequence, SNAPSHOT_SUFFIX));
+    }
+
+    private void commitLoop() {
+        while (!closed) {
+            LockSupport.parkNanos(this, commitIntervalNanos);
+            commitQuietly();
+        }
+    }
+
+    private void commitQuietly() {
+        try {
+            log.commit();
+        } catch (IOException e) {
+            System.err.println("Error writing to the log in " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            if (!closed)
+                snapshot();
+        } catch (IOException | IllegalStateException e) {
+            System.err.println("Error writing a snapshot to " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            System.err.println("Error closing the log in " + directory + ": " + e.getMessage());
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.data_management;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Paths;
 
 public class FileDataReader implements DataReader {
 
@@ -15,18 +16,18 @@ public class FileDataReader implements DataReader {
     public void readData(DataStorage dataStorage) throws IOException{
         if (fileLocation.startsWith(COMMAND))
             fileLocation = fileLocation.substring(COMMAND.length());
+        if (SegmentDataReader.isSegmentFile(Paths.get(fileLocation))) {
+            new SegmentDataReader(fileLocation).readData(dataStorage);
+            return;
+        }
 
         try (BufferedReader br = new BufferedReader(new FileReader(fileLocation))) {
+            RecordParser parser = new RecordParser();
             String line;
             while ((line = br.readLine()) != null) {
-                String[] patientData = line.split(",");
-                if (patientData.length == 4) {
-                    int patientID = Integer.parseInt(patientData[0]);
-                    double measurementValue = Double.parseDouble(patientData[1]);
-                    String recordType = patientData[2];
-                    long timestamp = Long.parseLong(patientData[3]);
-                    dataStorage.addPatientData(patientID, measurementValue, recordType, timestamp);
-                }
+                if (parser.parse(line))
+                    dataStorage.addPatientData(parser.getPatientId(), parser.getMeasurementValue(),
+                            parser.getRecordType(), parser.getTimestamp());
             }
         } catch (Exception e) {
             throw new IOException("An error occurred in readData(DataStorage) while reading from file: " + e.getMessage());
@@ -0,0 +1,566 @@
+package com.data_management;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Takes received messages off the socket thread. {@link #offer} only puts the
+ * raw message into a bounded ring and returns; parsing, storing and alerting
+ * happen on other threads, so a slow {@link DataStorage} or alert check does
+ * not stop the socket from being read.
+ * <p>
+ * The work is split in stages:
+ * <ol>
+ * <li>The ring holds text messages, in the line format {@link RecordParser}
+ * reads, and {@link BinaryBatch} frames. It is lock-free: producers claim a
+ * slot with a compare-and-set and publish it with an ordered write.</li>
+ * <li>Each of the workers owns the patients whose ID modulo the number of
+ * workers is its index. Every worker reads every message, skips the readings
+ * of other patients after looking at their patient ID, and parses and stores
+ * its own. A patient's readings are therefore stored by one thread, in the
+ * order they were received.</li>
+ * <li>If a downstream listener is given, such as a
+ * {@code StreamingAlertEvaluator}, each worker hands the readings it stored
+ * to its own downstream thread through a second bounded ring, which calls the
+ * listener in the same order.</li>
+ * </ol>
+ * When a ring is full, the stage feeding it waits, so a stage that falls
+ * behind eventually slows the socket down instead of using more memory.
+ * {@link #getStats()} reports how much is queued and how long each stage
+ * takes.
+ */
+public final class IngestionPipeline implements AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    private static final int SPINS = 64;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final DataStorage storage;
+    private final RecordListener downstream;
+    private final RecordListener onStored; // Called by the worker that stored a reading, or null
+    private final Object[] messages;
+    private final long[] offeredNanos;
+    private final AtomicLongArray published; // The sequence last published in each slot
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong(); // The next sequence to claim
+    private volatile long gatingSequence; // Cached lowest worker sequence
+    private final Worker[] workers;
+    private volatile boolean closed;
+
+    /**
+     * Starts a pipeline with one worker per two processors and a ring of
+     * {@value #DEFAULT_CAPACITY} messages.
+     *
+     * @param storage    where the readings are stored
+     * @param downstream receives every stored reading, or null for none
+     */
+    public IngestionPipeline(DataStorage storage, RecordListener downstream) {
+        this(storage, downstream, Math.max(1, Runtime.getRuntime().availableProcessors() / 2), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Starts a pipeline with a custom number of workers and ring size.
+     *
+     * @param storage    where the readings are stored
+     * @param downstream receives every stored reading, or null for none
+     * @param workers    how many threads parse and store readings
+     * @param capacity   how many messages may be queued, rounded up to a power
+     *                   of two; each downstream ring holds 16 times as many
+     *                   readings
+     */
+    public IngestionPipeline(DataStorage storage, RecordListener downstream, int workers, int capacity) {
+        this(storage, downstream, null, workers, capacity);
+    }
+
+    /**
+     * Starts a pipeline that also tells {@code onStored} of every reading, on
+     * the worker that stored it, before the next one is stored.
+     */
+    IngestionPipeline(DataStorage storage, RecordListener downstream, RecordListener onStored, int workers,
+            int capacity) {
+        if (workers < 1)
+            throw new IllegalArgumentException("workers must be at least 1: " + workers);
+        if (capacity < 1 || capacity > 1 << 24)
+            throw new IllegalArgumentException("capacity must be between 1 and 2^24: " + capacity);
+
+        this.storage = storage;
+        this.downstream = downstream;
+        this.onStored = onStored;
+        int size = 1;
+        while (size < capacity)
+            size <<= 1;
+        this.messages = new Object[size];
+        this.offeredNanos = new long[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+            published.set(i, -1);
+        this.mask = size - 1;
+
+        this.workers = new Worker[workers];
+        for (int i = 0; i < workers; i++)
+            this.workers[i] = new Worker(i, size * 16);
+        for (Worker worker : this.workers) {
+            worker.start();
+            if (worker.downstream != null)
+                worker.downstream.start();
+        }
+    }
+
+    /**
+     * Queues a text message of one or more newline-separated readings, waiting
+     * while the ring is full.
+     *
+     * @param message the message
+     * @return false if the pipeline has been closed and the message was dropped
+     */
+    public boolean offer(String message) {
+        return publish(message);
+    }
+
+    /**
+     * Queues a {@link BinaryBatch} frame, waiting while the ring is full. The
+     * buffer must not be changed afterwards.
+     *
+     * @param frame the frame, from its position to its limit
+     * @return false if the pipeline has been closed and the frame was dropped
+     */
+    public boolean offer(ByteBuffer frame) {
+        return publish(frame);
+    }
+
+    private boolean publish(Object message) {
+        int idle = 0;
+        long sequence;
+        while (true) {
+            if (closed)
+                return false;
+            sequence = claimed.get();
+            long wrapPoint = sequence - messages.length;
+            if (wrapPoint >= gatingSequence) {
+                long lowest = lowestWorkerSequence();
+                gatingSequence = lowest;
+                if (wrapPoint >= lowest) {
+                    idle = idle(idle); // Full
+                    continue;
+                }
+            }
+            if (claimed.compareAndSet(sequence, sequence + 1))
+                break;
+        }
+        int slot = (int) sequence & mask;
+        messages[slot] = message;
+        offeredNanos[slot] = System.nanoTime();
+        published.lazySet(slot, sequence); // Orders the writes above before it
+        return true;
+    }
+
+    private long lowestWorkerSequence() {
+        long lowest = Long.MAX_VALUE;
+        for (Worker worker : workers)
+            lowest = Math.min(lowest, worker.sequence.get());
+        return lowest;
+    }
+
+    private static int idle(int idle) {
+        if (idle < SPINS)
+            Thread.onSpinWait();
+        else
+            LockSupport.parkNanos(PARK_NANOS);
+        return idle + 1;
+    }
+
+    /**
+     * Waits until every message offered so far has been stored. Downstream
+     * listeners may still be catching up.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        long target = claimed.get();
+        int idle = 0;
+        while (lowestWorkerSequence() < target) {
+            if (closed && !workers[0].isAlive())
+                return; // Closed meanwhile; close() waits for the rest
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            idle = idle(idle);
+        }
+    }
+
+    /**
+     * Returns how much is queued and how long each stage takes.
+     *
+     * @return a snapshot of the pipeline's counters
+     */
+    public Stats getStats() {
+        long queuedMessages = claimed.get() - lowestWorkerSequence();
+        long queuedReadings = 0;
+        long stored = 0;
+        long storeCount = 0;
+        long storeNanos = 0;
+        long storeMax = 0;
+        long evaluated = 0;
+        long evaluateNanos = 0;
+        long evaluateMax = 0;
+        for (Worker worker : workers) {
+            stored += worker.stored;
+            storeCount += worker.latencyCount;
+            storeNanos += worker.latencyNanos;
+            storeMax = Math.max(storeMax, worker.latencyMax);
+            if (worker.downstream != null) {
+                queuedReadings += worker.downstream.size();
+                evaluated += worker.downstream.evaluated;
+                evaluateNanos += worker.downstream.latencyNanos;
+                evaluateMax = Math.max(evaluateMax, worker.downstream.latencyMax);
+            }
+        }
+        return new Stats(Math.max(0, queuedMessages), queuedReadings, claimed.get(), stored, evaluated,
+                storeCount > 0 ? storeNanos / storeCount : 0, storeMax,
+                evaluated > 0 ? evaluateNanos / evaluated : 0, evaluateMax);
+    }
+
+    /**
+     * Stops taking messages, waits until every queued message has been stored
+     * and passed downstream, and stops the threads.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            for (Worker worker : workers) {
+                worker.join();
+                if (worker.downstream != null)
+                    worker.downstream.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Parses and stores the readings of the patients it owns.
+     */
+    private final class Worker extends Thread implements RecordListener {
+        final int index;
+        final AtomicLong sequence = new AtomicLong(); // The next sequence to read
+        final Downstream downstream;
+        private final RecordParser parser = new RecordParser();
+        private long storedCount; // Published to stored after each batch
+        // Written only by this thread
+        volatile long stored;
+        volatile long latencyCount;
+        volatile long latencyNanos;
+        volatile long latencyMax;
+
+        Worker(int index, int downstreamCapacity) {
+            super("ingestion-worker-" + index);
+            setDaemon(true);
+            this.index = index;
+            this.downstream = IngestionPipeline.this.downstream != null ? new Downstream(this, downstreamCapacity) : null;
+        }
+
+        boolean owns(int patientId) {
+            return Math.floorMod(patientId, workers.length) == index;
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            while (true) {
+                long next = sequence.get();
+                long available = next;
+                while (published.get((int) available & mask) == available)
+                    available++;
+                if (available == next) {
+                    if (closed && next >= claimed.get())
+                        break;
+                    idle = idle(idle);
+                    continue;
+                }
+                idle = 0;
+
+                // Everything published so far, as one batch
+                long count = 0;
+                long total = 0;
+                long max = latencyMax;
+                for (long s = next; s < available; s++) {
+                    int slot = (int) s & mask;
+                    long storedBefore = storedCount;
+                    Object message = messages[slot];
+                    if (message instanceof String)
+                        process((String) message);
+                    else
+                        process(((ByteBuffer) message).duplicate());
+                    if (storedCount != storedBefore) {
+                        long latency = System.nanoTime() - offeredNanos[slot];
+                        count++;
+                        total += latency;
+                        max = Math.max(max, latency);
+                    }
+                }
+                sequence.lazySet(available);
+                stored = storedCount;
+                latencyCount += count;
+                latencyNanos += total;
+                latencyMax = max;
+            }
+        }
+
+        private void process(String message) {
+            int from = 0;
+            while (from < message.length()) {
+                int to = message.indexOf('\n', from);
+                if (to < 0)
+                    to = message.length();
+                int patientId = leadingInt(message, from, to);
+                if (patientId != Integer.MIN_VALUE && !owns(patientId)) {
+                    from = to + 1;
+                    continue;
+                }
+                try {
+                    if (to > from && parser.parse(message, from, to)
+                            && (patientId != Integer.MIN_VALUE || owns(parser.getPatientId())))
+                        onRecord(parser.getPatientId(), parser.getMeasurementValue(), parser.getRecordType(),
+                                parser.getTimestamp());
+                } catch (NumberFormatException e) {
+                    if (patientId != Integer.MIN_VALUE || index == 0) // Reported once
+                        System.err.println("Error parsing message: " + message.substring(from, to));
+                }
+                from = to + 1;
+            }
+        }
+
+        private void process(ByteBuffer frame) {
+            try {
+                BinaryBatch.decode(frame, (patientId, value, recordType, timestamp) -> {
+                    if (owns(patientId))
+                        onRecord(patientId, value, recordType, timestamp);
+                });
+            } catch (IllegalArgumentException e) {
+                if (index == 0) // Reported once
+                    System.err.println("Error parsing binary message: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Stores one of its own readings and passes it downstream.
+         */
+        @Override
+        public void onRecord(int patientId, double measurementValue, int recordType, long timestamp) {
+            storage.addPatientData(patientId, measurementValue, recordType, timestamp);
+            storedCount++;
+            if (onStored != null)
+                onStored.onRecord(patientId, measurementValue, recordType, timestamp);
+            if (downstream != null)
+                downstream.put(patientId, measurementValue, recordType, timestamp);
+        }
+    }
+
+    /**
+     * Reads the patient ID at the start of a line without parsing the rest.
+     *
+     * @return the patient ID, or {@link Integer#MIN_VALUE} if the line does not
+     *         start with a plain integer followed by a comma
+     */
+    static int leadingInt(CharSequence chars, int from, int to) {
+        int i = from;
+        boolean negative = i < to && chars.charAt(i) == '-';
+        if (negative)
+            i++;
+        long value = 0;
+        int digits = 0;
+        for (; i < to; i++) {
+            char c = chars.charAt(i);
+            if (c == ',')
+                break;
+            if (c < '0' || c > '9' || ++digits > 10)
+                return Integer.MIN_VALUE;
+            value = value * 10 + (c - '0');
+        }
+        if (i == to || digits == 0)
+            return Integer.MIN_VALUE;
+        value = negative ? -value : value;
+        return value < Integer.MIN_VALUE + 1 || value > Integer.MAX_VALUE ? Integer.MIN_VALUE : (int) value;
+    }
+
+    /**
+     * Passes a worker's stored readings to the downstream listener, in order,
+     * on its own thread. A single-producer, single-consumer ring.
+     */
+    private final class Downstream extends Thread {
+        private final Worker worker;
+        private final int[] patientIds;
+        private final double[] values;
+        private final int[] recordTypes;
+        private final long[] timestamps;
+        private final long[] storedNanos;
+        private final int mask;
+        private final AtomicLong head = new AtomicLong(); // The next reading to pass on
+        private final AtomicLong tail = new AtomicLong(); // The next free slot
+        private long cachedHead; // Only used by the worker
+        // Written only by this thread
+        volatile long evaluated;
+        volatile long latencyNanos;
+        volatile long latencyMax;
+
+        Downstream(Worker worker, int capacity) {
+            super("ingestion-downstream-" + worker.index);
+            setDaemon(true);
+            this.worker = worker;
+            this.patientIds = new int[capacity];
+            this.values = new double[capacity];
+            this.recordTypes = new int[capacity];
+            this.timestamps = new long[capacity];
+            this.storedNanos = new long[capacity];
+            this.mask = capacity - 1;
+        }
+
+        long size() {
+            return tail.get() - head.get();
+        }
+
+        void put(int patientId, double value, int recordType, long timestamp) {
+            long t = tail.get();
+            int idle = 0;
+            while (t - cachedHead >= patientIds.length) {
+                cachedHead = head.get();
+                if (t - cachedHead >= patientIds.length)
+                    idle = idle(idle); // Full
+            }
+            int slot = (int) t & mask;
+            patientIds[slot] = patientId;
+            values[slot] = value;
+            recordTypes[slot] = recordType;
+            timestamps[slot] = timestamp;
+            storedNanos[slot] = System.nanoTime();
+            tail.lazySet(t + 1);
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            while (true) {
+                long h = head.get();
+                long t = tail.get();
+                if (h == t) {
+                    if (!worker.isAlive() && tail.get() == h)
+                        break;
+                    idle = idle(idle);
+                    continue;
+                }
+                idle = 0;
+
+                long total = 0;
+                long max = latencyMax;
+                for (long i = h; i < t; i++) {
+                    int slot = (int) i & mask;
+                    try {
+                        downstream.onRecord(patientIds[slot], values[slot], recordTypes[slot], timestamps[slot]);
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                    long latency = System.nanoTime() - storedNanos[slot];
+                    total += latency;
+                    if (latency > max)
+                        max = latency;
+                }
+                head.lazySet(t);
+                evaluated += t - h;
+                latencyNanos += total;
+                latencyMax = max;
+            }
+        }
+    }
+
+    /**
+     * How much an {@link IngestionPipeline} has queued and how long its stages
+     * take, at the time {@link #getStats()} was called. Latencies are in
+     * microseconds: for storing, from {@link #offer} until a worker has stored
+     * the readings it owns in the message; downstream, from storing a reading
+     * until the listener has returned.
+     */
+    public static final class Stats {
+        private final long queuedMessages;
+        private final long queuedReadings;
+        private final long messagesReceived;
+        private final long readingsStored;
+        private final long readingsPassedDownstream;
+        private final long meanStoreLatencyNanos;
+        private final long maxStoreLatencyNanos;
+        private final long meanDownstreamLatencyNanos;
+        private final long maxDownstreamLatencyNanos;
+
+        Stats(long queuedMessages, long queuedReadings, long messagesReceived, long readingsStored,
+                long readingsPassedDownstream, long meanStoreLatencyNanos, long maxStoreLatencyNanos,
+                long meanDownstreamLatencyNanos, long maxDownstreamLatencyNanos) {
+            this.queuedMessages = queuedMessages;
+            this.queuedReadings = queuedReadings;
+            this.messagesReceived = messagesReceived;
+            this.readingsStored = readingsStored;
+            this.readingsPassedDownstream = readingsPassedDownstream;
+            this.meanStoreLatencyNanos = meanStoreLatencyNanos;
+            this.maxStoreLatencyNanos = maxStoreLatencyNanos;
+            this.meanDownstreamLatencyNanos = meanDownstreamLatencyNanos;
+            this.maxDownstreamLatencyNanos = maxDownstreamLatencyNanos;
+        }
+
+        /** Messages not yet read by every worker */
+        public long getQueuedMessages() {
+            return queuedMessages;
+        }
+
+        /** Stored readings not yet passed downstream */
+        public long getQueuedReadings() {
+            return queuedReadings;
+        }
+
+        /** Messages offered since the pipeline started */
+        public long getMessagesReceived() {
+            return messagesReceived;
+        }
+
+        /** Readings stored since the pipeline started */
+        public long getReadingsStored() {
+            return readingsStored;
+        }
+
+        /** Readings the downstream listener has been called with */
+        public long getReadingsPassedDownstream() {
+            return readingsPassedDownstream;
+        }
+
+        /** Mean time from offering a message to storing its readings */
+        public long getMeanStoreLatencyMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(meanStoreLatencyNanos);
+        }
+
+        /** Longest time from offering a message to storing its readings */
+        public long getMaxStoreLatencyMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(maxStoreLatencyNanos);
+        }
+
+        /** Mean time from storing a reading to the downstream listener returning */
+        public long getMeanDownstreamLatencyMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(meanDownstreamLatencyNanos);
+        }
+
+        /** Longest time from storing a reading to the downstream listener returning */
+        public long getMaxDownstreamLatencyMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(maxDownstreamLatencyNanos);
+        }
+
+        @Override
+        public String toString() {
+            return queuedMessages + " messages and " + queuedReadings + " readings queued, " + messagesReceived
+                    + " messages received, " + readingsStored + " readings stored, " + readingsPassedDownstream
+                    + " passed downstream, store latency " + getMeanStoreLatencyMicros() + " us mean, "
+                    + getMaxStoreLatencyMicros() + " us max, downstream latency "
+                    + getMeanDownstreamLatencyMicros() + " us mean, " + getMaxDownstreamLatencyMicros() + " us max";
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Bulk-loads a data file in the same {@code patientId,measurementValue,recordType,timestamp}
+ * format as {@link FileDataReader}, using every core.
+ * <p>
+ * The file is memory-mapped and split into chunks that start and end on line
+ * boundaries. The chunks are parsed in parallel, each into per-patient
+ * columns, so no thread touches the storage while parsing. The columns of
+ * each patient are then concatenated in file order, sorted by timestamp if
+ * the file was not, and added to the storage. Patients are added in parallel,
+ * but the readings of one patient arrive in timestamp order, so storage only
+ * takes its cheap append path.
+ * <p>
+ * Like {@link FileDataReader}, lines without exactly four fields are skipped
+ * and a malformed number fails the whole load.
+ */
+public class MappedFileDataReader implements DataReader {
+    /** A single mapping is limited to 2 GB; larger files are mapped in windows */
+    private static final long MAX_WINDOW = 1L << 30;
+    private static final int MIN_CHUNK = 1 << 20;
+
+    private final String fileLocation;
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructs a reader that parses on the common pool.
+     *
+     * @param fileLocation the path of the data file
+     */
+    public MappedFileDataReader(String fileLocation) {
+        this(fileLocation, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a reader that parses on the given pool.
+     *
+     * @param fileLocation the path of the data file
+     * @param pool         the pool that parses chunks and fills the storage
+     */
+    public MappedFileDataReader(String fileLocation, ForkJoinPool pool) {
+        this.fileLocation = fileLocation;
+        this.pool = pool;
+    }
+
+    @Override
+    public void readData(DataStorage dataStorage) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileLocation), StandardOpenOption.READ)) {
+            List<Chunk> chunks = split(channel);
+            pool.invoke(new ParseTask(chunks, 0, chunks.size()));
+
+            // Concatenate the chunks of every patient in file order
+            Map<Integer, List<Readings>> patients = new HashMap<>();
+            for (Chunk chunk : chunks) {
+                if (chunk.error != null)
+                    throw chunk.error;
+                for (Readings readings : chunk.patients.values())
+                    patients.computeIfAbsent(readings.patientId, id -> new ArrayList<>()).add(readings);
+                chunk.patients = null;
+            }
+            List<List<Readings>> perPatient = new ArrayList<>(patients.values());
+            pool.invoke(new StoreTask(dataStorage, perPatient, 0, perPatient.size()));
+        }
+    }
+
+    @Override
+    public void readData(DataStorage dataStorage, String websocketUrl) {
+
+    }
+
+    /**
+     * Maps the file in windows of at most {@link #MAX_WINDOW} bytes and cuts
+     * each window into chunks, moving every cut forward to the next line
+     * boundary.
+     */
+    private List<Chunk> split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int parallelism = pool.getParallelism();
+        long chunkSize = Math.max(MIN_CHUNK, size / (parallelism * 4L) + 1);
+        List<Chunk> chunks = new ArrayList<>();
+
+        long windowStart = 0;
+        while (windowStart < size) {
+            long windowSize = Math.min(MAX_WINDOW, size - windowStart);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+            int windowEnd = (int) windowSize;
+            if (windowStart + windowSize < size) {
+                // Later lines are mapped again with the next window
+                windowEnd = lastLineEnd(window, windowEnd);
+                if (windowEnd == 0)
+                    throw new IOException("Line longer than " + MAX_WINDOW + " bytes at offset " + windowStart);
+            }
+
+            int from = 0;
+            while (from < windowEnd) {
+                int to = (int) Math.min(windowEnd, from + chunkSize);
+                while (to < windowEnd && window.get(to - 1) != '\n')
+                    to++;
+                chunks.add(new Chunk(window, from, to));
+                from = to;
+            }
+            windowStart += windowEnd;
+        }
+        return chunks;
+    }
+
+    private static int lastLineEnd(MappedByteBuffer window, int end) {
+        for (int i = end; i > 0; i--)
+            if (window.get(i - 1) == '\n')
+                return i;
+        return 0;
+    }
+
+    /**
+     * A newline-aligned range of one mapped window, and the readings parsed
+     * from it.
+     */
+    private static final class Chunk {
+        final MappedByteBuffer window;
+        final int from;
+        final int to;
+        Map<Integer, Readings> patients = new HashMap<>();
+        IOException error;
+
+        Chunk(MappedByteBuffer window, int from, int to) {
+            this.window = window;
+            this.from = from;
+            this.to = to;
+        }
+
+        void parse() {
+            RecordParser parser = new RecordParser();
+            Readings last = null;
+            int lineStart = from;
+            while (lineStart < to) {
+                int lineEnd = lineStart;
+                while (lineEnd < to && window.get(lineEnd) != '\n')
+                    lineEnd++;
+                int contentEnd = lineEnd > lineStart && window.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+
+                try {
+                    if (parser.parse(window, lineStart, contentEnd)) {
+                        int patientId = parser.getPatientId();
+                        // Consecutive lines usually belong to few patients; skip the map lookup when they repeat
+                        if (last == null || last.patientId != patientId) {
+                            last = patients.get(patientId);
+                            if (last == null) {
+                                last = new Readings(patientId);
+                                patients.put(patientId, last);
+                            }
+                        }
+                        last.add(parser.getTimestamp(), parser.getMeasurementValue(), parser.getRecordType());
+                    }
+                } catch (NumberFormatException e) {
+                    error = new IOException("An error occurred in readData(DataStorage) while reading from file: " + e.getMessage());
+                    return;
+                }
+                lineStart = lineEnd + 1;
+            }
+        }
+    }
+
+    /**
+     * The readings of one patient within one chunk, in columns.
+     */
+    private static final class Readings {
+        final int patientId;
+        int size;
+        long[] timestamps = new long[64];
+        double[] values = new double[64];
+        int[] recordTypes = new int[64];
+
+        Readings(int patientId) {
+            this.patientId = patientId;
+        }
+
+        void add(long timestamp, double value, int recordType) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size << 1);
+                values = Arrays.copyOf(values, size << 1);
+                recordTypes = Arrays.copyOf(recordTypes, size << 1);
+            }
+            timestamps[size] = timestamp;
+            values[size] = value;
+            recordTypes[size] = recordType;
+            size++;
+        }
+    }
+
+    private static final class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Chunk> chunks;
+        private final int from;
+        private final int to;
+
+        ParseTask(List<Chunk> chunks, int from, int to) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParseTask(chunks, from, middle), new ParseTask(chunks, middle, to));
+            } else if (to > from) {
+                chunks.get(from).parse();
+            }
+        }
+    }
+
+    /**
+     * Adds the readings of a range of patients to the storage; each patient is
+     * handled by one thread.
+     */
+    private static final class StoreTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final DataStorage dataStorage;
+        private final List<List<Readings>> patients;
+        private final int from;
+        private final int to;
+
+        StoreTask(DataStorage dataStorage, List<List<Readings>> patients, int from, int to) {
+            this.dataStorage = dataStorage;
+            this.patients = patients;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new StoreTask(dataStorage, patients, from, middle),
+                        new StoreTask(dataStorage, patients, middle, to));
+            } else if (to > from) {
+                store(patients.get(from));
+            }
+        }
+
+        private void store(List<Readings> chunks) {
+            int total = 0;
+            boolean sorted = true;
+            long previous = Long.MIN_VALUE;
+            for (Readings readings : chunks) {
+                total += readings.size;
+                for (int i = 0; i < readings.size; i++) {
+                    sorted &= readings.timestamps[i] >= previous;
+                    previous = readings.timestamps[i];
+                }
+            }
+
+            int patientId = chunks.get(0).patientId;
+            if (sorted) {
+                for (Readings readings : chunks)
+                    for (int i = 0; i < readings.size; i++)
+                        dataStorage.addPatientData(patientId, readings.values[i], readings.recordTypes[i], readings.timestamps[i]);
+                return;
+            }
+
+            // Sort positions by timestamp; the stable sort keeps file order for equal timestamps
+            long[] timestamps = new long[total];
+            double[] values = new double[total];
+            int[] recordTypes = new int[total];
+            int offset = 0;
+            for (Readings readings : chunks) {
+                System.arraycopy(readings.timestamps, 0, timestamps, offset, readings.size);
+                System.arraycopy(readings.values, 0, values, offset, readings.size);
+                System.arraycopy(readings.recordTypes, 0, recordTypes, offset, readings.size);
+                offset += readings.size;
+            }
+            Integer[] order = new Integer[total];
+            for (int i = 0; i < total; i++)
+                order[i] = i;
+            Arrays.sort(order, (a, b) -> Long.compare(timestamps[a], timestamps[b]));
+            for (int i : order)
+                dataStorage.addPatientData(patientId, values[i], recordTypes[i], timestamps[i]);
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.data_management;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
 import java.util.List;
 
 /**
@@ -8,20 +11,36 @@ import java.util.List;
  * This class stores patient-specific data, allowing for the addition and
  * retrieval
  * of medical records based on specified criteria.
+ * Readings are kept column-wise in one {@link RecordSeries} per record type;
+ * {@link PatientRecord} objects are only created when records are retrieved.
+ * Records may be added and retrieved from different threads; writers only
+ * contend when they write the same record type.
  */
 public class Patient {
     private int patientId;
-    private List<PatientRecord> patientRecords;
+    private final RetentionPolicy retentionPolicy;
+    private volatile RecordSeries[] series; // Indexed by record type code, see RecordTypes
 
     /**
      * Constructs a new Patient with a specified ID.
-     * Initializes an empty list of patient records.
+     * Initializes an empty set of record series that keep every reading.
      *
      * @param patientId the unique identifier for the patient
      */
     public Patient(int patientId) {
+        this(patientId, new RetentionPolicy());
+    }
+
+    /**
+     * Constructs a new Patient whose history is limited by a retention policy.
+     *
+     * @param patientId       the unique identifier for the patient
+     * @param retentionPolicy decides how long readings of each type are kept
+     */
+    public Patient(int patientId, RetentionPolicy retentionPolicy) {
         this.patientId = patientId;
-        this.patientRecords = new ArrayList<>();
+        this.retentionPolicy = retentionPolicy;
+        this.series = new RecordSeries[RecordTypes.count()];
     }
 
     public int getPatientId() {
@@ -40,14 +59,67 @@ public class Patient {
      *                         milliseconds since UNIX epoch
      */
     public void addRecord(double measurementValue, String recordType, long timestamp) {
-        PatientRecord record = new PatientRecord(this.patientId, measurementValue, recordType, timestamp);
-        this.patientRecords.add(record);
+        addRecord(measurementValue, RecordTypes.codeOf(recordType), timestamp);
+    }
+
+    /**
+     * Adds a new record using an already interned record type code.
+     *
+     * @param measurementValue the measurement value to store in the record
+     * @param recordType       the record type code, see {@link RecordTypes}
+     * @param timestamp        the time at which the measurement was taken, in
+     *                         milliseconds since UNIX epoch
+     */
+    public void addRecord(double measurementValue, int recordType, long timestamp) {
+        RecordSeries[] current = series;
+        RecordSeries recordSeries = recordType < current.length ? current[recordType] : null;
+        if (recordSeries == null)
+            recordSeries = createSeries(recordType);
+
+        recordSeries.add(measurementValue, timestamp);
+    }
+
+    /**
+     * A new record type shows up only a handful of times per patient, so the
+     * series table is copied on write and republished under the patient lock.
+     */
+    private synchronized RecordSeries createSeries(int recordType) {
+        RecordSeries[] current = series;
+        if (recordType < current.length && current[recordType] != null)
+            return current[recordType];
+
+        RecordSeries[] updated = Arrays.copyOf(current, Math.max(current.length, Math.max(recordType + 1, RecordTypes.count())));
+        RecordSeries recordSeries = retentionPolicy.newSeries(recordType);
+        updated[recordType] = recordSeries;
+        series = updated;
+        return recordSeries;
+    }
+
+    /**
+     * Returns the current series table, indexed by record type code; types
+     * the patient has no readings of are null.
+     */
+    RecordSeries[] getAllSeries() {
+        return series;
+    }
+
+    /**
+     * Returns the column store holding all readings of one record type.
+     *
+     * @param recordType the type of record, e.g., "ECG"
+     * @return the series, or null if the patient has no readings of that type
+     */
+    public RecordSeries getSeries(String recordType) {
+        int code = RecordTypes.find(recordType);
+        RecordSeries[] current = series;
+        return code >= 0 && code < current.length ? current[code] : null;
     }
 
     /**
      * Retrieves a list of PatientRecord objects for this patient that fall within a
      * specified time range.
-     * The method filters records based on the start and end times provided.
+     * The range of each record type is located by binary search and the results
+     * are merged by timestamp, so the cost is O(log n + k) for k matching records.
      *
      * @param startTime the start of the time range, in milliseconds since UNIX
      *                  epoch
@@ -56,12 +128,70 @@ public class Patient {
      *         range
      */
     public List<PatientRecord> getRecords(long startTime, long endTime) {
-        List<PatientRecord> patientRecords = new ArrayList<>();
-        for (PatientRecord patientRecord : this.patientRecords) {
-            if (patientRecord.getTimestamp() >= startTime && patientRecord.getTimestamp() <= endTime) {
-                patientRecords.add(patientRecord);
+        while (true) {
+            try {
+                return mergeRecords(startTime, endTime);
+            } catch (ConcurrentModificationException e) {
+                // The oldest readings of the range were evicted while copying; take a new snapshot
+            }
+        }
+    }
+
+    private List<PatientRecord> mergeRecords(long startTime, long endTime) {
+        RecordSeries[] current = series;
+        List<List<PatientRecord>> ranges = new ArrayList<>(current.length);
+        int total = 0;
+
+        for (RecordSeries recordSeries : current) {
+            if (recordSeries == null)
+                continue;
+
+            List<PatientRecord> range = recordSeries.view(patientId, startTime, endTime);
+            if (!range.isEmpty()) {
+                ranges.add(range);
+                total += range.size();
+            }
+        }
+        if (ranges.size() == 1)
+            return new ArrayList<>(ranges.get(0));
+
+        // Merge the per-type ranges by timestamp, keeping the head record of each range
+        int[] cursors = new int[ranges.size()];
+        PatientRecord[] heads = new PatientRecord[ranges.size()];
+        for (int i = 0; i < heads.length; i++)
+            heads[i] = ranges.get(i).get(0);
+
+        List<PatientRecord> patientRecords = new ArrayList<>(total);
+        while (patientRecords.size() < total) {
+            int next = -1;
+            for (int i = 0; i < heads.length; i++) {
+                if (heads[i] != null && (next < 0 || heads[i].getTimestamp() < heads[next].getTimestamp()))
+                    next = i;
             }
+            patientRecords.add(heads[next]);
+            List<PatientRecord> range = ranges.get(next);
+            heads[next] = ++cursors[next] < range.size() ? range.get(cursors[next]) : null;
         }
         return patientRecords;
     }
+
+    /**
+     * Retrieves the records of a single type that fall within a specified time
+     * range. The range is located by binary search and returned as a read-only
+     * view over the stored columns, without copying.
+     *
+     * @param recordType the type of record, e.g., "ECG"
+     * @param startTime  the start of the time range, in milliseconds since UNIX
+     *                   epoch
+     * @param endTime    the end of the time range, in milliseconds since UNIX epoch
+     * @return a read-only list of PatientRecord objects of that type within the
+     *         time range
+     */
+    public List<PatientRecord> getRecords(String recordType, long startTime, long endTime) {
+        RecordSeries recordSeries = getSeries(recordType);
+        if (recordSeries == null)
+            return Collections.emptyList();
+
+        return recordSeries.view(patientId, startTime, endTime);
+    }
 }
@@ -0,0 +1,415 @@
+package com.data_management;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.Framedata;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A WebSocket client that stays connected: a supervisor thread reconnects
+ * whenever the connection is lost, waiting a random time between half and all
+ * of a delay that doubles after each failed attempt, up to a maximum.
+ * <p>
+ * A lost connection is not always closed. The supervisor pings the server
+ * every heartbeat interval and drops the connection when nothing, not even a
+ * pong, has arrived for the timeout.
+ * <p>
+ * The client remembers the latest timestamp it has received of each patient.
+ * After reconnecting it subscribes again if it had subscribed, then sends them
+ * in a resume message, and the server resends the readings it missed that are
+ * still in its replay buffer, see {@code WebSocketOutputStrategy}. Replayed
+ * readings may arrive after newer ones; storage keeps each patient's records
+ * in time order either way. Readings of a patient older than the latest one
+ * received are not resent.
+ * <p>
+ * Every connection hands its messages to one {@link IngestionPipeline}, so
+ * readings are parsed and stored off the socket thread whichever connection
+ * received them. The latest timestamps are taken as the pipeline's workers
+ * store readings, and before resuming the client waits for the readings the
+ * lost connection had already received to be stored.
+ */
+public class ReconnectingWebSocketClient implements AutoCloseable {
+
+    public static final long DEFAULT_MIN_BACKOFF_MILLIS = 100;
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 10_000;
+    public static final long DEFAULT_HEARTBEAT_MILLIS = 1000;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+
+    private final URI serverUri;
+    private final IngestionPipeline pipeline;
+    private final boolean binary;
+    private final long minBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long heartbeatMillis;
+    private final long timeoutMillis;
+
+    private final Map<Integer, Long> latestTimestamps = new ConcurrentHashMap<>();
+    private volatile String subscription; // Sent again after reconnecting, null for every reading
+    private volatile Session session;
+    private volatile boolean closed;
+    private final Thread supervisor;
+    private final CountDownLatch firstAttempt = new CountDownLatch(1);
+
+    private final AtomicInteger reconnects = new AtomicInteger();
+    private final AtomicLong readingsReceived = new AtomicLong();
+    private volatile long lastReconnectMillis = -1;
+    private volatile long maxReconnectMillis = -1;
+
+    /**
+     * Creates a client with the default backoff, heartbeat and timeout.
+     *
+     * @param serverUri   the URI of the server
+     * @param dataStorage where received readings are stored
+     * @param binary      whether to ask for the binary protocol
+     */
+    public ReconnectingWebSocketClient(URI serverUri, DataStorage dataStorage, boolean binary) {
+        this(serverUri, dataStorage, null, binary);
+    }
+
+    /**
+     * Creates a client with the default backoff, heartbeat and timeout that
+     * passes every stored reading on downstream.
+     *
+     * @param serverUri   the URI of the server
+     * @param dataStorage where received readings are stored
+     * @param downstream  receives every stored reading on the pipeline's
+     *                    downstream threads, e.g. a
+     *                    {@code StreamingAlertEvaluator}, or null for none
+     * @param binary      whether to ask for the binary protocol
+     */
+    public ReconnectingWebSocketClient(URI serverUri, DataStorage dataStorage, RecordListener downstream,
+            boolean binary) {
+        this(serverUri, dataStorage, downstream, binary, DEFAULT_MIN_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS,
+                DEFAULT_HEARTBEAT_MILLIS, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates a client. It does not connect until {@link #start(long)}.
+     *
+     * @param serverUri        the URI of the server
+     * @param dataStorage      where received readings are stored
+     * @param binary           whether to ask for the binary protocol
+     * @param minBackoffMillis the delay before the first reconnect attempt
+     * @param maxBackoffMillis the longest delay between two attempts
+     * @param heartbeatMillis  how often the server is pinged
+     * @param timeoutMillis    how long the server may stay silent before the
+     *                         connection is dropped, and how long connecting
+     *                         may take
+     */
+    public ReconnectingWebSocketClient(URI serverUri, DataStorage dataStorage, boolean binary, long minBackoffMillis,
+            long maxBackoffMillis, long heartbeatMillis, long timeoutMillis) {
+        this(serverUri, dataStorage, null, binary, minBackoffMillis, maxBackoffMillis, heartbeatMillis, timeoutMillis);
+    }
+
+    /**
+     * Creates a client that passes every stored reading on downstream. It does
+     * not connect until {@link #start(long)}.
+     *
+     * @param serverUri        the URI of the server
+     * @param dataStorage      where received readings are stored
+     * @param downstream       receives every stored reading on the pipeline's
+     *                         downstream threads, or null for none
+     * @param binary           whether to ask for the binary protocol
+     * @param minBackoffMillis the delay before the first reconnect attempt
+     * @param maxBackoffMillis the longest delay between two attempts
+     * @param heartbeatMillis  how often the server is pinged
+     * @param timeoutMillis    how long the server may stay silent before the
+     *                         connection is dropped, and how long connecting
+     *                         may take
+     */
+    public ReconnectingWebSocketClient(URI serverUri, DataStorage dataStorage, RecordListener downstream,
+            boolean binary, long minBackoffMillis, long maxBackoffMillis, long heartbeatMillis, long timeoutMillis) {
+        if (minBackoffMillis <= 0 || maxBackoffMillis < minBackoffMillis || heartbeatMillis <= 0 || timeoutMillis <= 0)
+            throw new IllegalArgumentException("Invalid backoff, heartbeat or timeout");
+
+        this.serverUri = serverUri;
+        this.binary = binary;
+        this.minBackoffMillis = minBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.heartbeatMillis = heartbeatMillis;
+        this.timeoutMillis = timeoutMillis;
+        this.supervisor = new Thread(this::supervise, "websocket-supervisor");
+        this.supervisor.setDaemon(true);
+        this.pipeline = new IngestionPipeline(dataStorage, downstream, this::stored,
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2), IngestionPipeline.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Called by the pipeline's worker that stored a reading.
+     */
+    private void stored(int patientId, double measurementValue, int recordType, long timestamp) {
+        latestTimestamps.merge(patientId, timestamp, Math::max);
+        readingsReceived.incrementAndGet();
+    }
+
+    /**
+     * Starts connecting, and waits for the first attempt. If it fails, the
+     * client keeps trying in the background until closed.
+     *
+     * @param waitMillis how long to wait for the first attempt
+     * @return whether the client is connected
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean start(long waitMillis) throws InterruptedException {
+        supervisor.start();
+        firstAttempt.await(waitMillis, TimeUnit.MILLISECONDS);
+        return isConnected();
+    }
+
+    private void supervise() {
+        long backoffMillis = minBackoffMillis;
+        long lostAt = -1;
+        while (!closed) {
+            // Before the new connection receives live readings, and after what
+            // the lost one received has been stored
+            String resume = null;
+            if (lostAt >= 0) {
+                try {
+                    pipeline.flush();
+                } catch (InterruptedException e) {
+                    break;
+                }
+                resume = resumeMessage();
+            }
+            Session attempt = new Session();
+            session = attempt;
+            boolean open;
+            try {
+                open = attempt.connectBlocking(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (open) {
+                if (lostAt >= 0) {
+                    long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lostAt);
+                    lastReconnectMillis = millis;
+                    maxReconnectMillis = Math.max(maxReconnectMillis, millis);
+                    reconnects.incrementAndGet();
+                }
+                backoffMillis = minBackoffMillis;
+                resume(attempt, resume);
+            } else {
+                // connectBlocking only stops waiting: a late handshake would
+                // still open the attempt and store readings beside the next one
+                attempt.closeConnection(CloseFrame.NEVER_CONNECTED, "Connect timeout");
+            }
+            firstAttempt.countDown();
+            if (open) {
+                try {
+                    watch(attempt);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                lostAt = System.nanoTime();
+            }
+            if (closed)
+                break;
+
+            try {
+                long half = backoffMillis / 2;
+                Thread.sleep(half + ThreadLocalRandom.current().nextLong(backoffMillis - half + 1));
+            } catch (InterruptedException e) {
+                break;
+            }
+            backoffMillis = Math.min(backoffMillis * 2, maxBackoffMillis);
+        }
+        firstAttempt.countDown();
+    }
+
+    private void resume(Session attempt, String resume) {
+        try {
+            String message = subscription;
+            if (message != null)
+                attempt.send(message);
+            if (resume != null)
+                attempt.send(resume);
+        } catch (WebsocketNotConnectedException e) {
+            // Lost again, the watch ends at once
+        }
+    }
+
+    private String resumeMessage() {
+        StringBuilder message = new StringBuilder("resume");
+        for (Map.Entry<Integer, Long> latest : latestTimestamps.entrySet())
+            message.append(' ').append(latest.getKey()).append('=').append(latest.getValue());
+        return message.toString();
+    }
+
+    /**
+     * Pings the server until the connection closes or times out.
+     */
+    private void watch(Session attempt) throws InterruptedException {
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!attempt.closed.await(heartbeatMillis, TimeUnit.MILLISECONDS)) {
+            if (System.nanoTime() - attempt.lastActivity > timeoutNanos) {
+                System.err.println("No message from " + serverUri + " for " + timeoutMillis + " ms, reconnecting");
+                attempt.closeConnection(CloseFrame.ABNORMAL_CLOSE, "Heartbeat timeout");
+                attempt.closed.await();
+                return;
+            }
+            try {
+                attempt.sendPing();
+            } catch (WebsocketNotConnectedException e) {
+                // Closed meanwhile
+            }
+        }
+    }
+
+    /**
+     * Asks the server for only some readings, now and after every reconnect.
+     *
+     * @see WebSocketClientImpl#subscribe(Collection, Collection, long)
+     */
+    public void subscribe(Collection<Integer> patientIds, Collection<String> labels, long intervalMillis) {
+        subscription = WebSocketClientImpl.subscription(patientIds, labels, intervalMillis);
+        send(subscription);
+    }
+
+    /**
+     * Asks the server for every reading again.
+     */
+    public void unsubscribe() {
+        subscription = null;
+        send("unsubscribe");
+    }
+
+    private void send(String message) {
+        Session current = session;
+        try {
+            if (current != null && current.isOpen())
+                current.send(message);
+        } catch (WebsocketNotConnectedException e) {
+            // Sent after reconnecting
+        }
+    }
+
+    public boolean isConnected() {
+        Session current = session;
+        return current != null && current.isOpen();
+    }
+
+    /**
+     * Returns whether the current connection uses the binary protocol.
+     */
+    public boolean isBinary() {
+        Session current = session;
+        return current != null && current.isBinary();
+    }
+
+    public int getReconnectCount() {
+        return reconnects.get();
+    }
+
+    /**
+     * Returns how long the last reconnect took, from noticing the connection
+     * was lost to being connected again.
+     *
+     * @return the time in milliseconds, or -1 if the client never reconnected
+     */
+    public long getLastReconnectMillis() {
+        return lastReconnectMillis;
+    }
+
+    /**
+     * @return the longest reconnect in milliseconds, or -1 if the client never
+     *         reconnected
+     */
+    public long getMaxReconnectMillis() {
+        return maxReconnectMillis;
+    }
+
+    /**
+     * Returns how many received readings the pipeline has stored.
+     */
+    public long getReadingsReceived() {
+        return readingsReceived.get();
+    }
+
+    /**
+     * Returns how much the pipeline has queued and how long it takes to store
+     * and pass on readings.
+     */
+    public IngestionPipeline.Stats getPipelineStats() {
+        return pipeline.getStats();
+    }
+
+    /**
+     * Returns the latest timestamp received of a patient.
+     *
+     * @return the timestamp, or -1 if none was received
+     */
+    public long getLatestTimestamp(int patientId) {
+        return latestTimestamps.getOrDefault(patientId, -1L);
+    }
+
+    /**
+     * Stops reconnecting, closes the connection, and waits until the readings
+     * received have been stored and passed downstream.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        supervisor.interrupt();
+        Session current = session;
+        if (current != null)
+            current.close();
+        try {
+            supervisor.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pipeline.close();
+    }
+
+    /**
+     * One connection attempt.
+     */
+    private final class Session extends WebSocketClientImpl {
+        final CountDownLatch closed = new CountDownLatch(1);
+        volatile long lastActivity = System.nanoTime();
+
+        Session() {
+            super(serverUri, pipeline, binary);
+            setConnectionLostTimeout(0); // The supervisor pings instead
+        }
+
+        @Override
+        public void onMessage(String message) {
+            lastActivity = System.nanoTime();
+            super.onMessage(message);
+        }
+
+        @Override
+        public void onMessage(ByteBuffer bytes) {
+            lastActivity = System.nanoTime();
+            super.onMessage(bytes);
+        }
+
+        @Override
+        public void onWebsocketPong(WebSocket conn, Framedata f) {
+            lastActivity = System.nanoTime();
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+            super.onClose(code, reason, remote);
+            closed.countDown();
+        }
+
+        @Override
+        public void onError(Exception ex) {
+            System.err.println("WebSocket error: " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.data_management;
+
+/**
+ * Receives every reading added to a {@link DataStorage}, right after it has
+ * been stored.
+ */
+public interface RecordListener {
+    /**
+     * Called for each stored reading, on the thread that added it.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param measurementValue the value of the health metric being recorded
+     * @param recordType       the record type code, see {@link RecordTypes}
+     * @param timestamp        the time at which the measurement was taken, in
+     *                         milliseconds since the Unix epoch
+     */
+    void onRecord(int patientId, double measurementValue, int recordType, long timestamp);
+}
@@ -0,0 +1,454 @@
+package com.data_management;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * Parses readings in the {@code patientId,measurementValue,recordType,timestamp}
+ * format shared by data files and WebSocket messages. Lines written by
+ * {@code FileOutputStrategy}, {@code Patient ID: 1, Timestamp: 1714376789050,
+ * Label: ECG, Data: 0.53}, are recognized by their prefix and accepted as well.
+ * <p>
+ * The fields are tokenized in place and the numbers are parsed straight from
+ * the characters, so parsing a well-formed reading allocates nothing: there is
+ * no split array, no substrings, and the record type is matched against the
+ * interned labels in {@link RecordTypes} instead of becoming a new String.
+ * Results are read back through the getters until the next call to
+ * {@code parse}. A parser is meant to be reused, but not shared between
+ * threads.
+ * <p>
+ * The accepted input is the same as with {@code String.split(",")} followed by
+ * {@code Integer.parseInt}, {@code Double.parseDouble} and
+ * {@code Long.parseLong}, except for the measurement values the generators
+ * write that are not plain numbers: a trailing {@code %}, as in saturation
+ * readings, is ignored, and the alert states {@code triggered} and
+ * {@code resolved} are read as 1 and 0.
+ */
+public final class RecordParser {
+    private static final int FIELDS = 4;
+    private static final String PATIENT_ID = "Patient ID: ";
+    private static final String TIMESTAMP = ", Timestamp: ";
+    private static final String LABEL = ", Label: ";
+    private static final String DATA = ", Data: ";
+    private static final String TRIGGERED = "triggered";
+    private static final String RESOLVED = "resolved";
+
+    private final int[] fieldEnds = new int[FIELDS];
+    private final AsciiBytes bytes = new AsciiBytes();
+
+    private int patientId;
+    private double measurementValue;
+    private int recordType;
+    private long timestamp;
+
+    /**
+     * Parses a complete reading.
+     *
+     * @param line the reading, without a line separator
+     * @return true if the reading has exactly four fields; false if it does not
+     *         and should be skipped
+     * @throws NumberFormatException if a numeric field is malformed
+     */
+    public boolean parse(CharSequence line) {
+        return parse(line, 0, line.length());
+    }
+
+    /**
+     * Parses a reading from a range of characters.
+     *
+     * @param chars the characters holding the reading
+     * @param from  the index of the first character of the reading
+     * @param to    the index after the last character of the reading
+     * @return true if the reading has exactly four fields; false if it does not
+     *         and should be skipped
+     * @throws NumberFormatException if a numeric field is malformed
+     */
+    public boolean parse(CharSequence chars, int from, int to) {
+        if (startsWith(chars, from, to, PATIENT_ID))
+            return parseFileOutput(chars, from, to);
+
+        // Like String.split, trailing empty fields do not count
+        while (to > from && chars.charAt(to - 1) == ',')
+            to--;
+
+        int fields = 0;
+        for (int i = from; i < to; i++) {
+            if (chars.charAt(i) == ',') {
+                if (fields == FIELDS - 1)
+                    return false;
+                fieldEnds[fields++] = i;
+            }
+        }
+        if (fields != FIELDS - 1)
+            return false;
+        fieldEnds[fields] = to;
+
+        patientId = (int) parseLong(chars, from, fieldEnds[0], Integer.MIN_VALUE, Integer.MAX_VALUE);
+        measurementValue = parseMeasurement(chars, fieldEnds[0] + 1, fieldEnds[1]);
+        recordType = RecordTypes.codeOf(chars, fieldEnds[1] + 1, fieldEnds[2]);
+        timestamp = parseLong(chars, fieldEnds[2] + 1, to, Long.MIN_VALUE, Long.MAX_VALUE);
+        return true;
+    }
+
+    /**
+     * Parses the {@code FileOutputStrategy} format. The label ends at the first
+     * {@code ", Data: "}; a line that does not follow the format is skipped.
+     */
+    private boolean parseFileOutput(CharSequence chars, int from, int to) {
+        int idStart = from + PATIENT_ID.length();
+        int idEnd = indexOf(chars, idStart, to, TIMESTAMP);
+        if (idEnd < 0)
+            return false;
+        int timestampStart = idEnd + TIMESTAMP.length();
+        int timestampEnd = indexOf(chars, timestampStart, to, LABEL);
+        if (timestampEnd < 0)
+            return false;
+        int labelStart = timestampEnd + LABEL.length();
+        int labelEnd = indexOf(chars, labelStart, to, DATA);
+        if (labelEnd < 0)
+            return false;
+
+        patientId = (int) parseLong(chars, idStart, idEnd, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        timestamp = parseLong(chars, timestampStart, timestampEnd, Long.MIN_VALUE, Long.MAX_VALUE);
+        recordType = RecordTypes.codeOf(chars, labelStart, labelEnd);
+        measurementValue = parseMeasurement(chars, labelEnd + DATA.length(), to);
+        return true;
+    }
+
+    /**
+     * Parses a reading from a range of US-ASCII or UTF-8 bytes, e.g. a line of
+     * a memory-mapped file. The position and limit of the buffer are not
+     * changed.
+     *
+     * @param buffer the bytes holding the reading
+     * @param from   the index of the first byte of the reading
+     * @param to     the index after the last byte of the reading
+     * @return true if the reading has exactly four fields; false if it does not
+     *         and should be skipped
+     * @throws NumberFormatException if a numeric field is malformed
+     */
+    public boolean parse(ByteBuffer buffer, int from, int to) {
+        bytes.buffer = buffer;
+        try {
+            return parse(bytes, from, to);
+        } finally {
+            bytes.buffer = null;
+        }
+    }
+
+    public int getPatientId() {
+        return patientId;
+    }
+
+    public double getMeasurementValue() {
+        return measurementValue;
+    }
+
+    /**
+     * Returns the record type of the last parsed reading.
+     *
+     * @return the record type code, see {@link RecordTypes}
+     */
+    public int getRecordType() {
+        return recordType;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Parses a measurement value the way {@link #parse} reads the measurement
+     * field, accepting the non-numeric forms the generators write.
+     *
+     * @param value the measurement value, e.g. {@code 0.53}, {@code 97.0%} or
+     *              {@code triggered}
+     * @return the numeric measurement value
+     * @throws NumberFormatException if the value is malformed
+     */
+    public static double parseValue(CharSequence value) {
+        return parseMeasurement(value, 0, value.length());
+    }
+
+    /**
+     * Parses a measurement value, accepting the non-numeric forms the
+     * generators write.
+     */
+    private static double parseMeasurement(CharSequence chars, int from, int to) {
+        if (to > from + 1 && chars.charAt(to - 1) == '%')
+            to--;
+        else if (regionEquals(chars, from, to, TRIGGERED))
+            return 1;
+        else if (regionEquals(chars, from, to, RESOLVED))
+            return 0;
+
+        return parseDouble(chars, from, to);
+    }
+
+    private static boolean startsWith(CharSequence chars, int from, int to, String prefix) {
+        return to - from >= prefix.length() && regionEquals(chars, from, from + prefix.length(), prefix);
+    }
+
+    private static boolean regionEquals(CharSequence chars, int from, int to, String text) {
+        if (to - from != text.length())
+            return false;
+        for (int i = 0; i < text.length(); i++)
+            if (chars.charAt(from + i) != text.charAt(i))
+                return false;
+        return true;
+    }
+
+    private static int indexOf(CharSequence chars, int from, int to, String text) {
+        for (int i = from; i <= to - text.length(); i++)
+            if (regionEquals(chars, i, i + text.length(), text))
+                return i;
+        return -1;
+    }
+
+    /**
+     * Parses a decimal integer with an optional sign, as
+     * {@code Long.parseLong} does, rejecting values outside [min, max].
+     */
+    private static long parseLong(CharSequence chars, int from, int to, long min, long max) {
+        if (from >= to)
+            throw invalidNumber(chars, from, to);
+
+        int i = from;
+        boolean negative = false;
+        char first = chars.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++i == to)
+                throw invalidNumber(chars, from, to);
+        }
+
+        // Accumulate negatively, so the most negative value does not overflow
+        long limit = negative ? min : -max;
+        long multiplyLimit = limit / 10;
+        long result = 0;
+        for (; i < to; i++) {
+            int digit = chars.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < multiplyLimit)
+                throw invalidNumber(chars, from, to);
+            result *= 10;
+            if (result < limit + digit)
+                throw invalidNumber(chars, from, to);
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Parses a plain decimal number such as {@code -0.1234} or {@code 1.5E-7}
+     * with up to 19 significant digits. The result is correctly rounded, the
+     * same as {@code Double.parseDouble}. Anything else, such as {@code NaN},
+     * hexadecimal notation or surrounding whitespace, is handed to
+     * {@code Double.parseDouble}, which allocates but handles every form.
+     */
+    private static double parseDouble(CharSequence chars, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (chars.charAt(i) == '-' || chars.charAt(i) == '+')) {
+            negative = chars.charAt(i) == '-';
+            i++;
+        }
+
+        long significand = 0; // Unsigned; 19 digits always fit
+        int digits = 0; // Significant digits, leading zeros excluded
+        int exponent = 0;
+        boolean anyDigit = false;
+        char c = 0;
+        for (; i < to; i++) {
+            c = chars.charAt(i);
+            if (c < '0' || c > '9')
+                break;
+            anyDigit = true;
+            if (significand != 0 || c != '0') {
+                significand = significand * 10 + (c - '0');
+                digits++;
+            }
+        }
+        if (i < to && c == '.') {
+            for (i++; i < to; i++) {
+                c = chars.charAt(i);
+                if (c < '0' || c > '9')
+                    break;
+                anyDigit = true;
+                if (significand != 0 || c != '0') {
+                    significand = significand * 10 + (c - '0');
+                    digits++;
+                }
+                exponent--;
+            }
+        }
+        if (i < to && (c == 'e' || c == 'E') && anyDigit) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < to && (chars.charAt(i) == '-' || chars.charAt(i) == '+')) {
+                negativeExponent = chars.charAt(i) == '-';
+                i++;
+            }
+            int exponentStart = i;
+            int explicitExponent = 0;
+            for (; i < to; i++) {
+                c = chars.charAt(i);
+                if (c < '0' || c > '9' || explicitExponent > 100_000)
+                    break;
+                explicitExponent = explicitExponent * 10 + (c - '0');
+            }
+            if (i == exponentStart)
+                return fallbackParseDouble(chars, from, to);
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+        if (i != to || !anyDigit || digits > 19)
+            return fallbackParseDouble(chars, from, to);
+
+        if (significand == 0)
+            return negative ? -0.0 : 0.0;
+
+        double value;
+        // Exact operands give a correctly rounded result with one operation
+        if (significand >= 0 && significand < (1L << 53) && exponent >= -22 && exponent <= 22) {
+            value = significand;
+            value = exponent < 0 ? value / PowersOfTen.EXACT[-exponent] : value * PowersOfTen.EXACT[exponent];
+        } else {
+            value = eiselLemire(significand, exponent);
+            if (Double.isNaN(value))
+                return fallbackParseDouble(chars, from, to);
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Computes significand × 10^exponent, correctly rounded, with the
+     * Eisel-Lemire algorithm: the significand is multiplied by a 128-bit
+     * truncation of the power of ten, and the few cases where the truncation
+     * could change the rounding are reported as NaN instead.
+     */
+    private static double eiselLemire(long significand, int exponent) {
+        if (exponent < PowersOfTen.MIN_EXPONENT || exponent > PowersOfTen.MAX_EXPONENT)
+            return Double.NaN;
+
+        int leadingZeros = Long.numberOfLeadingZeros(significand);
+        long normalized = significand << leadingZeros;
+        long binaryExponent = ((217706L * exponent) >> 16) + 64 + 1023 - leadingZeros;
+
+        int index = exponent - PowersOfTen.MIN_EXPONENT;
+        long powerHigh = PowersOfTen.HIGH[index];
+        long powerLow = PowersOfTen.LOW[index];
+        long high = unsignedMultiplyHigh(normalized, powerHigh);
+        long low = normalized * powerHigh;
+
+        if ((high & 0x1FF) == 0x1FF && Long.compareUnsigned(low + normalized, normalized) < 0) {
+            // The discarded bits may carry into the result; include the lower half of the power
+            long lowerHigh = unsignedMultiplyHigh(normalized, powerLow);
+            long lowerLow = normalized * powerLow;
+            long mergedLow = low + lowerHigh;
+            long mergedHigh = Long.compareUnsigned(mergedLow, low) < 0 ? high + 1 : high;
+            if ((mergedHigh & 0x1FF) == 0x1FF && mergedLow == -1L
+                    && Long.compareUnsigned(lowerLow + normalized, normalized) < 0)
+                return Double.NaN;
+            high = mergedHigh;
+            low = mergedLow;
+        }
+
+        long topBit = high >>> 63;
+        long mantissa = high >>> (topBit + 9);
+        binaryExponent -= 1 ^ topBit;
+
+        // Exactly halfway between two doubles: the truncated bits decide
+        if (low == 0 && (high & 0x1FF) == 0 && (mantissa & 3) == 1)
+            return Double.NaN;
+
+        mantissa += mantissa & 1;
+        mantissa >>>= 1;
+        if ((mantissa >>> 53) > 0) {
+            mantissa >>>= 1;
+            binaryExponent++;
+        }
+        // Subnormal and infinite results are left to Double.parseDouble
+        if (binaryExponent <= 0 || binaryExponent >= 0x7FF)
+            return Double.NaN;
+
+        return Double.longBitsToDouble(binaryExponent << 52 | (mantissa & 0x000F_FFFF_FFFF_FFFFL));
+    }
+
+    private static long unsignedMultiplyHigh(long x, long y) {
+        return Math.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+    }
+
+    private static double fallbackParseDouble(CharSequence chars, int from, int to) {
+        return Double.parseDouble(chars.subSequence(from, to).toString());
+    }
+
+    private static NumberFormatException invalidNumber(CharSequence chars, int from, int to) {
+        return new NumberFormatException("For input string: \"" + chars.subSequence(from, to) + "\"");
+    }
+
+    /**
+     * Powers of ten for the decimal to binary conversion.
+     */
+    private static final class PowersOfTen {
+        static final int MIN_EXPONENT = -348;
+        static final int MAX_EXPONENT = 347;
+
+        /** 10^0 to 10^22, every one exactly representable */
+        static final double[] EXACT = {
+                1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+                1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+        };
+
+        /** Upper and lower 64 bits of 10^e, normalized to 128 bits and rounded down */
+        static final long[] HIGH = new long[MAX_EXPONENT - MIN_EXPONENT + 1];
+        static final long[] LOW = new long[MAX_EXPONENT - MIN_EXPONENT + 1];
+
+        static {
+            BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+            for (int e = MIN_EXPONENT; e <= MAX_EXPONENT; e++) {
+                BigInteger power;
+                if (e >= 0) {
+                    power = BigInteger.TEN.pow(e);
+                    int shift = power.bitLength() - 128;
+                    power = shift >= 0 ? power.shiftRight(shift) : power.shiftLeft(-shift);
+                } else {
+                    BigInteger divisor = BigInteger.TEN.pow(-e);
+                    power = BigInteger.ONE.shiftLeft(127 + divisor.bitLength()).divide(divisor);
+                }
+                HIGH[e - MIN_EXPONENT] = power.shiftRight(64).longValue();
+                LOW[e - MIN_EXPONENT] = power.and(mask).longValue();
+            }
+        }
+    }
+
+    /**
+     * Presents a range of bytes as characters, one byte each. Non-ASCII bytes
+     * never match a digit, separator or known label, so they are rejected the
+     * same way as in a decoded String.
+     */
+    private static final class AsciiBytes implements CharSequence {
+        ByteBuffer buffer;
+
+        @Override
+        public int length() {
+            return buffer.limit();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer.get(index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            char[] chars = new char[end - start];
+            for (int i = start; i < end; i++)
+                chars[i - start] = charAt(i);
+            return new String(chars);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+    }
+}
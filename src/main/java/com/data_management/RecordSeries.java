@@ -0,0 +1,334 @@
+package com.data_management;
+
+import java.lang.invoke.VarHandle;
+import java.util.AbstractList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Column store for all readings of one record type of one patient.
+ * Timestamps and measurement values are kept in parallel primitive arrays, so
+ * a reading costs 16 bytes instead of a full {@link PatientRecord} object plus
+ * its list slot.
+ * <p>
+ * Readings are kept sorted by timestamp. In-order readings are appended in
+ * O(1); the occasional late reading is inserted after any readings with the
+ * same timestamp. Range queries use binary search and return views over the
+ * columns instead of copies.
+ * <p>
+ * The columns form a ring buffer addressed by absolute reading numbers. Readings
+ * older than the retention age, or beyond the reading limit, are evicted by
+ * advancing the head, and their slots are reused by later readings. The ring
+ * grows by doubling until it holds the steady-state number of readings, after
+ * which ingestion allocates nothing and memory stays flat.
+ * <p>
+ * Writers are serialized on the series, so concurrent producers for the same
+ * patient and record type never lose readings. Readers take no lock: the tail
+ * is published through a volatile write after the reading itself, the head is
+ * advanced before a slot is reused, and arrays are never shifted in place.
+ */
+public class RecordSeries {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final int recordType;
+    private final long maxAge;
+    private final int maxReadings;
+    private volatile Columns columns;
+    private volatile long head; // Number of the oldest retained reading
+    private volatile long tail; // Number of the next reading to be written
+
+    /**
+     * Constructs an empty series for the given record type that keeps every
+     * reading.
+     *
+     * @param recordType the record type code, see {@link RecordTypes}
+     */
+    public RecordSeries(int recordType) {
+        this(recordType, RetentionPolicy.KEEP_FOREVER, RetentionPolicy.UNLIMITED);
+    }
+
+    /**
+     * Constructs an empty series for the given record type with limited
+     * retention.
+     *
+     * @param recordType   the record type code, see {@link RecordTypes}
+     * @param maxAgeMillis how long a reading is kept after the newest reading,
+     *                     or {@link RetentionPolicy#KEEP_FOREVER}
+     * @param maxReadings  the maximum number of readings kept, or
+     *                     {@link RetentionPolicy#UNLIMITED}
+     */
+    public RecordSeries(int recordType, long maxAgeMillis, int maxReadings) {
+        this.recordType = recordType;
+        this.maxAge = maxAgeMillis;
+        this.maxReadings = Math.min(maxReadings, MAX_CAPACITY);
+        this.columns = new Columns(Math.min(INITIAL_CAPACITY, ceilingPowerOfTwo(this.maxReadings)));
+    }
+
+    public int getRecordType() {
+        return recordType;
+    }
+
+    /**
+     * Returns the number of retained readings.
+     *
+     * @return the number of retained readings
+     */
+    public int size() {
+        long t = tail;
+        return (int) Math.max(0, t - head);
+    }
+
+    /**
+     * Returns the number of readings the ring can hold without growing.
+     *
+     * @return the current capacity of the columns
+     */
+    public int capacity() {
+        return columns.timestamps.length;
+    }
+
+    public long getTimestamp(int index) {
+        long h = head;
+        Columns c = columns;
+        checkIndex(index, (int) (tail - h));
+        return c.timestamps[c.slot(h + index)];
+    }
+
+    public double getValue(int index) {
+        long h = head;
+        Columns c = columns;
+        checkIndex(index, (int) (tail - h));
+        return c.values[c.slot(h + index)];
+    }
+
+    /**
+     * Adds a reading, keeping the series sorted by timestamp and evicting
+     * readings that fall outside the retention limits.
+     *
+     * @param value     the measurement value
+     * @param timestamp the time of the measurement, in milliseconds since UNIX
+     *                  epoch
+     */
+    public synchronized void add(double value, long timestamp) {
+        long h = head;
+        long t = tail;
+        Columns c = columns;
+
+        if (t > h) {
+            long newest = c.timestamps[c.slot(t - 1)];
+            if (timestamp < newest) {
+                // Late readings that are already past retention are dropped
+                if (maxAge == RetentionPolicy.KEEP_FOREVER || timestamp >= newest - maxAge)
+                    insert(c, h, t, value, timestamp);
+                return;
+            }
+        }
+
+        if (maxAge != RetentionPolicy.KEEP_FOREVER) {
+            long cutoff = timestamp - maxAge;
+            while (h < t && c.timestamps[c.slot(h)] < cutoff)
+                h++;
+        }
+        if (t - h >= maxReadings)
+            h = t - maxReadings + 1;
+        else if (t - h == c.timestamps.length) {
+            c = c.copy(h, t, c.timestamps.length << 1);
+            columns = c;
+        }
+
+        if (h != head)
+            head = h; // Evict before the slot of an evicted reading is reused
+        int slot = c.slot(t);
+        c.timestamps[slot] = timestamp;
+        c.values[slot] = value;
+        tail = t + 1; // Publishes the reading to lock-free readers
+    }
+
+    /**
+     * Late readings are rare, so they are inserted into fresh arrays instead of
+     * shifting in place. Readers and views holding the old arrays never
+     * observe a shifted column.
+     */
+    private void insert(Columns c, long h, long t, double value, long timestamp) {
+        long index = upperBound(c, h, t, timestamp);
+        if (t - h >= maxReadings) {
+            if (index == h) // Older than everything kept
+                return;
+            h++;
+        }
+
+        int capacity = c.timestamps.length;
+        if (t - h == capacity)
+            capacity <<= 1;
+        Columns inserted = new Columns(capacity);
+        for (long i = h; i < index; i++)
+            inserted.put(i, c.timestamps[c.slot(i)], c.values[c.slot(i)]);
+        inserted.put(index, timestamp, value);
+        for (long i = index; i < t; i++)
+            inserted.put(i + 1, c.timestamps[c.slot(i)], c.values[c.slot(i)]);
+
+        columns = inserted;
+        if (h != head)
+            head = h;
+        tail = t + 1;
+    }
+
+    /**
+     * Copies the retained readings, for writing a snapshot. The copy is taken
+     * under the series lock, so it is consistent with the writers.
+     *
+     * @return a copy of the readings in timestamp order, or null if there are none
+     */
+    synchronized SegmentWriter.Series copy() {
+        long h = head;
+        int size = (int) (tail - h);
+        if (size == 0)
+            return null;
+
+        Columns c = columns;
+        long[] timestamps = new long[size];
+        double[] values = new double[size];
+        int first = c.slot(h);
+        int firstLength = Math.min(size, c.timestamps.length - first);
+        System.arraycopy(c.timestamps, first, timestamps, 0, firstLength);
+        System.arraycopy(c.values, first, values, 0, firstLength);
+        System.arraycopy(c.timestamps, 0, timestamps, firstLength, size - firstLength);
+        System.arraycopy(c.values, 0, values, firstLength, size - firstLength);
+        return new SegmentWriter.Series(timestamps, values);
+    }
+
+    /**
+     * Returns the readings within a time range as a read-only view over the
+     * columns. Locating the range takes O(log n); nothing is copied, and a
+     * {@link PatientRecord} is only created when an element is accessed.
+     * The view is not affected by readings added afterwards, but accessing a
+     * reading that has been evicted since the view was created throws a
+     * {@link ConcurrentModificationException}, as its slot may have been reused.
+     *
+     * @param patientId the patient the series belongs to
+     * @param startTime the start of the time range, inclusive
+     * @param endTime   the end of the time range, inclusive
+     * @return the readings within the time range, in timestamp order
+     */
+    public List<PatientRecord> view(int patientId, long startTime, long endTime) {
+        while (true) {
+            // Read the tail before the arrays and the head after them; see the class comment
+            long t = tail;
+            Columns c = columns;
+            long h = Math.min(head, t);
+            long from = lowerBound(c, h, t, startTime);
+            long to = Math.max(from, upperBound(c, h, t, endTime));
+            VarHandle.acquireFence(); // Order the slot reads above before the head check
+            if (head == h || h == t)
+                return new View(patientId, c, from, to);
+            // A slot read by the search may have been reused; search again
+        }
+    }
+
+    private static long lowerBound(Columns c, long low, long high, long timestamp) {
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (c.timestamps[c.slot(mid)] < timestamp)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private static long upperBound(Columns c, long low, long high, long timestamp) {
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (c.timestamps[c.slot(mid)] <= timestamp)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private static int ceilingPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    /**
+     * The two columns are swapped together, so a reader never pairs the
+     * timestamps of one generation with the values of another. The capacity
+     * is a power of two, so a reading number maps to its slot with a mask.
+     */
+    private static final class Columns {
+        final long[] timestamps;
+        final double[] values;
+        final int mask;
+
+        Columns(int capacity) {
+            this.timestamps = new long[capacity];
+            this.values = new double[capacity];
+            this.mask = capacity - 1;
+        }
+
+        int slot(long index) {
+            return (int) index & mask;
+        }
+
+        void put(long index, long timestamp, double value) {
+            timestamps[slot(index)] = timestamp;
+            values[slot(index)] = value;
+        }
+
+        Columns copy(long from, long to, int capacity) {
+            Columns copy = new Columns(capacity);
+            for (long i = from; i < to; i++)
+                copy.put(i, timestamps[slot(i)], values[slot(i)]);
+            return copy;
+        }
+    }
+
+    private class View extends AbstractList<PatientRecord> implements RandomAccess {
+        private final int patientId;
+        private final Columns columns;
+        private final long from;
+        private final long to;
+
+        View(int patientId, Columns columns, long from, long to) {
+            this.patientId = patientId;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public PatientRecord get(int index) {
+            checkIndex(index, size());
+            long number = from + index;
+            int slot = columns.slot(number);
+            long timestamp = columns.timestamps[slot];
+            double value = columns.values[slot];
+            VarHandle.acquireFence();
+            if (head > number)
+                throw new ConcurrentModificationException("Reading was evicted after the view was created");
+
+            return new PatientRecord(patientId, value, RecordTypes.nameOf(recordType), timestamp);
+        }
+
+        @Override
+        public int size() {
+            return (int) (to - from);
+        }
+
+        @Override
+        public List<PatientRecord> subList(int fromIndex, int toIndex) {
+            if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex)
+                throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex);
+
+            return new View(patientId, columns, from + fromIndex, from + toIndex);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.data_management;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns record type labels (e.g. "ECG", "Saturation") to small integer codes.
+ * Storage keeps one code per series instead of a String reference per reading,
+ * and hot paths can compare codes instead of calling {@code String.equals}.
+ * Codes are dense, start at zero and are never reused, so they can be used
+ * directly as array indices.
+ */
+public final class RecordTypes {
+
+    public static final int ECG = 0;
+    public static final int SATURATION = 1;
+    public static final int SYSTOLIC_PRESSURE = 2;
+    public static final int DIASTOLIC_PRESSURE = 3;
+    public static final int CHOLESTEROL = 4;
+    public static final int WHITE_BLOOD_CELLS = 5;
+    public static final int RED_BLOOD_CELLS = 6;
+    public static final int ALERT = 7;
+
+    private static final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[0];
+
+    static {
+        // Registration order must match the constants above
+        codeOf("ECG");
+        codeOf("Saturation");
+        codeOf("SystolicPressure");
+        codeOf("DiastolicPressure");
+        codeOf("Cholesterol");
+        codeOf("WhiteBloodCells");
+        codeOf("RedBloodCells");
+        codeOf("Alert");
+    }
+
+    private RecordTypes() {
+    }
+
+    /**
+     * Returns the code for the given record type, registering it if it has not
+     * been seen before.
+     *
+     * @param recordType the record type label
+     * @return the interned code of the record type
+     */
+    public static int codeOf(String recordType) {
+        Integer code = codes.get(recordType);
+        if (code != null)
+            return code;
+
+        return register(recordType);
+    }
+
+    /**
+     * Returns the code for the given record type without registering it.
+     *
+     * @param recordType the record type label
+     * @return the code of the record type, or -1 if it is unknown
+     */
+    public static int find(String recordType) {
+        Integer code = codes.get(recordType);
+        return code != null ? code : -1;
+    }
+
+    /**
+     * Returns the code for the record type spelled by a range of characters,
+     * registering it if it has not been seen before. Known types are matched
+     * in place, so only a label that has never been seen allocates a String.
+     *
+     * @param chars the characters holding the label
+     * @param from  the index of the first character of the label
+     * @param to    the index after the last character of the label
+     * @return the interned code of the record type
+     */
+    static int codeOf(CharSequence chars, int from, int to) {
+        String[] current = names;
+        int length = to - from;
+        for (int code = 0; code < current.length; code++) {
+            String name = current[code];
+            if (name.length() == length && regionMatches(name, chars, from))
+                return code;
+        }
+        return codeOf(chars.subSequence(from, to).toString());
+    }
+
+    private static boolean regionMatches(String name, CharSequence chars, int from) {
+        for (int i = 0; i < name.length(); i++)
+            if (name.charAt(i) != chars.charAt(from + i))
+                return false;
+        return true;
+    }
+
+    /**
+     * Returns the canonical label for a code returned by {@link #codeOf(String)}.
+     *
+     * @param code the record type code
+     * @return the record type label
+     * @throws IllegalArgumentException if the code has not been registered
+     */
+    public static String nameOf(int code) {
+        String[] current = names;
+        if (code < 0 || code >= current.length)
+            throw new IllegalArgumentException("Unknown record type code: " + code);
+
+        return current[code];
+    }
+
+    /**
+     * Returns the number of registered record types; every code is below this
+     * value.
+     *
+     * @return the number of registered record types
+     */
+    public static int count() {
+        return names.length;
+    }
+
+    private static synchronized int register(String recordType) {
+        Integer code = codes.get(recordType);
+        if (code != null)
+            return code;
+
+        String[] current = names;
+        String[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = recordType;
+        // Publish the name before the code so nameOf() never misses a code handed out by codeOf()
+        names = updated;
+        codes.put(recordType, current.length);
+        return current.length;
+    }
+}
@@ -0,0 +1,100 @@
+package com.data_management;
+
+import java.util.Arrays;
+
+/**
+ * Decides how much history {@link DataStorage} keeps for each record type.
+ * A record type can be limited by age, relative to its newest reading, and by
+ * the number of readings kept. Record types without a rule are kept forever.
+ * <p>
+ * Configure the policy before passing it to {@link DataStorage}; series that
+ * already exist keep the limits they were created with.
+ *
+ * <pre>
+ * RetentionPolicy policy = new RetentionPolicy()
+ *         .retain("ECG", TimeUnit.MINUTES.toMillis(10))
+ *         .retain("SystolicPressure", TimeUnit.HOURS.toMillis(24));
+ * DataStorage storage = new DataStorage(policy);
+ * </pre>
+ */
+public class RetentionPolicy {
+    /** Marks a record type without an age limit. */
+    public static final long KEEP_FOREVER = Long.MAX_VALUE;
+    /** Marks a record type without a limit on the number of readings. */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private long[] maxAges = new long[0];
+    private int[] maxReadings = new int[0];
+
+    /**
+     * Keeps readings of a record type for a limited time.
+     *
+     * @param recordType   the type of record, e.g., "ECG"
+     * @param maxAgeMillis how long a reading is kept after the newest reading of
+     *                     the same type, in milliseconds
+     * @return this policy
+     */
+    public RetentionPolicy retain(String recordType, long maxAgeMillis) {
+        return retain(recordType, maxAgeMillis, UNLIMITED);
+    }
+
+    /**
+     * Keeps readings of a record type for a limited time and caps the number of
+     * readings, which is also the capacity of the ring buffer backing the series.
+     *
+     * @param recordType   the type of record, e.g., "ECG"
+     * @param maxAgeMillis how long a reading is kept after the newest reading of
+     *                     the same type, in milliseconds
+     * @param readings     the maximum number of readings kept
+     * @return this policy
+     */
+    public synchronized RetentionPolicy retain(String recordType, long maxAgeMillis, int readings) {
+        if (maxAgeMillis < 0)
+            throw new IllegalArgumentException("Retention must not be negative: " + maxAgeMillis);
+        if (readings < 1)
+            throw new IllegalArgumentException("At least one reading must be kept: " + readings);
+
+        int code = RecordTypes.codeOf(recordType);
+        if (code >= maxAges.length) {
+            int length = code + 1;
+            int oldLength = maxAges.length;
+            maxAges = Arrays.copyOf(maxAges, length);
+            maxReadings = Arrays.copyOf(maxReadings, length);
+            Arrays.fill(maxAges, oldLength, length, KEEP_FOREVER);
+            Arrays.fill(maxReadings, oldLength, length, UNLIMITED);
+        }
+        maxAges[code] = maxAgeMillis;
+        maxReadings[code] = readings;
+        return this;
+    }
+
+    /**
+     * Returns how long readings of a record type are kept.
+     *
+     * @param recordType the record type code, see {@link RecordTypes}
+     * @return the retention in milliseconds, or {@link #KEEP_FOREVER}
+     */
+    public synchronized long getMaxAge(int recordType) {
+        return recordType < maxAges.length ? maxAges[recordType] : KEEP_FOREVER;
+    }
+
+    /**
+     * Returns how many readings of a record type are kept.
+     *
+     * @param recordType the record type code, see {@link RecordTypes}
+     * @return the maximum number of readings, or {@link #UNLIMITED}
+     */
+    public synchronized int getMaxReadings(int recordType) {
+        return recordType < maxReadings.length ? maxReadings[recordType] : UNLIMITED;
+    }
+
+    /**
+     * Creates an empty series that follows this policy.
+     *
+     * @param recordType the record type code, see {@link RecordTypes}
+     * @return a new series for the record type
+     */
+    RecordSeries newSeries(int recordType) {
+        return new RecordSeries(recordType, getMaxAge(recordType), getMaxReadings(recordType));
+    }
+}
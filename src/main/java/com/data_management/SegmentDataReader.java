@@ -0,0 +1,245 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntPredicate;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a file written by {@link SegmentWriter} into a {@link DataStorage}.
+ * <p>
+ * Only the readings of the selected patients within the selected time range
+ * are loaded. A segment whose time range does not overlap the query is
+ * skipped after reading its first 25 bytes, and within a segment, patients
+ * that are not selected or whose readings fall outside the range are skipped
+ * using the patient index, without decoding their data.
+ * <p>
+ * A segment cut short at the end of the file, as left by a crash during a
+ * write, is ignored. A segment that fails its checksum is reported as an
+ * {@link IOException}.
+ */
+public class SegmentDataReader implements DataReader {
+
+    private static final String COMMAND = "--output file:";
+
+    private final Path file;
+    private final IntPredicate patientFilter;
+    private final long startTime;
+    private final long endTime;
+    private int segmentsRead;
+    private int segmentsSkipped;
+
+    /**
+     * Constructs a reader for every reading in a segment file.
+     *
+     * @param fileLocation the segment file
+     */
+    public SegmentDataReader(String fileLocation) {
+        this(fileLocation, patientId -> true, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a reader for the readings of some patients within a time
+     * range.
+     *
+     * @param fileLocation  the segment file
+     * @param patientFilter selects the patients to load by ID
+     * @param startTime     the start of the time range, inclusive
+     * @param endTime       the end of the time range, inclusive
+     */
+    public SegmentDataReader(String fileLocation, IntPredicate patientFilter, long startTime, long endTime) {
+        if (fileLocation.startsWith(COMMAND))
+            fileLocation = fileLocation.substring(COMMAND.length());
+        this.file = Paths.get(fileLocation);
+        this.patientFilter = patientFilter;
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    /**
+     * Returns whether a file starts like a segment file.
+     *
+     * @param file the file to check
+     * @return true if the file starts with the segment magic number
+     */
+    public static boolean isSegmentFile(Path file) {
+        if (!Files.isRegularFile(file))
+            return false;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == SegmentWriter.MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void readData(DataStorage dataStorage) throws IOException {
+        segmentsRead = 0;
+        segmentsSkipped = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(SegmentWriter.PREAMBLE_BYTES + SegmentWriter.RANGE_BYTES);
+            while (size - position >= header.capacity()) {
+                header.clear();
+                readFully(channel, header, position);
+                if (header.getInt(0) != SegmentWriter.MAGIC)
+                    throw new IOException("Not a segment at offset " + position + " of " + file);
+                if (header.get(4) != SegmentWriter.VERSION)
+                    throw new IOException("Unsupported segment version " + header.get(4) + " in " + file);
+                int bodyLength = header.getInt(5);
+                long end = position + SegmentWriter.PREAMBLE_BYTES + bodyLength + 4;
+                if (bodyLength < SegmentWriter.RANGE_BYTES || end > size)
+                    break; // Cut short by a crash while it was written
+                long first = header.getLong(SegmentWriter.PREAMBLE_BYTES);
+                long last = header.getLong(SegmentWriter.PREAMBLE_BYTES + 8);
+                if (last < startTime || first > endTime) {
+                    segmentsSkipped++;
+                } else {
+                    ByteBuffer segment = ByteBuffer.allocate(bodyLength + 4);
+                    readFully(channel, segment, position + SegmentWriter.PREAMBLE_BYTES);
+                    readSegment(segment.array(), bodyLength, dataStorage, position);
+                    segmentsRead++;
+                }
+                position = end;
+            }
+        }
+    }
+
+    @Override
+    public void readData(DataStorage dataStorage, String websocketUrl) {
+
+    }
+
+    /**
+     * Returns the number of segments decoded by the last call to
+     * {@link #readData(DataStorage)}.
+     *
+     * @return the number of segments read
+     */
+    public int getSegmentsRead() {
+        return segmentsRead;
+    }
+
+    /**
+     * Returns the number of segments the last call to
+     * {@link #readData(DataStorage)} skipped because of their time range.
+     *
+     * @return the number of segments skipped
+     */
+    public int getSegmentsSkipped() {
+        return segmentsSkipped;
+    }
+
+    private void readSegment(byte[] body, int length, DataStorage dataStorage, long position) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, length);
+        int expected = ByteBuffer.wrap(body, length, 4).getInt();
+        if ((int) crc.getValue() != expected)
+            throw new IOException("Corrupt segment at offset " + position + " of " + file);
+
+        try {
+            BitReader in = new BitReader(body, 0, length);
+            in.readLong(); // Time range, already checked
+            in.readLong();
+            in.readVarint();
+            int[] recordTypes = new int[(int) in.readVarint()];
+            for (int i = 0; i < recordTypes.length; i++) {
+                byte[] name = in.readBytes((int) in.readVarint());
+                recordTypes[i] = RecordTypes.codeOf(new String(name, StandardCharsets.UTF_8));
+            }
+
+            int patients = (int) in.readVarint();
+            int[] patientIds = new int[patients];
+            boolean[] selected = new boolean[patients];
+            int[] offsets = new int[patients];
+            int[] lengths = new int[patients];
+            for (int i = 0; i < patients; i++) {
+                patientIds[i] = in.readInt();
+                long first = in.readLong();
+                long last = in.readLong();
+                in.readVarint();
+                offsets[i] = (int) in.readVarint();
+                lengths[i] = (int) in.readVarint();
+                selected[i] = last >= startTime && first <= endTime && patientFilter.test(patientIds[i]);
+            }
+            int dataStart = in.position();
+            for (int i = 0; i < patients; i++) {
+                if (!selected[i])
+                    continue;
+                if (offsets[i] < 0 || lengths[i] < 0 || dataStart + offsets[i] + lengths[i] > length)
+                    throw new IllegalStateException("Patient data out of bounds");
+                BitReader data = new BitReader(body, dataStart + offsets[i], lengths[i]);
+                int series = (int) data.readVarint();
+                for (int s = 0; s < series; s++) {
+                    int recordType = recordTypes[(int) data.readVarint()];
+                    int count = (int) data.readVarint();
+                    decode(data, count, patientIds[i], recordType, dataStorage);
+                }
+            }
+        } catch (IllegalStateException | IndexOutOfBoundsException e) {
+            throw new IOException("Malformed segment at offset " + position + " of " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Decodes a series compressed by {@code SegmentWriter.encode} and adds the
+     * readings within the time range to the storage.
+     */
+    private void decode(BitReader in, int count, int patientId, int recordType, DataStorage dataStorage) {
+        long timestamp = in.readBits(64);
+        long bits = in.readBits(64);
+        add(dataStorage, patientId, bits, recordType, timestamp);
+        long delta = 0;
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 1; i < count; i++) {
+            long deltaOfDelta;
+            if (!in.readBit())
+                deltaOfDelta = 0;
+            else if (!in.readBit())
+                deltaOfDelta = in.readBits(7) - 63;
+            else if (!in.readBit())
+                deltaOfDelta = in.readBits(9) - 255;
+            else if (!in.readBit())
+                deltaOfDelta = in.readBits(12) - 2047;
+            else
+                deltaOfDelta = in.readBits(64);
+            delta += deltaOfDelta;
+            timestamp += delta;
+
+            if (in.readBit()) {
+                if (in.readBit()) {
+                    leading = (int) in.readBits(5);
+                    int meaningful = (int) in.readBits(6) + 1;
+                    trailing = 64 - leading - meaningful;
+                }
+                bits ^= in.readBits(64 - leading - trailing) << trailing;
+            }
+            add(dataStorage, patientId, bits, recordType, timestamp);
+        }
+    }
+
+    private void add(DataStorage dataStorage, int patientId, long bits, int recordType, long timestamp) {
+        if (timestamp >= startTime && timestamp <= endTime)
+            dataStorage.addPatientData(patientId, Double.longBitsToDouble(bits), recordType, timestamp);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Unexpected end of file");
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package com.data_management;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Appends readings to a file in the compressed segment format read by
+ * {@link SegmentDataReader}.
+ * <p>
+ * Readings are buffered per patient and record type and written as one
+ * segment when {@link #writeSegment()} is called. A segment starts with the
+ * time range it covers, then a dictionary of the labels it uses and an index
+ * of its patients, each with its time range and the position of its data, so
+ * a reader can skip whole segments or patients without decoding them. Within
+ * a patient, every series is compressed as in Facebook's Gorilla: timestamps
+ * as the difference between consecutive intervals, which is zero or a few
+ * bits for readings taken at a steady rate, and values XORed with the
+ * previous value, storing only the bits that changed.
+ * <p>
+ * Layout of a segment, big-endian, "varint" being an unsigned LEB128 integer:
+ * <pre>
+ * int     magic "CSEG"
+ * byte    version
+ * int     length of the body
+ * body:
+ *   long    first timestamp
+ *   long    last timestamp
+ *   varint  number of readings
+ *   varint  number of labels, then per label: varint length, UTF-8 bytes
+ *   varint  number of patients, then per patient, by ascending ID:
+ *           int patient ID, long first timestamp, long last timestamp,
+ *           varint readings, varint data offset, varint data length
+ *   data, per patient: varint number of series, then per series:
+ *           varint label index, varint readings, compressed readings
+ * int     CRC-32 of the body
+ * </pre>
+ * Segments are only ever appended, so a segment cut short by a crash is
+ * simply the end of the file to a reader. A writer opening the file cuts such
+ * a segment off before appending, so it does not end up in front of new
+ * ones. A writer is not thread-safe.
+ */
+public class SegmentWriter implements Closeable {
+    static final int MAGIC = 0x43534547; // "CSEG"
+    static final int VERSION = 1;
+    static final int PREAMBLE_BYTES = 9; // Magic, version and body length
+    static final int RANGE_BYTES = 16; // First and last timestamp
+
+    private final FileChannel channel;
+    private final Map<Integer, Map<Integer, Series>> patients = new TreeMap<>();
+    private final BitWriter body = new BitWriter();
+    private final BitWriter data = new BitWriter();
+    private final CRC32 crc = new CRC32();
+    private int size;
+
+    /**
+     * Opens a segment file for appending, creating it if it does not exist.
+     * A segment cut short at the end of the file is removed first.
+     *
+     * @param file the segment file
+     * @throws IOException if the file cannot be opened or is not a segment
+     *                     file
+     */
+    public SegmentWriter(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        try {
+            long size = channel.size();
+            long valid = validLength(file, size);
+            if (valid < size) {
+                System.err.println("Removing " + (size - valid) + " bytes of a segment cut short at offset " + valid
+                        + " of " + file);
+                channel.truncate(valid);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns where the whole segments at the start of a file end: at the
+     * first segment that is cut short or, if it reaches the end of the file,
+     * fails its checksum. A segment that fails its checksum before the end of
+     * the file is left for the reader to report.
+     */
+    private static long validLength(Path file, long size) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = 0;
+            ByteBuffer preamble = ByteBuffer.allocate(PREAMBLE_BYTES);
+            CRC32 crc = new CRC32();
+            while (position < size) {
+                if (size - position < PREAMBLE_BYTES)
+                    return position;
+                preamble.clear();
+                readFully(in, preamble, position);
+                if (preamble.getInt(0) != MAGIC) {
+                    if (position == 0)
+                        throw new IOException("Not a segment file: " + file);
+                    return position; // A preamble partly written
+                }
+                int bodyLength = preamble.getInt(5);
+                long end = position + PREAMBLE_BYTES + bodyLength + 4;
+                if (bodyLength < RANGE_BYTES || end > size)
+                    return position;
+                ByteBuffer segment = ByteBuffer.allocate(bodyLength + 4);
+                readFully(in, segment, position + PREAMBLE_BYTES);
+                crc.reset();
+                crc.update(segment.array(), 0, bodyLength);
+                if ((int) crc.getValue() != segment.getInt(bodyLength) && end == size)
+                    return position;
+                position = end;
+            }
+            return position;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Unexpected end of file");
+            position += read;
+        }
+    }
+
+    /**
+     * Buffers a reading for the next segment.
+     *
+     * @param patientId        the patient's ID
+     * @param measurementValue the measured value
+     * @param recordType       the record type code, see {@link RecordTypes}
+     * @param timestamp        the time of the reading in milliseconds since the epoch
+     */
+    public void add(int patientId, double measurementValue, int recordType, long timestamp) {
+        patients.computeIfAbsent(patientId, id -> new TreeMap<>())
+                .computeIfAbsent(recordType, type -> new Series())
+                .add(timestamp, measurementValue);
+        size++;
+    }
+
+    /**
+     * Buffers a reading for the next segment.
+     *
+     * @param patientId        the patient's ID
+     * @param measurementValue the measured value
+     * @param recordType       the record type label
+     * @param timestamp        the time of the reading in milliseconds since the epoch
+     */
+    public void add(int patientId, double measurementValue, String recordType, long timestamp) {
+        add(patientId, measurementValue, RecordTypes.codeOf(recordType), timestamp);
+    }
+
+    /**
+     * Buffers a whole series for the next segment, taking ownership of it.
+     * Only used for series no other reading of the patient and record type
+     * is added to.
+     */
+    void add(int patientId, int recordType, Series series) {
+        Series previous = patients.computeIfAbsent(patientId, id -> new TreeMap<>()).put(recordType, series);
+        if (previous != null)
+            throw new IllegalStateException("Series already buffered for patient " + patientId);
+        size += series.size;
+    }
+
+    /**
+     * Returns the number of readings buffered for the next segment.
+     *
+     * @return the number of buffered readings
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Compresses the buffered readings into a segment and appends it to the
+     * file. Does nothing if no reading is buffered.
+     *
+     * @throws IOException if the segment cannot be written
+     */
+    public void writeSegment() throws IOException {
+        if (size == 0)
+            return;
+
+        List<Integer> labels = new ArrayList<>();
+        int[] labelIndex = new int[RecordTypes.count()];
+        Arrays.fill(labelIndex, -1);
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        int[] offsets = new int[patients.size()];
+        int[] lengths = new int[patients.size()];
+        int patient = 0;
+        data.clear();
+        for (Map<Integer, Series> seriesByType : patients.values()) {
+            offsets[patient] = data.size();
+            data.writeVarint(seriesByType.size());
+            for (Map.Entry<Integer, Series> entry : seriesByType.entrySet()) {
+                int recordType = entry.getKey();
+                if (labelIndex[recordType] < 0) {
+                    labelIndex[recordType] = labels.size();
+                    labels.add(recordType);
+                }
+                Series series = entry.getValue();
+                series.sort();
+                first = Math.min(first, series.timestamps[0]);
+                last = Math.max(last, series.timestamps[series.size - 1]);
+                data.writeVarint(labelIndex[recordType]);
+                data.writeVarint(series.size);
+                encode(series, data);
+            }
+            data.align();
+            lengths[patient] = data.size() - offsets[patient];
+            patient++;
+        }
+
+        body.clear();
+        body.writeLong(first);
+        body.writeLong(last);
+        body.writeVarint(size);
+        body.writeVarint(labels.size());
+        for (int recordType : labels) {
+            byte[] name = RecordTypes.nameOf(recordType).getBytes(StandardCharsets.UTF_8);
+            body.writeVarint(name.length);
+            body.writeBytes(name);
+        }
+        body.writeVarint(patients.size());
+        patient = 0;
+        for (Map.Entry<Integer, Map<Integer, Series>> entry : patients.entrySet()) {
+            long patientFirst = Long.MAX_VALUE;
+            long patientLast = Long.MIN_VALUE;
+            int readings = 0;
+            for (Series series : entry.getValue().values()) {
+                patientFirst = Math.min(patientFirst, series.timestamps[0]);
+                patientLast = Math.max(patientLast, series.timestamps[series.size - 1]);
+                readings += series.size;
+            }
+            body.writeInt(entry.getKey());
+            body.writeLong(patientFirst);
+            body.writeLong(patientLast);
+            body.writeVarint(readings);
+            body.writeVarint(offsets[patient]);
+            body.writeVarint(lengths[patient]);
+            patient++;
+        }
+        data.writeTo(body);
+
+        crc.reset();
+        crc.update(body.array(), 0, body.size());
+        ByteBuffer segment = ByteBuffer.allocate(PREAMBLE_BYTES + body.size() + 4);
+        segment.putInt(MAGIC).put((byte) VERSION).putInt(body.size());
+        segment.put(body.array(), 0, body.size());
+        segment.putInt((int) crc.getValue());
+        segment.flip();
+        while (segment.hasRemaining())
+            channel.write(segment);
+
+        patients.clear();
+        size = 0;
+    }
+
+    /**
+     * Forces the segments written so far to the storage device.
+     *
+     * @throws IOException if the file cannot be synced
+     */
+    public void sync() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * Writes the buffered readings as a last segment and closes the file.
+     *
+     * @throws IOException if the segment cannot be written or the file closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            writeSegment();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Compresses a series sorted by timestamp. The first reading is stored
+     * verbatim. Each later timestamp is stored as its delta-of-delta: a 0 bit
+     * if the interval is unchanged, otherwise a prefix of 10, 110, 1110 or
+     * 1111 followed by 7, 9, 12 or 64 bits. Each later value is XORed with the
+     * previous one and stored as a 0 bit if they are equal, as 10 and the
+     * meaningful bits if they fit within the previous value's window of
+     * leading and trailing zeros, or as 11, 5 bits of leading zeros, 6 bits of
+     * length and the meaningful bits.
+     */
+    static void encode(Series series, BitWriter out) {
+        long previousTimestamp = series.timestamps[0];
+        long previousBits = Double.doubleToRawLongBits(series.values[0]);
+        out.writeBits(previousTimestamp, 64);
+        out.writeBits(previousBits, 64);
+        long previousDelta = 0;
+        int previousLeading = -1;
+        int previousTrailing = 0;
+        for (int i = 1; i < series.size; i++) {
+            long delta = series.timestamps[i] - previousTimestamp;
+            long deltaOfDelta = delta - previousDelta;
+            if (deltaOfDelta == 0) {
+                out.writeBits(0, 1);
+            } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+                out.writeBits(0b10, 2);
+                out.writeBits(deltaOfDelta + 63, 7);
+            } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+                out.writeBits(0b110, 3);
+                out.writeBits(deltaOfDelta + 255, 9);
+            } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+                out.writeBits(0b1110, 4);
+                out.writeBits(deltaOfDelta + 2047, 12);
+            } else {
+                out.writeBits(0b1111, 4);
+                out.writeBits(deltaOfDelta, 64);
+            }
+            previousTimestamp = series.timestamps[i];
+            previousDelta = delta;
+
+            long bits = Double.doubleToRawLongBits(series.values[i]);
+            long xor = bits ^ previousBits;
+            if (xor == 0) {
+                out.writeBits(0, 1);
+            } else {
+                int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                    out.writeBits(0b10, 2);
+                    out.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                } else {
+                    int meaningful = 64 - leading - trailing;
+                    out.writeBits(0b11, 2);
+                    out.writeBits(leading, 5);
+                    out.writeBits(meaningful - 1, 6);
+                    out.writeBits(xor >>> trailing, meaningful);
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+            }
+            previousBits = bits;
+        }
+    }
+
+    /**
+     * The buffered readings of one patient and record type.
+     */
+    static final class Series {
+        long[] timestamps;
+        double[] values;
+        int size;
+        private boolean sorted = true;
+
+        Series() {
+            timestamps = new long[64];
+            values = new double[64];
+        }
+
+        /**
+         * Wraps readings sorted by timestamp.
+         */
+        Series(long[] timestamps, double[] values) {
+            this.timestamps = timestamps;
+            this.values = values;
+            this.size = timestamps.length;
+        }
+
+        void add(long timestamp, double value) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size << 1);
+                values = Arrays.copyOf(values, size << 1);
+            }
+            if (size > 0 && timestamp < timestamps[size - 1])
+                sorted = false;
+            timestamps[size] = timestamp;
+            values[size] = value;
+            size++;
+        }
+
+        /**
+         * Sorts the readings by timestamp, keeping readings with equal
+         * timestamps in the order they were added.
+         */
+        void sort() {
+            if (sorted)
+                return;
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++)
+                order[i] = i;
+            long[] unsortedTimestamps = timestamps;
+            Arrays.sort(order, (a, b) -> Long.compare(unsortedTimestamps[a], unsortedTimestamps[b]));
+            long[] sortedTimestamps = new long[timestamps.length];
+            double[] sortedValues = new double[values.length];
+            for (int i = 0; i < size; i++) {
+                sortedTimestamps[i] = timestamps[order[i]];
+                sortedValues[i] = values[order[i]];
+            }
+            timestamps = sortedTimestamps;
+            values = sortedValues;
+            sorted = true;
+        }
+    }
+}
@@ -1,45 +1,167 @@
 package com.data_management;
 
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft_6455;
 import org.java_websocket.handshake.ServerHandshake;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
 
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
 
 public class WebSocketClientImpl extends WebSocketClient {
 
     private final DataStorage dataStorage;
-    private boolean connectionSuccessful;
+    private final IngestionPipeline pipeline;
+    private volatile boolean connectionSuccessful;
+    private final RecordParser parser = new RecordParser(); // Messages are delivered on one thread
 
     public WebSocketClientImpl(URI serverUri, DataStorage dataStorage) {
         super(serverUri);
         this.dataStorage = dataStorage;
+        this.pipeline = null;
         this.connectionSuccessful = false;
     }
 
+    /**
+     * Creates a client that may ask for the binary protocol, see
+     * {@link BinaryBatch}. A server that does not support it still sends
+     * text, so {@link #isBinary()} tells which one was agreed on.
+     *
+     * @param serverUri   the URI of the server
+     * @param dataStorage where received readings are stored
+     * @param binary      whether to ask for the binary protocol
+     */
+    public WebSocketClientImpl(URI serverUri, DataStorage dataStorage, boolean binary) {
+        super(serverUri, binary ? binaryDraft() : new Draft_6455());
+        this.dataStorage = dataStorage;
+        this.pipeline = null;
+        this.connectionSuccessful = false;
+    }
+
+    /**
+     * Creates a client that hands every message to a pipeline instead of
+     * parsing and storing it on the thread reading the socket.
+     *
+     * @param serverUri the URI of the server
+     * @param pipeline  parses and stores the received messages
+     * @param binary    whether to ask for the binary protocol
+     */
+    public WebSocketClientImpl(URI serverUri, IngestionPipeline pipeline, boolean binary) {
+        super(serverUri, binary ? binaryDraft() : new Draft_6455());
+        this.dataStorage = null;
+        this.pipeline = pipeline;
+        this.connectionSuccessful = false;
+    }
+
+    private static Draft_6455 binaryDraft() {
+        List<IProtocol> protocols = List.of(new Protocol(BinaryBatch.PROTOCOL), new Protocol(""));
+        return new Draft_6455(Collections.emptyList(), protocols);
+    }
+
     @Override
     public void onOpen(ServerHandshake handshake) {
         System.out.println("Connected to WebSocket server");
         connectionSuccessful = true;
     }
 
+    /**
+     * Stores the readings of a message: one reading, or several separated by
+     * newlines as {@code WebSocketOutputStrategy} batches them. A malformed
+     * reading is reported and skipped.
+     */
     @Override
     public void onMessage(String message) {
-        String[] patientData = message.split(",");
-
-        if (patientData.length == 4) {
+        if (pipeline != null) {
+            pipeline.offer(message);
+            return;
+        }
+        int from = 0;
+        while (from <= message.length()) {
+            int to = message.indexOf('\n', from);
+            if (to < 0)
+                to = message.length();
             try {
-                int patientId = Integer.parseInt(patientData[0]);
-                double measurementValue = Double.parseDouble(patientData[1]);
-                String recordType = patientData[2];
-                long timestamp = Long.parseLong(patientData[3]);
-                dataStorage.addPatientData(patientId, measurementValue, recordType, timestamp);
-
+                if (to > from && parser.parse(message, from, to))
+                    store(parser.getPatientId(), parser.getMeasurementValue(), parser.getRecordType(),
+                            parser.getTimestamp());
             } catch (NumberFormatException e) {
-                System.err.println("Error parsing message: " + message);
+                System.err.println("Error parsing message: " + message.substring(from, to));
             }
+            from = to + 1;
         }
     }
 
+    /**
+     * Stores the readings of a binary message.
+     */
+    @Override
+    public void onMessage(ByteBuffer bytes) {
+        if (pipeline != null) {
+            pipeline.offer(bytes);
+            return;
+        }
+        try {
+            BinaryBatch.decode(bytes, this::store);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error parsing binary message: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stores one received reading. Not called for messages handed to a
+     * pipeline.
+     */
+    protected void store(int patientId, double measurementValue, int recordType, long timestamp) {
+        dataStorage.addPatientData(patientId, measurementValue, recordType, timestamp);
+    }
+
+    /**
+     * Returns whether the server agreed to send binary messages.
+     *
+     * @return true if the binary protocol is used on this connection
+     */
+    public boolean isBinary() {
+        IProtocol protocol = getProtocol();
+        return protocol != null && BinaryBatch.PROTOCOL.equals(protocol.getProvidedProtocol());
+    }
+
+    /**
+     * Asks the server for only some readings from now on.
+     *
+     * @param patientIds     the patients to receive readings of, or null for
+     *                       every patient
+     * @param labels         the labels to receive readings of, or null for
+     *                       every label
+     * @param intervalMillis the least time between two readings received of one
+     *                       patient and label, or 0 for every reading
+     */
+    public void subscribe(Collection<Integer> patientIds, Collection<String> labels, long intervalMillis) {
+        send(subscription(patientIds, labels, intervalMillis));
+    }
+
+    static String subscription(Collection<Integer> patientIds, Collection<String> labels, long intervalMillis) {
+        StringBuilder message = new StringBuilder("subscribe");
+        if (patientIds != null)
+            message.append(" patients=").append(patientIds.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        if (labels != null)
+            message.append(" labels=").append(String.join(",", labels));
+        if (intervalMillis > 0)
+            message.append(" interval=").append(intervalMillis);
+        return message.toString();
+    }
+
+    /**
+     * Asks the server for every reading again.
+     */
+    public void unsubscribe() {
+        send("unsubscribe");
+    }
+
     @Override
     public void onClose(int code, String reason, boolean remote) {
         System.out.println("Disconnected from Websocket server");
@@ -4,27 +4,96 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 
-public class WebSocketDataReader implements DataReader{
+/**
+ * Reads readings from a WebSocket server into storage until closed, through
+ * a {@link ReconnectingWebSocketClient}: a lost connection is reconnected and
+ * the readings missed meanwhile are resent by the server. Received readings
+ * are parsed and stored by the client's {@link IngestionPipeline}, which can
+ * pass every stored reading on to a downstream listener such as the
+ * evaluator of an {@code AlertGenerator}.
+ */
+public class WebSocketDataReader implements DataReader, AutoCloseable {
+    private static final long CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private final boolean binary;
+    private final RecordListener downstream;
+    private ReconnectingWebSocketClient client;
+
+    public WebSocketDataReader() {
+        this(false);
+    }
+
+    /**
+     * Creates a reader that may ask the server for the binary protocol, see
+     * {@link BinaryBatch}.
+     *
+     * @param binary whether to ask for the binary protocol
+     */
+    public WebSocketDataReader(boolean binary) {
+        this(binary, null);
+    }
+
+    /**
+     * Creates a reader that passes every stored reading on downstream, e.g.
+     * {@code new WebSocketDataReader(false, alertGenerator.getStreamingEvaluator())}
+     * to evaluate alerts as readings arrive without a storage listener.
+     *
+     * @param binary     whether to ask for the binary protocol
+     * @param downstream receives every stored reading on the pipeline's
+     *                   downstream threads, or null for none
+     */
+    public WebSocketDataReader(boolean binary, RecordListener downstream) {
+        this.binary = binary;
+        this.downstream = downstream;
+    }
+
     @Override
     public void readData(DataStorage dataStorage) throws IOException {
 
     }
 
+    /**
+     * Connects and keeps reading in the background.
+     *
+     * @throws IOException if the first connection fails
+     */
     @Override
     public void readData(DataStorage dataStorage, String websocketUrl) throws IOException {
 
         try {
             URI url = new URI(websocketUrl);
-            WebSocketClientImpl client = new WebSocketClientImpl(url, dataStorage);
-            client.connectBlocking();
-
-            if (!client.isConnectionSuccessful()) {
+            ReconnectingWebSocketClient connecting = new ReconnectingWebSocketClient(url, dataStorage, downstream,
+                    binary);
+            if (!connecting.start(CONNECT_TIMEOUT_MILLIS)) {
+                connecting.close();
                 throw new IOException("Failed to connect to WebSocket");
             }
+            close();
+            client = connecting;
 
-        } catch (URISyntaxException | InterruptedException | IOException e) {
+        } catch (URISyntaxException | InterruptedException e) {
             throw new IOException("Failed to connect to WebSocket", e);
         }
 
     }
+
+    /**
+     * Returns the client reading, for its connection statistics.
+     *
+     * @return the client, or null if not reading
+     */
+    public ReconnectingWebSocketClient getClient() {
+        return client;
+    }
+
+    /**
+     * Stops reading.
+     */
+    @Override
+    public void close() {
+        if (client != null) {
+            client.close();
+            client = null;
+        }
+    }
 }
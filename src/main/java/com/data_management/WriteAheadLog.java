@@ -0,0 +1,269 @@
+package com.data_management;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * The log behind {@link DurableDataStorage}. Readings are appended to an
+ * in-memory buffer and written by {@link #commit()} as one frame with a single
+ * write and a single {@code force}, however many readings it holds, so the
+ * cost of syncing is shared by everything that arrived since the last commit.
+ * <p>
+ * A frame is an int payload length, the CRC-32 of the payload and the
+ * payload: a sequence of records, each a reading ({@code 'R'}, int patient
+ * ID, int record type code, double value, long timestamp) or the definition
+ * of a record type code ({@code 'L'}, int code, short length, UTF-8 label),
+ * written before the first reading using the code in each file. Codes are
+ * only meaningful within one process, so replay maps them back through the
+ * labels.
+ */
+final class WriteAheadLog implements Closeable {
+    private static final byte READING = 'R';
+    private static final byte LABEL = 'L';
+    private static final int READING_BYTES = 25;
+    private static final int FRAME_HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final Object commitLock = new Object();
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024); // Guarded by this
+    private ByteBuffer spare = ByteBuffer.allocate(64 * 1024); // Guarded by commitLock
+    private boolean[] labelsLogged = new boolean[0]; // Guarded by this
+    private FileChannel channel; // Guarded by commitLock
+    private long sequence; // Guarded by commitLock
+    private long tornAt = -1; // Guarded by commitLock: where a failed commit could not cut the file back to
+
+    /**
+     * Opens a new log file.
+     *
+     * @param directory the directory of the log files
+     * @param sequence  the sequence number of the first file
+     * @throws IOException if the file cannot be created
+     */
+    WriteAheadLog(Path directory, long sequence) throws IOException {
+        this.directory = directory;
+        this.sequence = sequence;
+        this.channel = open(sequence);
+    }
+
+    static Path file(Path directory, long sequence) {
+        return directory.resolve(String.format("wal-%020d.log", sequence));
+    }
+
+    /**
+     * Buffers a reading for the next commit.
+     *
+     * @return the number of bytes waiting to be committed
+     */
+    int append(int patientId, double measurementValue, int recordType, long timestamp) {
+        synchronized (this) {
+            if (recordType >= labelsLogged.length || !labelsLogged[recordType]) {
+                if (recordType >= labelsLogged.length)
+                    labelsLogged = Arrays.copyOf(labelsLogged, Math.max(recordType + 1, RecordTypes.count()));
+                labelsLogged[recordType] = true;
+                byte[] label = RecordTypes.nameOf(recordType).getBytes(StandardCharsets.UTF_8);
+                ensureCapacity(7 + label.length);
+                buffer.put(LABEL).putInt(recordType).putShort((short) label.length).put(label);
+            }
+            ensureCapacity(READING_BYTES);
+            buffer.put(READING).putInt(patientId).putInt(recordType).putDouble(measurementValue).putLong(timestamp);
+            return buffer.position();
+        }
+    }
+
+    /**
+     * Writes the buffered readings as one frame and forces it to the storage
+     * device. When this returns, every reading appended before the call is
+     * durable. If it fails, the readings stay buffered for the next commit and
+     * the file is cut back to its last whole frame, as replay stops at the
+     * first broken one.
+     *
+     * @throws IOException if the frame cannot be written
+     */
+    void commit() throws IOException {
+        synchronized (commitLock) {
+            if (tornAt >= 0) {
+                channel.truncate(tornAt);
+                tornAt = -1;
+            }
+            long start = channel.size();
+            ByteBuffer payload;
+            synchronized (this) {
+                if (buffer.position() == 0)
+                    return;
+                payload = buffer;
+                spare.clear();
+                buffer = spare;
+            }
+            spare = payload;
+            payload.flip();
+            crc.reset();
+            crc.update(payload.array(), 0, payload.limit());
+            ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_BYTES);
+            header.putInt(payload.limit()).putInt((int) crc.getValue()).flip();
+            try {
+                ByteBuffer[] frame = {header, payload};
+                do {
+                    channel.write(frame);
+                } while (payload.hasRemaining());
+                channel.force(false);
+            } catch (IOException e) {
+                requeue(payload);
+                try {
+                    channel.truncate(start);
+                } catch (IOException truncateFailure) {
+                    tornAt = start; // Cut back before the next frame is written
+                    e.addSuppressed(truncateFailure);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Puts the payload of a failed commit back in front of the readings
+     * appended since.
+     */
+    private void requeue(ByteBuffer payload) {
+        synchronized (this) {
+            int length = payload.limit();
+            payload.clear().position(length);
+            ByteBuffer appended = buffer;
+            buffer = payload;
+            ensureCapacity(appended.position());
+            appended.flip();
+            buffer.put(appended);
+            appended.clear();
+            spare = appended;
+        }
+    }
+
+    /**
+     * Commits the buffered readings and continues in a new file. The caller
+     * must keep readings from being appended meanwhile.
+     *
+     * @param next the sequence number of the new file
+     * @throws IOException if the current file cannot be committed or closed,
+     *                     or the new one created
+     */
+    void rotate(long next) throws IOException {
+        synchronized (commitLock) {
+            commit();
+            channel.close();
+            channel = open(next);
+            sequence = next;
+            synchronized (this) {
+                Arrays.fill(labelsLogged, false);
+            }
+        }
+    }
+
+    long sequence() {
+        synchronized (commitLock) {
+            return sequence;
+        }
+    }
+
+    /**
+     * Commits the buffered readings and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (commitLock) {
+            try {
+                commit();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Replays the readings of a log file. Replay stops at the first frame that
+     * is incomplete or fails its checksum, as left by a crash during a commit.
+     *
+     * @param file the log file
+     * @param sink receives every reading in the order it was logged
+     * @return the number of readings replayed
+     * @throws IOException if the file cannot be read
+     */
+    static long replay(Path file, RecordListener sink) throws IOException {
+        long readings = 0;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_BYTES);
+            int[] codes = new int[0]; // Record type code in the file to code in this process, plus one
+            CRC32 crc = new CRC32();
+            while (size - position >= FRAME_HEADER_BYTES) {
+                header.clear();
+                readFully(in, header, position);
+                int length = header.getInt(0);
+                if (length < 0 || length > size - position - FRAME_HEADER_BYTES)
+                    break;
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                readFully(in, payload, position + FRAME_HEADER_BYTES);
+                crc.reset();
+                crc.update(payload.array(), 0, length);
+                if ((int) crc.getValue() != header.getInt(4))
+                    break;
+
+                payload.flip();
+                while (payload.hasRemaining()) {
+                    byte type = payload.get();
+                    if (type == LABEL) {
+                        int code = payload.getInt();
+                        byte[] label = new byte[payload.getShort()];
+                        payload.get(label);
+                        if (code >= codes.length)
+                            codes = Arrays.copyOf(codes, code + 1);
+                        codes[code] = RecordTypes.codeOf(new String(label, StandardCharsets.UTF_8)) + 1;
+                    } else if (type == READING) {
+                        int patientId = payload.getInt();
+                        int code = payload.getInt();
+                        double value = payload.getDouble();
+                        long timestamp = payload.getLong();
+                        if (code < 0 || code >= codes.length || codes[code] == 0)
+                            throw new IOException("Undefined record type code " + code + " in " + file);
+                        sink.onRecord(patientId, value, codes[code] - 1, timestamp);
+                        readings++;
+                    } else {
+                        throw new IOException("Unknown record " + type + " in " + file);
+                    }
+                }
+                position += FRAME_HEADER_BYTES + length;
+            }
+        }
+        return readings;
+    }
+
+    private FileChannel open(long sequence) throws IOException {
+        return FileChannel.open(file(directory, sequence), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (buffer.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() << 1, buffer.position() + bytes));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Unexpected end of file");
+            position += read;
+        }
+    }
+}
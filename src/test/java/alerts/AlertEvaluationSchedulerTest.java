@@ -0,0 +1,143 @@
+package alerts;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.alerts.Alert;
+import com.alerts.AlertEvaluationScheduler;
+import com.alerts.AlertStrategy;
+import com.alerts.BloodOxygenAlertStrategy;
+import com.alerts.BloodPressureAlertStrategy;
+import com.alerts.ECGAlertStrategy;
+import com.alerts.HypotensiveHypoxemiaAlertStrategy;
+import com.data_management.DataStorage;
+import com.data_management.Patient;
+import com.data_management.PatientRecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AlertEvaluationSchedulerTest {
+
+    private static DataStorage randomStorage(int patients, int readingsPerType) {
+        Random random = new Random(11);
+        DataStorage storage = new DataStorage();
+        for (int patientId = patients; patientId >= 1; patientId--) {
+            for (int i = 0; i < readingsPerType; i++) {
+                long timestamp = i * 1000L;
+                storage.addPatientData(patientId, random.nextGaussian(), "ECG", timestamp);
+                storage.addPatientData(patientId, 88 + random.nextInt(13), "Saturation", timestamp);
+                storage.addPatientData(patientId, 85 + random.nextInt(100), "SystolicPressure", timestamp);
+                storage.addPatientData(patientId, 55 + random.nextInt(70), "DiastolicPressure", timestamp);
+            }
+        }
+        return storage;
+    }
+
+    private static List<AlertStrategy> strategies() {
+        return Arrays.asList(new ECGAlertStrategy(), new BloodPressureAlertStrategy(),
+                new BloodOxygenAlertStrategy(), new HypotensiveHypoxemiaAlertStrategy());
+    }
+
+    @Test
+    void matchesSerialEvaluationInDeterministicOrder() {
+        DataStorage storage = randomStorage(200, 20);
+        List<AlertStrategy> strategies = strategies();
+
+        List<Alert> expected = new ArrayList<>();
+        for (int patientId = 1; patientId <= 200; patientId++) {
+            List<PatientRecord> records = storage.getRecords(patientId, Long.MIN_VALUE, Long.MAX_VALUE);
+            for (AlertStrategy strategy : strategies) {
+                Alert alert = strategy.checkAlert(records);
+                if (alert != null)
+                    expected.add(alert);
+            }
+        }
+        assertFalse(expected.isEmpty());
+
+        ForkJoinPool pool = new ForkJoinPool(8);
+        try {
+            for (int run = 0; run < 5; run++) {
+                List<Alert> alerts = new AlertEvaluationScheduler(storage, strategies, pool, 2).evaluateAll();
+                assertEquals(expected.size(), alerts.size());
+                for (int i = 0; i < alerts.size(); i++) {
+                    assertEquals(expected.get(i).getPatientId(), alerts.get(i).getPatientId());
+                    assertEquals(expected.get(i).getCondition(), alerts.get(i).getCondition());
+                    assertEquals(expected.get(i).getTimestamp(), alerts.get(i).getTimestamp());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void perPatientConcurrencyIsCapped() {
+        DataStorage storage = randomStorage(50, 5);
+        ConcurrentHashMap<Integer, AtomicInteger> running = new ConcurrentHashMap<>();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        AlertStrategy slowStrategy = records -> {
+            AtomicInteger counter = running.computeIfAbsent(records.get(0).getPatientId(), id -> new AtomicInteger());
+            maxRunning.accumulateAndGet(counter.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            counter.decrementAndGet();
+            return null;
+        };
+
+        ForkJoinPool pool = new ForkJoinPool(8);
+        try {
+            List<AlertStrategy> strategies = new ArrayList<>();
+            for (int i = 0; i < 8; i++)
+                strategies.add(slowStrategy);
+            new AlertEvaluationScheduler(storage, strategies, pool, 3).evaluateAll();
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(maxRunning.get() <= 3, "max running: " + maxRunning.get());
+        assertThrows(IllegalArgumentException.class,
+                () -> new AlertEvaluationScheduler(storage, strategies(), ForkJoinPool.commonPool(), 0));
+    }
+
+    @Test
+    void evaluatesTimeRangeOfGivenPatients() {
+        DataStorage storage = new DataStorage();
+        storage.addPatientData(1, 95, "Saturation", 1000L);
+        storage.addPatientData(1, 80, "Saturation", 2000L);
+        storage.addPatientData(2, 80, "Saturation", 1000L);
+
+        AlertEvaluationScheduler scheduler = new AlertEvaluationScheduler(storage);
+        List<Patient> patients = storage.getAllPatients();
+        assertEquals(2, scheduler.evaluate(patients, 0L, 2000L).size());
+
+        List<Alert> alerts = scheduler.evaluate(patients, 1500L, 3000L);
+        assertEquals(1, alerts.size());
+        assertEquals(1, alerts.get(0).getPatientId());
+        assertTrue(scheduler.evaluate(new ArrayList<>(), 0L, 0L).isEmpty());
+    }
+
+    @Test
+    void tenThousandPatientsAreEvaluated() {
+        DataStorage storage = randomStorage(10_000, 10);
+        AlertEvaluationScheduler scheduler = new AlertEvaluationScheduler(storage);
+        scheduler.evaluateAll(); // Warm up
+
+        long start = System.nanoTime();
+        List<Alert> alerts = scheduler.evaluateAll();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        // A generous bound for slow machines; AlertEvaluationBenchmark measures it
+        assertTrue(elapsedMillis < 5000, elapsedMillis + " ms");
+
+        for (int i = 1; i < alerts.size(); i++)
+            assertTrue(alerts.get(i - 1).getPatientId() <= alerts.get(i).getPatientId());
+    }
+}
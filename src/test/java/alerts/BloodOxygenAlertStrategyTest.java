@@ -0,0 +1,117 @@
+package alerts;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.alerts.AlertConstants;
+import com.alerts.BloodOxygenAlertStrategy;
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.RecordTypes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class BloodOxygenAlertStrategyTest {
+
+    private final int patientId = 100;
+
+    /**
+     * The pairwise scan the sliding window replaced, kept as the reference.
+     */
+    private static boolean hasDropNestedLoop(List<PatientRecord> saturation) {
+        for (int i = 0; i < saturation.size() - 1; i++) {
+            for (int j = i + 1; j < saturation.size(); j++) {
+                long timeDifference = saturation.get(j).getTimestamp() - saturation.get(i).getTimestamp();
+                double valueDifference = saturation.get(i).getMeasurementValue() - saturation.get(j).getMeasurementValue();
+
+                if (timeDifference < 600000 && valueDifference >= AlertConstants.OXYGEN_DROP)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private List<PatientRecord> randomReadings(Random random, int count, boolean sorted) {
+        List<PatientRecord> readings = new ArrayList<>();
+        long timestamp = 1_700_000_000_000L;
+        double saturation = 90 + random.nextInt(11);
+        for (int i = 0; i < count; i++) {
+            // Gaps from zero up to past the window, hitting its exact boundary now and then
+            int gap = random.nextInt(10);
+            timestamp += gap == 0 ? 0 : gap == 1 ? 600_000 : gap == 2 ? 599_999 : random.nextInt(120_000);
+            if (!sorted && random.nextInt(10) == 0)
+                timestamp -= random.nextInt(700_000);
+            saturation = Math.min(100, Math.max(85, saturation + random.nextInt(7) - 3 + random.nextDouble() - 0.5));
+            readings.add(new PatientRecord(patientId, saturation, "Saturation", timestamp));
+        }
+        return readings;
+    }
+
+    @Test
+    void slidingWindowMatchesNestedLoopOnRandomData() {
+        Random random = new Random(2024);
+        int drops = 0;
+        for (int trial = 0; trial < 5000; trial++) {
+            List<PatientRecord> readings = randomReadings(random, random.nextInt(60), true);
+            boolean expected = hasDropNestedLoop(readings);
+            assertEquals(expected, BloodOxygenAlertStrategy.hasSignificantDrop(readings), "trial " + trial);
+            if (expected)
+                drops++;
+        }
+        // Both outcomes must be well represented for the comparison to mean anything
+        assertTrue(drops > 500 && drops < 4500, "drops: " + drops);
+    }
+
+    @Test
+    void unsortedReadingsMatchNestedLoop() {
+        Random random = new Random(99);
+        for (int trial = 0; trial < 2000; trial++) {
+            List<PatientRecord> readings = randomReadings(random, random.nextInt(40), false);
+            assertEquals(hasDropNestedLoop(readings), BloodOxygenAlertStrategy.hasSignificantDrop(readings), "trial " + trial);
+        }
+    }
+
+    @Test
+    void dropAtWindowBoundary() {
+        List<PatientRecord> readings = new ArrayList<>();
+        readings.add(new PatientRecord(patientId, 99, "Saturation", 0));
+        readings.add(new PatientRecord(patientId, 94, "Saturation", 600_000));
+        assertFalse(BloodOxygenAlertStrategy.hasSignificantDrop(readings));
+
+        readings.add(1, new PatientRecord(patientId, 99, "Saturation", 1));
+        assertTrue(BloodOxygenAlertStrategy.hasSignificantDrop(readings));
+    }
+
+    @Test
+    void lateReadingDoesNotHideALaterDrop() {
+        BloodOxygenAlertStrategy strategy = new BloodOxygenAlertStrategy();
+        assertNull(strategy.onReading(patientId, RecordTypes.SATURATION, 99, 700_000));
+        // Replayed after the reading above; once in the window it would push the 99 out
+        assertNull(strategy.onReading(patientId, RecordTypes.SATURATION, 99.5, 50_000));
+        assertNotNull(strategy.onReading(patientId, RecordTypes.SATURATION, 93.5, 710_000));
+    }
+
+    @Test
+    void lateCriticalReadingStillAlerts() {
+        BloodOxygenAlertStrategy strategy = new BloodOxygenAlertStrategy();
+        assertNull(strategy.onReading(patientId, RecordTypes.SATURATION, 97, 700_000));
+        assertNotNull(strategy.onReading(patientId, RecordTypes.SATURATION, 85, 650_000));
+        // Kept out of the window: 97 is still its maximum
+        assertNull(strategy.onReading(patientId, RecordTypes.SATURATION, 96, 710_000));
+    }
+
+    @Test
+    void dayOfReadingsFromStorageIsCheckedInLinearTime() {
+        DataStorage storage = new DataStorage();
+        for (int second = 0; second < 86_400; second++)
+            storage.addPatientData(patientId, 95 + second % 3, "Saturation", second * 1000L);
+
+        List<PatientRecord> saturation = storage.getRecords(patientId, "Saturation", 0, Long.MAX_VALUE);
+        long start = System.nanoTime();
+        assertFalse(new BloodOxygenAlertStrategy().isBloodSaturationCritical(saturation));
+        // The pairwise scan needs billions of comparisons for a day of 1 Hz data
+        assertTrue(System.nanoTime() - start < 5_000_000_000L);
+    }
+}
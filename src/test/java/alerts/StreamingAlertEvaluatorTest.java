@@ -0,0 +1,120 @@
+package alerts;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.alerts.Alert;
+import com.alerts.AlertConstants;
+import com.alerts.BloodOxygenAlertStrategy;
+import com.alerts.BloodPressureAlertStrategy;
+import com.alerts.ECGAlertStrategy;
+import com.alerts.HypotensiveHypoxemiaAlertStrategy;
+import com.alerts.StreamingAlertEvaluator;
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.RecordTypes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class StreamingAlertEvaluatorTest {
+
+    private final int patientId = 100;
+
+    @Test
+    void ecgMatchesFullHistoryCheck() {
+        Random random = new Random(42);
+        ECGAlertStrategy batch = new ECGAlertStrategy();
+        ECGAlertStrategy streaming = new ECGAlertStrategy();
+        List<PatientRecord> history = new ArrayList<>();
+
+        for (int i = 0; i < 2000; i++) {
+            double value = random.nextGaussian() + (random.nextInt(50) == 0 ? 5 : 0);
+            history.add(new PatientRecord(patientId, value, "ECG", i));
+            Alert alert = streaming.onReading(patientId, RecordTypes.ECG, value, i);
+            assertEquals(batch.isECGDataCritical(history), alert != null, "reading " + i);
+        }
+    }
+
+    @Test
+    void saturationMatchesFullHistoryCheck() {
+        Random random = new Random(7);
+        BloodOxygenAlertStrategy batch = new BloodOxygenAlertStrategy();
+        BloodOxygenAlertStrategy streaming = new BloodOxygenAlertStrategy();
+        List<PatientRecord> history = new ArrayList<>();
+        double saturation = 97;
+        long timestamp = 0;
+        boolean dropSeen = false;
+
+        // Saturation stays above the threshold, so every alert is a drop; the full-history
+        // check keeps reporting a drop once one has happened, the stream reports it once
+        for (int i = 0; i < 400; i++) {
+            saturation = Math.min(100, Math.max(AlertConstants.OXYGEN_SATURATION, saturation + random.nextInt(5) - 2));
+            timestamp += random.nextInt(30_000);
+            history.add(new PatientRecord(patientId, saturation, "Saturation", timestamp));
+            Alert alert = streaming.onReading(patientId, RecordTypes.SATURATION, saturation, timestamp);
+            dropSeen |= alert != null;
+            assertEquals(batch.isBloodSaturationCritical(history), dropSeen, "reading " + i);
+        }
+        assertTrue(dropSeen);
+    }
+
+    @Test
+    void hypotensiveHypoxemiaMatchesLatestReadings() {
+        Random random = new Random(3);
+        HypotensiveHypoxemiaAlertStrategy batch = new HypotensiveHypoxemiaAlertStrategy();
+        HypotensiveHypoxemiaAlertStrategy streaming = new HypotensiveHypoxemiaAlertStrategy();
+        List<PatientRecord> saturation = new ArrayList<>();
+        List<PatientRecord> systolic = new ArrayList<>();
+
+        for (int i = 0; i < 1000; i++) {
+            Alert alert;
+            if (random.nextBoolean()) {
+                double value = 85 + random.nextInt(15);
+                saturation.add(new PatientRecord(patientId, value, "Saturation", i));
+                alert = streaming.onReading(patientId, RecordTypes.SATURATION, value, i);
+            } else {
+                double value = 80 + random.nextInt(20);
+                systolic.add(new PatientRecord(patientId, value, "SystolicPressure", i));
+                alert = streaming.onReading(patientId, RecordTypes.SYSTOLIC_PRESSURE, value, i);
+            }
+            assertEquals(batch.isThereHypotensiveHypoxemia(saturation, systolic), alert != null, "reading " + i);
+        }
+    }
+
+    @Test
+    void bloodPressureTrendUsesLastThreeReadings() {
+        BloodPressureAlertStrategy streaming = new BloodPressureAlertStrategy();
+
+        assertNull(streaming.onReading(patientId, RecordTypes.SYSTOLIC_PRESSURE, 120, 1));
+        assertNull(streaming.onReading(patientId, RecordTypes.DIASTOLIC_PRESSURE, 80, 2));
+        assertNull(streaming.onReading(patientId, RecordTypes.SYSTOLIC_PRESSURE, 135, 3));
+        Alert alert = streaming.onReading(patientId, RecordTypes.SYSTOLIC_PRESSURE, 150, 4);
+        assertNotNull(alert);
+        assertEquals("BloodPressure", alert.getCondition());
+        assertEquals(4, alert.getTimestamp());
+
+        // The trend window has moved on; an out-of-range diastolic reading still alerts
+        assertNull(streaming.onReading(patientId, RecordTypes.SYSTOLIC_PRESSURE, 145, 5));
+        assertNotNull(streaming.onReading(patientId, RecordTypes.DIASTOLIC_PRESSURE, 130, 6));
+        assertNull(streaming.onReading(patientId, RecordTypes.ECG, 130, 7));
+    }
+
+    @Test
+    void storageListenerEvaluatesEachReading() {
+        DataStorage storage = new DataStorage();
+        List<Alert> alerts = new ArrayList<>();
+        storage.addRecordListener(new StreamingAlertEvaluator(alerts::add));
+
+        storage.addPatientData(1, 98, "Saturation", 0);
+        storage.addPatientData(2, 98, "Saturation", 0);
+        storage.addPatientData(1, 92, "Saturation", 60_000);
+        storage.addPatientData(2, 97, "Saturation", 60_000);
+
+        assertEquals(1, alerts.size());
+        assertEquals(1, alerts.get(0).getPatientId());
+        assertEquals("BloodOxygen", alerts.get(0).getCondition());
+        assertEquals(60_000, alerts.get(0).getTimestamp());
+    }
+}
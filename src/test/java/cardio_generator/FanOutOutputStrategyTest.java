@@ -0,0 +1,131 @@
+package cardio_generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.cardio_generator.outputs.FanOutOutputStrategy;
+import com.cardio_generator.outputs.FanOutOutputStrategy.OverflowPolicy;
+import com.cardio_generator.outputs.FanOutOutputStrategy.SinkStats;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.RecordTypes;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class FanOutOutputStrategyTest {
+
+    /**
+     * Records the readings it receives, optionally taking a while for each.
+     */
+    private static class Recording implements OutputStrategy, AutoCloseable {
+        final List<String> readings = new CopyOnWriteArrayList<>();
+        final long delayMillis;
+        final AtomicBoolean closed = new AtomicBoolean();
+
+        Recording(long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public void output(int patientId, long timestamp, String label, String data) {
+            readings.add(patientId + "," + timestamp + "," + label + "," + data);
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            closed.set(true);
+        }
+    }
+
+    @Test
+    void everyOutputGetsEveryReadingInOrder() throws InterruptedException {
+        FanOutOutputStrategy fanOut = new FanOutOutputStrategy();
+        Recording first = new Recording(0);
+        Recording second = new Recording(0);
+        AtomicInteger typed = new AtomicInteger();
+        fanOut.addOutput("first", first, OverflowPolicy.BLOCK, 16);
+        fanOut.addOutput("second", second, OverflowPolicy.BLOCK, 16);
+        fanOut.addOutput("typed", new OutputStrategy() {
+            @Override
+            public void output(int patientId, long timestamp, int labelCode, double value) {
+                typed.incrementAndGet();
+            }
+
+            @Override
+            public void output(int patientId, long timestamp, String label, String data) {
+            }
+        }, OverflowPolicy.BLOCK, 16);
+
+        for (int i = 0; i < 1000; i++) {
+            if (i % 2 == 0)
+                fanOut.output(1, i, RecordTypes.SATURATION, 97);
+            else
+                fanOut.output(1, i, "ECG", "0.5");
+        }
+        fanOut.flush();
+
+        assertEquals(1000, first.readings.size());
+        assertEquals(first.readings, second.readings);
+        assertEquals("1,0,Saturation,97.0%", first.readings.get(0));
+        assertEquals("1,999,ECG,0.5", first.readings.get(999));
+        assertEquals(500, typed.get());
+        for (SinkStats stats : fanOut.getStats()) {
+            assertEquals(0, stats.getDropped());
+            assertEquals(0, stats.getQueued());
+        }
+        fanOut.close();
+        assertTrue(first.closed.get() && second.closed.get());
+    }
+
+    @Test
+    void aSlowOutputDropsItsOldestReadingsWithoutSlowingTheOthers() throws InterruptedException {
+        FanOutOutputStrategy fanOut = new FanOutOutputStrategy();
+        Recording slow = new Recording(1);
+        Recording live = new Recording(0);
+        fanOut.addOutput("slow", slow, OverflowPolicy.DROP_OLDEST, 100);
+        fanOut.addOutput("live", live, OverflowPolicy.DROP_OLDEST);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 10_000; i++)
+            fanOut.output(i % 10, i, RecordTypes.ECG, i);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(elapsedMillis < 2000, elapsedMillis + " ms"); // The slow output alone would take 10 s
+        fanOut.flush();
+
+        SinkStats slowStats = fanOut.getStats().get(0);
+        SinkStats liveStats = fanOut.getStats().get(1);
+        assertEquals(10_000, liveStats.getPassedOn());
+        assertEquals(10_000, live.readings.size());
+        assertTrue(slowStats.getDropped() > 0);
+        assertEquals(10_000, slowStats.getPassedOn() + slowStats.getDropped());
+        // What the slow output got is in order and ends with the newest readings
+        assertEquals("9,9999,ECG,9999.0", slow.readings.get(slow.readings.size() - 1));
+        fanOut.close();
+    }
+
+    @Test
+    void aBlockingOutputSlowsTheGeneratorsAndDropsNothing() throws InterruptedException {
+        FanOutOutputStrategy fanOut = new FanOutOutputStrategy();
+        Recording slow = new Recording(1);
+        fanOut.addOutput("slow", slow, OverflowPolicy.BLOCK, 10);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++)
+            fanOut.output(1, i, RecordTypes.ECG, i);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        fanOut.close(); // Passes on what is still queued
+
+        assertTrue(elapsedMillis >= 80, elapsedMillis + " ms");
+        assertEquals(100, slow.readings.size());
+        assertEquals(0, fanOut.getStats().get(0).getDropped());
+    }
+}
@@ -0,0 +1,112 @@
+package cardio_generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.cardio_generator.outputs.FileOutputStrategy;
+import com.data_management.RecordTypes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+class FileOutputStrategyTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void linesAreWrittenPerLabelInOrder() throws IOException {
+        FileOutputStrategy output = new FileOutputStrategy(directory.resolve("out").toString());
+        for (int i = 0; i < 10_000; i++) {
+            output.output(i % 7, 1000L + i, "ECG", Double.toString(i / 10.0));
+            if (i % 10 == 0)
+                output.output(i % 7, 1000L + i, "Saturation", "97.0%");
+        }
+        output.close();
+
+        List<String> ecg = Files.readAllLines(directory.resolve("out").resolve("ECG.txt"));
+        assertEquals(10_000, ecg.size());
+        assertEquals("Patient ID: 0, Timestamp: 1000, Label: ECG, Data: 0.0", ecg.get(0));
+        assertEquals("Patient ID: 3, Timestamp: 10999, Label: ECG, Data: 999.9", ecg.get(9999));
+        List<String> saturation = Files.readAllLines(directory.resolve("out").resolve("Saturation.txt"));
+        assertEquals(1000, saturation.size());
+        assertEquals("Patient ID: 0, Timestamp: 1000, Label: Saturation, Data: 97.0%", saturation.get(0));
+    }
+
+    @Test
+    void linesAreWrittenAfterTheFlushInterval() throws Exception {
+        FileOutputStrategy output = new FileOutputStrategy(directory.toString(), 1000, 20,
+                FileOutputStrategy.SyncPolicy.EVERY_BATCH);
+        try {
+            output.output(1, 1000L, "ECG", "0.5");
+            Path file = directory.resolve("ECG.txt");
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!(Files.exists(file) && Files.size(file) > 0) && System.currentTimeMillis() < deadline)
+                Thread.sleep(5);
+            assertEquals(1, Files.readAllLines(file).size());
+        } finally {
+            output.close();
+        }
+    }
+
+    @Test
+    void concurrentProducersLoseNothing() throws Exception {
+        FileOutputStrategy output = new FileOutputStrategy(directory.toString(), 64, 10,
+                FileOutputStrategy.SyncPolicy.ON_CLOSE);
+        Thread[] producers = new Thread[4];
+        for (int p = 0; p < producers.length; p++) {
+            int patientId = p;
+            producers[p] = new Thread(() -> {
+                for (int i = 0; i < 20_000; i++)
+                    output.output(patientId, i, "ECG", "0.1");
+            });
+            producers[p].start();
+        }
+        for (Thread producer : producers)
+            producer.join();
+        output.close();
+        output.close();
+
+        List<String> lines = Files.readAllLines(directory.resolve("ECG.txt"));
+        assertEquals(80_000, lines.size());
+        // Each producer's lines keep their order
+        long[] last = {-1, -1, -1, -1};
+        for (String line : lines) {
+            int patientId = line.charAt("Patient ID: ".length()) - '0';
+            long timestamp = Long.parseLong(line.substring(line.indexOf("Timestamp: ") + 11, line.indexOf(", Label")));
+            assertTrue(timestamp > last[patientId]);
+            last[patientId] = timestamp;
+        }
+    }
+
+    @Test
+    void typedReadingsAreWrittenAsTheGeneratorsFormattedThem() throws IOException {
+        FileOutputStrategy output = new FileOutputStrategy(directory.toString());
+        output.output(1, 1000L, RecordTypes.ECG, 0.25);
+        output.output(1, 1000L, RecordTypes.SATURATION, 97);
+        output.output(1, 1000L, RecordTypes.ALERT, 1);
+        output.output(1, 2000L, "ECG", "0.5");
+        output.close();
+
+        assertEquals(List.of("Patient ID: 1, Timestamp: 1000, Label: ECG, Data: 0.25",
+                "Patient ID: 1, Timestamp: 2000, Label: ECG, Data: 0.5"),
+                Files.readAllLines(directory.resolve("ECG.txt")));
+        assertEquals(List.of("Patient ID: 1, Timestamp: 1000, Label: Saturation, Data: 97.0%"),
+                Files.readAllLines(directory.resolve("Saturation.txt")));
+        assertEquals(List.of("Patient ID: 1, Timestamp: 1000, Label: Alert, Data: triggered"),
+                Files.readAllLines(directory.resolve("Alert.txt")));
+    }
+
+    @Test
+    void appendsToExistingFiles() throws IOException {
+        Files.write(directory.resolve("ECG.txt"), "existing\n".getBytes());
+        FileOutputStrategy output = new FileOutputStrategy(directory.toString());
+        output.output(1, 2L, "ECG", "0.5");
+        output.flush();
+        assertEquals(2, Files.readAllLines(directory.resolve("ECG.txt")).size());
+        output.close();
+    }
+}
@@ -0,0 +1,108 @@
+package cardio_generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.cardio_generator.LoadGenerator;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.cardio_generator.outputs.StorageOutputStrategy;
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class LoadGeneratorTest {
+
+    private static List<String> readings(LoadGenerator generator, long seconds, long rate) {
+        List<String> readings = new ArrayList<>();
+        generator.run(seconds, rate, (patientId, timestamp, label, data) ->
+                readings.add(patientId + "," + timestamp + "," + label + "," + data));
+        return readings;
+    }
+
+    @Test
+    void theSameSeedGivesTheSameReadings() {
+        List<String> first = readings(new LoadGenerator(20, 7), 130, 0);
+        List<String> second = readings(new LoadGenerator(20, 7), 130, 0);
+        assertEquals(first, second);
+        assertNotEquals(first, readings(new LoadGenerator(20, 8), 130, 0));
+
+        // ECG and saturation every second, 3 rounds of blood pressure, 2 of blood levels, 7 of alerts
+        long expected = 20 * (130 * 2 + 3 * 2 + 2 * 3);
+        assertTrue(first.size() >= expected && first.size() <= expected + 20 * 7, "" + first.size());
+    }
+
+    @Test
+    void runsContinueOnTheVirtualClock() {
+        LoadGenerator generator = new LoadGenerator(5, 1);
+        List<String> whole = readings(new LoadGenerator(5, 1), 10, 0);
+        List<String> parts = readings(generator, 4, 0);
+        assertEquals(LoadGenerator.START_TIME + 4000, generator.getTime());
+        parts.addAll(readings(generator, 6, 0));
+        assertEquals(whole, parts);
+        assertEquals(whole.size(), generator.getReadings());
+        assertTrue(whole.get(whole.size() - 1).startsWith("5," + (LoadGenerator.START_TIME + 9000) + ","));
+    }
+
+    @Test
+    void itsGeneratorsContinueWhereTheRunsStopped() {
+        List<String> whole = readings(new LoadGenerator(3, 9), 11, 0);
+        LoadGenerator generator = new LoadGenerator(3, 9);
+        readings(generator, 10, 0);
+
+        // Round 10 generated outside the generator, as the live schedule does after a backfill
+        List<String> next = new ArrayList<>();
+        OutputStrategy recording = (patientId, timestamp, label, data) ->
+                next.add(patientId + "," + timestamp + "," + label + "," + data);
+        for (int patientId = 1; patientId <= 3; patientId++) {
+            generator.getEcgGenerator().generate(patientId, generator.getTime(), recording);
+            generator.getSaturationGenerator().generate(patientId, generator.getTime(), recording);
+        }
+        assertEquals(whole.subList(whole.size() - next.size(), whole.size()), next);
+    }
+
+    @Test
+    void aDayOfHistoryIsBackfilledIntoStorage() {
+        long end = System.currentTimeMillis() / 1000 * 1000;
+        long start = end - 24 * 3600_000L;
+        DataStorage storage = new DataStorage();
+        LoadGenerator generator = new LoadGenerator(2, 5, start);
+        long began = System.nanoTime();
+        long readings = generator.run(24 * 3600, 0, new StorageOutputStrategy(storage));
+        long elapsedMillis = (System.nanoTime() - began) / 1_000_000;
+        assertTrue(elapsedMillis < 30_000, elapsedMillis + " ms"); // A day in seconds, even on a slow machine
+        assertEquals(end, generator.getTime());
+
+        for (int patientId = 1; patientId <= 2; patientId++) {
+            List<PatientRecord> ecg = storage.getRecords(patientId, "ECG", 0, Long.MAX_VALUE);
+            assertEquals(24 * 3600, ecg.size());
+            assertEquals(start, ecg.get(0).getTimestamp());
+            assertEquals(end - 1000, ecg.get(ecg.size() - 1).getTimestamp());
+            assertEquals(24 * 60, storage.getRecords(patientId, "SystolicPressure", 0, Long.MAX_VALUE).size());
+            assertEquals(24 * 30, storage.getRecords(patientId, "Cholesterol", 0, Long.MAX_VALUE).size());
+            // Saturation stored as a number without the %
+            double saturation = storage.getRecords(patientId, "Saturation", start, start).get(0).getMeasurementValue();
+            assertTrue(saturation >= 90 && saturation <= 100);
+        }
+        assertEquals(readings, storage.getRecords(1, 0, Long.MAX_VALUE).size()
+                + storage.getRecords(2, 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void readingsArePacedToTheRate() {
+        LoadGenerator generator = new LoadGenerator(100, 3);
+        long start = System.nanoTime();
+        long readings = generator.run(2, 1000, (patientId, timestamp, label, data) -> { });
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        // About 200 readings at 1000 per second
+        assertTrue(elapsedMillis >= readings - 10 && elapsedMillis < readings + 500, elapsedMillis + " ms");
+    }
+
+    @Test
+    void invalidArgumentsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new LoadGenerator(0, 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> new LoadGenerator(1, 1).run(1, -1, (patientId, timestamp, label, data) -> { }));
+    }
+}
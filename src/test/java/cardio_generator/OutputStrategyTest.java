@@ -0,0 +1,65 @@
+package cardio_generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.cardio_generator.generators.AlertGenerator;
+import com.cardio_generator.generators.BloodSaturationDataGenerator;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.RecordParser;
+import com.data_management.RecordTypes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+class OutputStrategyTest {
+
+    @Test
+    void textOutputsReceiveTypedReadingsAsText() {
+        List<String> lines = new ArrayList<>();
+        OutputStrategy text = (patientId, timestamp, label, data) -> lines.add(label + "=" + data);
+        new BloodSaturationDataGenerator(1, new SplittableRandom(1)).generate(1, 1000L, text);
+        text.output(1, 1000L, RecordTypes.ALERT, 0);
+        text.output(1, 1000L, RecordTypes.SYSTOLIC_PRESSURE, 120);
+
+        assertTrue(lines.get(0).matches("Saturation=\\d+\\.0%"), lines.get(0));
+        assertEquals("Alert=resolved", lines.get(1));
+        assertEquals("SystolicPressure=120.0", lines.get(2));
+    }
+
+    @Test
+    void formattedValuesAreParsedBackToTheSameNumber() {
+        double[] values = {0.1, -0.4321, 97, 1e-7, 123456789.5};
+        for (int labelCode = 0; labelCode < RecordTypes.ALERT; labelCode++) {
+            for (double value : values) {
+                String text = OutputStrategy.formatValue(labelCode, value);
+                assertEquals(text, OutputStrategy.appendValue(new StringBuilder(), labelCode, value).toString());
+                assertEquals(value, RecordParser.parseValue(text));
+            }
+        }
+        assertEquals(1, RecordParser.parseValue(OutputStrategy.formatValue(RecordTypes.ALERT, 1)));
+        assertEquals(0, RecordParser.parseValue(OutputStrategy.formatValue(RecordTypes.ALERT, 0)));
+    }
+
+    @Test
+    void generatorsOutputTypedReadings() {
+        List<Double> alerts = new ArrayList<>();
+        OutputStrategy typed = new OutputStrategy() {
+            @Override
+            public void output(int patientId, long timestamp, int labelCode, double value) {
+                assertEquals(RecordTypes.ALERT, labelCode);
+                alerts.add(value);
+            }
+
+            @Override
+            public void output(int patientId, long timestamp, String label, String data) {
+                fail("Text reading " + label + "=" + data);
+            }
+        };
+        AlertGenerator generator = new AlertGenerator(1, new SplittableRandom(3));
+        for (int i = 0; i < 200; i++)
+            generator.generate(1, i, typed);
+        assertTrue(alerts.contains(1.0) && alerts.contains(0.0));
+    }
+}
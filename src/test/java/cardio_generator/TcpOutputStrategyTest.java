@@ -0,0 +1,136 @@
+package cardio_generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.cardio_generator.outputs.TcpOutputStrategy;
+import com.cardio_generator.outputs.TcpOutputStrategy.OverflowPolicy;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class TcpOutputStrategyTest {
+
+    private static Socket connect(TcpOutputStrategy output, int clients) throws Exception {
+        Socket socket = new Socket();
+        socket.setReceiveBufferSize(4096);
+        socket.connect(new InetSocketAddress("localhost", output.getPort()));
+        awaitClients(output, clients);
+        return socket;
+    }
+
+    private static void awaitClients(TcpOutputStrategy output, int clients) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (output.getClientStats().size() != clients && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertEquals(clients, output.getClientStats().size());
+    }
+
+    private static Thread reader(Socket socket, AtomicInteger lines, int expected) {
+        Thread reader = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while (lines.get() < expected && (line = in.readLine()) != null) {
+                    assertEquals("7," + lines.get() + ",ECG,0.5", line);
+                    lines.incrementAndGet();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        reader.start();
+        return reader;
+    }
+
+    @Test
+    void everyClientReceivesEveryLineInOrder() throws Exception {
+        TcpOutputStrategy output = new TcpOutputStrategy(0, 64 * 1024, OverflowPolicy.BLOCK);
+        try (Socket first = connect(output, 1); Socket second = connect(output, 2)) {
+            AtomicInteger firstLines = new AtomicInteger();
+            AtomicInteger secondLines = new AtomicInteger();
+            Thread firstReader = reader(first, firstLines, 50_000);
+            Thread secondReader = reader(second, secondLines, 50_000);
+            for (int i = 0; i < 50_000; i++)
+                output.output(7, i, "ECG", "0.5");
+            firstReader.join(10_000);
+            secondReader.join(10_000);
+            assertEquals(50_000, firstLines.get());
+            assertEquals(50_000, secondLines.get());
+        } finally {
+            output.close();
+        }
+    }
+
+    @Test
+    void slowClientDropsItsOldestLines() throws Exception {
+        TcpOutputStrategy output = new TcpOutputStrategy(0, 16 * 1024, OverflowPolicy.DROP_OLDEST);
+        try (Socket slow = connect(output, 1)) {
+            for (int i = 0; i < 500_000; i++)
+                output.output(7, i, "ECG", "0.5");
+
+            TcpOutputStrategy.ClientStats stats = output.getClientStats().get(0);
+            assertTrue(stats.getLinesDropped() > 0, stats.toString());
+            assertTrue(stats.getQueuedBytes() <= 16 * 1024, stats.toString());
+            assertEquals(500_000, stats.getLinesSent() + stats.getLinesDropped() + stats.getQueuedLines());
+
+            // What does arrive are whole lines
+            BufferedReader in = new BufferedReader(new InputStreamReader(slow.getInputStream(), StandardCharsets.UTF_8));
+            assertTrue(in.readLine().matches("7,\\d+,ECG,0\\.5"));
+        } finally {
+            output.close();
+        }
+    }
+
+    @Test
+    void slowClientIsDisconnected() throws Exception {
+        TcpOutputStrategy output = new TcpOutputStrategy(0, 16 * 1024, OverflowPolicy.DISCONNECT);
+        try (Socket slow = connect(output, 1)) {
+            int produced = 0;
+            while (produced < 500_000 && !output.getClientStats().isEmpty())
+                output.output(7, produced++, "ECG", "0.5");
+            assertTrue(output.getClientStats().isEmpty());
+
+            // The client gets what was sent before the disconnect, then the end of the stream
+            slow.setSoTimeout(5000);
+            BufferedReader in = new BufferedReader(new InputStreamReader(slow.getInputStream(), StandardCharsets.UTF_8));
+            int received = 0;
+            while (in.readLine() != null)
+                received++;
+            assertTrue(received < produced, received + " of " + produced);
+        } finally {
+            output.close();
+        }
+    }
+
+    @Test
+    void blockedProducerIsReleasedWhenTheClientLeaves() throws Exception {
+        TcpOutputStrategy output = new TcpOutputStrategy(0, 16 * 1024, OverflowPolicy.BLOCK);
+        Socket slow = connect(output, 1);
+        AtomicInteger produced = new AtomicInteger();
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 500_000; i++) {
+                output.output(7, i, "ECG", "0.5");
+                produced.incrementAndGet();
+            }
+        });
+        producer.start();
+        try {
+            producer.join(500);
+            assertTrue(producer.isAlive());
+            assertTrue(output.getClientStats().get(0).getLagMillis() > 0);
+
+            slow.close();
+            producer.join(10_000);
+            assertFalse(producer.isAlive());
+            assertEquals(500_000, produced.get());
+        } finally {
+            output.close();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package cardio_generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.cardio_generator.TimingWheel;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+class TimingWheelTest {
+
+    @Test
+    void tasksRunAtTheirRate() throws InterruptedException {
+        try (TimingWheel wheel = new TimingWheel(5, 64, 2)) {
+            AtomicInteger fast = new AtomicInteger();
+            AtomicInteger slow = new AtomicInteger();
+            long start = System.nanoTime();
+            wheel.scheduleAtFixedRate(fast::incrementAndGet, 0, 20);
+            wheel.scheduleAtFixedRate(slow::incrementAndGet, 100, 400); // Longer than a turn of the wheel
+            Thread.sleep(1000);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertEquals(2, wheel.getTaskCount());
+            assertTrue(Math.abs(fast.get() - elapsedMillis / 20) <= 3, fast.get() + " runs in " + elapsedMillis + " ms");
+            assertTrue(slow.get() >= 2 && slow.get() <= 4, slow.get() + " runs in " + elapsedMillis + " ms");
+            assertTrue(wheel.getStats().getRuns() >= fast.get() + slow.get());
+        }
+    }
+
+    @Test
+    void aSlowTaskNeverRunsConcurrentlyWithItself() throws InterruptedException {
+        try (TimingWheel wheel = new TimingWheel(5, 64, 4)) {
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+            CountDownLatch runs = new CountDownLatch(5);
+            wheel.scheduleAtFixedRate(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                runs.countDown();
+            }, 0, 10);
+
+            assertTrue(runs.await(5, TimeUnit.SECONDS));
+            assertEquals(1, maxRunning.get());
+            assertTrue(wheel.getStats().getOverruns() > 0);
+        }
+    }
+
+    @Test
+    void aFailingTaskKeepsRunning() throws InterruptedException {
+        try (TimingWheel wheel = new TimingWheel(5, 64, 1)) {
+            CountDownLatch runs = new CountDownLatch(3);
+            wheel.scheduleAtFixedRate(() -> {
+                runs.countDown();
+                throw new IllegalStateException("Expected by the test");
+            }, 0, 10);
+            assertTrue(runs.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void manyTasksRunWithBoundedLateness() throws InterruptedException {
+        // 100,000 patients in ranges of 1000, five generators each, as in HealthDataSimulator
+        int tasks = 500;
+        try (TimingWheel wheel = new TimingWheel()) {
+            AtomicLong generated = new AtomicLong();
+            for (int i = 0; i < tasks; i++) {
+                wheel.scheduleAtFixedRate(() -> {
+                    for (int patientId = 0; patientId < 1000; patientId++)
+                        generated.incrementAndGet();
+                }, i % 1000, 1000);
+            }
+            Thread.sleep(3000);
+
+            TimingWheel.Stats stats = wheel.getStats();
+            assertEquals(tasks, wheel.getTaskCount());
+            assertTrue(stats.getRuns() >= 2 * tasks, stats.toString());
+            assertTrue(stats.getMeanLatenessMicros() < 50_000, stats.toString());
+            assertTrue(stats.getMaxLatenessMicros() < 1_000_000, stats.toString()); // No run slips a whole period
+        }
+    }
+
+    @Test
+    void invalidArgumentsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel(10, 100, 1));
+        try (TimingWheel wheel = new TimingWheel(10, 16, 1)) {
+            assertThrows(IllegalArgumentException.class, () -> wheel.scheduleAtFixedRate(() -> { }, 0, 0));
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package cardio_generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.cardio_generator.outputs.WebSocketOutputStrategy;
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.WebSocketClientImpl;
+
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+import org.java_websocket.handshake.ServerHandshake;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BooleanSupplier;
+
+class WebSocketOutputStrategyTest {
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertTrue(condition.getAsBoolean());
+    }
+
+    /**
+     * Records the messages it receives.
+     */
+    private static class RecordingClient extends WebSocketClient {
+        final ConcurrentLinkedQueue<String> messages = new ConcurrentLinkedQueue<>();
+
+        RecordingClient(URI uri, boolean compression) {
+            super(uri, compression ? new Draft_6455(new PerMessageDeflateExtension()) : new Draft_6455());
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshake) {
+        }
+
+        @Override
+        public void onMessage(String message) {
+            messages.add(message);
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+        }
+
+        @Override
+        public void onError(Exception ex) {
+        }
+
+        int lines() {
+            return messages.stream().mapToInt(message -> message.split("\n").length).sum();
+        }
+    }
+
+    @Test
+    void readingsReachTheClientStorageInBatches() throws Exception {
+        int port = freePort();
+        WebSocketOutputStrategy output = new WebSocketOutputStrategy(port);
+        DataStorage storage = new DataStorage();
+        WebSocketClientImpl client = new WebSocketClientImpl(URI.create("ws://localhost:" + port), storage);
+        RecordingClient counter = new RecordingClient(URI.create("ws://localhost:" + port), false);
+        try {
+            assertTrue(client.connectBlocking());
+            assertTrue(counter.connectBlocking());
+            for (int i = 0; i < 1000; i++)
+                output.output(3, 1000L + i, "Saturation", (95 + i % 3) + "%");
+            output.output(3, 5000L, "Alert", "triggered");
+
+            await(() -> storage.getRecords(3, "Saturation", 0, Long.MAX_VALUE).size() == 1000);
+            List<PatientRecord> saturation = storage.getRecords(3, "Saturation", 0, Long.MAX_VALUE);
+            assertEquals(1001L, saturation.get(1).getTimestamp());
+            assertEquals(96.0, saturation.get(1).getMeasurementValue());
+            await(() -> storage.getRecords(3, "Alert", 0, Long.MAX_VALUE).size() == 1);
+
+            await(() -> counter.lines() == 1001);
+            assertTrue(counter.messages.size() < 100, counter.messages.size() + " messages");
+            assertEquals("3,95%,Saturation,1000", counter.messages.peek().split("\n")[0]);
+        } finally {
+            client.closeBlocking();
+            counter.closeBlocking();
+            output.close();
+        }
+    }
+
+    @Test
+    void compressedAndPlainClientsReceiveTheSameReadings() throws Exception {
+        int port = freePort();
+        WebSocketOutputStrategy output = new WebSocketOutputStrategy(port, 0, true);
+        RecordingClient compressed = new RecordingClient(URI.create("ws://localhost:" + port), true);
+        RecordingClient plain = new RecordingClient(URI.create("ws://localhost:" + port), false);
+        try {
+            assertTrue(compressed.connectBlocking());
+            assertTrue(plain.connectBlocking());
+            Draft_6455 negotiated = (Draft_6455) compressed.getConnection().getDraft();
+            assertTrue(negotiated.getExtension() instanceof PerMessageDeflateExtension);
+            for (int i = 0; i < 200; i++)
+                output.output(1, i, "ECG", Double.toString(i / 100.0));
+
+            await(() -> compressed.messages.size() == 200 && plain.messages.size() == 200);
+            assertEquals(List.copyOf(plain.messages), List.copyOf(compressed.messages));
+            assertEquals("1,1.99,ECG,199", plain.messages.toArray()[199]);
+        } finally {
+            compressed.closeBlocking();
+            plain.closeBlocking();
+            output.close();
+        }
+    }
+
+    @Test
+    void subscribedClientsOnlyReceiveWhatTheyAskedFor() throws Exception {
+        int port = freePort();
+        WebSocketOutputStrategy output = new WebSocketOutputStrategy(port);
+        DataStorage ecgStorage = new DataStorage();
+        DataStorage sampledStorage = new DataStorage();
+        WebSocketClientImpl ecg = new WebSocketClientImpl(URI.create("ws://localhost:" + port), ecgStorage);
+        WebSocketClientImpl sampled = new WebSocketClientImpl(URI.create("ws://localhost:" + port), sampledStorage);
+        RecordingClient everything = new RecordingClient(URI.create("ws://localhost:" + port), false);
+        try {
+            assertTrue(ecg.connectBlocking());
+            assertTrue(sampled.connectBlocking());
+            assertTrue(everything.connectBlocking());
+            ecg.subscribe(Set.of(1, 2), Set.of("ECG"), 0);
+            sampled.subscribe(Set.of(2), null, 1000);
+            await(() -> output.getSubscriberCount() == 2);
+
+            for (int second = 0; second < 10; second++) {
+                for (int patientId = 1; patientId <= 3; patientId++) {
+                    for (int i = 0; i < 10; i++)
+                        output.output(patientId, second * 1000L + i * 100, "ECG", "0.5");
+                    output.output(patientId, second * 1000L, "Saturation", "97%");
+                }
+            }
+
+            await(() -> everything.lines() == 330);
+            await(() -> ecgStorage.getRecords(2, "ECG", 0, Long.MAX_VALUE).size() == 100);
+            assertEquals(100, ecgStorage.getRecords(1, "ECG", 0, Long.MAX_VALUE).size());
+            assertTrue(ecgStorage.getRecords(3, 0, Long.MAX_VALUE).isEmpty());
+            assertTrue(ecgStorage.getRecords(1, "Saturation", 0, Long.MAX_VALUE).isEmpty());
+
+            await(() -> sampledStorage.getRecords(2, "Saturation", 0, Long.MAX_VALUE).size() == 10);
+            List<PatientRecord> sampledEcg = sampledStorage.getRecords(2, "ECG", 0, Long.MAX_VALUE);
+            assertEquals(10, sampledEcg.size());
+            assertEquals(1000L, sampledEcg.get(1).getTimestamp());
+            assertTrue(sampledStorage.getRecords(1, 0, Long.MAX_VALUE).isEmpty());
+
+            sampled.unsubscribe();
+            await(() -> output.getSubscriberCount() == 1);
+            output.output(1, 20_000L, "Saturation", "98%");
+            await(() -> sampledStorage.getRecords(1, 0, Long.MAX_VALUE).size() == 1);
+
+            ecg.closeBlocking();
+            await(() -> output.getSubscriberCount() == 0);
+        } finally {
+            ecg.closeBlocking();
+            sampled.closeBlocking();
+            everything.closeBlocking();
+            output.close();
+        }
+    }
+
+    @Test
+    void binaryAndTextClientsStoreTheSameReadings() throws Exception {
+        int port = freePort();
+        WebSocketOutputStrategy output = new WebSocketOutputStrategy(port);
+        DataStorage binaryStorage = new DataStorage();
+        DataStorage textStorage = new DataStorage();
+        DataStorage subscribedStorage = new DataStorage();
+        WebSocketClientImpl binary = new WebSocketClientImpl(URI.create("ws://localhost:" + port), binaryStorage, true);
+        WebSocketClientImpl text = new WebSocketClientImpl(URI.create("ws://localhost:" + port), textStorage);
+        WebSocketClientImpl subscribed = new WebSocketClientImpl(URI.create("ws://localhost:" + port), subscribedStorage, true);
+        try {
+            assertTrue(binary.connectBlocking());
+            assertTrue(text.connectBlocking());
+            assertTrue(subscribed.connectBlocking());
+            assertTrue(binary.isBinary());
+            assertFalse(text.isBinary());
+            subscribed.subscribe(Set.of(2), Set.of("Saturation"), 0);
+            await(() -> output.getSubscriberCount() == 1);
+
+            for (int i = 0; i < 1000; i++) {
+                output.output(1 + i % 2, 1000L + i, "ECG", Double.toString(Math.sin(i)));
+                output.output(1 + i % 2, 1000L + i, "Saturation", (95 + i % 5) + "%");
+            }
+            output.output(2, 5000L, "Alert", "triggered");
+
+            await(() -> binaryStorage.getRecords(2, "Alert", 0, Long.MAX_VALUE).size() == 1);
+            await(() -> textStorage.getRecords(2, "Alert", 0, Long.MAX_VALUE).size() == 1);
+            for (int patientId = 1; patientId <= 2; patientId++) {
+                List<PatientRecord> fromBinary = binaryStorage.getRecords(patientId, 0, Long.MAX_VALUE);
+                List<PatientRecord> fromText = textStorage.getRecords(patientId, 0, Long.MAX_VALUE);
+                assertEquals(fromText.size(), fromBinary.size());
+                for (int i = 0; i < fromText.size(); i++) {
+                    assertEquals(fromText.get(i).getTimestamp(), fromBinary.get(i).getTimestamp());
+                    assertEquals(fromText.get(i).getRecordType(), fromBinary.get(i).getRecordType());
+                    assertEquals(fromText.get(i).getMeasurementValue(), fromBinary.get(i).getMeasurementValue());
+                }
+            }
+            assertEquals(1.0, binaryStorage.getRecords(2, "Alert", 0, Long.MAX_VALUE).get(0).getMeasurementValue());
+
+            await(() -> subscribedStorage.getRecords(2, "Saturation", 0, Long.MAX_VALUE).size() == 500);
+            assertEquals(500, subscribedStorage.getRecords(2, 0, Long.MAX_VALUE).size());
+        } finally {
+            binary.closeBlocking();
+            text.closeBlocking();
+            subscribed.closeBlocking();
+            output.close();
+        }
+    }
+}
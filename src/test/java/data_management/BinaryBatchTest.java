@@ -0,0 +1,71 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.data_management.BinaryBatch;
+import com.data_management.RecordTypes;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class BinaryBatchTest {
+    private static final long START = 1_700_000_000_000L;
+
+    private static List<String> decode(byte[] frame) {
+        List<String> readings = new ArrayList<>();
+        int count = BinaryBatch.decode(ByteBuffer.wrap(frame), (patientId, value, recordType, timestamp) ->
+                readings.add(patientId + "," + value + "," + RecordTypes.nameOf(recordType) + "," + timestamp));
+        assertEquals(count, readings.size());
+        return readings;
+    }
+
+    @Test
+    void readingsRoundTripExactly() {
+        BinaryBatch batch = new BinaryBatch();
+        batch.add(1, RecordTypes.ECG, START, 0.53);
+        batch.add(300_000, RecordTypes.SATURATION, START + 1000, 97);
+        batch.add(-1, RecordTypes.ALERT, START - 5000, 1); // Out of order
+        batch.add(1, RecordTypes.codeOf("BinaryBatchTestLabel"), Long.MAX_VALUE, Double.NaN);
+        batch.add(2, RecordTypes.ECG, 0, -Double.MIN_VALUE);
+        assertEquals(5, batch.size());
+
+        assertEquals(List.of(
+                "1,0.53,ECG," + START,
+                "300000,97.0,Saturation," + (START + 1000),
+                "-1,1.0,Alert," + (START - 5000),
+                "1,NaN,BinaryBatchTestLabel," + Long.MAX_VALUE,
+                "2,-4.9E-324,ECG,0"), decode(batch.encode()));
+    }
+
+    @Test
+    void aBatchIsReusedAfterClear() {
+        BinaryBatch batch = new BinaryBatch();
+        for (int i = 0; i < 10_000; i++)
+            batch.add(i % 100, RecordTypes.ECG, START + i, i);
+        byte[] large = batch.encode();
+        assertTrue(large.length < 10_000 * 12, large.length + " bytes");
+
+        batch.clear();
+        assertTrue(batch.isEmpty());
+        batch.add(7, RecordTypes.SATURATION, START, 98);
+        assertEquals(List.of("7,98.0,Saturation," + START), decode(batch.encode()));
+    }
+
+    @Test
+    void malformedFramesAreRejected() {
+        BinaryBatch batch = new BinaryBatch();
+        batch.add(1, RecordTypes.ECG, START, 0.5);
+        batch.add(1, RecordTypes.ECG, START + 10, 0.6);
+        byte[] frame = batch.encode();
+
+        byte[] truncated = Arrays.copyOf(frame, frame.length - 4);
+        assertThrows(IllegalArgumentException.class, () -> decode(truncated));
+        byte[] unknownVersion = frame.clone();
+        unknownVersion[0] = 2;
+        assertThrows(IllegalArgumentException.class, () -> decode(unknownVersion));
+        assertThrows(IllegalArgumentException.class, () -> decode(new byte[] {1, (byte) 0xFF, (byte) 0xFF, 0x7F}));
+    }
+}
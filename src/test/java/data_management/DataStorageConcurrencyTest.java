@@ -0,0 +1,160 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.data_management.DataStorage;
+import com.data_management.Patient;
+import com.data_management.PatientRecord;
+import com.data_management.RetentionPolicy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class DataStorageConcurrencyTest {
+
+    private static final int WRITERS = 8;
+    private static final int PATIENTS = 50;
+    private static final int READINGS_PER_WRITER = 250_000;
+    private static final String[] TYPES = {"ECG", "Saturation", "SystolicPressure", "DiastolicPressure"};
+
+    @Test
+    void noReadingsAreLostUnderConcurrentIngestion() throws Exception {
+        DataStorage storage = new DataStorage();
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + 2);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+
+        // Each writer owns a stripe of patients, like partitioned socket threads, and all
+        // writers race on creating patients in the shared map
+        List<Future<?>> writers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            writers.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < READINGS_PER_WRITER; i++) {
+                    int patientId = 1 + writer + WRITERS * (i % (PATIENTS / WRITERS + 1));
+                    storage.addPatientData(patientId, i, TYPES[i % TYPES.length], i);
+                }
+                return null;
+            }));
+        }
+
+        // Readers must never fail or see unsorted records while writers are running
+        List<Future<?>> readers = new ArrayList<>();
+        for (int r = 0; r < 2; r++) {
+            readers.add(executor.submit(() -> {
+                start.await();
+                while (writing.get()) {
+                    for (Patient patient : storage.getAllPatients()) {
+                        List<PatientRecord> records = storage.getRecords(patient.getPatientId(), "ECG", 0, Long.MAX_VALUE);
+                        for (int i = 1; i < records.size(); i++)
+                            assertTrue(records.get(i - 1).getTimestamp() <= records.get(i).getTimestamp());
+                        storage.getRecords(patient.getPatientId(), 0, Long.MAX_VALUE);
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> writer : writers)
+            writer.get(60, TimeUnit.SECONDS);
+        writing.set(false);
+        for (Future<?> reader : readers)
+            reader.get(60, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        // The throughput is measured by ConcurrentIngestionBenchmark
+        long total = (long) WRITERS * READINGS_PER_WRITER;
+        assertEquals(WRITERS * (PATIENTS / WRITERS + 1), storage.getAllPatients().size());
+        long stored = 0;
+        for (Patient patient : storage.getAllPatients()) {
+            List<PatientRecord> records = storage.getRecords(patient.getPatientId(), 0, Long.MAX_VALUE);
+            for (int i = 1; i < records.size(); i++)
+                assertTrue(records.get(i - 1).getTimestamp() <= records.get(i).getTimestamp());
+            stored += records.size();
+        }
+        assertEquals(total, stored);
+    }
+
+    @Test
+    void noReadingsAreLostWhenWritersShareASeries() throws Exception {
+        DataStorage storage = new DataStorage();
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        CountDownLatch start = new CountDownLatch(1);
+        int perWriter = 50_000;
+
+        List<Future<?>> writers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            writers.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < perWriter; i++)
+                    storage.addPatientData(1, writer, "ECG", 1000L);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> writer : writers)
+            writer.get(60, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        List<PatientRecord> records = storage.getRecords(1, "ECG", 0, Long.MAX_VALUE);
+        assertEquals(WRITERS * perWriter, records.size());
+        double sum = 0;
+        for (PatientRecord record : records)
+            sum += record.getMeasurementValue();
+        assertEquals((double) perWriter * WRITERS * (WRITERS - 1) / 2, sum);
+    }
+
+    @Test
+    void readersSeeConsistentWindowsWhileReadingsAreEvicted() throws Exception {
+        DataStorage storage = new DataStorage(new RetentionPolicy().retain("ECG", 1000L, 512));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        AtomicBoolean writing = new AtomicBoolean(true);
+
+        Future<?> reader = executor.submit(() -> {
+            while (writing.get()) {
+                List<PatientRecord> records = storage.getRecords(1, 0, Long.MAX_VALUE);
+                assertTrue(records.size() <= 512);
+                for (int i = 1; i < records.size(); i++)
+                    assertEquals(records.get(i - 1).getTimestamp() + 1, records.get(i).getTimestamp());
+            }
+            return null;
+        });
+        Future<?> writer = executor.submit(() -> {
+            for (int i = 0; i < 2_000_000; i++)
+                storage.addPatientData(1, i, "ECG", i);
+            return null;
+        });
+
+        writer.get(60, TimeUnit.SECONDS);
+        writing.set(false);
+        reader.get(60, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        List<PatientRecord> records = storage.getRecords(1, 0, Long.MAX_VALUE);
+        assertEquals(512, records.size());
+        assertEquals(1_999_999L, records.get(511).getTimestamp());
+    }
+
+    @Test
+    void sharedInstanceIsCreatedOnce() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<DataStorage>> instances = new ArrayList<>();
+        for (int i = 0; i < 64; i++)
+            instances.add(executor.submit(DataStorage::getInstance));
+
+        DataStorage first = instances.get(0).get();
+        for (Future<DataStorage> instance : instances)
+            assertSame(first, instance.get());
+        executor.shutdown();
+    }
+}
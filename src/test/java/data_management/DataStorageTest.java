@@ -5,6 +5,8 @@ import org.junit.jupiter.api.Test;
 
 import com.data_management.DataStorage;
 import com.data_management.PatientRecord;
+import com.data_management.RecordTypes;
+import com.data_management.RetentionPolicy;
 
 import java.util.List;
 
@@ -12,14 +14,70 @@ class DataStorageTest {
 
     @Test
     void testAddAndGetRecords() {
-        // TODO Perhaps you can implement a mock data reader to mock the test data?
-        // DataReader reader
-    /*    DataStorage storage = new DataStorage(reader);
+        DataStorage storage = new DataStorage();
         storage.addPatientData(1, 100.0, "WhiteBloodCells", 1714376789050L);
         storage.addPatientData(1, 200.0, "WhiteBloodCells", 1714376789051L);
 
         List<PatientRecord> records = storage.getRecords(1, 1714376789050L, 1714376789051L);
         assertEquals(2, records.size()); // Check if two records are retrieved
-        assertEquals(100.0, records.get(0).getMeasurementValue()); // Validate first record*/
+        assertEquals(100.0, records.get(0).getMeasurementValue()); // Validate first record
+    }
+
+    @Test
+    void testRecordsOfDifferentTypesAreMergedByTimestamp() {
+        DataStorage storage = new DataStorage();
+        storage.addPatientData(1, 0.5, "ECG", 1000L);
+        storage.addPatientData(1, 97.0, "Saturation", 1500L);
+        storage.addPatientData(1, 0.7, "ECG", 2000L);
+        storage.addPatientData(1, 120.0, "SystolicPressure", 2500L);
+
+        List<PatientRecord> records = storage.getRecords(1, 1500L, 2500L);
+        assertEquals(3, records.size());
+        assertEquals("Saturation", records.get(0).getRecordType());
+        assertEquals("ECG", records.get(1).getRecordType());
+        assertEquals(0.7, records.get(1).getMeasurementValue());
+        assertEquals("SystolicPressure", records.get(2).getRecordType());
+        assertEquals(1, records.get(2).getPatientId());
+    }
+
+    @Test
+    void testGetRecordsOfSingleType() {
+        DataStorage storage = new DataStorage();
+        for (int i = 0; i < 100; i++) {
+            storage.addPatientData(7, i, "ECG", i);
+            storage.addPatientData(7, 95, "Saturation", i);
+        }
+
+        List<PatientRecord> records = storage.getRecords(7, "ECG", 10L, 19L);
+        assertEquals(10, records.size());
+        assertEquals(10.0, records.get(0).getMeasurementValue());
+        assertEquals(19L, records.get(9).getTimestamp());
+        assertTrue(storage.getRecords(7, "Cholesterol", 0L, Long.MAX_VALUE).isEmpty());
+        assertTrue(storage.getRecords(8, "ECG", 0L, Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    void testRecordTypesAreInterned() {
+        int code = RecordTypes.codeOf(new String("ECG"));
+        assertEquals(RecordTypes.ECG, code);
+        assertSame(RecordTypes.nameOf(code), RecordTypes.nameOf(RecordTypes.codeOf("ECG")));
+        assertEquals(-1, RecordTypes.find("NotARecordType"));
+    }
+
+    @Test
+    void testRetentionIsAppliedPerRecordType() {
+        RetentionPolicy policy = new RetentionPolicy()
+                .retain("ECG", 10 * 60_000L)
+                .retain("SystolicPressure", 24 * 3_600_000L);
+        DataStorage storage = new DataStorage(policy);
+        for (long t = 0; t <= 48 * 3_600_000L; t += 60_000L) {
+            storage.addPatientData(1, 0.5, "ECG", t);
+            storage.addPatientData(1, 120, "SystolicPressure", t);
+            storage.addPatientData(1, 5.0, "WhiteBloodCells", t);
+        }
+
+        assertEquals(11, storage.getRecords(1, "ECG", 0, Long.MAX_VALUE).size());
+        assertEquals(24 * 60 + 1, storage.getRecords(1, "SystolicPressure", 0, Long.MAX_VALUE).size());
+        assertEquals(48 * 60 + 1, storage.getRecords(1, "WhiteBloodCells", 0, Long.MAX_VALUE).size());
     }
 }
@@ -0,0 +1,142 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.cardio_generator.outputs.FileOutputStrategy;
+import com.data_management.DataStorage;
+import com.data_management.DirectoryDataReader;
+import com.data_management.PatientRecord;
+import com.data_management.RecordListener;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+class DirectoryDataReaderTest {
+
+    @TempDir
+    Path directory;
+
+    private static void append(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Test
+    void readsFileOutputStrategyDirectoryInTimestampOrder() throws IOException {
+        FileOutputStrategy output = new FileOutputStrategy(directory.toString());
+        for (int second = 0; second < 3000; second++) {
+            long timestamp = 1_700_000_000_000L + second * 1000L;
+            output.output(1, timestamp, "ECG", Double.toString(second / 1000.0));
+            output.output(1, timestamp, "Saturation", (90 + second % 10) + ".0%");
+            if (second % 60 == 0)
+                output.output(1, timestamp, "SystolicPressure", Integer.toString(120 + second % 7));
+            if (second % 500 == 0)
+                output.output(2, timestamp, "Alert", second % 1000 == 0 ? "triggered" : "resolved");
+        }
+        output.close();
+
+        DataStorage storage = new DataStorage();
+        List<Long> arrival = new ArrayList<>();
+        storage.addRecordListener((patientId, value, recordType, timestamp) -> arrival.add(timestamp));
+        new DirectoryDataReader("--output file:" + directory).readData(storage);
+
+        assertEquals(3000, storage.getRecords(1, "ECG", 0, Long.MAX_VALUE).size());
+        List<PatientRecord> saturation = storage.getRecords(1, "Saturation", 0, Long.MAX_VALUE);
+        assertEquals(3000, saturation.size());
+        assertEquals(91.0, saturation.get(1).getMeasurementValue());
+        assertEquals(50, storage.getRecords(1, "SystolicPressure", 0, Long.MAX_VALUE).size());
+
+        List<PatientRecord> alerts = storage.getRecords(2, "Alert", 0, Long.MAX_VALUE);
+        assertEquals(6, alerts.size());
+        assertEquals(1.0, alerts.get(0).getMeasurementValue());
+        assertEquals(0.0, alerts.get(1).getMeasurementValue());
+
+        // The label files were merged, so readings reached the storage in timestamp order
+        assertEquals(6056, arrival.size());
+        for (int i = 1; i < arrival.size(); i++)
+            assertTrue(arrival.get(i - 1) <= arrival.get(i));
+    }
+
+    @Test
+    void laterCallsReadOnlyAppendedLines() throws IOException {
+        Path ecg = directory.resolve("ECG.txt");
+        Path plain = directory.resolve("Cholesterol.txt");
+        append(ecg, "Patient ID: 1, Timestamp: 1000, Label: ECG, Data: 0.5\n");
+        append(plain, "1,180.5,Cholesterol,1500\n1,181.0,Chol");
+        append(directory.resolve("notes.log"), "ignored\n");
+
+        DataStorage storage = new DataStorage();
+        DirectoryDataReader reader = new DirectoryDataReader(directory.toString());
+        reader.readData(storage);
+        assertEquals(1, storage.getRecords(1, "ECG", 0, Long.MAX_VALUE).size());
+        assertEquals(1, storage.getRecords(1, "Cholesterol", 0, Long.MAX_VALUE).size());
+        assertEquals(Files.size(ecg), reader.getOffset("ECG.txt"));
+        assertEquals("1,180.5,Cholesterol,1500\n".length(), reader.getOffset("Cholesterol.txt"));
+
+        // The unfinished line is completed and more readings arrive
+        append(plain, "esterol,2500\r\n");
+        append(ecg, "Patient ID: 1, Timestamp: 2000, Label: ECG, Data: 0.7\n");
+        reader.readData(storage);
+        List<PatientRecord> cholesterol = storage.getRecords(1, "Cholesterol", 0, Long.MAX_VALUE);
+        assertEquals(2, cholesterol.size());
+        assertEquals(181.0, cholesterol.get(1).getMeasurementValue());
+        assertEquals(2, storage.getRecords(1, "ECG", 0, Long.MAX_VALUE).size());
+
+        // Nothing new: nothing is added again
+        reader.readData(storage);
+        assertEquals(2, storage.getRecords(1, "ECG", 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void malformedNumberFailsTheRead() throws IOException {
+        append(directory.resolve("ECG.txt"), "Patient ID: 1, Timestamp: 1000, Label: ECG, Data: abc\n");
+        DirectoryDataReader reader = new DirectoryDataReader(directory.toString());
+        assertThrows(IOException.class, () -> reader.readData(new DataStorage()));
+        assertEquals(0, reader.getOffset("ECG.txt"));
+    }
+
+    @Test
+    void readingsStoredBeforeAFailureAreNotReadAgain() throws IOException {
+        Path ecg = directory.resolve("ECG.txt");
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 30_000; i++)
+            lines.append("Patient ID: 1, Timestamp: ").append(1000 + i).append(", Label: ECG, Data: 0.5\n");
+        lines.append("Patient ID: 1, Timestamp: 50000, Label: ECG, Data: abc\n");
+        append(ecg, lines.toString());
+        append(directory.resolve("Saturation.txt"), "1,97%,Saturation,500\n1,96%,Saturation,60000\n");
+
+        DataStorage storage = new DataStorage();
+        DirectoryDataReader reader = new DirectoryDataReader(directory.toString());
+        assertThrows(IOException.class, () -> reader.readData(storage));
+        int stored = storage.getRecords(1, "ECG", 0, Long.MAX_VALUE).size();
+        assertTrue(stored > 0 && stored < 30_000, stored + " stored"); // The queue is full before the failure
+        assertEquals(1, storage.getRecords(1, "Saturation", 0, Long.MAX_VALUE).size());
+        assertTrue(reader.getOffset("ECG.txt") > 0);
+        assertEquals("1,97%,Saturation,500\n".length(), reader.getOffset("Saturation.txt"));
+
+        // The malformed line is corrected in place
+        byte[] bytes = Files.readAllBytes(ecg);
+        Files.write(ecg, new String(bytes, StandardCharsets.UTF_8).replace("abc", "0.6").getBytes(StandardCharsets.UTF_8));
+        reader.readData(storage);
+        List<PatientRecord> records = storage.getRecords(1, "ECG", 0, Long.MAX_VALUE);
+        assertEquals(30_001, records.size());
+        for (int i = 0; i < 30_000; i++)
+            assertEquals(1000 + i, records.get(i).getTimestamp());
+        assertEquals(2, storage.getRecords(1, "Saturation", 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void emptyDirectoryReadsNothing() throws IOException {
+        DataStorage storage = new DataStorage();
+        RecordListener failOnRecord = (patientId, value, recordType, timestamp) -> fail();
+        storage.addRecordListener(failOnRecord);
+        new DirectoryDataReader(directory.toString()).readData(storage);
+        assertTrue(storage.getAllPatients().isEmpty());
+    }
+}
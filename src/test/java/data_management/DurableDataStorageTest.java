@@ -0,0 +1,308 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.data_management.DurableDataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.RetentionPolicy;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class DurableDataStorageTest {
+    private static final long START = 1_700_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    private DurableDataStorage open() throws IOException {
+        return new DurableDataStorage(directory.toString(), new RetentionPolicy(), 5, 0);
+    }
+
+    private List<String> files() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void readingsSurviveReopening() throws IOException {
+        DurableDataStorage storage = open();
+        assertEquals(0, storage.getRecoveredReadings());
+        for (int second = 0; second < 600; second++) {
+            storage.addPatientData(1, 95 + second % 3, "Saturation", START + second * 1000L);
+            storage.addPatientData(2, second / 10.0, "BodyTemperature", START + second * 1000L);
+        }
+        storage.addPatientData(1, 97, "Saturation", START + 500); // Late reading
+        storage.close();
+
+        DurableDataStorage reopened = open();
+        assertEquals(1201, reopened.getRecoveredReadings());
+        List<PatientRecord> saturation = reopened.getRecords(1, "Saturation", 0, Long.MAX_VALUE);
+        assertEquals(601, saturation.size());
+        assertEquals(START + 500, saturation.get(1).getTimestamp());
+        assertEquals(96.0, saturation.get(2).getMeasurementValue());
+        List<PatientRecord> temperature = reopened.getRecords(2, "BodyTemperature", 0, Long.MAX_VALUE);
+        assertEquals(600, temperature.size());
+        assertEquals(59.9, temperature.get(599).getMeasurementValue());
+        reopened.close();
+    }
+
+    @Test
+    void snapshotReplacesTheLogWrittenBeforeIt() throws IOException {
+        DurableDataStorage storage = open();
+        for (int second = 0; second < 100; second++)
+            storage.addPatientData(1, second, "ECG", START + second * 1000L);
+        storage.snapshot();
+        for (int second = 100; second < 150; second++)
+            storage.addPatientData(1, second, "ECG", START + second * 1000L);
+        storage.snapshot();
+        storage.addPatientData(1, 150, "ECG", START + 150_000L);
+        storage.close();
+
+        assertEquals(List.of("snapshot-00000000000000000003.seg", "wal-00000000000000000003.log"), files());
+
+        DurableDataStorage reopened = open();
+        assertEquals(151, reopened.getRecoveredReadings());
+        List<PatientRecord> ecg = reopened.getRecords(1, "ECG", 0, Long.MAX_VALUE);
+        assertEquals(151, ecg.size());
+        for (int i = 0; i < ecg.size(); i++) {
+            assertEquals(START + i * 1000L, ecg.get(i).getTimestamp());
+            assertEquals(i, ecg.get(i).getMeasurementValue());
+        }
+        reopened.close();
+    }
+
+    @Test
+    void snapshotKeepsOnlyRetainedReadings() throws IOException {
+        RetentionPolicy policy = new RetentionPolicy().retain("ECG", 10_000);
+        DurableDataStorage storage = new DurableDataStorage(directory.toString(), policy, 5, 0);
+        for (int second = 0; second < 60; second++)
+            storage.addPatientData(1, second, "ECG", START + second * 1000L);
+        storage.snapshot();
+        storage.close();
+
+        DurableDataStorage reopened = new DurableDataStorage(directory.toString(), policy, 5, 0);
+        assertEquals(11, reopened.getRecoveredReadings());
+        assertEquals(11, reopened.getRecords(1, "ECG", 0, Long.MAX_VALUE).size());
+        reopened.close();
+    }
+
+    @Test
+    void committedReadingsSurviveACrashAndTornCommitsAreIgnored() throws IOException {
+        DurableDataStorage storage = open();
+        storage.addPatientData(1, 0.5, "ECG", START);
+        storage.addPatientData(1, 0.6, "ECG", START + 1000);
+        storage.commit();
+
+        // What a crash right after the commit leaves behind, plus half a commit
+        Path crashed = directory.resolve("crashed");
+        Files.createDirectory(crashed);
+        for (String file : files())
+            if (file.endsWith(".log"))
+                Files.copy(directory.resolve(file), crashed.resolve(file));
+        Path log = crashed.resolve("wal-00000000000000000001.log");
+        byte[] frame = Files.readAllBytes(log);
+        Files.write(log, Arrays.copyOf(frame, frame.length - 10), StandardOpenOption.APPEND);
+        storage.close();
+
+        DurableDataStorage recovered = new DurableDataStorage(crashed.toString(), new RetentionPolicy(), 5, 0);
+        assertEquals(2, recovered.getRecoveredReadings());
+        assertEquals(2, recovered.getRecords(1, "ECG", 0, Long.MAX_VALUE).size());
+        recovered.addPatientData(1, 0.7, "ECG", START + 2000);
+        recovered.close();
+
+        DurableDataStorage reopened = new DurableDataStorage(crashed.toString(), new RetentionPolicy(), 5, 0);
+        assertEquals(3, reopened.getRecords(1, "ECG", 0, Long.MAX_VALUE).size());
+        reopened.close();
+    }
+
+    @Test
+    void readingsAreRejectedAfterClose() throws IOException {
+        DurableDataStorage storage = open();
+        storage.addPatientData(1, 0.5, "ECG", START);
+        storage.close();
+        storage.close();
+        assertThrows(IllegalStateException.class, () -> storage.addPatientData(1, 0.6, "ECG", START + 1000));
+        assertEquals(1, storage.getRecords(1, "ECG", 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void readingsAreCommittedInTheBackground() throws Exception {
+        DurableDataStorage storage = open();
+        try {
+            storage.addPatientData(1, 0.5, "ECG", START);
+            Path log = directory.resolve("wal-00000000000000000001.log");
+            long deadline = System.currentTimeMillis() + 5000;
+            while (Files.size(log) == 0 && System.currentTimeMillis() < deadline)
+                Thread.sleep(5);
+            assertTrue(Files.size(log) > 0);
+        } finally {
+            storage.close();
+        }
+    }
+
+    /**
+     * A log file on a failing disk: once armed, the next write stops halfway
+     * through the frame and the next truncate fails.
+     */
+    private static class FailingChannel extends FileChannel {
+        private final FileChannel file;
+        volatile boolean failWrite;
+        volatile boolean failTruncate;
+
+        FailingChannel(FileChannel file) {
+            this.file = file;
+        }
+
+        @Override
+        public long write(ByteBuffer[] sources, int offset, int length) throws IOException {
+            if (failWrite) {
+                failWrite = false;
+                ByteBuffer header = sources[offset];
+                file.write(header);
+                throw new IOException("Disk failed");
+            }
+            return file.write(sources, offset, length);
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            if (failTruncate) {
+                failTruncate = false;
+                throw new IOException("Disk failed");
+            }
+            file.truncate(size);
+            return this;
+        }
+
+        @Override
+        public int read(ByteBuffer destination) throws IOException {
+            return file.read(destination);
+        }
+
+        @Override
+        public long read(ByteBuffer[] destinations, int offset, int length) throws IOException {
+            return file.read(destinations, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            return file.write(source);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return file.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            file.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return file.size();
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            file.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return file.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel source, long position, long count) throws IOException {
+            return file.transferFrom(source, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer destination, long position) throws IOException {
+            return file.read(destination, position);
+        }
+
+        @Override
+        public int write(ByteBuffer source, long position) throws IOException {
+            return file.write(source, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return file.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return file.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return file.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            file.close();
+        }
+    }
+
+    /**
+     * Puts the log of a storage on a failing disk.
+     */
+    private static FailingChannel failLog(DurableDataStorage storage) throws ReflectiveOperationException {
+        Field logField = DurableDataStorage.class.getDeclaredField("log");
+        logField.setAccessible(true);
+        Object log = logField.get(storage);
+        Field channelField = log.getClass().getDeclaredField("channel");
+        channelField.setAccessible(true);
+        FailingChannel channel = new FailingChannel((FileChannel) channelField.get(log));
+        channelField.set(log, channel);
+        return channel;
+    }
+
+    @Test
+    void readingsOfAFailedCommitAreCommittedNextTime() throws Exception {
+        DurableDataStorage storage = new DurableDataStorage(directory.toString(), new RetentionPolicy(), 60_000, 0);
+        FailingChannel channel = failLog(storage);
+        storage.addPatientData(1, 0.5, "ECG", START);
+        storage.commit();
+
+        channel.failWrite = true;
+        channel.failTruncate = true; // The half frame stays until the next commit
+        storage.addPatientData(1, 0.6, "ECG", START + 1000);
+        assertThrows(IOException.class, storage::commit);
+        storage.addPatientData(1, 0.7, "ECG", START + 2000);
+        storage.commit();
+        storage.addPatientData(1, 0.8, "ECG", START + 3000);
+        storage.close();
+
+        DurableDataStorage reopened = open();
+        assertEquals(4, reopened.getRecoveredReadings());
+        List<PatientRecord> records = reopened.getRecords(1, "ECG", 0, Long.MAX_VALUE);
+        assertEquals(4, records.size());
+        assertEquals(0.6, records.get(1).getMeasurementValue());
+        reopened.close();
+    }
+}
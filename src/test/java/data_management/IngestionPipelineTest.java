@@ -0,0 +1,118 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.data_management.BinaryBatch;
+import com.data_management.DataStorage;
+import com.data_management.IngestionPipeline;
+import com.data_management.PatientRecord;
+import com.data_management.RecordTypes;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class IngestionPipelineTest {
+
+    @Test
+    void everyPatientIsStoredAndPassedDownstreamInOrder() throws Exception {
+        DataStorage storage = new DataStorage();
+        Map<Integer, List<Long>> downstream = new ConcurrentHashMap<>();
+        IngestionPipeline pipeline = new IngestionPipeline(storage, (patientId, value, recordType, timestamp) ->
+                downstream.computeIfAbsent(patientId, id -> new ArrayList<>()).add(timestamp), 4, 8);
+
+        // Two producers, one sending text and one binary, for different patients
+        Thread text = new Thread(() -> {
+            StringBuilder message = new StringBuilder();
+            for (int second = 0; second < 500; second++) {
+                message.setLength(0);
+                for (int patientId = 0; patientId < 20; patientId += 2)
+                    message.append(patientId).append(',').append(second).append(",ECG,").append(second).append('\n');
+                assertTrue(pipeline.offer(message.toString()));
+            }
+        });
+        Thread binary = new Thread(() -> {
+            BinaryBatch batch = new BinaryBatch();
+            for (int second = 0; second < 500; second++) {
+                batch.clear();
+                for (int patientId = 1; patientId < 20; patientId += 2)
+                    batch.add(patientId, RecordTypes.SATURATION, second, 95);
+                assertTrue(pipeline.offer(ByteBuffer.wrap(batch.encode())));
+            }
+        });
+        text.start();
+        binary.start();
+        text.join();
+        binary.join();
+        pipeline.close();
+
+        for (int patientId = 0; patientId < 20; patientId++) {
+            List<PatientRecord> records = storage.getRecords(patientId, 0, Long.MAX_VALUE);
+            assertEquals(500, records.size());
+            List<Long> passedOn = downstream.get(patientId);
+            assertEquals(500, passedOn.size());
+            for (int second = 0; second < 500; second++)
+                assertEquals(second, passedOn.get(second));
+        }
+        IngestionPipeline.Stats stats = pipeline.getStats();
+        assertEquals(1000, stats.getMessagesReceived());
+        assertEquals(10_000, stats.getReadingsStored());
+        assertEquals(10_000, stats.getReadingsPassedDownstream());
+        assertEquals(0, stats.getQueuedMessages());
+        assertEquals(0, stats.getQueuedReadings());
+        assertFalse(pipeline.offer("1,0.5,ECG,1000"));
+    }
+
+    @Test
+    void aSlowDownstreamStageDoesNotHoldUpStorage() throws Exception {
+        DataStorage storage = new DataStorage();
+        CountDownLatch release = new CountDownLatch(1);
+        IngestionPipeline pipeline = new IngestionPipeline(storage, (patientId, value, recordType, timestamp) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 1, 64);
+
+        for (int i = 0; i < 100; i++)
+            pipeline.offer("7," + i + ",ECG," + i + "\n7," + i + ",Saturation," + i);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (storage.getRecords(7, 0, Long.MAX_VALUE).size() < 200 && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertEquals(200, storage.getRecords(7, 0, Long.MAX_VALUE).size());
+
+        IngestionPipeline.Stats stats = pipeline.getStats();
+        assertEquals(0, stats.getQueuedMessages());
+        assertEquals(200, stats.getQueuedReadings(), stats.toString()); // Including the one being passed on
+        assertEquals(0, stats.getReadingsPassedDownstream());
+
+        Thread.sleep(20);
+        release.countDown();
+        pipeline.close();
+        stats = pipeline.getStats();
+        assertEquals(200, stats.getReadingsPassedDownstream());
+        assertTrue(stats.getMaxDownstreamLatencyMicros() >= TimeUnit.MILLISECONDS.toMicros(20), stats.toString());
+        assertTrue(stats.getMaxStoreLatencyMicros() >= stats.getMeanStoreLatencyMicros());
+    }
+
+    @Test
+    void malformedReadingsAreSkipped() {
+        DataStorage storage = new DataStorage();
+        IngestionPipeline pipeline = new IngestionPipeline(storage, null, 3, 16);
+        pipeline.offer("1,0.5,ECG,1000\n2,invalid,ECG,1000\nnot a reading\n\n4,0.7,ECG,1000,extra\n5,0.8,ECG,1000");
+        pipeline.offer(ByteBuffer.wrap(new byte[] {1, (byte) 0xFF}));
+        pipeline.close();
+
+        assertEquals(1, storage.getRecords(1, 0, Long.MAX_VALUE).size());
+        assertTrue(storage.getRecords(2, 0, Long.MAX_VALUE).isEmpty());
+        assertTrue(storage.getRecords(4, 0, Long.MAX_VALUE).isEmpty());
+        assertEquals(0.8, storage.getRecords(5, 0, Long.MAX_VALUE).get(0).getMeasurementValue());
+        assertEquals(2, pipeline.getStats().getReadingsStored());
+    }
+}
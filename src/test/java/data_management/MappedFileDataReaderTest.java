@@ -0,0 +1,113 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.data_management.DataStorage;
+import com.data_management.FileDataReader;
+import com.data_management.MappedFileDataReader;
+import com.data_management.Patient;
+import com.data_management.PatientRecord;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+class MappedFileDataReaderTest {
+
+    @TempDir
+    Path directory;
+
+    private static final String[] TYPES = {"ECG", "Saturation", "SystolicPressure", "WhiteBloodCells"};
+
+    /** Writes about 9 MB of readings, so the file is cut into several chunks */
+    private Path writeReadings(String name, boolean shuffled, String lineSeparator) throws IOException {
+        Path file = directory.resolve(name);
+        Random random = new Random(3);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int second = 0; second < 2000; second++) {
+                for (int patientId = 1; patientId <= 50; patientId++) {
+                    long timestamp = 1_700_000_000_000L + second * 1000L + (shuffled ? random.nextInt(5000) : 0);
+                    String type = TYPES[(second + patientId) % TYPES.length];
+                    writer.write(patientId + "," + random.nextGaussian() + "," + type + "," + timestamp + lineSeparator);
+                }
+                if (second % 500 == 0)
+                    writer.write("not,a,reading" + lineSeparator);
+            }
+        }
+        return file;
+    }
+
+    private static void assertSameRecords(DataStorage expected, DataStorage actual) {
+        List<Patient> patients = expected.getAllPatients();
+        assertEquals(patients.size(), actual.getAllPatients().size());
+        for (Patient patient : patients) {
+            for (String type : TYPES) {
+                List<PatientRecord> expectedRecords = expected.getRecords(patient.getPatientId(), type, Long.MIN_VALUE, Long.MAX_VALUE);
+                List<PatientRecord> actualRecords = actual.getRecords(patient.getPatientId(), type, Long.MIN_VALUE, Long.MAX_VALUE);
+                assertEquals(expectedRecords.size(), actualRecords.size());
+                for (int i = 0; i < expectedRecords.size(); i++) {
+                    assertEquals(expectedRecords.get(i).getTimestamp(), actualRecords.get(i).getTimestamp());
+                    assertEquals(expectedRecords.get(i).getMeasurementValue(), actualRecords.get(i).getMeasurementValue());
+                }
+            }
+        }
+    }
+
+    private static void assertLoadsLikeFileDataReader(Path file) throws IOException {
+        DataStorage expected = new DataStorage();
+        new FileDataReader(file.toString()).readData(expected);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            DataStorage actual = new DataStorage();
+            new MappedFileDataReader(file.toString(), pool).readData(actual);
+            assertSameRecords(expected, actual);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void loadsTheSameRecordsAsFileDataReader() throws IOException {
+        Path file = writeReadings("readings.txt", false, "\n");
+        assertTrue(Files.size(file) > 4 << 20);
+        assertLoadsLikeFileDataReader(file);
+    }
+
+    @Test
+    void outOfOrderReadingsAreSortedPerPatient() throws IOException {
+        assertLoadsLikeFileDataReader(writeReadings("shuffled.txt", true, "\n"));
+    }
+
+    @Test
+    void windowsLineEndingsAreAccepted() throws IOException {
+        assertLoadsLikeFileDataReader(writeReadings("crlf.txt", false, "\r\n"));
+    }
+
+    @Test
+    void emptyAndUnterminatedFiles() throws IOException {
+        Path empty = Files.createFile(directory.resolve("empty.txt"));
+        DataStorage storage = new DataStorage();
+        new MappedFileDataReader(empty.toString()).readData(storage);
+        assertTrue(storage.getAllPatients().isEmpty());
+
+        Path unterminated = Files.write(directory.resolve("unterminated.txt"),
+                "1,0.5,ECG,1000\n1,0.7,ECG,2000".getBytes(StandardCharsets.UTF_8));
+        new MappedFileDataReader(unterminated.toString()).readData(storage);
+        assertEquals(2, storage.getRecords(1, "ECG", 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void malformedNumberFailsTheLoad() throws IOException {
+        Path file = Files.write(directory.resolve("malformed.txt"),
+                "1,0.5,ECG,1000\n1,abc,ECG,2000\n".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> new MappedFileDataReader(file.toString()).readData(new DataStorage()));
+    }
+}
@@ -0,0 +1,338 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.alerts.Alert;
+import com.alerts.StreamingAlertEvaluator;
+import com.cardio_generator.outputs.WebSocketOutputStrategy;
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.ReconnectingWebSocketClient;
+import com.data_management.RecordTypes;
+import com.data_management.WebSocketDataReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+class ReconnectingWebSocketClientTest {
+
+    private static final int PATIENTS = 10;
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertTrue(condition.getAsBoolean());
+    }
+
+    /**
+     * Forwards TCP connections to the server, and can drop or stall them like
+     * a flaky network.
+     */
+    private static class Proxy implements AutoCloseable {
+        private final ServerSocket listener;
+        private final int target;
+        private final List<Link> links = new CopyOnWriteArrayList<>();
+        volatile long handshakeDelayMillis; // Of the next connection
+
+        Proxy(int target) throws IOException {
+            this.listener = new ServerSocket(0);
+            this.target = target;
+            Thread acceptor = new Thread(() -> {
+                try {
+                    while (true) {
+                        Socket client = listener.accept();
+                        Socket server = new Socket("localhost", target);
+                        links.add(new Link(client, server, handshakeDelayMillis));
+                        handshakeDelayMillis = 0;
+                    }
+                } catch (IOException e) {
+                    // Closed
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int getPort() {
+            return listener.getLocalPort();
+        }
+
+        /** Closes every connection, as if the network failed. */
+        void dropConnections() {
+            for (Link link : links)
+                link.close();
+            links.clear();
+        }
+
+        /** Stops forwarding on every open connection without closing it. */
+        void freezeConnections() {
+            for (Link link : links)
+                link.frozen = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            listener.close();
+            dropConnections();
+        }
+    }
+
+    private static class Link {
+        final Socket client;
+        final Socket server;
+        volatile boolean frozen;
+
+        Link(Socket client, Socket server, long delayMillis) {
+            this.client = client;
+            this.server = server;
+            pump(client, server, 0);
+            pump(server, client, delayMillis);
+        }
+
+        private void pump(Socket from, Socket to, long delayMillis) {
+            Thread thread = new Thread(() -> {
+                byte[] buffer = new byte[8192];
+                try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+                    Thread.sleep(delayMillis);
+                    int read;
+                    while ((read = in.read(buffer)) >= 0) {
+                        while (frozen && !from.isClosed())
+                            Thread.sleep(5);
+                        out.write(buffer, 0, read);
+                    }
+                } catch (IOException | InterruptedException e) {
+                    // Dropped
+                } finally {
+                    close();
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void close() {
+            try {
+                client.close();
+                server.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    /**
+     * Outputs readings with distinct timestamps, a few per millisecond, until
+     * stopped.
+     */
+    private static class Producer extends Thread {
+        private final WebSocketOutputStrategy output;
+        volatile boolean stopped;
+        volatile int produced;
+
+        Producer(WebSocketOutputStrategy output) {
+            this.output = output;
+        }
+
+        @Override
+        public void run() {
+            for (int n = 0; !stopped; n++) {
+                output.output(n % PATIENTS, 1_000_000 + n, "ECG", Double.toString(n));
+                produced = n + 1;
+                if (n % 5 == 4) {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private static int storedReadings(DataStorage storage) {
+        int stored = 0;
+        for (int patientId = 0; patientId < PATIENTS; patientId++)
+            stored += storage.getRecords(patientId, 0, Long.MAX_VALUE).size();
+        return stored;
+    }
+
+    /**
+     * Asserts that every produced reading was stored exactly once.
+     */
+    private static void assertComplete(DataStorage storage, int produced) {
+        for (int patientId = 0; patientId < PATIENTS; patientId++) {
+            List<PatientRecord> records = storage.getRecords(patientId, 0, Long.MAX_VALUE);
+            Set<Long> timestamps = new HashSet<>();
+            for (PatientRecord record : records)
+                assertTrue(timestamps.add(record.getTimestamp()), "Duplicate " + record.getTimestamp());
+            assertEquals(expected(produced, patientId), records.size(), "Patient " + patientId);
+        }
+    }
+
+    private static int expected(int produced, int patientId) {
+        return produced / PATIENTS + (patientId < produced % PATIENTS ? 1 : 0);
+    }
+
+    private void readingsMissedWhileDroppedAreReplayed(boolean binary) throws Exception {
+        int port = freePort();
+        WebSocketOutputStrategy output = new WebSocketOutputStrategy(port);
+        Proxy proxy = new Proxy(port);
+        DataStorage storage = new DataStorage();
+        ReconnectingWebSocketClient client = new ReconnectingWebSocketClient(
+                URI.create("ws://localhost:" + proxy.getPort()), storage, binary, 20, 200, 100, 1000);
+        assertTrue(client.start(5000));
+        assertEquals(binary, client.isBinary());
+        await(() -> output.getConnectionCount() == 1);
+
+        Producer producer = new Producer(output);
+        producer.start();
+        for (int drop = 1; drop <= 3; drop++) {
+            Thread.sleep(200);
+            proxy.dropConnections();
+            int round = drop;
+            await(() -> client.getReconnectCount() >= round && client.isConnected());
+            // Within the longest backoff and a connect timeout, with room for a slow machine
+            assertTrue(client.getLastReconnectMillis() < 2000, client.getLastReconnectMillis() + " ms");
+        }
+        Thread.sleep(200);
+        producer.stopped = true;
+        producer.join();
+        output.flush();
+
+        await(() -> storedReadings(storage) >= producer.produced);
+        assertComplete(storage, producer.produced);
+        assertTrue(output.getReplayedReadings() > 0);
+        assertEquals(producer.produced, client.getReadingsReceived()); // None lost, none twice
+        assertTrue(client.getMaxReconnectMillis() < 2000, client.getMaxReconnectMillis() + " ms");
+
+        client.close();
+        proxy.close();
+        output.close();
+    }
+
+    @Test
+    void textReadingsMissedWhileDroppedAreReplayed() throws Exception {
+        readingsMissedWhileDroppedAreReplayed(false);
+    }
+
+    @Test
+    void binaryReadingsMissedWhileDroppedAreReplayed() throws Exception {
+        readingsMissedWhileDroppedAreReplayed(true);
+    }
+
+    @Test
+    void aStalledConnectionTimesOutAndIsReplaced() throws Exception {
+        int port = freePort();
+        WebSocketOutputStrategy output = new WebSocketOutputStrategy(port);
+        Proxy proxy = new Proxy(port);
+        DataStorage storage = new DataStorage();
+        ReconnectingWebSocketClient client = new ReconnectingWebSocketClient(
+                URI.create("ws://localhost:" + proxy.getPort()), storage, false, 20, 200, 50, 300);
+        assertTrue(client.start(5000));
+        client.subscribe(List.of(1, 2), null, 0);
+        await(() -> output.getSubscriberCount() == 1);
+
+        Producer producer = new Producer(output);
+        producer.start();
+        Thread.sleep(200);
+        proxy.freezeConnections();
+        long frozenAt = System.nanoTime();
+        await(() -> client.getReconnectCount() >= 1 && client.isConnected());
+        long replacedMillis = (System.nanoTime() - frozenAt) / 1_000_000;
+        // Silent for the 300 ms timeout, then replaced within the backoff and a connect timeout
+        assertTrue(replacedMillis >= 250 && replacedMillis < 3000, replacedMillis + " ms");
+        Thread.sleep(200);
+        producer.stopped = true;
+        producer.join();
+        output.flush();
+
+        // Subscribed again after reconnecting: only patients 1 and 2, each complete
+        int produced = producer.produced;
+        await(() -> storage.getRecords(1, 0, Long.MAX_VALUE).size() >= expected(produced, 1)
+                && storage.getRecords(2, 0, Long.MAX_VALUE).size() >= expected(produced, 2));
+        for (int patientId = 0; patientId < PATIENTS; patientId++) {
+            List<PatientRecord> records = storage.getRecords(patientId, 0, Long.MAX_VALUE);
+            int expected = expected(produced, patientId);
+            if (patientId == 1 || patientId == 2)
+                assertEquals(expected, records.size(), "Patient " + patientId);
+            else
+                assertTrue(records.size() < expected / 2, "Patient " + patientId); // Only before subscribing
+        }
+
+        client.close();
+        proxy.close();
+        output.close();
+    }
+
+    @Test
+    void aLateHandshakeDoesNotOpenASecondConnection() throws Exception {
+        int port = freePort();
+        WebSocketOutputStrategy output = new WebSocketOutputStrategy(port);
+        Proxy proxy = new Proxy(port);
+        proxy.handshakeDelayMillis = 600; // Answered after the client gave up on it
+        DataStorage storage = new DataStorage();
+        ReconnectingWebSocketClient client = new ReconnectingWebSocketClient(
+                URI.create("ws://localhost:" + proxy.getPort()), storage, false, 20, 200, 100, 300);
+        client.start(5000);
+        await(client::isConnected);
+
+        Producer producer = new Producer(output);
+        producer.start();
+        Thread.sleep(800); // Past the late handshake
+        producer.stopped = true;
+        producer.join();
+        output.flush();
+
+        await(() -> storedReadings(storage) >= producer.produced);
+        Thread.sleep(100);
+        assertComplete(storage, producer.produced);
+        assertEquals(producer.produced, client.getReadingsReceived());
+        assertEquals(1, output.getConnectionCount());
+
+        client.close();
+        proxy.close();
+        output.close();
+    }
+
+    @Test
+    void aReaderStoresReadingsAndPassesThemToItsEvaluator() throws Exception {
+        int port = freePort();
+        WebSocketOutputStrategy output = new WebSocketOutputStrategy(port);
+        DataStorage storage = new DataStorage();
+        List<Alert> alerts = new CopyOnWriteArrayList<>();
+        WebSocketDataReader reader = new WebSocketDataReader(false, new StreamingAlertEvaluator(alerts::add));
+        try {
+            reader.readData(storage, "ws://localhost:" + port);
+            await(() -> output.getConnectionCount() == 1);
+            for (int i = 0; i < 100; i++)
+                output.output(4, 1000L + i, RecordTypes.SATURATION, i == 50 ? 85 : 97);
+            output.flush();
+
+            await(() -> storage.getRecords(4, "Saturation", 0, Long.MAX_VALUE).size() == 100);
+            await(() -> alerts.size() == 1);
+            assertEquals(4, alerts.get(0).getPatientId());
+            assertEquals(1050L, alerts.get(0).getTimestamp());
+            await(() -> reader.getClient().getPipelineStats().getReadingsPassedDownstream() == 100);
+        } finally {
+            reader.close();
+            output.close();
+        }
+    }
+}
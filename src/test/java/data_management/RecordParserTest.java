@@ -0,0 +1,174 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.data_management.RecordParser;
+import com.data_management.RecordTypes;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+class RecordParserTest {
+
+    private final RecordParser parser = new RecordParser();
+
+    private double parseValue(String value) {
+        assertTrue(parser.parse("1," + value + ",ECG,0"));
+        return parser.getMeasurementValue();
+    }
+
+    private void assertSameDouble(String value) {
+        assertEquals(Double.doubleToRawLongBits(Double.parseDouble(value)),
+                Double.doubleToRawLongBits(parseValue(value)), value);
+    }
+
+    @Test
+    void parsesAllFields() {
+        assertTrue(parser.parse("42,0.5312,SystolicPressure,1714376789050"));
+        assertEquals(42, parser.getPatientId());
+        assertEquals(0.5312, parser.getMeasurementValue());
+        assertEquals(RecordTypes.SYSTOLIC_PRESSURE, parser.getRecordType());
+        assertEquals(1714376789050L, parser.getTimestamp());
+
+        assertTrue(parser.parse("7,97.0%,Saturation,1"));
+        assertEquals(97.0, parser.getMeasurementValue());
+        assertEquals(RecordTypes.SATURATION, parser.getRecordType());
+    }
+
+    @Test
+    void parsesFileOutputStrategyLines() {
+        assertTrue(parser.parse("Patient ID: 12, Timestamp: 1714376789050, Label: Saturation, Data: 95.0%"));
+        assertEquals(12, parser.getPatientId());
+        assertEquals(95.0, parser.getMeasurementValue());
+        assertEquals(RecordTypes.SATURATION, parser.getRecordType());
+        assertEquals(1714376789050L, parser.getTimestamp());
+
+        assertTrue(parser.parse("Patient ID: 3, Timestamp: 5, Label: Alert, Data: triggered"));
+        assertEquals(RecordTypes.ALERT, parser.getRecordType());
+        assertEquals(1.0, parser.getMeasurementValue());
+        assertTrue(parser.parse("3,resolved,Alert,6"));
+        assertEquals(0.0, parser.getMeasurementValue());
+
+        assertFalse(parser.parse("Patient ID: 3, Timestamp: 5, Data: 1"));
+        assertThrows(NumberFormatException.class, () -> parser.parse("Patient ID: x, Timestamp: 5, Label: ECG, Data: 1"));
+    }
+
+    @Test
+    void fieldCountFollowsStringSplit() {
+        String[] lines = {"1,2,ECG,3", "1,2,ECG,3,", "1,2,ECG,3,,,", "1,2,ECG", "1,2,ECG,", "1,2,ECG,3,4",
+                "", ",,,", "1,2,,3", "1,2,ECG,3,4,"};
+        for (String line : lines)
+            assertEquals(line.split(",").length == 4, parser.parse(line), line);
+
+        assertTrue(parser.parse("1,2,,3"));
+        assertEquals("", RecordTypes.nameOf(parser.getRecordType()));
+    }
+
+    @Test
+    void malformedNumbersAreRejected() {
+        String[] lines = {"x,1,ECG,3", "1,x,ECG,3", "1,2,ECG,x", "1,,ECG,3", ",1,ECG,3", "-,1,ECG,3",
+                "2147483648,1,ECG,3", "1,2,ECG,9223372036854775808", "1,1e,ECG,3", "1,.,ECG,3", "1,%,ECG,3"};
+        for (String line : lines)
+            assertThrows(NumberFormatException.class, () -> parser.parse(line), line);
+
+        assertTrue(parser.parse("-2147483648,1,ECG,-9223372036854775808"));
+        assertEquals(Integer.MIN_VALUE, parser.getPatientId());
+        assertEquals(Long.MIN_VALUE, parser.getTimestamp());
+        assertTrue(parser.parse("+2147483647,1,ECG,+9223372036854775807"));
+        assertEquals(Integer.MAX_VALUE, parser.getPatientId());
+        assertEquals(Long.MAX_VALUE, parser.getTimestamp());
+    }
+
+    @Test
+    void doublesMatchDoubleParseDouble() {
+        String[] values = {"0", "-0.0", "0.0", "1", "-1.5", ".5", "5.", "1e5", "1E-5", "1.5e+300", "4.9E-324",
+                "2.2250738585072014E-308", "1.7976931348623157E308", "1.7976931348623159E308", "1e400",
+                "9007199254740993", "9999999999999999999", "12345678901234567890123", "NaN", "-Infinity",
+                " 2.5 ", "0x1p3", "1d", "0.1", "0.30000000000000004", "123456789012345678e-30",
+                "2.9802322387695312E-8", "8.988465674311579E307", "1.0E23", "9.5367431640625E-7"};
+        for (String value : values)
+            assertSameDouble(value);
+
+        Random random = new Random(5);
+        for (int i = 0; i < 200_000; i++) {
+            double value;
+            switch (i % 4) {
+                case 0:
+                    value = Double.longBitsToDouble(random.nextLong());
+                    break;
+                case 1:
+                    value = random.nextGaussian();
+                    break;
+                case 2:
+                    value = random.nextDouble() * Math.pow(10, random.nextInt(40) - 20);
+                    break;
+                default:
+                    value = random.nextInt(10_000) / 100.0;
+            }
+            if (Double.isNaN(value))
+                continue;
+            String text = Double.toString(value);
+            assertSameDouble(text);
+            // Decimal strings that are not the shortest representation of any double
+            assertSameDouble(random.nextLong() / 1000 + "." + Math.abs(random.nextLong() % 1000) + "e" + (random.nextInt(80) - 40));
+        }
+    }
+
+    @Test
+    void parsesByteBufferRanges() {
+        byte[] bytes = "junk\n5,92.0,Saturation,1000\n6,120,SystolicPressure,2000\n".getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+        assertTrue(parser.parse(buffer, 5, 27));
+        assertEquals(5, parser.getPatientId());
+        assertEquals(92.0, parser.getMeasurementValue());
+        assertEquals(RecordTypes.SATURATION, parser.getRecordType());
+        assertEquals(1000L, parser.getTimestamp());
+
+        assertTrue(parser.parse(buffer, 28, bytes.length - 1));
+        assertEquals(6, parser.getPatientId());
+        assertEquals(RecordTypes.SYSTOLIC_PRESSURE, parser.getRecordType());
+        assertFalse(parser.parse(buffer, 0, 4));
+        assertEquals(0, buffer.position());
+        assertThrows(NumberFormatException.class, () -> parser.parse(buffer, 0, 28));
+    }
+
+    @Test
+    void unknownLabelsAreRegisteredOnce() {
+        assertTrue(parser.parse("1,2,HeartRateTestLabel,3"));
+        int code = parser.getRecordType();
+        assertEquals("HeartRateTestLabel", RecordTypes.nameOf(code));
+        assertTrue(parser.parse("1,2,HeartRateTestLabel,4"));
+        assertEquals(code, parser.getRecordType());
+    }
+
+    @Test
+    void parsingDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        String[] lines = new String[1024];
+        Random random = new Random(1);
+        for (int i = 0; i < lines.length; i++)
+            lines[i] = (1 + random.nextInt(100)) + "," + random.nextGaussian() + ",ECG," + (1700000000000L + i);
+
+        long checksum = 0;
+        for (int round = 0; round < 200; round++) // Warm up
+            for (String line : lines)
+                if (parser.parse(line))
+                    checksum += parser.getTimestamp();
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int round = 0; round < 100; round++)
+            for (String line : lines)
+                if (parser.parse(line))
+                    checksum += parser.getTimestamp();
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(checksum != 0);
+        // A split-based parser allocates hundreds of bytes per line
+        assertTrue(allocated / (100.0 * lines.length) < 8, "bytes per line: " + allocated / (100.0 * lines.length));
+    }
+}
@@ -0,0 +1,126 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.data_management.PatientRecord;
+import com.data_management.RecordSeries;
+import com.data_management.RecordTypes;
+
+import java.util.ConcurrentModificationException;
+import java.util.List;
+
+class RecordSeriesTest {
+
+    @Test
+    void rangeQueryIsInclusive() {
+        RecordSeries series = new RecordSeries(RecordTypes.ECG);
+        for (int i = 0; i < 1000; i++)
+            series.add(i, i * 10L);
+
+        List<PatientRecord> records = series.view(1, 100L, 200L);
+        assertEquals(11, records.size());
+        assertEquals(100L, records.get(0).getTimestamp());
+        assertEquals(200L, records.get(10).getTimestamp());
+        assertEquals(20.0, records.get(10).getMeasurementValue());
+        assertEquals("ECG", records.get(0).getRecordType());
+
+        assertEquals(0, series.view(1, 101L, 109L).size());
+        assertEquals(0, series.view(1, 200L, 100L).size());
+        assertEquals(1000, series.view(1, Long.MIN_VALUE, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void lateReadingsAreInsertedInOrder() {
+        RecordSeries series = new RecordSeries(RecordTypes.SATURATION);
+        series.add(1, 10L);
+        series.add(3, 30L);
+        series.add(4, 30L);
+        series.add(2, 20L);
+        series.add(0, 5L);
+        series.add(5, 30L);
+
+        long[] expectedTimestamps = {5L, 10L, 20L, 30L, 30L, 30L};
+        double[] expectedValues = {0, 1, 2, 3, 4, 5};
+        assertEquals(expectedTimestamps.length, series.size());
+        for (int i = 0; i < series.size(); i++) {
+            assertEquals(expectedTimestamps[i], series.getTimestamp(i));
+            assertEquals(expectedValues[i], series.getValue(i));
+        }
+    }
+
+    @Test
+    void viewIsNotAffectedByLaterReadings() {
+        RecordSeries series = new RecordSeries(RecordTypes.ECG);
+        for (int i = 0; i < 20; i++)
+            series.add(i, i * 10L);
+
+        List<PatientRecord> view = series.view(1, 50L, 100L);
+        for (int i = 20; i < 100; i++)
+            series.add(i, i * 10L);
+        series.add(-1, 55L);
+
+        assertEquals(6, view.size());
+        for (int i = 0; i < view.size(); i++)
+            assertEquals((i + 5) * 10L, view.get(i).getTimestamp());
+
+        List<PatientRecord> subList = view.subList(1, 3);
+        assertEquals(2, subList.size());
+        assertEquals(60L, subList.get(0).getTimestamp());
+        assertThrows(IndexOutOfBoundsException.class, () -> subList.get(2));
+        assertThrows(UnsupportedOperationException.class, () -> view.add(subList.get(0)));
+    }
+
+    @Test
+    void readingsOlderThanRetentionAreEvicted() {
+        RecordSeries series = new RecordSeries(RecordTypes.ECG, 600_000L, Integer.MAX_VALUE);
+        for (int i = 0; i < 3600; i++)
+            series.add(i, i * 1000L);
+
+        assertEquals(601, series.size());
+        assertEquals(2_999_000L, series.getTimestamp(0));
+        assertEquals(3_599_000L, series.getTimestamp(600));
+        assertEquals(601, series.view(1, 0L, Long.MAX_VALUE).size());
+
+        // A late reading that is already past retention is dropped
+        series.add(-1, 1000L);
+        assertEquals(601, series.size());
+        assertEquals(2_999_000L, series.getTimestamp(0));
+    }
+
+    @Test
+    void ringStopsGrowingOnceRetentionIsReached() {
+        RecordSeries series = new RecordSeries(RecordTypes.SATURATION, Long.MAX_VALUE, 1000);
+        for (int i = 0; i < 1000; i++)
+            series.add(i, i);
+        int capacity = series.capacity();
+
+        for (int i = 1000; i < 100_000; i++)
+            series.add(i, i);
+        assertEquals(capacity, series.capacity());
+        assertEquals(1000, series.size());
+        assertEquals(99_000L, series.getTimestamp(0));
+        assertEquals(99_999.0, series.getValue(999));
+
+        // Late readings keep the limit and order, and the oldest one is dropped
+        series.add(-1, 99_500L);
+        assertEquals(1000, series.size());
+        assertEquals(99_001L, series.getTimestamp(0));
+        assertEquals(99_500L, series.getTimestamp(499));
+        assertEquals(-1.0, series.getValue(500));
+    }
+
+    @Test
+    void viewFailsOnceItsReadingsAreEvicted() {
+        RecordSeries series = new RecordSeries(RecordTypes.ECG, Long.MAX_VALUE, 16);
+        for (int i = 0; i < 16; i++)
+            series.add(i, i);
+
+        List<PatientRecord> view = series.view(1, 0L, 15L);
+        assertEquals(16, view.size());
+        series.add(16, 16L);
+
+        assertThrows(ConcurrentModificationException.class, () -> view.get(0));
+        assertEquals(1L, view.get(1).getTimestamp());
+    }
+}
@@ -0,0 +1,197 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.cardio_generator.outputs.SegmentOutputStrategy;
+import com.data_management.DataStorage;
+import com.data_management.FileDataReader;
+import com.data_management.PatientRecord;
+import com.data_management.SegmentDataReader;
+import com.data_management.SegmentWriter;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+class SegmentDataReaderTest {
+    private static final long START = 1_700_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readingsRoundTripExactly() throws IOException {
+        Path file = directory.resolve("readings.seg");
+        Random random = new Random(42);
+        double[] values = new double[5000];
+        long[] timestamps = new long[5000];
+        long timestamp = START;
+        for (int i = 0; i < values.length; i++) {
+            // Jitter, repeated and large gaps, and every kind of value change
+            timestamp += i % 500 == 0 ? 3_600_000 : i % 7 == 0 ? 0 : 1000 + random.nextInt(300) - 150;
+            timestamps[i] = timestamp;
+            values[i] = i % 3 == 0 ? random.nextGaussian() : i % 3 == 1 ? 97 + random.nextInt(3) : values[i - 1];
+        }
+        values[10] = Double.NaN;
+        values[11] = -0.0;
+        values[12] = Double.MAX_VALUE;
+        values[13] = Double.MIN_VALUE;
+        timestamps[values.length - 1] = Long.MAX_VALUE;
+
+        try (SegmentWriter writer = new SegmentWriter(file)) {
+            for (int i = 0; i < values.length; i++)
+                writer.add(1, values[i], "ECG", timestamps[i]);
+        }
+
+        DataStorage storage = new DataStorage();
+        new SegmentDataReader(file.toString()).readData(storage);
+        List<PatientRecord> records = storage.getRecords(1, "ECG", Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(values.length, records.size());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(timestamps[i], records.get(i).getTimestamp());
+            assertEquals(Double.doubleToRawLongBits(values[i]),
+                    Double.doubleToRawLongBits(records.get(i).getMeasurementValue()), "reading " + i);
+        }
+    }
+
+    @Test
+    void unsortedReadingsAreReadInTimestampOrder() throws IOException {
+        Path file = directory.resolve("readings.seg");
+        try (SegmentWriter writer = new SegmentWriter(file)) {
+            writer.add(1, 3.0, "Saturation", 3000);
+            writer.add(1, 1.0, "Saturation", 1000);
+            writer.add(1, 2.0, "Saturation", 2000);
+        }
+
+        DataStorage storage = new DataStorage();
+        new SegmentDataReader(file.toString()).readData(storage);
+        List<PatientRecord> records = storage.getRecords(1, "Saturation", 0, Long.MAX_VALUE);
+        assertEquals(3, records.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1000L * (i + 1), records.get(i).getTimestamp());
+            assertEquals(i + 1.0, records.get(i).getMeasurementValue());
+        }
+    }
+
+    @Test
+    void segmentsAndPatientsOutsideTheQueryAreSkipped() throws IOException {
+        Path file = directory.resolve("readings.seg");
+        try (SegmentWriter writer = new SegmentWriter(file)) {
+            for (int hour = 0; hour < 4; hour++) {
+                for (int second = 0; second < 3600; second += 10)
+                    for (int patientId = 1; patientId <= 3; patientId++)
+                        writer.add(patientId, patientId + second / 3600.0, "ECG", START + hour * 3_600_000L + second * 1000L);
+                writer.writeSegment();
+            }
+        }
+
+        DataStorage storage = new DataStorage();
+        long from = START + 3_600_000L + 1_800_000L;
+        long to = START + 2 * 3_600_000L + 599_999L;
+        SegmentDataReader reader = new SegmentDataReader(file.toString(), patientId -> patientId == 2, from, to);
+        reader.readData(storage);
+        assertEquals(2, reader.getSegmentsRead());
+        assertEquals(2, reader.getSegmentsSkipped());
+
+        assertEquals(1, storage.getAllPatients().size());
+        List<PatientRecord> records = storage.getRecords(2, "ECG", Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(180 + 60, records.size());
+        assertEquals(from, records.get(0).getTimestamp());
+        assertEquals(to - 9_999L, records.get(records.size() - 1).getTimestamp());
+    }
+
+    @Test
+    void truncatedLastSegmentIsIgnoredAndCorruptionReported() throws IOException {
+        Path file = directory.resolve("readings.seg");
+        try (SegmentWriter writer = new SegmentWriter(file)) {
+            writer.add(1, 0.5, "ECG", 1000);
+            writer.writeSegment();
+            writer.add(1, 0.6, "ECG", 2000);
+        }
+        long firstSegment;
+        try (SegmentWriter writer = new SegmentWriter(directory.resolve("one.seg"))) {
+            writer.add(1, 0.5, "ECG", 1000);
+        }
+        firstSegment = Files.size(directory.resolve("one.seg"));
+
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        DataStorage storage = new DataStorage();
+        new SegmentDataReader(file.toString()).readData(storage);
+        assertEquals(1, storage.getRecords(1, "ECG", 0, Long.MAX_VALUE).size());
+
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(firstSegment - 6);
+            raf.write(raf.read() ^ 0x40);
+        }
+        assertThrows(IOException.class, () -> new SegmentDataReader(file.toString()).readData(new DataStorage()));
+    }
+
+    @Test
+    void reopeningCutsOffASegmentCutShort() throws IOException {
+        Path file = directory.resolve("readings.seg");
+        try (SegmentWriter writer = new SegmentWriter(file)) {
+            writer.add(1, 0.5, "ECG", 1000);
+        }
+        // A crash halfway through writing the second segment
+        byte[] segment = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(segment, segment.length / 2), StandardOpenOption.APPEND);
+
+        try (SegmentWriter writer = new SegmentWriter(file)) {
+            writer.add(1, 0.6, "ECG", 2000);
+            writer.writeSegment();
+            writer.add(2, 97.0, "Saturation", 3000);
+        }
+
+        DataStorage storage = new DataStorage();
+        SegmentDataReader reader = new SegmentDataReader(file.toString());
+        reader.readData(storage);
+        assertEquals(3, reader.getSegmentsRead());
+        List<PatientRecord> ecg = storage.getRecords(1, "ECG", 0, Long.MAX_VALUE);
+        assertEquals(2, ecg.size());
+        assertEquals(0.6, ecg.get(1).getMeasurementValue());
+        assertEquals(1, storage.getRecords(2, "Saturation", 0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void segmentOutputIsReadByFileDataReader() throws IOException {
+        SegmentOutputStrategy output = new SegmentOutputStrategy(directory.toString(), 1000, 60_000);
+        StringBuilder text = new StringBuilder();
+        for (int second = 0; second < 3600; second++) {
+            long timestamp = START + second * 1000L;
+            for (int patientId = 1; patientId <= 10; patientId++) {
+                String saturation = (95 + (second / 60 + patientId) % 5) + "%";
+                output.output(patientId, timestamp, "Saturation", saturation);
+                text.append("Patient ID: ").append(patientId).append(", Timestamp: ").append(timestamp)
+                        .append(", Label: Saturation, Data: ").append(saturation).append('\n');
+            }
+            if (second % 600 == 0)
+                output.output(1, timestamp, "Alert", second % 1200 == 0 ? "triggered" : "resolved");
+        }
+        output.output(1, START, "Alert", "not a number");
+        output.close();
+
+        Path file = directory.resolve(SegmentOutputStrategy.FILE_NAME);
+        // Steady readings compress to a small fraction of the text format
+        assertTrue(Files.size(file) * 10 < text.length(), Files.size(file) + " bytes");
+
+        DataStorage storage = new DataStorage();
+        new FileDataReader("--output file:" + file).readData(storage);
+        assertEquals(10, storage.getAllPatients().size());
+        List<PatientRecord> saturation = storage.getRecords(3, "Saturation", 0, Long.MAX_VALUE);
+        assertEquals(3600, saturation.size());
+        assertEquals(98.0, saturation.get(0).getMeasurementValue());
+        List<PatientRecord> alerts = storage.getRecords(1, "Alert", 0, Long.MAX_VALUE);
+        assertEquals(6, alerts.size());
+        assertEquals(1.0, alerts.get(0).getMeasurementValue());
+        assertEquals(0.0, alerts.get(1).getMeasurementValue());
+    }
+}